@@ -0,0 +1,87 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.BatchResult;
+import com.github.mike10004.common.dbhelp.BatchWriter;
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.j256.ormlite.dao.Dao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark that compares inserting rows with a batch writer against 
+ * inserting rows one at a time with {@link Dao#create(Object)}. Scores are
+ * in rows per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+
+    private static final int ROWS_PER_INVOCATION = 10000;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private DefaultDatabaseContext context;
+    private List<Widget> widgets;
+
+    @Setup
+    public void setUp() throws SQLException {
+        context = new DefaultDatabaseContext(new H2PooledConnectionSource());
+        context.getTableUtils().createTable(Widget.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void createWidgets() throws SQLException {
+        context.getTableUtils().clearTable(Widget.class);
+        widgets = new ArrayList<>(ROWS_PER_INVOCATION);
+        for (int i = 0; i < ROWS_PER_INVOCATION; i++) {
+            widgets.add(new Widget("widget" + i, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_INVOCATION)
+    public BatchResult<Widget> batchWriter() throws SQLException {
+        return context.createBatchWriter(Widget.class, batchSize, BatchWriter.CommitMode.PER_STREAM).write(widgets);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_INVOCATION)
+    public int daoCreateInTransaction() throws SQLException {
+        Dao<Widget, ?> dao = context.getDao(Widget.class);
+        return context.getTransactionManager().callInTransaction(() -> {
+            int n = 0;
+            for (Widget widget : widgets) {
+                n += dao.create(widget);
+            }
+            return n;
+        });
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.regex.Pattern;
+
+/**
+ * Static utility methods for launching benchmarks from a {@code main} method.
+ * The usual way to run the benchmarks is to build the uber-jar with
+ * {@code mvn package} and execute {@code java -jar target/benchmarks.jar}, 
+ * but some benchmarks are only meaningful when compared across thread counts,
+ * and those classes define a {@code main} method that uses this class.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs all benchmark methods of a class once for each of the given thread counts.
+     * @param benchmarkClass the benchmark class
+     * @param threadCounts the thread counts
+     * @throws RunnerException if a benchmark fails
+     */
+    static void runAtThreadCounts(Class<?> benchmarkClass, int...threadCounts) throws RunnerException {
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(Pattern.quote(benchmarkClass.getName()) + "\\.")
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+}
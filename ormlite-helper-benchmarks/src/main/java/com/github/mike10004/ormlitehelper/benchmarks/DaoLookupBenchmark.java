@@ -0,0 +1,65 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.github.mike10004.common.dbhelp.H2MemoryConnectionSource;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark that compares dao lookup through the context's own cache with 
+ * lookup through {@link DaoManager}, which synchronizes on a global lock.
+ * Run the {@link #main(String[]) main} method to compare at 1, 8, and 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DaoLookupBenchmark {
+
+    private ConnectionSource connectionSource;
+    private DefaultDatabaseContext context;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connectionSource = new H2MemoryConnectionSource();
+        context = new DefaultDatabaseContext(connectionSource);
+        context.getDao(Widget.class);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public Dao<Widget, ?> contextCache() throws SQLException {
+        return context.getDao(Widget.class);
+    }
+
+    @Benchmark
+    public Dao<Widget, ?> daoManager() throws SQLException {
+        return DaoManager.createDao(connectionSource, Widget.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(DaoLookupBenchmark.class, 1, 8, 64);
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.CachingDao;
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.github.mike10004.common.dbhelp.EntityCacheOptions;
+import com.j256.ormlite.dao.Dao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@code queryForId} calls for random ids among 1000 rows
+ * with an entity cache of varying size. A cache size of zero disables the
+ * cache, and a cache size of 100 holds about a tenth of the rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityCacheBenchmark {
+
+    private static final int NUM_ROWS = 1000;
+
+    @Param({"0", "100", "1000"})
+    public int cacheSize;
+
+    private DefaultDatabaseContext context;
+    private Dao<Widget, Integer> dao;
+
+    @Setup
+    public void setUp() throws SQLException {
+        context = new DefaultDatabaseContext(new H2PooledConnectionSource());
+        context.getTableUtils().createTable(Widget.class);
+        if (cacheSize > 0) {
+            context.setEntityCache(Widget.class, EntityCacheOptions.maximumSize(cacheSize));
+        }
+        dao = context.getDao(Widget.class, Integer.class);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            dao.create(new Widget("widget" + i, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        if (dao instanceof CachingDao) {
+            System.out.println(((CachingDao<?, ?>) dao).getCacheStats());
+        }
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public Widget queryForId() throws SQLException {
+        return dao.queryForId(1 + ThreadLocalRandom.current().nextInt(NUM_ROWS));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(EntityCacheBenchmark.class, 1, 4);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import java.util.Date;
+
+/**
+ * Entity class with many fields, used by benchmarks whose cost grows with
+ * the number of annotated fields.
+ */
+@DatabaseTable
+public class Gizmo {
+
+    public enum Status {
+        DRAFT, ACTIVE, RETIRED
+    }
+
+    @DatabaseField(generatedId = true)
+    public Integer id;
+
+    @DatabaseField(canBeNull = false, width = 64, index = true)
+    public String name;
+
+    @DatabaseField(columnName = "serial_number", unique = true)
+    public String serialNumber;
+
+    @DatabaseField(dataType = DataType.LONG_STRING)
+    public String description;
+
+    @DatabaseField(unknownEnumName = "DRAFT")
+    public Status status;
+
+    @DatabaseField(defaultValue = "0")
+    public int quantity;
+
+    @DatabaseField
+    public long weightGrams;
+
+    @DatabaseField
+    public double price;
+
+    @DatabaseField
+    public boolean fragile;
+
+    @DatabaseField
+    public Date created;
+
+    @DatabaseField
+    public Date modified;
+
+    @DatabaseField(width = 2)
+    public String countryCode;
+
+    @DatabaseField
+    public String manufacturer;
+
+    @DatabaseField
+    public String color;
+
+    @DatabaseField(foreign = true, foreignAutoRefresh = true)
+    public Widget widget;
+
+    @DatabaseField(version = true)
+    public int version;
+
+    public Gizmo() {
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.LazyJdbcPooledConnectionSource;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.DatabaseTypeUtils;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Pooled connection source for a uniquely-named H2 memory database that
+ * stays alive until the virtual machine exits. The connection sources in
+ * the main library for H2 are single-connection sources, which are not
+ * suitable for benchmarks that use multiple threads.
+ */
+class H2PooledConnectionSource extends LazyJdbcPooledConnectionSource {
+
+    private final String url;
+
+    public H2PooledConnectionSource() {
+        url = "jdbc:h2:mem:b" + UUID.randomUUID().toString().replace("-", "") + ";DB_CLOSE_DELAY=-1";
+    }
+
+    @Override
+    protected void prepare() throws SQLException {
+        setUrl(url);
+    }
+
+    @Override
+    protected DatabaseType forceGetDatabaseType() {
+        return DatabaseTypeUtils.createDatabaseType(url);
+    }
+}
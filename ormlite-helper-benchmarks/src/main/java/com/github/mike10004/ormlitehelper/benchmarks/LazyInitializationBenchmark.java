@@ -0,0 +1,93 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.H2MemoryConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark that measures connection checkout from a lazy connection source
+ * once it is initialized. The lazy source checks for initialization without
+ * locking; the baseline is the same source with the check inside a
+ * {@code synchronized} block, as it was before. The single-connection H2
+ * memory source is used so that the cost of the check is not hidden behind
+ * the pool's own lock. Run the {@link #main(String[]) main} method to
+ * compare at 1, 8, 64, and 256 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyInitializationBenchmark {
+
+    private H2MemoryConnectionSource lockFree;
+    private H2MemoryConnectionSource monitorLocked;
+
+    @Setup
+    public void setUp() throws SQLException {
+        lockFree = new H2MemoryConnectionSource();
+        lockFree.forcePrepareAndInitialize();
+        monitorLocked = new MonitorLockedConnectionSource();
+        monitorLocked.forcePrepareAndInitialize();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        lockFree.close();
+        monitorLocked.close();
+    }
+
+    @Benchmark
+    public DatabaseConnection lockFree() throws SQLException {
+        return checkout(lockFree);
+    }
+
+    @Benchmark
+    public DatabaseConnection monitorLocked() throws SQLException {
+        return checkout(monitorLocked);
+    }
+
+    private static DatabaseConnection checkout(H2MemoryConnectionSource connectionSource) throws SQLException {
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+        connectionSource.releaseConnection(connection);
+        return connection;
+    }
+
+    /**
+     * Connection source that enters a monitor on every initialization check.
+     */
+    private static class MonitorLockedConnectionSource extends H2MemoryConnectionSource {
+
+        private final Object preparationLock = new Object();
+
+        @Override
+        protected void maybePrepareAndInitialize() throws SQLException {
+            synchronized (preparationLock) {
+                if (!initialized) {
+                    prepare();
+                    initialize();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(LazyInitializationBenchmark.class, 1, 8, 64, 256);
+    }
+}
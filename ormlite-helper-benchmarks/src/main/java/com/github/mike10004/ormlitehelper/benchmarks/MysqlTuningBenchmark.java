@@ -0,0 +1,97 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.BatchResult;
+import com.github.mike10004.common.dbhelp.BatchWriter;
+import com.github.mike10004.common.dbhelp.ConnectionParams;
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.github.mike10004.common.dbhelp.MysqlConnectionSource;
+import com.github.mike10004.common.dbhelp.MysqlTuningProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of batched inserts into a MySQL database with each driver
+ * tuning profile. Scores are in rows per second. Unlike the other
+ * benchmarks, this one needs a running server; set the system properties
+ * {@code mysql.host} (default {@code localhost:3306}), {@code mysql.username},
+ * {@code mysql.password}, and {@code mysql.schema} (default
+ * {@code benchmarks}, which must exist) with {@code -jvmArgs}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MysqlTuningBenchmark {
+
+    private static final int ROWS_PER_INVOCATION = 10000;
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"NONE", "OLTP", "BULK_LOAD"})
+    public String profile;
+
+    private DefaultDatabaseContext context;
+    private List<Widget> widgets;
+
+    @Setup
+    public void setUp() throws SQLException {
+        ConnectionParams params = new ConnectionParams(System.getProperty("mysql.host", "localhost:3306"),
+                System.getProperty("mysql.username", "root"), System.getProperty("mysql.password", ""),
+                System.getProperty("mysql.schema", "benchmarks"));
+        params.setTuningProfile(getProfile(profile));
+        context = new DefaultDatabaseContext(new MysqlConnectionSource(params));
+        context.getTableUtils().createTableIfNotExists(Widget.class);
+    }
+
+    private static MysqlTuningProfile getProfile(String name) {
+        switch (name) {
+            case "NONE":
+                return MysqlTuningProfile.NONE;
+            case "OLTP":
+                return MysqlTuningProfile.OLTP;
+            case "BULK_LOAD":
+                return MysqlTuningProfile.BULK_LOAD;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createWidgets() throws SQLException {
+        context.getTableUtils().clearTable(Widget.class);
+        widgets = new ArrayList<>(ROWS_PER_INVOCATION);
+        for (int i = 0; i < ROWS_PER_INVOCATION; i++) {
+            widgets.add(new Widget("widget" + i, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        context.getTableUtils().dropTable(Widget.class, true);
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_INVOCATION)
+    public BatchResult<Widget> batchWriter() throws SQLException {
+        return context.createBatchWriter(Widget.class, BATCH_SIZE, BatchWriter.CommitMode.PER_STREAM).write(widgets);
+    }
+}
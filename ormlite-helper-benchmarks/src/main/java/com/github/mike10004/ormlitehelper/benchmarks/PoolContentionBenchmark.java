@@ -0,0 +1,84 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.github.mike10004.common.dbhelp.HikariConnectionSource;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark that compares ORMLite's pool with a HikariCP pool when many
+ * threads each check out a connection, run a small query on an H2 memory
+ * database, and release the connection. Both pools hold up to
+ * {@value #POOL_SIZE} connections. Run the {@link #main(String[]) main}
+ * method to compare at 1, 8, and 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolContentionBenchmark {
+
+    private static final int POOL_SIZE = 16;
+
+    @Param({"ormlite", "hikari"})
+    public String pool;
+
+    private DefaultDatabaseContext context;
+    private Dao<Widget, Integer> dao;
+
+    @Setup
+    public void setUp() throws SQLException {
+        context = new DefaultDatabaseContext(createConnectionSource(pool));
+        context.getTableUtils().createTable(Widget.class);
+        dao = context.getDao(Widget.class, Integer.class);
+        dao.create(new Widget("gear", 1));
+    }
+
+    private static ConnectionSource createConnectionSource(String pool) {
+        switch (pool) {
+            case "ormlite":
+                H2PooledConnectionSource ormlite = new H2PooledConnectionSource();
+                ormlite.setMaxConnectionsFree(POOL_SIZE);
+                return ormlite;
+            case "hikari":
+                HikariConnectionSource hikari = new HikariConnectionSource("jdbc:h2:mem:b" + UUID.randomUUID().toString().replace("-", "") + ";DB_CLOSE_DELAY=-1");
+                hikari.setMaximumPoolSize(POOL_SIZE);
+                return hikari;
+            default:
+                throw new IllegalArgumentException(pool);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public Widget queryForId() throws SQLException {
+        return dao.queryForId(1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(PoolContentionBenchmark.class, 1, 8, 64);
+    }
+}
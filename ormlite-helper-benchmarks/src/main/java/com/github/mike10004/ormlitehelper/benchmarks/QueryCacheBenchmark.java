@@ -0,0 +1,94 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.github.mike10004.common.dbhelp.QueryCacheOptions;
+import com.github.mike10004.common.dbhelp.QueryCachingDao;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a filtered query built with a query builder, with and
+ * without a query result cache. Each query selects the ten rows in one of
+ * 100 quantity ranges among 1000 rows. With a nonzero write percentage, that
+ * share of operations updates a random row, which discards the cached
+ * results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryCacheBenchmark {
+
+    private static final int NUM_ROWS = 1000;
+    private static final int ROWS_PER_QUERY = 10;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    @Param({"0", "1"})
+    public int writePercent;
+
+    private DefaultDatabaseContext context;
+    private Dao<Widget, Integer> dao;
+
+    @Setup
+    public void setUp() throws SQLException {
+        context = new DefaultDatabaseContext(new H2PooledConnectionSource());
+        context.getTableUtils().createTable(Widget.class);
+        if (cached) {
+            context.setQueryCache(Widget.class, QueryCacheOptions.maximumRows(2 * NUM_ROWS));
+        }
+        dao = context.getDao(Widget.class, Integer.class);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            dao.create(new Widget("widget" + i, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        if (dao instanceof QueryCachingDao) {
+            System.out.println(((QueryCachingDao<?, ?>) dao).getCacheStats());
+        }
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public Object queryOrUpdate() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < writePercent) {
+            int quantity = random.nextInt(NUM_ROWS);
+            Widget widget = new Widget("widget" + quantity, quantity);
+            widget.id = quantity + 1;
+            return dao.update(widget);
+        }
+        int low = random.nextInt(NUM_ROWS / ROWS_PER_QUERY) * ROWS_PER_QUERY;
+        QueryBuilder<Widget, Integer> qb = dao.queryBuilder();
+        qb.where().ge("quantity", low).and().lt("quantity", low + ROWS_PER_QUERY);
+        List<Widget> widgets = qb.query();
+        return widgets;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(QueryCacheBenchmark.class, 1, 4);
+    }
+}
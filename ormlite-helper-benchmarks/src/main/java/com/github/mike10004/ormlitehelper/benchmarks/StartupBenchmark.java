@@ -0,0 +1,63 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the first {@code getDao} calls in a fresh virtual machine.
+ * Each fork measures a single invocation, so class loading and annotation
+ * parsing are included. The reflection method creates daos the way ORMLite
+ * does by default, reading each entity's annotations; the generated method
+ * goes through the context, which uses the table configurations generated
+ * by ormlite-helper-processor at compile time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    private H2PooledConnectionSource connectionSource;
+    private DefaultDatabaseContext context;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connectionSource = new H2PooledConnectionSource();
+        connectionSource.releaseConnection(connectionSource.getReadWriteConnection(null));
+        context = new DefaultDatabaseContext(connectionSource);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public Dao<?, ?> reflection() throws SQLException {
+        DaoManager.createDao(connectionSource, Widget.class);
+        return DaoManager.createDao(connectionSource, Gizmo.class);
+    }
+
+    @Benchmark
+    public Dao<?, ?> generated() throws SQLException {
+        context.getDao(Widget.class);
+        return context.getDao(Gizmo.class);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.j256.ormlite.dao.Dao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of repeated {@code queryForId} calls through a pooled
+ * connection source with and without a prepared statement cache. A cache
+ * size of zero disables the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    @Param({"0", "32"})
+    public int statementCacheSize;
+
+    private H2PooledConnectionSource connectionSource;
+    private DefaultDatabaseContext context;
+    private Dao<Widget, Integer> dao;
+    private int id;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connectionSource = new H2PooledConnectionSource();
+        connectionSource.setStatementCacheSize(statementCacheSize);
+        context = new DefaultDatabaseContext(connectionSource);
+        context.getTableUtils().createTable(Widget.class);
+        dao = context.getDao(Widget.class, Integer.class);
+        for (int i = 0; i < 100; i++) {
+            dao.create(new Widget("widget" + i, i));
+        }
+        id = dao.queryForAll().get(50).id;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        System.out.println(connectionSource.getStatementCacheStats());
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public Widget queryForId() throws SQLException {
+        return dao.queryForId(id);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(StatementCacheBenchmark.class, 1, 4);
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import com.github.mike10004.common.dbhelp.H2MemoryConnectionSource;
+import com.github.mike10004.common.dbhelp.StatementTracer;
+import com.j256.ormlite.dao.Dao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of statement execution through a traced context against an
+ * untraced one. The slow query threshold is high enough that nothing is
+ * logged, so the difference is the cost of timing and recording.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementTracingBenchmark {
+
+    private DefaultDatabaseContext rawContext;
+    private DefaultDatabaseContext tracedContext;
+    private Dao<Widget, Integer> rawDao;
+    private Dao<Widget, Integer> tracedDao;
+    private int id;
+
+    @Setup
+    public void setUp() throws SQLException {
+        rawContext = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        tracedContext = new DefaultDatabaseContext(new H2MemoryConnectionSource(), new StatementTracer(1, TimeUnit.HOURS));
+        rawDao = populate(rawContext);
+        tracedDao = populate(tracedContext);
+        id = rawDao.queryForAll().get(0).id;
+    }
+
+    private static Dao<Widget, Integer> populate(DefaultDatabaseContext context) throws SQLException {
+        context.getTableUtils().createTable(Widget.class);
+        Dao<Widget, Integer> dao = context.getDao(Widget.class, Integer.class);
+        for (int i = 0; i < 100; i++) {
+            dao.create(new Widget("widget" + i, i));
+        }
+        return dao;
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        rawContext.closeConnections(true);
+        tracedContext.closeConnections(true);
+    }
+
+    @Benchmark
+    public Widget queryForIdRaw() throws SQLException {
+        return rawDao.queryForId(id);
+    }
+
+    @Benchmark
+    public Widget queryForIdTraced() throws SQLException {
+        return tracedDao.queryForId(id);
+    }
+
+    @Benchmark
+    public int updateRaw() throws SQLException {
+        return rawDao.updateRaw("UPDATE `widget` SET `quantity` = `quantity` + 1 WHERE `id` = ?", String.valueOf(id));
+    }
+
+    @Benchmark
+    public int updateTraced() throws SQLException {
+        return tracedDao.updateRaw("UPDATE `widget` SET `quantity` = `quantity` + 1 WHERE `id` = ?", String.valueOf(id));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Benchmarks.runAtThreadCounts(StatementTracingBenchmark.class, 1);
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.github.mike10004.common.dbhelp.ContextTransactionManager;
+import com.github.mike10004.common.dbhelp.DefaultDatabaseContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark of transaction throughput through a database context. Run the
+ * {@link #main(String[]) main} method to measure at thread counts from one
+ * up to the number of available processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private DefaultDatabaseContext context;
+
+    @Setup
+    public void setUp() throws SQLException {
+        H2PooledConnectionSource connectionSource = new H2PooledConnectionSource();
+        connectionSource.setMaxConnectionsFree(Runtime.getRuntime().availableProcessors());
+        context = new DefaultDatabaseContext(connectionSource);
+        context.getTableUtils().createTable(Widget.class);
+        context.getDao(Widget.class).create(new Widget("gear", 1));
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        context.closeConnections(true);
+    }
+
+    @Benchmark
+    public ContextTransactionManager getTransactionManager() {
+        return context.getTransactionManager();
+    }
+
+    @Benchmark
+    public long callInTransaction() throws SQLException {
+        return context.getTransactionManager().callInTransaction(() -> context.getDao(Widget.class).countOf());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = IntStream.iterate(1, n -> n * 2).limit(32)
+                .filter(n -> n < processors).toArray();
+        threadCounts = IntStream.concat(IntStream.of(threadCounts), IntStream.of(processors)).toArray();
+        Benchmarks.runAtThreadCounts(TransactionBenchmark.class, threadCounts);
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.mike10004.ormlitehelper.benchmarks;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * Entity class used by benchmarks.
+ */
+@DatabaseTable
+public class Widget {
+
+    @DatabaseField(generatedId = true)
+    public Integer id;
+
+    @DatabaseField
+    public String name;
+
+    @DatabaseField
+    public int quantity;
+
+    public Widget() {
+    }
+
+    public Widget(String name, int quantity) {
+        this.name = name;
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "Widget{" + "id=" + id + ", name=" + name + ", quantity=" + quantity + '}';
+    }
+}
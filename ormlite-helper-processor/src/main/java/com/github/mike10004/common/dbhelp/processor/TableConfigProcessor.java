@@ -0,0 +1,472 @@
+package com.github.mike10004.common.dbhelp.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor that generates a table configuration factory for each
+ * class annotated with {@code @DatabaseTable}. The factory for an entity
+ * class is named after the class, with nested class names joined by
+ * underscores, plus the suffix {@value #FACTORY_SUFFIX}, and is placed in the
+ * same package. It implements
+ * {@code com.github.mike10004.common.dbhelp.TableConfigFactory} and builds
+ * the field configurations that ORMLite would otherwise read from the
+ * entity's annotations by reflection.
+ *
+ * <p>Classes whose configuration cannot be reproduced exactly are skipped
+ * with a note, and ORMLite reads their annotations at runtime as usual.
+ * These include generic classes, classes not accessible from their own
+ * package, classes that use {@code javax.persistence} annotations, and
+ * classes whose custom dao class lacks a constructor that accepts a
+ * table configuration.</p>
+ */
+@SupportedAnnotationTypes(TableConfigProcessor.DATABASE_TABLE)
+public class TableConfigProcessor extends AbstractProcessor {
+
+    /**
+     * Suffix appended to the entity class name to form the factory class name.
+     */
+    public static final String FACTORY_SUFFIX = "_TableConfig";
+
+    static final String DATABASE_TABLE = "com.j256.ormlite.table.DatabaseTable";
+    static final String FACTORY_INTERFACE = "com.github.mike10004.common.dbhelp.TableConfigFactory";
+
+    private static final String DATABASE_FIELD = "com.j256.ormlite.field.DatabaseField";
+    private static final String FOREIGN_COLLECTION_FIELD = "com.j256.ormlite.field.ForeignCollectionField";
+    private static final String DATABASE_FIELD_CONFIG = "com.j256.ormlite.field.DatabaseFieldConfig";
+    private static final String DATABASE_TABLE_CONFIG = "com.j256.ormlite.table.DatabaseTableConfig";
+    private static final String DATA_TYPE = "com.j256.ormlite.field.DataType";
+    private static final String CONNECTION_SOURCE = "com.j256.ormlite.support.ConnectionSource";
+    private static final Set<String> DEFAULT_DAO_CLASSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "java.lang.Void", "com.j256.ormlite.dao.BaseDaoImpl")));
+    private static final String JAVAX_PERSISTENCE_PACKAGE = "javax.persistence.";
+
+    /**
+     * Attributes of {@code @DatabaseField} that map to a
+     * {@code DatabaseFieldConfig} setter of the same name and whose blank
+     * value means unset.
+     */
+    private static final Set<String> SIMPLE_FIELD_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "columnName", "width", "canBeNull", "id", "generatedId", "generatedIdSequence", "foreign",
+            "useGetSet", "throwIfNull", "format", "unique", "uniqueCombo", "index", "indexName",
+            "uniqueIndex", "uniqueIndexName", "foreignAutoRefresh", "allowGeneratedIdInsert",
+            "columnDefinition", "foreignAutoCreate", "version", "foreignColumnName", "readOnly",
+            "fullColumnDefinition")));
+
+    private boolean factoryInterfaceMissingReported;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement entity : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                process(entity);
+            }
+        }
+        return false;
+    }
+
+    private void process(TypeElement entity) {
+        if (processingEnv.getElementUtils().getTypeElement(FACTORY_INTERFACE) == null) {
+            if (!factoryInterfaceMissingReported) {
+                factoryInterfaceMissingReported = true;
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        FACTORY_INTERFACE + " is not on the classpath; no table configurations generated");
+            }
+            return;
+        }
+        String source;
+        try {
+            source = new FactoryWriter(entity).write();
+        } catch (UnsupportedEntityException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "table configuration not generated for " + entity.getQualifiedName() + ": " + e.getMessage(), entity);
+            return;
+        }
+        String packageName = getPackageName(entity);
+        String factoryName = getFactorySimpleName(entity);
+        String qualifiedFactoryName = packageName.isEmpty() ? factoryName : packageName + "." + factoryName;
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(qualifiedFactoryName, entity);
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(source);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "could not write " + qualifiedFactoryName + ": " + e, entity);
+        }
+    }
+
+    private String getPackageName(TypeElement entity) {
+        return processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+    }
+
+    /**
+     * Gets the simple name of the factory class for an entity class. This
+     * must agree with the name computed at runtime from the entity's binary
+     * class name.
+     */
+    private String getFactorySimpleName(TypeElement entity) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(entity).toString();
+        String packageName = getPackageName(entity);
+        String nestedName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        return nestedName.replace('$', '_') + FACTORY_SUFFIX;
+    }
+
+    private static class UnsupportedEntityException extends Exception {
+
+        public UnsupportedEntityException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Class that writes the source of the factory for one entity class.
+     */
+    private class FactoryWriter {
+
+        private final TypeElement entity;
+        private final Elements elements;
+        private final Types types;
+        private final StringBuilder body;
+        private int fieldCount;
+
+        public FactoryWriter(TypeElement entity) {
+            this.entity = entity;
+            elements = processingEnv.getElementUtils();
+            types = processingEnv.getTypeUtils();
+            body = new StringBuilder(1024);
+        }
+
+        public String write() throws UnsupportedEntityException {
+            checkEntityClass();
+            AnnotationMirror databaseTable = findAnnotation(entity, DATABASE_TABLE);
+            Map<? extends ExecutableElement, ? extends AnnotationValue> tableValues = elements.getElementValuesWithDefaults(databaseTable);
+            checkDaoClass((TypeMirror) getValue(tableValues, "daoClass"));
+            String tableName = (String) getValue(tableValues, "tableName");
+            if (tableName.isEmpty()) {
+                tableName = entity.getSimpleName().toString().toLowerCase(Locale.ENGLISH);
+            }
+            for (TypeElement classWalk = entity; classWalk != null; classWalk = getSuperclass(classWalk)) {
+                checkNoJavaxPersistence(classWalk);
+                for (VariableElement field : ElementFilter.fieldsIn(classWalk.getEnclosedElements())) {
+                    checkNoJavaxPersistence(field);
+                    appendFieldConfig(field);
+                }
+            }
+            if (fieldCount == 0) {
+                throw new UnsupportedEntityException("no persisted fields");
+            }
+            return writeClass(tableName);
+        }
+
+        private String writeClass(String tableName) {
+            String packageName = getPackageName(entity);
+            String entityName = entity.getQualifiedName().toString();
+            StringBuilder source = new StringBuilder(body.length() + 1024);
+            if (!packageName.isEmpty()) {
+                source.append("package ").append(packageName).append(";\n\n");
+            }
+            source.append("/**\n * Table configuration factory for {@link ").append(entityName).append("}.\n")
+                    .append(" * Generated from the entity's annotations; do not edit.\n */\n");
+            String generated = findGeneratedAnnotation();
+            if (generated != null) {
+                source.append('@').append(generated).append('(')
+                        .append(elements.getConstantExpression(TableConfigProcessor.class.getName())).append(")\n");
+            }
+            source.append("public final class ").append(getFactorySimpleName(entity))
+                    .append(" implements ").append(FACTORY_INTERFACE).append('<').append(entityName).append("> {\n\n")
+                    .append("    @Override\n")
+                    .append("    public ").append(DATABASE_TABLE_CONFIG).append('<').append(entityName).append("> createTableConfig() {\n")
+                    .append("        java.util.List<").append(DATABASE_FIELD_CONFIG).append("> fieldConfigs = new java.util.ArrayList<")
+                    .append(DATABASE_FIELD_CONFIG).append(">(").append(fieldCount).append(");\n")
+                    .append("        ").append(DATABASE_FIELD_CONFIG).append(" fieldConfig;\n")
+                    .append(body)
+                    .append("        return new ").append(DATABASE_TABLE_CONFIG).append('<').append(entityName).append(">(")
+                    .append(entityName).append(".class, ").append(elements.getConstantExpression(tableName)).append(", fieldConfigs);\n")
+                    .append("    }\n")
+                    .append("}\n");
+            return source.toString();
+        }
+
+        private String findGeneratedAnnotation() {
+            for (String name : new String[]{"javax.annotation.processing.Generated", "javax.annotation.Generated"}) {
+                if (elements.getTypeElement(name) != null) {
+                    return name;
+                }
+            }
+            return null;
+        }
+
+        private void checkEntityClass() throws UnsupportedEntityException {
+            if (entity.getKind() != ElementKind.CLASS) {
+                throw new UnsupportedEntityException("not a class");
+            }
+            if (!entity.getTypeParameters().isEmpty()) {
+                throw new UnsupportedEntityException("generic classes are not supported");
+            }
+            for (Element element = entity; element instanceof TypeElement; element = element.getEnclosingElement()) {
+                TypeElement type = (TypeElement) element;
+                if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                    throw new UnsupportedEntityException("class is not accessible from its package");
+                }
+                if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+                    throw new UnsupportedEntityException("inner classes are not supported");
+                }
+                if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                    throw new UnsupportedEntityException("local classes are not supported");
+                }
+            }
+        }
+
+        /**
+         * Checks that a custom dao class, if any, can be constructed from a
+         * table configuration, which is how daos are created when a
+         * configuration is supplied.
+         */
+        private void checkDaoClass(TypeMirror daoClass) throws UnsupportedEntityException {
+            TypeElement daoElement = (TypeElement) types.asElement(daoClass);
+            if (daoElement == null || DEFAULT_DAO_CLASSES.contains(daoElement.getQualifiedName().toString())) {
+                return;
+            }
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(daoElement.getEnclosedElements())) {
+                List<? extends VariableElement> parameters = constructor.getParameters();
+                if (constructor.getModifiers().contains(Modifier.PUBLIC) && parameters.size() == 2
+                        && isType(parameters.get(0).asType(), CONNECTION_SOURCE)
+                        && isType(parameters.get(1).asType(), DATABASE_TABLE_CONFIG)) {
+                    return;
+                }
+            }
+            throw new UnsupportedEntityException("dao class " + daoElement.getQualifiedName()
+                    + " has no public constructor with ConnectionSource and DatabaseTableConfig parameters");
+        }
+
+        private boolean isType(TypeMirror type, String qualifiedName) {
+            Element element = types.asElement(types.erasure(type));
+            return element instanceof TypeElement && ((TypeElement) element).getQualifiedName().contentEquals(qualifiedName);
+        }
+
+        private TypeElement getSuperclass(TypeElement type) {
+            TypeMirror superclass = type.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            return (TypeElement) ((DeclaredType) superclass).asElement();
+        }
+
+        private void checkNoJavaxPersistence(Element element) throws UnsupportedEntityException {
+            for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+                String annotationName = getAnnotationName(annotation);
+                if (annotationName.startsWith(JAVAX_PERSISTENCE_PACKAGE)) {
+                    throw new UnsupportedEntityException("javax.persistence annotations are not supported");
+                }
+            }
+        }
+
+        private void appendFieldConfig(VariableElement field) throws UnsupportedEntityException {
+            AnnotationMirror databaseField = findAnnotation(field, DATABASE_FIELD);
+            if (databaseField != null) {
+                Map<? extends ExecutableElement, ? extends AnnotationValue> values = elements.getElementValuesWithDefaults(databaseField);
+                if (!((Boolean) getValue(values, "persisted"))) {
+                    return;
+                }
+                beginFieldConfig(field);
+                appendDatabaseFieldSetters(field, values);
+                endFieldConfig();
+                return;
+            }
+            AnnotationMirror foreignCollectionField = findAnnotation(field, FOREIGN_COLLECTION_FIELD);
+            if (foreignCollectionField != null) {
+                beginFieldConfig(field);
+                appendSetter("setForeignCollection", "true");
+                appendForeignCollectionSetters(elements.getElementValuesWithDefaults(foreignCollectionField));
+                endFieldConfig();
+            }
+        }
+
+        private void beginFieldConfig(VariableElement field) {
+            body.append("        fieldConfig = new ").append(DATABASE_FIELD_CONFIG).append('(')
+                    .append(elements.getConstantExpression(field.getSimpleName().toString())).append(");\n");
+        }
+
+        private void endFieldConfig() {
+            body.append("        fieldConfigs.add(fieldConfig);\n");
+            fieldCount++;
+        }
+
+        private void appendSetter(String setterName, String argument) {
+            body.append("        fieldConfig.").append(setterName).append('(').append(argument).append(");\n");
+        }
+
+        /**
+         * Appends setter calls for the attributes whose values differ from
+         * their defaults, applying the same conversions as
+         * {@code DatabaseFieldConfig.fromDatabaseField}.
+         */
+        private void appendDatabaseFieldSetters(VariableElement field, Map<? extends ExecutableElement, ? extends AnnotationValue> values) throws UnsupportedEntityException {
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+                String name = entry.getKey().getSimpleName().toString();
+                Object value = entry.getValue().getValue();
+                if (isDefault(entry.getKey(), entry.getValue())) {
+                    continue;
+                }
+                if (SIMPLE_FIELD_ATTRIBUTES.contains(name)) {
+                    if (!"".equals(value)) {
+                        appendSetter(toSetterName(name), elements.getConstantExpression(value));
+                    }
+                    continue;
+                }
+                switch (name) {
+                    case "persisted":
+                    case "maxForeignAutoRefreshLevel":
+                        break;
+                    case "defaultValue":
+                        appendSetter("setDefaultValue", elements.getConstantExpression(value));
+                        break;
+                    case "dataType":
+                        appendSetter("setDataType", DATA_TYPE + "." + ((VariableElement) value).getSimpleName());
+                        break;
+                    case "persisterClass":
+                        TypeElement persisterClass = (TypeElement) types.asElement((TypeMirror) value);
+                        checkAccessible(persisterClass);
+                        appendSetter("setPersisterClass", persisterClass.getQualifiedName() + ".class");
+                        break;
+                    case "unknownEnumName":
+                        appendSetter("setUnknownEnumValue", findEnumConstant(field, (String) value));
+                        break;
+                    default:
+                        throw new UnsupportedEntityException("unrecognized @DatabaseField attribute " + name);
+                }
+            }
+            ExecutableElement maxLevelElement = getElement(values, "maxForeignAutoRefreshLevel");
+            boolean foreignAutoRefresh = (Boolean) getValue(values, "foreignAutoRefresh");
+            if (foreignAutoRefresh || !isDefault(maxLevelElement, values.get(maxLevelElement))) {
+                appendSetter("setMaxForeignAutoRefreshLevel", elements.getConstantExpression(values.get(maxLevelElement).getValue()));
+            }
+        }
+
+        private void appendForeignCollectionSetters(Map<? extends ExecutableElement, ? extends AnnotationValue> values) throws UnsupportedEntityException {
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+                String name = entry.getKey().getSimpleName().toString();
+                Object value = entry.getValue().getValue();
+                if (isDefault(entry.getKey(), entry.getValue()) || "".equals(value)) {
+                    continue;
+                }
+                String argument = elements.getConstantExpression(value);
+                switch (name) {
+                    case "columnName":
+                        appendSetter("setColumnName", argument);
+                        appendSetter("setForeignCollectionColumnName", argument);
+                        break;
+                    case "eager":
+                        appendSetter("setForeignCollectionEager", argument);
+                        break;
+                    case "maxEagerLevel":
+                        appendSetter("setForeignCollectionMaxEagerLevel", argument);
+                        break;
+                    case "orderColumnName":
+                        appendSetter("setForeignCollectionOrderColumnName", argument);
+                        break;
+                    case "orderAscending":
+                        appendSetter("setForeignCollectionOrderAscending", argument);
+                        break;
+                    case "foreignFieldName":
+                        appendSetter("setForeignCollectionForeignFieldName", argument);
+                        break;
+                    default:
+                        throw new UnsupportedEntityException("unrecognized @ForeignCollectionField attribute " + name);
+                }
+            }
+        }
+
+        private String findEnumConstant(VariableElement field, String constantName) throws UnsupportedEntityException {
+            Element fieldType = types.asElement(field.asType());
+            if (fieldType != null && fieldType.getKind() == ElementKind.ENUM) {
+                checkAccessible((TypeElement) fieldType);
+                for (Element member : fieldType.getEnclosedElements()) {
+                    if (member.getKind() == ElementKind.ENUM_CONSTANT && member.getSimpleName().contentEquals(constantName)) {
+                        return ((TypeElement) fieldType).getQualifiedName() + "." + constantName;
+                    }
+                }
+            }
+            throw new UnsupportedEntityException("unknown enum name " + constantName + " for field " + field.getSimpleName());
+        }
+
+        private void checkAccessible(TypeElement type) throws UnsupportedEntityException {
+            boolean samePackage = getPackageName(type).equals(getPackageName(entity));
+            for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+                Set<Modifier> modifiers = element.getModifiers();
+                if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+                    throw new UnsupportedEntityException(((TypeElement) element).getQualifiedName() + " is not accessible");
+                }
+            }
+        }
+
+        private boolean isDefault(ExecutableElement attribute, AnnotationValue value) {
+            AnnotationValue defaultValue = attribute.getDefaultValue();
+            return defaultValue != null && (value == defaultValue || value.toString().equals(defaultValue.toString()));
+        }
+    }
+
+    private static String toSetterName(String attributeName) {
+        return "set" + Character.toUpperCase(attributeName.charAt(0)) + attributeName.substring(1);
+    }
+
+    private static String getAnnotationName(AnnotationMirror annotation) {
+        return ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (getAnnotationName(annotation).equals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static ExecutableElement getElement(Map<? extends ExecutableElement, ? extends AnnotationValue> values, String name) {
+        for (ExecutableElement element : values.keySet()) {
+            if (element.getSimpleName().contentEquals(name)) {
+                return element;
+            }
+        }
+        throw new IllegalArgumentException("no annotation attribute named " + name);
+    }
+
+    private static Object getValue(Map<? extends ExecutableElement, ? extends AnnotationValue> values, String name) {
+        return values.get(getElement(values, name)).getValue();
+    }
+}
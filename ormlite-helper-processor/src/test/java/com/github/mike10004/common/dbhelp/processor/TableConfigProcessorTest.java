@@ -0,0 +1,216 @@
+package com.github.mike10004.common.dbhelp.processor;
+
+import com.j256.ormlite.db.H2DatabaseType;
+import com.j256.ormlite.field.DatabaseFieldConfig;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TableConfigProcessorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String FACTORY_INTERFACE_SOURCE = "package com.github.mike10004.common.dbhelp;\n"
+            + "public interface TableConfigFactory<T> {\n"
+            + "    com.j256.ormlite.table.DatabaseTableConfig<T> createTableConfig();\n"
+            + "}\n";
+
+    private static final String IMPORTS = "import com.j256.ormlite.dao.ForeignCollection;\n"
+            + "import com.j256.ormlite.field.DataType;\n"
+            + "import com.j256.ormlite.field.DatabaseField;\n"
+            + "import com.j256.ormlite.field.ForeignCollectionField;\n"
+            + "import com.j256.ormlite.table.DatabaseTable;\n";
+
+    private static final String EVERYTHING_SOURCE = "package example;\n" + IMPORTS
+            + "@DatabaseTable(tableName = \"everything\")\n"
+            + "public class Everything extends Base {\n"
+            + "    public enum Color { RED, GREEN }\n"
+            + "    @DatabaseField(id = true, columnName = \"everything_id\") public String key;\n"
+            + "    @DatabaseField(width = 40, canBeNull = false, defaultValue = \"x\\\"y\", index = true, uniqueIndexName = \"u_idx\", format = \"\", unique = true) public String name;\n"
+            + "    @DatabaseField(dataType = DataType.LONG_STRING, readOnly = true, columnDefinition = \"CLOB\") public String text;\n"
+            + "    @DatabaseField(unknownEnumName = \"GREEN\", throwIfNull = true) public Color color;\n"
+            + "    @DatabaseField(foreign = true, foreignAutoRefresh = true) public Other other;\n"
+            + "    @DatabaseField(foreign = true, maxForeignAutoRefreshLevel = 5, foreignColumnName = \"name\") public Other another;\n"
+            + "    @DatabaseField(persisted = false) public String ignored;\n"
+            + "    @DatabaseField(version = true, defaultValue = \"\") public int version;\n"
+            + "    @ForeignCollectionField(eager = true, columnName = \"others\", orderColumnName = \"name\", orderAscending = false, maxEagerLevel = 3) public ForeignCollection<Other> others;\n"
+            + "    public String notAnnotated;\n"
+            + "    @DatabaseTable public static class Nested { @DatabaseField(generatedId = true) public int id; }\n"
+            + "}\n";
+
+    private static final String BASE_SOURCE = "package example;\n" + IMPORTS
+            + "public class Base {\n"
+            + "    @DatabaseField(uniqueCombo = true, allowGeneratedIdInsert = true, foreignAutoCreate = true) public int baseValue;\n"
+            + "}\n";
+
+    private static final String OTHER_SOURCE = "package example;\n" + IMPORTS
+            + "@DatabaseTable\n"
+            + "public class Other {\n"
+            + "    @DatabaseField(generatedId = true) public int id;\n"
+            + "    @DatabaseField public String name;\n"
+            + "}\n";
+
+    private static final String UNSUPPORTED_SOURCE = "package example;\n" + IMPORTS
+            + "public class Unsupported {\n"
+            + "    @DatabaseTable private static class Hidden { @DatabaseField public int id; }\n"
+            + "    @DatabaseTable public static class Generic<T> { @DatabaseField public int id; }\n"
+            + "    @DatabaseTable public class Inner { @DatabaseField public int id; }\n"
+            + "    @DatabaseTable public static class NothingPersisted { @DatabaseField(persisted = false) public int id; }\n"
+            + "    @DatabaseTable(daoClass = CustomDao.class) public static class WithCustomDao { @DatabaseField public int id; }\n"
+            + "    public static class CustomDao extends com.j256.ormlite.dao.BaseDaoImpl<WithCustomDao, Integer> {\n"
+            + "        public CustomDao(com.j256.ormlite.support.ConnectionSource cs) throws java.sql.SQLException { super(cs, WithCustomDao.class); }\n"
+            + "    }\n"
+            + "}\n";
+
+    private static class StringSource extends SimpleJavaFileObject {
+
+        private final String source;
+
+        public StringSource(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    private static class CompilationResult {
+
+        public final File classesDir;
+        public final File sourcesDir;
+        public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+        public CompilationResult(File classesDir, File sourcesDir, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+            this.classesDir = classesDir;
+            this.sourcesDir = sourcesDir;
+            this.diagnostics = diagnostics;
+        }
+
+        public boolean isGenerated(String qualifiedName) {
+            return new File(sourcesDir, qualifiedName.replace('.', File.separatorChar) + ".java").isFile();
+        }
+
+        public boolean hasNote(String text) {
+            return diagnostics.stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.NOTE && d.getMessage(null).contains(text));
+        }
+    }
+
+    private CompilationResult compile(JavaFileObject... sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File classesDir = temporaryFolder.newFolder("classes");
+        File sourcesDir = temporaryFolder.newFolder("generated-sources");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classesDir));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(sourcesDir));
+            String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", classpath), null, Arrays.asList(sources));
+            task.setProcessors(Collections.singletonList(new TableConfigProcessor()));
+            boolean success = task.call();
+            diagnostics.getDiagnostics().forEach(System.out::println);
+            assertTrue("compilation failed", success);
+        }
+        return new CompilationResult(classesDir, sourcesDir, diagnostics.getDiagnostics());
+    }
+
+    @Test
+    public void testGeneratedConfigMatchesReflection() throws Exception {
+        System.out.println("testGeneratedConfigMatchesReflection");
+        CompilationResult result = compile(new StringSource("com.github.mike10004.common.dbhelp.TableConfigFactory", FACTORY_INTERFACE_SOURCE),
+                new StringSource("example.Everything", EVERYTHING_SOURCE),
+                new StringSource("example.Base", BASE_SOURCE),
+                new StringSource("example.Other", OTHER_SOURCE));
+        assertTrue(result.isGenerated("example.Everything_TableConfig"));
+        assertTrue(result.isGenerated("example.Everything_Nested_TableConfig"));
+        assertTrue(result.isGenerated("example.Other_TableConfig"));
+        assertFalse(result.isGenerated("example.Base_TableConfig"));
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{result.classesDir.toURI().toURL()}, getClass().getClassLoader())) {
+            assertConfigMatchesReflection(classLoader, "example.Everything", "everything");
+            assertConfigMatchesReflection(classLoader, "example.Everything$Nested", "nested");
+            assertConfigMatchesReflection(classLoader, "example.Other", "other");
+        }
+    }
+
+    private static void assertConfigMatchesReflection(ClassLoader classLoader, String entityClassName, String tableName) throws Exception {
+        Class<?> entityClass = classLoader.loadClass(entityClassName);
+        Class<?> factoryClass = classLoader.loadClass(entityClassName.replace('$', '_') + TableConfigProcessor.FACTORY_SUFFIX);
+        Object factory = factoryClass.getConstructor().newInstance();
+        DatabaseTableConfig<?> tableConfig = (DatabaseTableConfig<?>) factoryClass.getMethod("createTableConfig").invoke(factory);
+        assertEquals("data class", entityClass, tableConfig.getDataClass());
+        assertEquals("table name", tableName, tableConfig.getTableName());
+        H2DatabaseType databaseType = new H2DatabaseType();
+        List<DatabaseFieldConfig> expected = new ArrayList<>();
+        for (Class<?> classWalk = entityClass; classWalk != null; classWalk = classWalk.getSuperclass()) {
+            for (Field field : classWalk.getDeclaredFields()) {
+                DatabaseFieldConfig fieldConfig = DatabaseFieldConfig.fromField(databaseType, tableName, field);
+                if (fieldConfig != null) {
+                    expected.add(fieldConfig);
+                }
+            }
+        }
+        List<DatabaseFieldConfig> actual = tableConfig.getFieldConfigs();
+        assertEquals("field count in " + entityClassName, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertFieldConfigEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertFieldConfigEquals(DatabaseFieldConfig expected, DatabaseFieldConfig actual) throws IllegalAccessException {
+        for (Field property : DatabaseFieldConfig.class.getDeclaredFields()) {
+            if (Modifier.isStatic(property.getModifiers())) {
+                continue;
+            }
+            property.setAccessible(true);
+            assertEquals(expected.getFieldName() + "." + property.getName(), property.get(expected), property.get(actual));
+        }
+    }
+
+    @Test
+    public void testUnsupportedEntitiesSkipped() throws Exception {
+        System.out.println("testUnsupportedEntitiesSkipped");
+        CompilationResult result = compile(new StringSource("com.github.mike10004.common.dbhelp.TableConfigFactory", FACTORY_INTERFACE_SOURCE),
+                new StringSource("example.Unsupported", UNSUPPORTED_SOURCE));
+        for (String nested : new String[]{"Hidden", "Generic", "Inner", "NothingPersisted", "WithCustomDao"}) {
+            assertFalse(nested, result.isGenerated("example.Unsupported_" + nested + TableConfigProcessor.FACTORY_SUFFIX));
+            assertTrue(nested, result.hasNote("example.Unsupported." + nested + ":"));
+        }
+    }
+
+    @Test
+    public void testNothingGeneratedWithoutFactoryInterface() throws Exception {
+        System.out.println("testNothingGeneratedWithoutFactoryInterface");
+        CompilationResult result = compile(new StringSource("example.Other", OTHER_SOURCE));
+        assertFalse(result.isGenerated("example.Other_TableConfig"));
+        assertTrue(result.diagnostics.stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.WARNING
+                && d.getMessage(null).contains(TableConfigProcessor.FACTORY_INTERFACE)));
+    }
+}
@@ -121,6 +121,31 @@ public class MysqlConnectionSourceIT {
         assertEquals(1, cs.getNumPrepareCalls());
     }
     
+    @Test
+    public void testBatchWriter() throws SQLException {
+        System.out.println("testBatchWriter");
+        DatabaseContext db = new DefaultDatabaseContext(connectionSourceRule.getConnectionSource());
+        boolean clean = false;
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            List<Customer> customers = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                Customer c = new Customer();
+                c.address = i + " Main St";
+                c.name = "Customer " + i;
+                customers.add(c);
+            }
+            BatchResult<Customer> result = db.createBatchWriter(Customer.class, 128, BatchWriter.CommitMode.PER_BATCH).write(customers);
+            System.out.println(result);
+            assertEquals("rows written", customers.size(), result.getRowsWritten());
+            assertEquals("keys assigned", customers.size(), result.getKeysAssigned());
+            assertEquals("count", customers.size(), db.getDao(Customer.class).countOf());
+            clean = true;
+        } finally {
+            db.closeConnections(!clean);
+        }
+    }
+
     public static abstract class DbTask implements Callable<Void> {
         
         private transient final DatabaseContext db;
@@ -0,0 +1,255 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.j256.ormlite.dao.Dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that provides asynchronous access to a database context. Operations
+ * run on a dedicated executor whose thread count is the given concurrency,
+ * which should not exceed the number of connections the context's
+ * connection source can supply at once. That way a task never occupies a
+ * thread while waiting for a connection. Single-connection sources are
+ * always limited to one thread.
+ *
+ * <p>Operations that cannot start immediately wait in a bounded queue. When
+ * the queue is full, the returned future fails with a
+ * {@link RejectedExecutionException}; callers should treat that as a signal
+ * to slow down. Cancelling a future removes its operation from the queue if
+ * it has not started, and interrupts the executing thread if it has.
+ * Whether an interrupted operation stops early depends on the JDBC driver.</p>
+ *
+ * <p>Closing this instance shuts down the executor but does not close the
+ * context's connections.</p>
+ */
+public class AsyncDatabaseContext implements AutoCloseable {
+
+    private final DatabaseContext context;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructs an instance.
+     * @param context the database context
+     * @param concurrency the maximum number of operations that run at once
+     * @param queueCapacity the maximum number of operations waiting to run
+     * @throws SQLException if the context's connection source cannot be obtained
+     */
+    public AsyncDatabaseContext(DatabaseContext context, int concurrency, int queueCapacity) throws SQLException {
+        this.context = checkNotNull(context, "context");
+        checkArgument(concurrency > 0, "concurrency must be positive: %s", concurrency);
+        checkArgument(queueCapacity > 0, "queue capacity must be positive: %s", queueCapacity);
+        if (context.getConnectionSource().isSingleConnection(null)) {
+            concurrency = 1;
+        }
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("async-db-%d").build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Interface of a function that operates on a dao.
+     * @param <T> the entity type
+     * @param <K> the id type
+     * @param <R> the result type
+     */
+    public interface DaoFunction<T, K, R> {
+
+        R apply(Dao<T, K> dao) throws SQLException;
+    }
+
+    /**
+     * Gets the synchronous context that operations run against.
+     * @return the database context
+     */
+    public DatabaseContext getContext() {
+        return context;
+    }
+
+    /**
+     * Gets the maximum number of operations that run at once.
+     * @return the concurrency
+     */
+    public int getConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Gets the number of operations waiting to run.
+     * @return the number of queued operations
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of operations that can be queued before submissions
+     * are rejected.
+     * @return the remaining queue capacity
+     */
+    public int getRemainingQueueCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * Runs an operation asynchronously.
+     * @param <R> the result type
+     * @param operation the operation
+     * @return a future that completes with the operation's result
+     */
+    public <R> CompletableFuture<R> supply(SqlSupplier<R> operation) {
+        checkNotNull(operation, "operation");
+        return submit(operation::get);
+    }
+
+    /**
+     * Runs a function on the dao for an entity class asynchronously.
+     * @param <T> the entity type
+     * @param <K> the id type
+     * @param <R> the result type
+     * @param entityClass the entity class
+     * @param idClass the id class
+     * @param function the function
+     * @return a future that completes with the function's result
+     */
+    public <T, K, R> CompletableFuture<R> withDao(Class<T> entityClass, Class<K> idClass, DaoFunction<T, K, R> function) {
+        checkNotNull(entityClass, "entityClass");
+        checkNotNull(idClass, "idClass");
+        checkNotNull(function, "function");
+        return submit(() -> function.apply(context.getDao(entityClass, idClass)));
+    }
+
+    public <T, K> CompletableFuture<T> queryForId(Class<T> entityClass, Class<K> idClass, K id) {
+        return withDao(entityClass, idClass, dao -> dao.queryForId(id));
+    }
+
+    public <T> CompletableFuture<List<T>> queryForAll(Class<T> entityClass) {
+        return withDao(entityClass, Object.class, Dao::queryForAll);
+    }
+
+    public <T> CompletableFuture<Integer> create(Class<T> entityClass, T entity) {
+        return withDao(entityClass, Object.class, dao -> dao.create(entity));
+    }
+
+    public <T> CompletableFuture<Integer> update(Class<T> entityClass, T entity) {
+        return withDao(entityClass, Object.class, dao -> dao.update(entity));
+    }
+
+    public <T> CompletableFuture<Integer> delete(Class<T> entityClass, T entity) {
+        return withDao(entityClass, Object.class, dao -> dao.delete(entity));
+    }
+
+    /**
+     * Executes a callable inside a transaction asynchronously.
+     * @param <T> the result type
+     * @param callable the callable
+     * @return a future that completes with the callable's result
+     * @see ContextTransactionManager#callInTransaction(Callable)
+     */
+    public <T> CompletableFuture<T> callInTransaction(Callable<T> callable) {
+        checkNotNull(callable, "callable");
+        return submit(() -> context.getTransactionManager().callInTransaction(callable));
+    }
+
+    /**
+     * Executes a callable inside a read-only transaction asynchronously.
+     * @param <T> the result type
+     * @param callable the callable
+     * @return a future that completes with the callable's result
+     * @see ContextTransactionManager#callInReadOnlyTransaction(Callable)
+     */
+    public <T> CompletableFuture<T> callInReadOnlyTransaction(Callable<T> callable) {
+        checkNotNull(callable, "callable");
+        return submit(() -> context.getTransactionManager().callInReadOnlyTransaction(callable));
+    }
+
+    private <R> CompletableFuture<R> submit(Callable<R> operation) {
+        TaskFuture<R> future = new TaskFuture<>(executor);
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (!future.isDone()) {
+                try {
+                    future.complete(operation.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+            return null;
+        });
+        future.task = task;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static class TaskFuture<R> extends CompletableFuture<R> {
+
+        private final ThreadPoolExecutor executor;
+        private volatile FutureTask<Void> task;
+
+        public TaskFuture(ThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            FutureTask<Void> task = this.task;
+            if (cancelled && task != null) {
+                task.cancel(mayInterruptIfRunning);
+                executor.remove(task);
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Stops accepting operations. Operations already submitted still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for submitted operations to finish after a shutdown.
+     * @param timeout the maximum time to wait
+     * @param unit the timeout unit
+     * @return true if all operations finished, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Shuts down and waits for submitted operations to finish. If the
+     * calling thread is interrupted while waiting, running operations are
+     * interrupted and the thread's interrupt status is restored.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that represents the result of writing entities with a batch writer.
+ * @param <T> the entity type
+ * @see BatchWriter
+ */
+public class BatchResult<T> {
+
+    private final int rowsWritten;
+    private final int batchesExecuted;
+    private final int keysAssigned;
+    private final ImmutableList<RowFailure<T>> failures;
+
+    public BatchResult(int rowsWritten, int batchesExecuted, int keysAssigned, List<RowFailure<T>> failures) {
+        this.rowsWritten = rowsWritten;
+        this.batchesExecuted = batchesExecuted;
+        this.keysAssigned = keysAssigned;
+        this.failures = ImmutableList.copyOf(failures);
+    }
+
+    /**
+     * Gets the number of rows that were inserted.
+     * @return the number of rows
+     */
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Gets the number of batches that were executed.
+     * @return the number of batches
+     */
+    public int getBatchesExecuted() {
+        return batchesExecuted;
+    }
+
+    /**
+     * Gets the number of entities to which a generated key was assigned.
+     * This is zero if the entity has no generated id or if the database
+     * does not return generated keys for batches.
+     * @return the number of keys assigned
+     */
+    public int getKeysAssigned() {
+        return keysAssigned;
+    }
+
+    /**
+     * Gets the list of rows that the database rejected.
+     * @return the failures, in the order the entities were written
+     */
+    public ImmutableList<RowFailure<T>> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("rowsWritten", rowsWritten)
+                .add("batchesExecuted", batchesExecuted)
+                .add("keysAssigned", keysAssigned)
+                .add("failures", failures.size())
+                .toString();
+    }
+
+    /**
+     * Class that represents a row that the database rejected.
+     * @param <T> the entity type
+     */
+    public static class RowFailure<T> {
+        
+        private final int index;
+        private final T entity;
+        private final SQLException exception;
+
+        public RowFailure(int index, T entity, SQLException exception) {
+            this.index = index;
+            this.entity = checkNotNull(entity);
+            this.exception = checkNotNull(exception);
+        }
+
+        /**
+         * Gets the position of the entity in the iterable that was written.
+         * @return the zero-based index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public T getEntity() {
+            return entity;
+        }
+
+        /**
+         * Gets the exception that caused the failure. If the driver stopped 
+         * executing a batch at an earlier row, this is the exception for 
+         * that batch.
+         * @return the exception
+         */
+        public SQLException getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return "RowFailure{index=" + index + ", entity=" + entity + ", exception=" + exception + '}';
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.mike10004.common.dbhelp;
+
+import java.sql.SQLException;
+
+/**
+ * Interface for objects that insert entities in batches. Rows are grouped
+ * into JDBC {@link java.sql.PreparedStatement#addBatch() addBatch}/{@link 
+ * java.sql.PreparedStatement#executeBatch() executeBatch} calls, which saves
+ * a round trip per row compared to {@link com.j256.ormlite.dao.Dao#create(Object)}.
+ * @param <T> the entity type
+ * @see DatabaseContext#createBatchWriter(Class, int, CommitMode) 
+ */
+public interface BatchWriter<T> {
+
+    /**
+     * Enumeration of constants that specify when a batch writer commits.
+     */
+    enum CommitMode {
+        
+        /**
+         * Commit after each batch is executed.
+         */
+        PER_BATCH,
+        
+        /**
+         * Commit once, after all batches have been executed.
+         */
+        PER_STREAM
+    }
+    
+    /**
+     * Inserts the given entities. Rows that the database rejects individually
+     * are reported in the result and do not prevent other rows from being
+     * written. Where the database returns generated keys for a batch, they are
+     * assigned to the entities' generated id fields, as with 
+     * {@link com.j256.ormlite.dao.Dao#create(Object)}.
+     * 
+     * <p>If the connection is already in a transaction (that is, auto-commit
+     * is off when the writer acquires it), the writer neither commits nor 
+     * rolls back, and leaves that to the enclosing transaction.</p>
+     * @param entities the entities
+     * @return the result
+     * @throws SQLException if an error other than a per-row failure occurs;
+     * uncommitted rows are rolled back in that case
+     */
+    BatchResult<T> write(Iterable<? extends T> entities) throws SQLException;
+    
+}
@@ -0,0 +1,314 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.Daos.DaoDelegator;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedDelete;
+import com.j256.ormlite.stmt.PreparedUpdate;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Data access object that keeps the results of {@link #queryForId(Object)}
+ * in a bounded cache. On a miss, one thread loads the entity from the
+ * delegate while other threads asking for the same id wait for its result,
+ * so a popular entity is never loaded by several threads at once. Ids for
+ * which no entity exists are cached too.
+ *
+ * <p>Writes through this dao invalidate the ids they affect: creates,
+ * updates, and deletes of entities or ids invalidate those ids, and
+ * prepared updates and deletes, including those executed by this dao's
+ * statement builders, and raw statements invalidate the whole cache. A
+ * load that overlaps a write is not kept. When the dao is created by a
+ * {@link DefaultDatabaseContext#setEntityCache(Class, EntityCacheOptions)
+ * database context}, the context's batch writers invalidate the whole
+ * cache, and writes made in a transaction run by the context's transaction
+ * manager are invalidated again when the transaction ends, because until it
+ * commits other threads load and cache the entities as they were before.
+ * Other writes that do not go through this dao are not seen; bound the
+ * staleness they cause with
+ * {@link EntityCacheOptions#expireAfterWrite(long, TimeUnit) expiry}.</p>
+ *
+ * <p>Cached entities are shared by all callers and must not be modified.
+ * This makes the cache suitable for reference data and other entities that
+ * are read much more often than they are written.</p>
+ *
+ * @param <T> the entity type
+ * @param <ID> the id type
+ */
+public class CachingDao<T, ID> extends DaoDelegator<T, ID> {
+
+    private final Cache<ID, Optional<T>> cache;
+    private final AtomicLong writeCount;
+    @Nullable
+    private final TransactionCompletionActions completionActions;
+
+    public CachingDao(Dao<T, ID> delegate, EntityCacheOptions<? super T> options) {
+        this(delegate, options, null);
+    }
+
+    CachingDao(Dao<T, ID> delegate, EntityCacheOptions<? super T> options, @Nullable TransactionCompletionActions completionActions) {
+        super(delegate);
+        cache = buildCache(checkNotNull(options, "options"));
+        writeCount = new AtomicLong();
+        this.completionActions = completionActions;
+    }
+
+    private static <T, ID> Cache<ID, Optional<T>> buildCache(EntityCacheOptions<? super T> options) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        long expireAfterWriteNanos = options.getExpireAfterWrite(TimeUnit.NANOSECONDS);
+        if (expireAfterWriteNanos > 0) {
+            builder.expireAfterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+        }
+        ToIntFunction<? super T> weigher = options.getWeigher();
+        if (weigher == null) {
+            return builder.maximumSize(options.getMaximumSize()).build();
+        }
+        return builder.maximumWeight(options.getMaximumWeight())
+                .weigher((ID id, Optional<T> entity) -> entity.isPresent() ? weigher.applyAsInt(entity.get()) : 1)
+                .build();
+    }
+
+    /**
+     * Gets the statistics of the cache: hits, misses, loads, and evictions.
+     * Evictions do not include invalidations.
+     * @return the statistics
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Gets the approximate number of cached ids.
+     * @return the number of entries
+     */
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Discards the cached entity for an id.
+     * @param id the id
+     */
+    public void invalidate(ID id) {
+        writeCount.incrementAndGet();
+        cache.invalidate(checkNotNull(id, "id"));
+    }
+
+    /**
+     * Discards all cached entities.
+     */
+    public void invalidateAll() {
+        writeCount.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Discards all cached entities after a write that may have touched any
+     * of them, and again when the transaction the write was made in ends.
+     */
+    void invalidateAllAfterWrite() {
+        invalidateAfterWrite(ImmutableList.of(this), this::invalidateAll);
+    }
+
+    private void invalidateAfterWrite(Object key, Runnable invalidation) {
+        if (completionActions == null) {
+            invalidation.run();
+        } else {
+            completionActions.runNowAndAfterTransaction(getConnectionSource(), getTableName(), key, invalidation);
+        }
+    }
+
+    private void invalidateIfNotNull(@Nullable ID id) {
+        if (id == null) {
+            writeCount.incrementAndGet();
+        } else {
+            invalidateAfterWrite(ImmutableList.of(this, id), () -> invalidate(id));
+        }
+    }
+
+    private void invalidateEntity(@Nullable T data) throws SQLException {
+        invalidateIfNotNull(data == null ? null : extractId(data));
+    }
+
+    private void invalidateEntities(Collection<T> datas) throws SQLException {
+        for (T data : datas) {
+            invalidateEntity(data);
+        }
+    }
+
+    @Override
+    public T queryForId(ID id) throws SQLException {
+        if (id == null) {
+            return super.queryForId(null);
+        }
+        long writesBefore = writeCount.get();
+        Optional<T> entity;
+        try {
+            entity = cache.get(id, () -> Optional.ofNullable(getDelegate().queryForId(id)));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+        if (writeCount.get() != writesBefore) {
+            cache.asMap().remove(id, entity);
+        }
+        return entity.orElse(null);
+    }
+
+    @Override
+    public int create(T data) throws SQLException {
+        try {
+            return super.create(data);
+        } finally {
+            invalidateEntity(data);
+        }
+    }
+
+    @Override
+    public int create(Collection<T> datas) throws SQLException {
+        try {
+            return super.create(datas);
+        } finally {
+            invalidateEntities(datas);
+        }
+    }
+
+    @Override
+    public T createIfNotExists(T data) throws SQLException {
+        try {
+            return super.createIfNotExists(data);
+        } finally {
+            invalidateEntity(data);
+        }
+    }
+
+    @Override
+    public CreateOrUpdateStatus createOrUpdate(T data) throws SQLException {
+        try {
+            return super.createOrUpdate(data);
+        } finally {
+            invalidateEntity(data);
+        }
+    }
+
+    @Override
+    public int update(T data) throws SQLException {
+        try {
+            return super.update(data);
+        } finally {
+            invalidateEntity(data);
+        }
+    }
+
+    @Override
+    public int updateId(T data, ID newId) throws SQLException {
+        ID oldId = extractId(data);
+        try {
+            return super.updateId(data, newId);
+        } finally {
+            invalidateIfNotNull(oldId);
+            invalidateIfNotNull(newId);
+        }
+    }
+
+    @Override
+    public int update(PreparedUpdate<T> preparedUpdate) throws SQLException {
+        try {
+            return super.update(preparedUpdate);
+        } finally {
+            invalidateAllAfterWrite();
+        }
+    }
+
+    @Override
+    public int delete(T data) throws SQLException {
+        try {
+            return super.delete(data);
+        } finally {
+            invalidateEntity(data);
+        }
+    }
+
+    @Override
+    public int deleteById(ID id) throws SQLException {
+        try {
+            return super.deleteById(id);
+        } finally {
+            invalidateIfNotNull(id);
+        }
+    }
+
+    @Override
+    public int delete(Collection<T> datas) throws SQLException {
+        try {
+            return super.delete(datas);
+        } finally {
+            invalidateEntities(datas);
+        }
+    }
+
+    @Override
+    public int deleteIds(Collection<ID> ids) throws SQLException {
+        try {
+            return super.deleteIds(ids);
+        } finally {
+            for (ID id : ids) {
+                invalidateIfNotNull(id);
+            }
+        }
+    }
+
+    @Override
+    public int delete(PreparedDelete<T> preparedDelete) throws SQLException {
+        try {
+            return super.delete(preparedDelete);
+        } finally {
+            invalidateAllAfterWrite();
+        }
+    }
+
+    @Override
+    public int executeRaw(String statement, String... arguments) throws SQLException {
+        try {
+            return super.executeRaw(statement, arguments);
+        } finally {
+            invalidateAllAfterWrite();
+        }
+    }
+
+    @Override
+    public int executeRawNoArgs(String statement) throws SQLException {
+        try {
+            return super.executeRawNoArgs(statement);
+        } finally {
+            invalidateAllAfterWrite();
+        }
+    }
+
+    @Override
+    public int updateRaw(String statement, String... arguments) throws SQLException {
+        try {
+            return super.updateRaw(statement, arguments);
+        } finally {
+            invalidateAllAfterWrite();
+        }
+    }
+}
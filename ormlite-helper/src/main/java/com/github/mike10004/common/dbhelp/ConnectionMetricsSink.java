@@ -0,0 +1,42 @@
+package com.github.mike10004.common.dbhelp;
+
+/**
+ * Interface of a service that receives connection pool measurements from an
+ * instrumented connection source. Implementations must be thread-safe and
+ * should return quickly, because they are invoked on the thread that acquires
+ * or releases the connection.
+ * @see InstrumentedConnectionSource
+ */
+public interface ConnectionMetricsSink {
+
+    /**
+     * Enumeration of the ways a connection may be requested.
+     */
+    enum AccessMode {
+        READ_ONLY,
+        READ_WRITE
+    }
+
+    /**
+     * Receives notification that a connection was acquired.
+     * @param mode the access mode requested
+     * @param latencyNanos time spent waiting for the connection
+     * @param inUse number of connections in use, including this one
+     */
+    void connectionAcquired(AccessMode mode, long latencyNanos, int inUse);
+
+    /**
+     * Receives notification that a connection could not be acquired.
+     * @param mode the access mode requested
+     * @param latencyNanos time spent before the failure
+     * @param cause the exception thrown by the connection source
+     */
+    void connectionAcquireFailed(AccessMode mode, long latencyNanos, Exception cause);
+
+    /**
+     * Receives notification that a connection was released.
+     * @param holdNanos time between acquisition and release
+     * @param inUse number of connections in use after the release
+     */
+    void connectionReleased(long holdNanos, int inUse);
+}
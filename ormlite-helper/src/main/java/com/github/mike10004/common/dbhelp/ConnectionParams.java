@@ -21,6 +21,7 @@ public class ConnectionParams {
     public String username;
     public String password;
     public String schema;
+    public MysqlTuningProfile tuningProfile;
 
     public ConnectionParams() {
     }
@@ -69,6 +70,19 @@ public class ConnectionParams {
     public void setSchema(String schema) {
         this.schema = schema;
     }
+
+    public MysqlTuningProfile getTuningProfile() {
+        return tuningProfile;
+    }
+
+    /**
+     * Sets the driver tuning profile appended to the JDBC URL. Null, the
+     * default, is equivalent to {@link MysqlTuningProfile#NONE}.
+     * @param tuningProfile the tuning profile
+     */
+    public void setTuningProfile(MysqlTuningProfile tuningProfile) {
+        this.tuningProfile = tuningProfile;
+    }
     
     @Override
     public int hashCode() {
@@ -77,6 +91,7 @@ public class ConnectionParams {
         hash = 37 * hash + Objects.hashCode(this.username);
         hash = 37 * hash + Objects.hashCode(this.password);
         hash = 37 * hash + Objects.hashCode(this.schema);
+        hash = 37 * hash + Objects.hashCode(this.tuningProfile);
         return hash;
     }
 
@@ -101,6 +116,9 @@ public class ConnectionParams {
         if (!Objects.equals(this.schema, other.schema)) {
             return false;
         }
+        if (!Objects.equals(this.tuningProfile, other.tuningProfile)) {
+            return false;
+        }
         return true;
     }
 
@@ -110,6 +128,7 @@ public class ConnectionParams {
      */
     public ConnectionParams copy() {
         ConnectionParams copy = new ConnectionParams(host, username, password, schema);
+        copy.tuningProfile = tuningProfile;
         return copy;
     }
 }
@@ -4,6 +4,7 @@ import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.support.DatabaseConnection;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.sql.SQLException;
 
@@ -210,6 +211,31 @@ public class ConnectionSources {
     public static ConnectionSource broken() {
         return new IntentionallyBrokenConnectionSource();
     }
+
+    /**
+     * Checks whether a transaction holds a connection of a connection source
+     * on the current thread. Single-connection sources do not save the
+     * connection of a transaction, so their connection is checked for having
+     * auto-commit disabled.
+     * @param connectionSource the connection source
+     * @param tableName the table name, or null
+     * @return true if a transaction is active
+     * @throws SQLException if the connection state cannot be read
+     */
+    static boolean isInTransaction(ConnectionSource connectionSource, @Nullable String tableName) throws SQLException {
+        if (connectionSource.getSpecialConnection(tableName) != null) {
+            return true;
+        }
+        if (!connectionSource.isSingleConnection(tableName)) {
+            return false;
+        }
+        DatabaseConnection connection = connectionSource.getReadOnlyConnection(tableName);
+        try {
+            return connection.isAutoCommitSupported() && !connection.isAutoCommit();
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
     
     public static class SimpleConnectionSourceDelegator extends ConnectionSourceDelegator {
 
@@ -46,6 +46,35 @@ public interface ContextTableUtils {
      */
     <T> int clearTable(DatabaseTableConfig<T> tableConfig) throws SQLException;
 
+    /**
+     * Remove all data from multiple tables as quickly as the database allows.
+     * Where the database supports it, each table is emptied with
+     * {@code TRUNCATE TABLE} rather than a {@code DELETE}, and referential
+     * integrity checks are disabled while the tables are truncated, so the
+     * tables may be given in any order. The previous integrity setting is
+     * restored afterward, whether or not the truncation succeeded. Other
+     * databases have their tables cleared one at a time as by
+     * {@link #clearTable(Class)}. The default implementation clears every
+     * table that way, in the given order, so referencing tables must be
+     * given before the tables they reference.
+     *
+     * <p>
+     * <b>WARNING:</b> This is very destructive and is unrecoverable. On most
+     * databases, truncating a table commits the current transaction.
+     * </p>
+     * @param dataClasses entity classes
+     * @return number of tables emptied
+     * @throws java.sql.SQLException on errors clearing table data
+     */
+    default int truncateTables(Iterable<Class<?>> dataClasses) throws SQLException {
+        int count = 0;
+        for (Class<?> dataClass : dataClasses) {
+            clearTable(dataClass);
+            count++;
+        }
+        return count;
+    }
+
     /**
      * Issue the database statements to create the table associated with a class.
      *
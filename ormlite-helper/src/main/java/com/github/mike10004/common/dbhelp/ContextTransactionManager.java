@@ -31,5 +31,34 @@ public interface ContextTransactionManager {
 	 *             callable exception and is thrown by this method.
 	 */
     <T> T callInTransaction(Callable<T> callable) throws SQLException;
-    
+
+	/**
+	 * Execute the {@link Callable} class inside of a read-only transaction. The connection is obtained with
+	 * {@link com.j256.ormlite.support.ConnectionSource#getReadOnlyConnection(String) getReadOnlyConnection}, so a
+	 * connection source that sends reads to a separate pool serves the whole block from that pool. The JDBC
+	 * connection is marked read-only for the duration of the block, which lets databases such as MySQL skip
+	 * work needed only for writes, and its previous state is restored before it is released.
+	 *
+	 * <p>
+	 * If a transaction is already active on the current thread, the callable joins it and the connection's
+	 * read-only state is not changed.
+	 * </p>
+	 *
+	 * <p>
+	 * The default implementation runs the callable in an ordinary transaction, as by
+	 * {@link #callInTransaction(Callable)}; implementations should override it to honor the read-only routing.
+	 * </p>
+	 *
+	 * @param callable
+	 *            Callable to execute inside of the transaction.
+	 * @param <T> callable return type
+	 * @return The object returned by the callable.
+	 * @throws SQLException
+	 *             If the callable threw an exception then the transaction is rolled back and a SQLException wraps the
+	 *             callable exception and is thrown by this method.
+	 */
+    default <T> T callInReadOnlyTransaction(Callable<T> callable) throws SQLException {
+        return callInTransaction(callable);
+    }
+
 }
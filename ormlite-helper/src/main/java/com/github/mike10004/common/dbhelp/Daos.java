@@ -0,0 +1,476 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.CloseableWrappedIterable;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DatabaseResultsMapper;
+import com.j256.ormlite.dao.ForeignCollection;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.dao.RawRowMapper;
+import com.j256.ormlite.dao.RawRowObjectMapper;
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.PreparedDelete;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.PreparedUpdate;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import com.j256.ormlite.table.ObjectFactory;
+import com.j256.ormlite.table.TableInfo;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility methods relating to data access objects.
+ * @see Dao
+ */
+public class Daos {
+
+    private Daos() {}
+
+    /**
+     * Finds the table information of a dao. Delegators are unwrapped until
+     * a {@link BaseDaoImpl} is found.
+     * @param <T> the entity type
+     * @param <ID> the id type
+     * @param dao the dao
+     * @return the table information, or null if the dao is not backed by a
+     * {@link BaseDaoImpl}
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T, ID> TableInfo<T, ID> findTableInfo(Dao<T, ID> dao) {
+        Dao<T, ID> current = dao;
+        while (current instanceof DaoDelegator) {
+            current = ((DaoDelegator<T, ID>) current).getDelegate();
+        }
+        if (current instanceof BaseDaoImpl) {
+            return ((BaseDaoImpl<T, ID>) current).getTableInfo();
+        }
+        return null;
+    }
+
+    /**
+     * Data access object that forwards all method invocations to a delegate.
+     * Subclasses override the methods whose behavior they modify. If the
+     * delegate is backed by a {@link BaseDaoImpl}, the statement builders
+     * returned by this dao execute their statements through this dao rather
+     * than the delegate, so that they pass through the overridden methods.
+     * @param <T> the entity type
+     * @param <ID> the id type
+     */
+    public abstract static class DaoDelegator<T, ID> implements Dao<T, ID> {
+
+        private final Dao<T, ID> delegate;
+
+        protected DaoDelegator(Dao<T, ID> delegate) {
+            this.delegate = checkNotNull(delegate, "delegate");
+        }
+
+        protected Dao<T, ID> getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public QueryBuilder<T, ID> queryBuilder() {
+            TableInfo<T, ID> tableInfo = findTableInfo(delegate);
+            if (tableInfo == null) {
+                return delegate.queryBuilder();
+            }
+            return new QueryBuilder<>(delegate.getConnectionSource().getDatabaseType(), tableInfo, this);
+        }
+
+        @Override
+        public UpdateBuilder<T, ID> updateBuilder() {
+            TableInfo<T, ID> tableInfo = findTableInfo(delegate);
+            if (tableInfo == null) {
+                return delegate.updateBuilder();
+            }
+            return new UpdateBuilder<>(delegate.getConnectionSource().getDatabaseType(), tableInfo, this);
+        }
+
+        @Override
+        public DeleteBuilder<T, ID> deleteBuilder() {
+            TableInfo<T, ID> tableInfo = findTableInfo(delegate);
+            if (tableInfo == null) {
+                return delegate.deleteBuilder();
+            }
+            return new DeleteBuilder<>(delegate.getConnectionSource().getDatabaseType(), tableInfo, this);
+        }
+
+        @Override
+        public T queryForId(ID id) throws SQLException {
+            return delegate.queryForId(id);
+        }
+
+        @Override
+        public T queryForFirst(PreparedQuery<T> preparedQuery) throws SQLException {
+            return delegate.queryForFirst(preparedQuery);
+        }
+
+        @Override
+        public List<T> queryForAll() throws SQLException {
+            return delegate.queryForAll();
+        }
+
+        @Override
+        public List<T> queryForEq(String fieldName, Object value) throws SQLException {
+            return delegate.queryForEq(fieldName, value);
+        }
+
+        @Override
+        public List<T> queryForMatching(T matchObj) throws SQLException {
+            return delegate.queryForMatching(matchObj);
+        }
+
+        @Override
+        public List<T> queryForMatchingArgs(T matchObj) throws SQLException {
+            return delegate.queryForMatchingArgs(matchObj);
+        }
+
+        @Override
+        public List<T> queryForFieldValues(Map<String, Object> fieldValues) throws SQLException {
+            return delegate.queryForFieldValues(fieldValues);
+        }
+
+        @Override
+        public List<T> queryForFieldValuesArgs(Map<String, Object> fieldValues) throws SQLException {
+            return delegate.queryForFieldValuesArgs(fieldValues);
+        }
+
+        @Override
+        public T queryForSameId(T data) throws SQLException {
+            return delegate.queryForSameId(data);
+        }
+
+        @Override
+        public List<T> query(PreparedQuery<T> preparedQuery) throws SQLException {
+            return delegate.query(preparedQuery);
+        }
+
+        @Override
+        public int create(T data) throws SQLException {
+            return delegate.create(data);
+        }
+
+        @Override
+        public int create(Collection<T> datas) throws SQLException {
+            return delegate.create(datas);
+        }
+
+        @Override
+        public T createIfNotExists(T data) throws SQLException {
+            return delegate.createIfNotExists(data);
+        }
+
+        @Override
+        public CreateOrUpdateStatus createOrUpdate(T data) throws SQLException {
+            return delegate.createOrUpdate(data);
+        }
+
+        @Override
+        public int update(T data) throws SQLException {
+            return delegate.update(data);
+        }
+
+        @Override
+        public int updateId(T data, ID newId) throws SQLException {
+            return delegate.updateId(data, newId);
+        }
+
+        @Override
+        public int update(PreparedUpdate<T> preparedUpdate) throws SQLException {
+            return delegate.update(preparedUpdate);
+        }
+
+        @Override
+        public int refresh(T data) throws SQLException {
+            return delegate.refresh(data);
+        }
+
+        @Override
+        public int delete(T data) throws SQLException {
+            return delegate.delete(data);
+        }
+
+        @Override
+        public int deleteById(ID id) throws SQLException {
+            return delegate.deleteById(id);
+        }
+
+        @Override
+        public int delete(Collection<T> datas) throws SQLException {
+            return delegate.delete(datas);
+        }
+
+        @Override
+        public int deleteIds(Collection<ID> ids) throws SQLException {
+            return delegate.deleteIds(ids);
+        }
+
+        @Override
+        public int delete(PreparedDelete<T> preparedDelete) throws SQLException {
+            return delegate.delete(preparedDelete);
+        }
+
+        @Override
+        public CloseableIterator<T> iterator() {
+            return delegate.iterator();
+        }
+
+        @Override
+        public CloseableIterator<T> iterator(int resultFlags) {
+            return delegate.iterator(resultFlags);
+        }
+
+        @Override
+        public CloseableIterator<T> iterator(PreparedQuery<T> preparedQuery) throws SQLException {
+            return delegate.iterator(preparedQuery);
+        }
+
+        @Override
+        public CloseableIterator<T> iterator(PreparedQuery<T> preparedQuery, int resultFlags) throws SQLException {
+            return delegate.iterator(preparedQuery, resultFlags);
+        }
+
+        @Override
+        public CloseableIterator<T> closeableIterator() {
+            return delegate.closeableIterator();
+        }
+
+        @Override
+        public CloseableWrappedIterable<T> getWrappedIterable() {
+            return delegate.getWrappedIterable();
+        }
+
+        @Override
+        public CloseableWrappedIterable<T> getWrappedIterable(PreparedQuery<T> preparedQuery) {
+            return delegate.getWrappedIterable(preparedQuery);
+        }
+
+        @Override
+        public void closeLastIterator() throws IOException {
+            delegate.closeLastIterator();
+        }
+
+        @Override
+        public GenericRawResults<String[]> queryRaw(String query, String... arguments) throws SQLException {
+            return delegate.queryRaw(query, arguments);
+        }
+
+        @Override
+        public <UO> GenericRawResults<UO> queryRaw(String query, RawRowMapper<UO> mapper, String... arguments) throws SQLException {
+            return delegate.queryRaw(query, mapper, arguments);
+        }
+
+        @Override
+        public <UO> GenericRawResults<UO> queryRaw(String query, DataType[] columnTypes, RawRowObjectMapper<UO> mapper, String... arguments) throws SQLException {
+            return delegate.queryRaw(query, columnTypes, mapper, arguments);
+        }
+
+        @Override
+        public GenericRawResults<Object[]> queryRaw(String query, DataType[] columnTypes, String... arguments) throws SQLException {
+            return delegate.queryRaw(query, columnTypes, arguments);
+        }
+
+        @Override
+        public <UO> GenericRawResults<UO> queryRaw(String query, DatabaseResultsMapper<UO> mapper, String... arguments) throws SQLException {
+            return delegate.queryRaw(query, mapper, arguments);
+        }
+
+        @Override
+        public long queryRawValue(String query, String... arguments) throws SQLException {
+            return delegate.queryRawValue(query, arguments);
+        }
+
+        @Override
+        public int executeRaw(String statement, String... arguments) throws SQLException {
+            return delegate.executeRaw(statement, arguments);
+        }
+
+        @Override
+        public int executeRawNoArgs(String statement) throws SQLException {
+            return delegate.executeRawNoArgs(statement);
+        }
+
+        @Override
+        public int updateRaw(String statement, String... arguments) throws SQLException {
+            return delegate.updateRaw(statement, arguments);
+        }
+
+        @Override
+        public <CT> CT callBatchTasks(Callable<CT> callable) throws Exception {
+            return delegate.callBatchTasks(callable);
+        }
+
+        @Override
+        public String objectToString(T data) {
+            return delegate.objectToString(data);
+        }
+
+        @Override
+        public boolean objectsEqual(T data1, T data2) throws SQLException {
+            return delegate.objectsEqual(data1, data2);
+        }
+
+        @Override
+        public ID extractId(T data) throws SQLException {
+            return delegate.extractId(data);
+        }
+
+        @Override
+        public Class<T> getDataClass() {
+            return delegate.getDataClass();
+        }
+
+        @Override
+        public FieldType findForeignFieldType(Class<?> clazz) {
+            return delegate.findForeignFieldType(clazz);
+        }
+
+        @Override
+        public boolean isUpdatable() {
+            return delegate.isUpdatable();
+        }
+
+        @Override
+        public boolean isTableExists() throws SQLException {
+            return delegate.isTableExists();
+        }
+
+        @Override
+        public long countOf() throws SQLException {
+            return delegate.countOf();
+        }
+
+        @Override
+        public long countOf(PreparedQuery<T> preparedQuery) throws SQLException {
+            return delegate.countOf(preparedQuery);
+        }
+
+        @Override
+        public void assignEmptyForeignCollection(T parent, String fieldName) throws SQLException {
+            delegate.assignEmptyForeignCollection(parent, fieldName);
+        }
+
+        @Override
+        public <FT> ForeignCollection<FT> getEmptyForeignCollection(String fieldName) throws SQLException {
+            return delegate.getEmptyForeignCollection(fieldName);
+        }
+
+        @Override
+        public void setObjectCache(boolean enabled) throws SQLException {
+            delegate.setObjectCache(enabled);
+        }
+
+        @Override
+        public void setObjectCache(ObjectCache objectCache) throws SQLException {
+            delegate.setObjectCache(objectCache);
+        }
+
+        @Override
+        public ObjectCache getObjectCache() {
+            return delegate.getObjectCache();
+        }
+
+        @Override
+        public void clearObjectCache() {
+            delegate.clearObjectCache();
+        }
+
+        @Override
+        public T mapSelectStarRow(DatabaseResults results) throws SQLException {
+            return delegate.mapSelectStarRow(results);
+        }
+
+        @Override
+        public GenericRowMapper<T> getSelectStarRowMapper() throws SQLException {
+            return delegate.getSelectStarRowMapper();
+        }
+
+        @Override
+        public RawRowMapper<T> getRawRowMapper() {
+            return delegate.getRawRowMapper();
+        }
+
+        @Override
+        public boolean idExists(ID id) throws SQLException {
+            return delegate.idExists(id);
+        }
+
+        @Override
+        public DatabaseConnection startThreadConnection() throws SQLException {
+            return delegate.startThreadConnection();
+        }
+
+        @Override
+        public void endThreadConnection(DatabaseConnection connection) throws SQLException {
+            delegate.endThreadConnection(connection);
+        }
+
+        @Override
+        public void setAutoCommit(DatabaseConnection connection, boolean autoCommit) throws SQLException {
+            delegate.setAutoCommit(connection, autoCommit);
+        }
+
+        @Override
+        public boolean isAutoCommit(DatabaseConnection connection) throws SQLException {
+            return delegate.isAutoCommit(connection);
+        }
+
+        @Override
+        public void commit(DatabaseConnection connection) throws SQLException {
+            delegate.commit(connection);
+        }
+
+        @Override
+        public void rollBack(DatabaseConnection connection) throws SQLException {
+            delegate.rollBack(connection);
+        }
+
+        @Override
+        public ConnectionSource getConnectionSource() {
+            return delegate.getConnectionSource();
+        }
+
+        @Override
+        public void setObjectFactory(ObjectFactory<T> objectFactory) {
+            delegate.setObjectFactory(objectFactory);
+        }
+
+        @Override
+        public void registerObserver(DaoObserver observer) {
+            delegate.registerObserver(observer);
+        }
+
+        @Override
+        public void unregisterObserver(DaoObserver observer) {
+            delegate.unregisterObserver(observer);
+        }
+
+        @Override
+        public String getTableName() {
+            return delegate.getTableName();
+        }
+
+        @Override
+        public void notifyChanges() {
+            delegate.notifyChanges();
+        }
+    }
+}
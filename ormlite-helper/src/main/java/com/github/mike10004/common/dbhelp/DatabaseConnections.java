@@ -0,0 +1,174 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.GeneratedKeyHolder;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility methods relating to database connections.
+ * @see DatabaseConnection
+ */
+public class DatabaseConnections {
+
+    private DatabaseConnections() {}
+
+    /**
+     * Gets the JDBC connection underlying a database connection. Delegators
+     * are unwrapped until a JDBC database connection is found.
+     * @param connection the database connection
+     * @return the JDBC connection
+     * @throws SQLException if the database connection is not backed by JDBC
+     */
+    public static Connection getJdbcConnection(DatabaseConnection connection) throws SQLException {
+        Connection jdbcConnection = findJdbcConnection(connection);
+        if (jdbcConnection == null) {
+            throw new SQLException("not a JDBC database connection: " + connection);
+        }
+        return jdbcConnection;
+    }
+
+    /**
+     * Finds the JDBC connection underlying a database connection, if there
+     * is one. Delegators are unwrapped until a JDBC database connection is
+     * found.
+     * @param connection the database connection
+     * @return the JDBC connection, or null if the database connection is not
+     * backed by JDBC
+     */
+    @Nullable
+    public static Connection findJdbcConnection(DatabaseConnection connection) {
+        DatabaseConnection current = connection;
+        while (current instanceof DatabaseConnectionDelegator) {
+            current = ((DatabaseConnectionDelegator) current).getDelegate();
+        }
+        if (current instanceof JdbcDatabaseConnection) {
+            return ((JdbcDatabaseConnection) current).getInternalConnection();
+        }
+        return null;
+    }
+
+    /**
+     * Database connection that forwards all method invocations to a delegate.
+     * Subclasses override the methods whose behavior they modify.
+     */
+    public abstract static class DatabaseConnectionDelegator implements DatabaseConnection {
+
+        private final DatabaseConnection delegate;
+
+        protected DatabaseConnectionDelegator(DatabaseConnection delegate) {
+            this.delegate = checkNotNull(delegate, "delegate");
+        }
+
+        protected DatabaseConnection getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public boolean isAutoCommitSupported() throws SQLException {
+            return delegate.isAutoCommitSupported();
+        }
+
+        @Override
+        public boolean isAutoCommit() throws SQLException {
+            return delegate.isAutoCommit();
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            delegate.setAutoCommit(autoCommit);
+        }
+
+        @Override
+        public Savepoint setSavePoint(String savePointName) throws SQLException {
+            return delegate.setSavePoint(savePointName);
+        }
+
+        @Override
+        public void commit(Savepoint savePoint) throws SQLException {
+            delegate.commit(savePoint);
+        }
+
+        @Override
+        public void rollback(Savepoint savePoint) throws SQLException {
+            delegate.rollback(savePoint);
+        }
+
+        @Override
+        public void releaseSavePoint(Savepoint savePoint) throws SQLException {
+            delegate.releaseSavePoint(savePoint);
+        }
+
+        @Override
+        public int executeStatement(String statementStr, int resultFlags) throws SQLException {
+            return delegate.executeStatement(statementStr, resultFlags);
+        }
+
+        @Override
+        public CompiledStatement compileStatement(String statement, StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+            return delegate.compileStatement(statement, type, argFieldTypes, resultFlags, cacheStore);
+        }
+
+        @Override
+        public int insert(String statement, Object[] args, FieldType[] argfieldTypes, GeneratedKeyHolder keyHolder) throws SQLException {
+            return delegate.insert(statement, args, argfieldTypes, keyHolder);
+        }
+
+        @Override
+        public int update(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+            return delegate.update(statement, args, argfieldTypes);
+        }
+
+        @Override
+        public int delete(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+            return delegate.delete(statement, args, argfieldTypes);
+        }
+
+        @Override
+        public <T> Object queryForOne(String statement, Object[] args, FieldType[] argfieldTypes, GenericRowMapper<T> rowMapper, ObjectCache objectCache) throws SQLException {
+            return delegate.queryForOne(statement, args, argfieldTypes, rowMapper, objectCache);
+        }
+
+        @Override
+        public long queryForLong(String statement) throws SQLException {
+            return delegate.queryForLong(statement);
+        }
+
+        @Override
+        public long queryForLong(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+            return delegate.queryForLong(statement, args, argFieldTypes);
+        }
+
+        @Override
+        public void closeQuietly() {
+            delegate.closeQuietly();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return delegate.isClosed();
+        }
+
+        @Override
+        public boolean isTableExists(String tableName) throws SQLException {
+            return delegate.isTableExists(tableName);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.github.mike10004.common.dbhelp;
 
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.support.ConnectionSource;
 import java.sql.SQLException;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * Interface for a database context. A database context is a configuration
@@ -90,4 +93,41 @@ public interface DatabaseContext {
      */
     ContextTableUtils getTableUtils();
     
+    /**
+     * Creates a batch writer for an entity class. The default implementation
+     * creates a {@link DefaultBatchWriter} for the dao of the entity class.
+     * @param <T> the entity type
+     * @param entityClass the entity class
+     * @param batchSize maximum number of rows sent to the database per batch
+     * @param commitMode the commit mode
+     * @return a new batch writer
+     * @throws SQLException if the dao for the entity class cannot be obtained
+     * @see BatchWriter
+     */
+    default <T> BatchWriter<T> createBatchWriter(Class<T> entityClass, int batchSize, BatchWriter.CommitMode commitMode) throws SQLException {
+        return new DefaultBatchWriter<>(getConnectionSource(), getDao(entityClass), batchSize, commitMode);
+    }
+    
+    /**
+     * Executes a query and returns a lazily populated stream of results. 
+     * Unlike {@link Dao#query(PreparedQuery)}, results are not materialized
+     * in a list. The stream holds a connection until it is closed or fully
+     * consumed, so use it in a try-with-resources block. The default
+     * implementation streams the results through the dao of the entity class.
+     * @param <T> the entity type
+     * @param entityClass the entity class
+     * @param query the query, or null to select all rows
+     * @param options the stream options
+     * @return a stream of results
+     * @throws SQLException if executing the query fails
+     * @see QueryStreams#stream(Dao, PreparedQuery, StreamOptions) 
+     */
+    default <T> Stream<T> streamQuery(Class<T> entityClass, @Nullable PreparedQuery<T> query, StreamOptions options) throws SQLException {
+        Dao<T, ?> dao = getDao(entityClass);
+        if (query == null) {
+            query = dao.queryBuilder().prepare();
+        }
+        return QueryStreams.stream(dao, query, options);
+    }
+    
 }
@@ -0,0 +1,269 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.TypeValMapper;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableInfo;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that implements a default batch writer. Entities are inserted with a
+ * statement that has the same columns as the statement used by
+ * {@link Dao#create(Object)}, except that generated ids are always left to
+ * the database. Foreign auto-create and version field initialization are not
+ * performed.
+ * @param <T> the entity type
+ */
+public class DefaultBatchWriter<T> implements BatchWriter<T> {
+
+    private final ConnectionSource connectionSource;
+    private final TableInfo<T, ?> tableInfo;
+    private final ObjectCache objectCache;
+    private final int batchSize;
+    private final CommitMode commitMode;
+    private final FieldType[] argFieldTypes;
+    private final String statement;
+    private final FieldType generatedIdField;
+
+    /**
+     * Constructs an instance of the class.
+     * @param connectionSource the connection source
+     * @param dao the dao for the entity type
+     * @param batchSize maximum number of rows per batch
+     * @param commitMode the commit mode
+     * @throws SQLException if the entity's table information cannot be obtained
+     */
+    public DefaultBatchWriter(ConnectionSource connectionSource, Dao<T, ?> dao, int batchSize, CommitMode commitMode) throws SQLException {
+        this.connectionSource = checkNotNull(connectionSource, "connectionSource");
+        checkArgument(batchSize > 0, "batch size must be positive: %s", batchSize);
+        this.batchSize = batchSize;
+        this.commitMode = checkNotNull(commitMode, "commitMode");
+        tableInfo = getTableInfo(connectionSource, dao);
+        objectCache = dao.getObjectCache();
+        FieldType idField = tableInfo.getIdField();
+        if (idField != null && idField.isGeneratedIdSequence() && connectionSource.getDatabaseType().isIdSequenceNeeded()) {
+            throw new SQLException("batch writer does not support id sequences; table " + tableInfo.getTableName());
+        }
+        generatedIdField = (idField != null && idField.isGeneratedId() && !idField.isSelfGeneratedId()) ? idField : null;
+        List<FieldType> argFieldTypeList = new ArrayList<>();
+        for (FieldType fieldType : tableInfo.getFieldTypes()) {
+            if (fieldType.isForeignCollection() || fieldType.isReadOnly() || fieldType == generatedIdField) {
+                continue;
+            }
+            argFieldTypeList.add(fieldType);
+        }
+        argFieldTypes = argFieldTypeList.toArray(new FieldType[0]);
+        statement = buildInsertStatement(connectionSource.getDatabaseType(), tableInfo.getTableName(), argFieldTypes);
+    }
+
+    private static <T, ID> TableInfo<T, ?> getTableInfo(ConnectionSource connectionSource, Dao<T, ID> dao) throws SQLException {
+        TableInfo<T, ID> tableInfo = Daos.findTableInfo(dao);
+        if (tableInfo != null) {
+            return tableInfo;
+        }
+        return new TableInfo<>(connectionSource, null, dao.getDataClass());
+    }
+
+    static String buildInsertStatement(DatabaseType databaseType, String tableName, FieldType[] fieldTypes) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("INSERT INTO ");
+        databaseType.appendEscapedEntityName(sb, tableName);
+        if (fieldTypes.length == 0) {
+            databaseType.appendInsertNoColumns(sb);
+            return sb.toString();
+        }
+        sb.append(" (");
+        for (int i = 0; i < fieldTypes.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            databaseType.appendEscapedEntityName(sb, fieldTypes[i].getColumnName());
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < fieldTypes.length; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * Gets the insert statement that this writer prepares.
+     * @return the SQL statement
+     */
+    public String getStatement() {
+        return statement;
+    }
+
+    @Override
+    public BatchResult<T> write(Iterable<? extends T> entities) throws SQLException {
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(tableInfo.getTableName());
+        try {
+            Connection jdbcConnection = DatabaseConnections.getJdbcConnection(connection);
+            boolean enclosingTransaction = !jdbcConnection.getAutoCommit();
+            if (enclosingTransaction) {
+                return write(jdbcConnection, entities, false);
+            }
+            jdbcConnection.setAutoCommit(false);
+            Throwable failure = null;
+            try {
+                BatchResult<T> result = write(jdbcConnection, entities, true);
+                jdbcConnection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                failure = e;
+                try {
+                    jdbcConnection.rollback();
+                } catch (SQLException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+                throw e;
+            } finally {
+                try {
+                    jdbcConnection.setAutoCommit(true);
+                } catch (SQLException restoreException) {
+                    if (failure == null) {
+                        throw restoreException;
+                    }
+                    failure.addSuppressed(restoreException);
+                }
+            }
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    private BatchResult<T> write(Connection jdbcConnection, Iterable<? extends T> entities, boolean commitAllowed) throws SQLException {
+        int autoGeneratedKeys = generatedIdField == null ? Statement.NO_GENERATED_KEYS : Statement.RETURN_GENERATED_KEYS;
+        List<BatchResult.RowFailure<T>> failures = new ArrayList<>();
+        int rowsWritten = 0, batchesExecuted = 0, keysAssigned = 0, index = 0;
+        try (PreparedStatement preparedStatement = jdbcConnection.prepareStatement(statement, autoGeneratedKeys)) {
+            List<T> batch = new ArrayList<>(batchSize);
+            for (T entity : entities) {
+                checkNotNull(entity, "entity at index %s", index);
+                prepareSelfGeneratedId(entity);
+                setArgs(preparedStatement, entity);
+                preparedStatement.addBatch();
+                batch.add(entity);
+                index++;
+                if (batch.size() == batchSize) {
+                    BatchOutcome outcome = executeBatch(preparedStatement, batch, index - batch.size(), failures);
+                    rowsWritten += outcome.rowsWritten;
+                    keysAssigned += outcome.keysAssigned;
+                    batchesExecuted++;
+                    batch.clear();
+                    if (commitAllowed && commitMode == CommitMode.PER_BATCH) {
+                        jdbcConnection.commit();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                BatchOutcome outcome = executeBatch(preparedStatement, batch, index - batch.size(), failures);
+                rowsWritten += outcome.rowsWritten;
+                keysAssigned += outcome.keysAssigned;
+                batchesExecuted++;
+            }
+        }
+        return new BatchResult<>(rowsWritten, batchesExecuted, keysAssigned, failures);
+    }
+
+    private void prepareSelfGeneratedId(T entity) throws SQLException {
+        FieldType idField = tableInfo.getIdField();
+        if (idField != null && idField.isSelfGeneratedId() && idField.isGeneratedId()
+                && (!idField.isAllowGeneratedIdInsert() || idField.isObjectsFieldValueDefault(entity))) {
+            idField.assignField(entity, idField.generateId(), false, objectCache);
+        }
+    }
+
+    private void setArgs(PreparedStatement preparedStatement, T entity) throws SQLException {
+        for (int i = 0; i < argFieldTypes.length; i++) {
+            FieldType fieldType = argFieldTypes[i];
+            Object arg = fieldType.extractJavaFieldToSqlArgValue(entity);
+            int typeVal = TypeValMapper.getTypeValForSqlType(fieldType.getSqlType());
+            if (arg == null) {
+                preparedStatement.setNull(i + 1, typeVal);
+            } else {
+                preparedStatement.setObject(i + 1, arg, typeVal);
+            }
+        }
+    }
+
+    private static class BatchOutcome {
+        public final int rowsWritten;
+        public final int keysAssigned;
+
+        public BatchOutcome(int rowsWritten, int keysAssigned) {
+            this.rowsWritten = rowsWritten;
+            this.keysAssigned = keysAssigned;
+        }
+    }
+
+    private BatchOutcome executeBatch(PreparedStatement preparedStatement, List<T> batch, int firstIndex, List<BatchResult.RowFailure<T>> failures) throws SQLException {
+        int[] updateCounts;
+        BatchUpdateException batchException = null;
+        try {
+            updateCounts = preparedStatement.executeBatch();
+        } catch (BatchUpdateException e) {
+            batchException = e;
+            updateCounts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+        }
+        List<T> written = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            T entity = batch.get(i);
+            if (i < updateCounts.length && updateCounts[i] != Statement.EXECUTE_FAILED) {
+                written.add(entity);
+            } else {
+                SQLException cause = batchException;
+                if (cause == null) {
+                    cause = new SQLException("row was not executed by driver");
+                }
+                failures.add(new BatchResult.RowFailure<>(firstIndex + i, entity, cause));
+            }
+        }
+        int keysAssigned = 0;
+        if (generatedIdField != null && !written.isEmpty()) {
+            keysAssigned = assignGeneratedKeys(preparedStatement, written);
+        }
+        return new BatchOutcome(written.size(), keysAssigned);
+    }
+
+    /**
+     * Assigns generated keys to written entities. Some drivers return only
+     * the key of the last row of a batch; keys are only assigned if exactly
+     * one key per written row was returned.
+     */
+    private int assignGeneratedKeys(PreparedStatement preparedStatement, List<T> written) throws SQLException {
+        List<Number> keys = new ArrayList<>(written.size());
+        try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+            while (rs != null && rs.next()) {
+                Object key = rs.getObject(1);
+                if (key instanceof Number) {
+                    keys.add((Number) key);
+                }
+            }
+        }
+        if (keys.size() != written.size()) {
+            return 0;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            generatedIdField.assignIdValue(written.get(i), keys.get(i), objectCache);
+        }
+        return keys.size();
+    }
+
+}
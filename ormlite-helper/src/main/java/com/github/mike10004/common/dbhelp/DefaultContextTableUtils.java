@@ -1,25 +1,98 @@
 package com.github.mike10004.common.dbhelp;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.H2DatabaseType;
+import com.j256.ormlite.db.MysqlDatabaseType;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
 import com.j256.ormlite.table.DatabaseTableConfig;
 import com.j256.ormlite.table.TableUtils;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Class that implements default context table utilities.
+ *
+ * <p>With a parallelism greater than one, {@link #createAllTables(Iterable)}
+ * and {@link #createAllTablesIfNotExists(Iterable)} create tables
+ * concurrently, each on its own connection. A table is created only after
+ * the tables it references through foreign fields. If creating a table
+ * fails, tables not yet started are skipped, and the failure is thrown as it
+ * was reported by ORMLite, with the statement that failed in its message.
+ * Single-connection sources, and foreign-key dependencies that form a cycle,
+ * cause tables to be created one at a time in the order supplied.</p>
+ *
+ * <p>{@link #createAllTablesIfNotExists(Iterable)} reads the names of existing
+ * tables from the database metadata with a single query and issues DDL only
+ * for the tables that are missing. The lists returned by the
+ * {@code getCreateTableStatements} methods are computed once per entity
+ * class or table configuration and cached for the life of this instance;
+ * they are immutable.</p>
+ *
+ * <p>Methods that accept an entity class use the table configuration of the
+ * class's {@link GeneratedTableConfigs generated factory} where one exists,
+ * and otherwise let ORMLite read the class's annotations by reflection.</p>
  */
 public class DefaultContextTableUtils implements ContextTableUtils {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(DefaultContextTableUtils.class);
+
     private final ConnectionSource connectionSource;
+    private final int parallelism;
+    private final ConcurrentMap<Object, List<String>> createTableStatements;
+    private final GeneratedTableConfigs generatedTableConfigs;
 
     /**
-     * Constructs an instance with a given connection source.
+     * Constructs an instance with a given connection source. Tables are
+     * created one at a time.
      * @param connectionSource the connection source
      */
     public DefaultContextTableUtils(ConnectionSource connectionSource) {
+        this(connectionSource, 1);
+    }
+
+    /**
+     * Constructs an instance with a given connection source and parallelism.
+     * @param connectionSource the connection source
+     * @param parallelism the maximum number of tables to create at once
+     */
+    public DefaultContextTableUtils(ConnectionSource connectionSource, int parallelism) {
         this.connectionSource = Preconditions.checkNotNull(connectionSource, "connectionSource");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+        this.parallelism = parallelism;
+        createTableStatements = new ConcurrentHashMap<>();
+        generatedTableConfigs = new GeneratedTableConfigs(connectionSource);
+    }
+
+    /**
+     * Gets the maximum number of tables created at once.
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
     }
 
     protected ConnectionSource getConnectionSource() {
@@ -28,11 +101,19 @@ public class DefaultContextTableUtils implements ContextTableUtils {
 
     @Override
     public <T> int createTable(Class<T> dataClass) throws SQLException {
+        DatabaseTableConfig<T> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+        if (tableConfig != null) {
+            return TableUtils.createTable(getConnectionSource(), tableConfig);
+        }
         return TableUtils.createTable(getConnectionSource(), dataClass);
     }
 
     @Override
     public <T> int createTableIfNotExists(Class<T> dataClass) throws SQLException {
+        DatabaseTableConfig<T> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+        if (tableConfig != null) {
+            return TableUtils.createTableIfNotExists(getConnectionSource(), tableConfig);
+        }
         return TableUtils.createTableIfNotExists(getConnectionSource(), dataClass);
     }
 
@@ -48,34 +129,179 @@ public class DefaultContextTableUtils implements ContextTableUtils {
 
     @Override
     public int createAllTablesIfNotExists(Iterable<Class<?>> dataClasses) throws SQLException {
-        int totalNumStatementsExecuted = 0;
-        for (Class<?> clz : dataClasses) {
-            totalNumStatementsExecuted += createTableIfNotExists(clz);
+        List<Class<?>> classes = ImmutableList.copyOf(dataClasses);
+        Set<String> existingTables = findExistingTableNames();
+        if (existingTables != null) {
+            DatabaseType databaseType = getConnectionSource().getDatabaseType();
+            List<Class<?>> missing = new ArrayList<>(classes.size());
+            for (Class<?> dataClass : classes) {
+                if (!existingTables.contains(normalizeTableName(getTableName(databaseType, dataClass)))) {
+                    missing.add(dataClass);
+                }
+            }
+            classes = missing;
+        }
+        return createAllTables(classes, true);
+    }
+
+    private String getTableName(DatabaseType databaseType, Class<?> dataClass) throws SQLException {
+        DatabaseTableConfig<?> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+        if (tableConfig != null) {
+            return tableConfig.getTableName();
+        }
+        String tableName = DatabaseTableConfig.extractTableName(databaseType, dataClass);
+        if (databaseType.isEntityNamesMustBeUpCase()) {
+            tableName = databaseType.upCaseEntityName(tableName);
+        }
+        return tableName;
+    }
+
+    /**
+     * Normalizes a table name for comparison. Databases differ in how they
+     * store the case of quoted and unquoted names, so names are compared
+     * without regard to case.
+     */
+    private static String normalizeTableName(String tableName) {
+        return tableName.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads the names of the tables and views in the connection's current
+     * catalog and schema.
+     * @return the normalized table names, or null if the connection source
+     * does not supply JDBC connections
+     */
+    @Nullable
+    private Set<String> findExistingTableNames() throws SQLException {
+        DatabaseConnection connection = getConnectionSource().getReadWriteConnection(null);
+        try {
+            Connection jdbcConnection = DatabaseConnections.findJdbcConnection(connection);
+            if (jdbcConnection == null) {
+                return null;
+            }
+            Set<String> tableNames = new HashSet<>();
+            try (ResultSet rs = jdbcConnection.getMetaData().getTables(jdbcConnection.getCatalog(), getSchema(jdbcConnection), "%", null)) {
+                while (rs.next()) {
+                    tableNames.add(normalizeTableName(rs.getString("TABLE_NAME")));
+                }
+            }
+            return tableNames;
+        } finally {
+            getConnectionSource().releaseConnection(connection);
+        }
+    }
+
+    @Nullable
+    private static String getSchema(Connection connection) {
+        try {
+            return connection.getSchema();
+        } catch (SQLException | AbstractMethodError e) {
+            return null;
         }
-        return totalNumStatementsExecuted;
     }
 
     @Override
     public int createAllTables(Iterable<Class<?>> dataClasses) throws SQLException {
-        int totalNumStatementsExecuted = 0;
-        for (Class<?> clz : dataClasses) {
-            totalNumStatementsExecuted += createTable(clz);
+        return createAllTables(dataClasses, false);
+    }
+
+    private int createTable(Class<?> dataClass, boolean ifNotExists) throws SQLException {
+        return ifNotExists ? createTableIfNotExists(dataClass) : createTable(dataClass);
+    }
+
+    private int createAllTables(Iterable<Class<?>> dataClasses, boolean ifNotExists) throws SQLException {
+        List<Class<?>> classes = ImmutableList.copyOf(dataClasses);
+        List<Class<?>> sorted = null;
+        TableDependencyGraph graph = null;
+        if (parallelism > 1 && classes.size() > 1 && !getConnectionSource().isSingleConnection(null)) {
+            graph = TableDependencyGraph.build(getConnectionSource(), classes, generatedTableConfigs);
+            sorted = graph.sort();
+            if (sorted == null) {
+                logger.warn("foreign-key dependencies among {} contain a cycle; creating tables one at a time", classes);
+            }
+        }
+        if (sorted == null) {
+            int totalNumStatementsExecuted = 0;
+            for (Class<?> clz : classes) {
+                totalNumStatementsExecuted += createTable(clz, ifNotExists);
+            }
+            return totalNumStatementsExecuted;
+        }
+        return createAllTablesConcurrently(graph, sorted, ifNotExists);
+    }
+
+    private int createAllTablesConcurrently(TableDependencyGraph graph, List<Class<?>> sorted, boolean ifNotExists) throws SQLException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sorted.size()),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("create-table-%d").build());
+        try {
+            Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+            Map<Class<?>, CompletableFuture<Integer>> futures = new LinkedHashMap<>();
+            for (Class<?> dataClass : sorted) {
+                CompletableFuture<?>[] dependencies = graph.getDependencies(dataClass).stream()
+                        .map(futures::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                CompletableFuture<Integer> future = CompletableFuture.allOf(dependencies).thenApplyAsync(ignore -> {
+                    if (!failures.isEmpty()) {
+                        return 0;
+                    }
+                    try {
+                        return createTable(dataClass, ifNotExists);
+                    } catch (SQLException | RuntimeException e) {
+                        failures.add(e);
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+                futures.put(dataClass, future);
+            }
+            int totalNumStatementsExecuted = 0;
+            for (CompletableFuture<Integer> future : futures.values()) {
+                try {
+                    totalNumStatementsExecuted += future.join();
+                } catch (CompletionException ignore) {
+                    // collected in failures by the task that failed
+                }
+            }
+            Exception first = failures.poll();
+            if (first != null) {
+                SQLException failure = first instanceof SQLException ? (SQLException) first : new SQLException(first);
+                failures.forEach(failure::addSuppressed);
+                throw failure;
+            }
+            return totalNumStatementsExecuted;
+        } finally {
+            executor.shutdownNow();
         }
-        return totalNumStatementsExecuted;
     }
 
     @Override
     public <T, ID> List<String> getCreateTableStatements(Class<T> dataClass) throws SQLException {
-        return TableUtils.getCreateTableStatements(getConnectionSource(), dataClass);
+        List<String> statements = createTableStatements.get(dataClass);
+        if (statements == null) {
+            DatabaseTableConfig<T> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+            statements = ImmutableList.copyOf(tableConfig == null
+                    ? TableUtils.getCreateTableStatements(getConnectionSource(), dataClass)
+                    : TableUtils.getCreateTableStatements(getConnectionSource(), tableConfig));
+            createTableStatements.putIfAbsent(dataClass, statements);
+        }
+        return statements;
     }
 
     @Override
     public <T, ID> List<String> getCreateTableStatements(DatabaseTableConfig<T> tableConfig) throws SQLException {
-        return TableUtils.getCreateTableStatements(getConnectionSource(), tableConfig);
+        List<String> statements = createTableStatements.get(tableConfig);
+        if (statements == null) {
+            statements = ImmutableList.copyOf(TableUtils.getCreateTableStatements(getConnectionSource(), tableConfig));
+            createTableStatements.putIfAbsent(tableConfig, statements);
+        }
+        return statements;
     }
 
     @Override
     public <T, ID> int dropTable(Class<T> dataClass, boolean ignoreErrors) throws SQLException {
+        DatabaseTableConfig<T> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+        if (tableConfig != null) {
+            return TableUtils.dropTable(getConnectionSource(), tableConfig, ignoreErrors);
+        }
         return TableUtils.dropTable(getConnectionSource(), dataClass, ignoreErrors);
     }
 
@@ -86,6 +312,10 @@ public class DefaultContextTableUtils implements ContextTableUtils {
 
     @Override
     public <T> int clearTable(Class<T> dataClass) throws SQLException {
+        DatabaseTableConfig<T> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+        if (tableConfig != null) {
+            return TableUtils.clearTable(getConnectionSource(), tableConfig);
+        }
         return TableUtils.clearTable(getConnectionSource(), dataClass);
     }
 
@@ -93,5 +323,128 @@ public class DefaultContextTableUtils implements ContextTableUtils {
     public <T> int clearTable(DatabaseTableConfig<T> tableConfig) throws SQLException {
         return TableUtils.clearTable(getConnectionSource(), tableConfig);
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Truncation is supported on H2 and MySQL. All truncate statements
+     * are sent as one batch on a single connection. On H2, referential
+     * integrity is disabled for the whole database while the batch runs and
+     * is then set to true, its default. On MySQL, foreign key checks are
+     * disabled for the session and then restored to their previous value.</p>
+     */
+    @Override
+    public int truncateTables(Iterable<Class<?>> dataClasses) throws SQLException {
+        List<Class<?>> classes = ImmutableList.copyOf(dataClasses);
+        if (classes.isEmpty()) {
+            return 0;
+        }
+        DatabaseType databaseType = getConnectionSource().getDatabaseType();
+        TruncateDialect dialect = TruncateDialect.forDatabaseType(databaseType);
+        if (dialect != null) {
+            DatabaseConnection connection = getConnectionSource().getReadWriteConnection(null);
+            try {
+                Connection jdbcConnection = DatabaseConnections.findJdbcConnection(connection);
+                if (jdbcConnection != null) {
+                    List<String> tableNames = new ArrayList<>(classes.size());
+                    for (Class<?> dataClass : classes) {
+                        tableNames.add(getTableName(databaseType, dataClass));
+                    }
+                    truncateTables(jdbcConnection, dialect, databaseType, tableNames);
+                    return classes.size();
+                }
+            } finally {
+                getConnectionSource().releaseConnection(connection);
+            }
+        }
+        for (Class<?> dataClass : classes) {
+            clearTable(dataClass);
+        }
+        return classes.size();
+    }
+
+    private static void truncateTables(Connection connection, TruncateDialect dialect, DatabaseType databaseType, List<String> tableNames) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            boolean restore = dialect.disableReferentialIntegrity(statement);
+            SQLException failure = null;
+            try {
+                for (String tableName : tableNames) {
+                    StringBuilder sql = new StringBuilder("TRUNCATE TABLE ");
+                    databaseType.appendEscapedEntityName(sql, tableName);
+                    statement.addBatch(sql.toString());
+                }
+                statement.executeBatch();
+            } catch (SQLException e) {
+                failure = e;
+            }
+            if (restore) {
+                try {
+                    dialect.restoreReferentialIntegrity(statement);
+                } catch (SQLException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private enum TruncateDialect {
+
+        H2 {
+            @Override
+            public boolean disableReferentialIntegrity(Statement statement) throws SQLException {
+                statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+                return true;
+            }
+
+            @Override
+            public void restoreReferentialIntegrity(Statement statement) throws SQLException {
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+        },
+
+        MYSQL {
+            @Override
+            public boolean disableReferentialIntegrity(Statement statement) throws SQLException {
+                try (ResultSet rs = statement.executeQuery("SELECT @@FOREIGN_KEY_CHECKS")) {
+                    if (rs.next() && rs.getInt(1) == 0) {
+                        return false;
+                    }
+                }
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+                return true;
+            }
+
+            @Override
+            public void restoreReferentialIntegrity(Statement statement) throws SQLException {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+        };
+
+        /**
+         * Disables referential integrity checks.
+         * @return true if checks were disabled and must be restored
+         */
+        public abstract boolean disableReferentialIntegrity(Statement statement) throws SQLException;
+
+        public abstract void restoreReferentialIntegrity(Statement statement) throws SQLException;
+
+        @Nullable
+        public static TruncateDialect forDatabaseType(DatabaseType databaseType) {
+            if (databaseType instanceof H2DatabaseType) {
+                return H2;
+            }
+            if (databaseType instanceof MysqlDatabaseType) {
+                return MYSQL;
+            }
+            return null;
+        }
+    }
     
 }
@@ -1,16 +1,47 @@
 package com.github.mike10004.common.dbhelp;
 
 import com.google.common.base.Preconditions;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
+import com.j256.ormlite.misc.SqlExceptionUtil;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class that implements a default context transaction manager.
+ *
+ * <p>A transaction started while another one is active on the same thread
+ * does not acquire a connection from the connection source. It runs on the
+ * outer transaction's connection, inside a savepoint: if it fails, only its
+ * own changes are rolled back, and the outer transaction may continue.
+ * A transaction is considered active if it was started by this instance or
+ * if the connection source holds a special connection for the current
+ * thread that is not in auto-commit mode, as is the case inside an
+ * ORMLite {@link com.j256.ormlite.misc.TransactionManager} transaction.
+ * If the database does not support savepoints, a nested transaction simply
+ * joins the outer one.</p>
+ *
+ * <p>A read-only transaction marks its JDBC connection read-only before the
+ * transaction begins and restores the previous setting after it ends, before
+ * the connection is released. Statements that write inside a read-only
+ * transaction, including in nested transactions, may be rejected by the
+ * database.</p>
  */
 public class DefaultContextTransactionManager implements ContextTransactionManager {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(DefaultContextTransactionManager.class);
+
+    private static final String SAVE_POINT_PREFIX = "CTX_SAVE_POINT_";
+
+    private static final AtomicInteger savePointCounter = new AtomicInteger();
+
     private final ConnectionSource connectionSource;
+    private final ThreadLocal<DatabaseConnection> activeConnection;
 
     /**
      * Constructs an instance for the given connection source.
@@ -18,11 +49,139 @@ public class DefaultContextTransactionManager implements ContextTransactionManag
      */
     public DefaultContextTransactionManager(ConnectionSource connectionSource) {
         this.connectionSource = Preconditions.checkNotNull(connectionSource, "connectionSource");
+        activeConnection = new ThreadLocal<>();
     }
 
     @Override
     public <T> T callInTransaction(Callable<T> callable) throws SQLException {
-        return com.j256.ormlite.misc.TransactionManager.callInTransaction(connectionSource, callable);
+        return callInTransaction(callable, false);
+    }
+
+    @Override
+    public <T> T callInReadOnlyTransaction(Callable<T> callable) throws SQLException {
+        return callInTransaction(callable, true);
+    }
+
+    private <T> T callInTransaction(Callable<T> callable, boolean readOnly) throws SQLException {
+        Preconditions.checkNotNull(callable, "callable");
+        DatabaseConnection outer = findActiveConnection();
+        if (outer != null) {
+            return callInSavePoint(outer, callable);
+        }
+        DatabaseConnection connection = readOnly
+                ? connectionSource.getReadOnlyConnection(null)
+                : connectionSource.getReadWriteConnection(null);
+        try {
+            connectionSource.saveSpecialConnection(connection);
+            try {
+                return callInOutermostTransaction(connection, callable, readOnly);
+            } finally {
+                connectionSource.clearSpecialConnection(connection);
+            }
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    private DatabaseConnection findActiveConnection() throws SQLException {
+        DatabaseConnection connection = activeConnection.get();
+        if (connection != null) {
+            return connection;
+        }
+        connection = connectionSource.getSpecialConnection(null);
+        if (connection != null && connection.isAutoCommitSupported() && !connection.isAutoCommit()) {
+            return connection;
+        }
+        return null;
+    }
+
+    private <T> T callInOutermostTransaction(DatabaseConnection connection, Callable<T> callable, boolean readOnly) throws SQLException {
+        Connection jdbcConnection = null;
+        if (readOnly) {
+            jdbcConnection = DatabaseConnections.getJdbcConnection(connection);
+            if (jdbcConnection.isReadOnly()) {
+                jdbcConnection = null;
+            } else {
+                jdbcConnection.setReadOnly(true);
+            }
+        }
+        Throwable failure = null;
+        try {
+            return callInOutermostTransaction(connection, callable);
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (jdbcConnection != null) {
+                try {
+                    jdbcConnection.setReadOnly(false);
+                } catch (SQLException restoreException) {
+                    if (failure == null) {
+                        throw restoreException;
+                    }
+                    failure.addSuppressed(restoreException);
+                }
+            }
+        }
+    }
+
+    private <T> T callInOutermostTransaction(DatabaseConnection connection, Callable<T> callable) throws SQLException {
+        boolean restoreAutoCommit = false;
+        if (connection.isAutoCommitSupported() && connection.isAutoCommit()) {
+            connection.setAutoCommit(false);
+            restoreAutoCommit = true;
+        }
+        activeConnection.set(connection);
+        try {
+            T result = call(callable);
+            connection.commit(null);
+            return result;
+        } catch (SQLException e) {
+            try {
+                connection.rollback(null);
+            } catch (SQLException e2) {
+                logger.error(e2, "rolling back transaction threw exception");
+                e.addSuppressed(e2);
+            }
+            throw e;
+        } finally {
+            activeConnection.remove();
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
     }
-    
+
+    private static <T> T callInSavePoint(DatabaseConnection connection, Callable<T> callable) throws SQLException {
+        Savepoint savePoint = connection.setSavePoint(SAVE_POINT_PREFIX + savePointCounter.incrementAndGet());
+        T result;
+        try {
+            result = call(callable);
+        } catch (SQLException e) {
+            if (savePoint != null) {
+                try {
+                    connection.rollback(savePoint);
+                } catch (SQLException e2) {
+                    logger.error(e2, "rolling back to save-point threw exception");
+                    e.addSuppressed(e2);
+                }
+            }
+            throw e;
+        }
+        if (savePoint != null) {
+            connection.releaseSavePoint(savePoint);
+        }
+        return result;
+    }
+
+    private static <T> T call(Callable<T> callable) throws SQLException {
+        try {
+            return callable.call();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw SqlExceptionUtil.create("Transaction callable threw non-SQL exception", e);
+        }
+    }
+
 }
@@ -1,26 +1,63 @@
 package com.github.mike10004.common.dbhelp;
 
 import java.util.function.Function;
+import com.github.mike10004.common.dbhelp.Daos.DaoDelegator;
+import com.google.common.collect.ImmutableList;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * Class that is the default implementation of a database context.
+ * Class that is the default implementation of a database context. Data
+ * access objects are cached by this context, keyed by entity class or
+ * table configuration, so that repeated calls to {@link #getDao(Class) getDao}
+ * do not contend on the global lock held by {@link DaoManager}. The cache
+ * is cleared when {@link #closeConnections(boolean) connections are closed}.
+ *
+ * <p>Daos for entity classes are created from the table configurations of
+ * {@link GeneratedTableConfigs generated factories} where these exist, and
+ * otherwise from the annotations ORMLite reads by reflection.</p>
+ *
+ * <p>Daos of selected entity classes can be wrapped in a read-through
+ * {@link #setEntityCache(Class, EntityCacheOptions) entity cache}, a
+ * {@link #setQueryCache(Class, QueryCacheOptions) query result cache}, or
+ * both. While any query result cache is set, the daos, batch writers, and
+ * table utils of this context record the tables they write so that cached
+ * results read from those tables are discarded; daos of classes without a
+ * cache keep their type and record writes through a
+ * {@link Dao.DaoObserver dao observer}. While any cache is set, the
+ * transaction manager of this context repeats the invalidations caused by
+ * writes made in a transaction when the transaction ends.</p>
  */
 public class DefaultDatabaseContext implements DatabaseContext {
 
     private final ConnectionSource connectionSource;
     private final Function<ConnectionSource, ContextTableUtils> tableUtilsFactory;
     private final Function<ConnectionSource, ContextTransactionManager> transactionManagerFactory;
-    private ContextTableUtils tableUtils;
-    private ContextTransactionManager transactionManager;
+    private volatile ContextTableUtils tableUtils;
+    private volatile ContextTransactionManager transactionManager;
     private transient final Object lock = new Object();
+    private final ConcurrentMap<Object, Dao<?, ?>> daoCache = new ConcurrentHashMap<>();
+    private final LongAdder daoCacheHits = new LongAdder();
+    private final LongAdder daoCacheMisses = new LongAdder();
+    private final ConcurrentMap<Class<?>, EntityCacheOptions<?>> entityCacheOptions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, QueryCacheOptions> queryCacheOptions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Dao.DaoObserver> writeObservers = new ConcurrentHashMap<>();
+    private final TableVersions tableVersions = new TableVersions();
+    private final TransactionCompletionActions completionActions = new TransactionCompletionActions();
+    private final GeneratedTableConfigs generatedTableConfigs;
     
     /**
      * Constructs an instance of the class with the given connection source and default
@@ -34,7 +71,19 @@ public class DefaultDatabaseContext implements DatabaseContext {
     }
     
     /**
-     * Constructs an instance of the class with the given connection source and 
+     * Constructs an instance of the class that reports the execution time of
+     * every statement to a tracer. The connection source is wrapped in a
+     * {@link TracingConnectionSource}, which is what
+     * {@link #getConnectionSource()} returns.
+     * @param connectionSource the connection source
+     * @param tracer the statement tracer
+     */
+    public DefaultDatabaseContext(ConnectionSource connectionSource, StatementTracer tracer) {
+        this(new TracingConnectionSource(connectionSource, tracer));
+    }
+
+    /**
+     * Constructs an instance of the class with the given connection source and
      * context utility factories.
      * @param connectionSource  the connection source
      * @param tableUtilsFactory the table utils factory
@@ -46,6 +95,7 @@ public class DefaultDatabaseContext implements DatabaseContext {
         this.connectionSource = checkNotNull(connectionSource, "connectionSource");
         this.tableUtilsFactory = checkNotNull(tableUtilsFactory, "tableUtilsFactory");
         this.transactionManagerFactory = checkNotNull(transactionManagerFactory, "transactionManagerFactory");
+        generatedTableConfigs = new GeneratedTableConfigs(connectionSource);
     }
 
     @Override
@@ -53,29 +103,89 @@ public class DefaultDatabaseContext implements DatabaseContext {
         return connectionSource;
     }
 
+    /**
+     * Gets the table utils instance for this context. The instance is created
+     * on first use and published without locking on subsequent calls. It is 
+     * discarded when connections are closed, and the next call after that
+     * creates a fresh instance.
+     * @return the table utils instance
+     */
     @Override
     public ContextTableUtils getTableUtils() {
-        synchronized (lock) {
-            if (tableUtils == null) {
-                tableUtils = tableUtilsFactory.apply(connectionSource);
+        ContextTableUtils result = tableUtils;
+        if (result == null) {
+            synchronized (lock) {
+                result = tableUtils;
+                if (result == null) {
+                    result = wrapTableUtils(tableUtilsFactory.apply(connectionSource));
+                    tableUtils = result;
+                }
             }
-            return tableUtils;
         }
+        return result;
     }
     
+    /**
+     * Gets the transaction manager for this context. The instance is created
+     * on first use and published without locking on subsequent calls. It is 
+     * discarded when connections are closed, and the next call after that
+     * creates a fresh instance; transactions already in progress continue
+     * to use the instance they started with. While any entity or query
+     * result cache is set, the instance repeats the invalidations caused by
+     * writes made in a transaction when the transaction ends.
+     * @return the transaction manager
+     */
     @Override
     public ContextTransactionManager getTransactionManager() {
-        synchronized(lock) {
-            if (transactionManager == null) {
-                transactionManager = transactionManagerFactory.apply(connectionSource);
+        ContextTransactionManager result = transactionManager;
+        if (result == null) {
+            synchronized (lock) {
+                result = transactionManager;
+                if (result == null) {
+                    result = wrapTransactionManager(transactionManagerFactory.apply(connectionSource));
+                    transactionManager = result;
+                }
             }
-            return transactionManager;
         }
+        return result;
     }
     
+    /**
+     * Wraps a table utils instance so that it records writes if any query
+     * result cache is set, or unwraps it otherwise.
+     */
+    private ContextTableUtils wrapTableUtils(ContextTableUtils result) {
+        if (result instanceof WriteTrackingTableUtils) {
+            result = ((WriteTrackingTableUtils) result).delegate;
+        }
+        if (queryCacheOptions.isEmpty()) {
+            return result;
+        }
+        return new WriteTrackingTableUtils(result, connectionSource, tableVersions, completionActions);
+    }
+
+    /**
+     * Wraps a transaction manager so that it runs transaction completion
+     * actions if any entity or query result cache is set, or unwraps it
+     * otherwise.
+     */
+    private ContextTransactionManager wrapTransactionManager(ContextTransactionManager result) {
+        if (result instanceof CompletingTransactionManager) {
+            result = ((CompletingTransactionManager) result).delegate;
+        }
+        if (entityCacheOptions.isEmpty() && queryCacheOptions.isEmpty()) {
+            return result;
+        }
+        return new CompletingTransactionManager(result, connectionSource, completionActions);
+    }
+
+    /**
+     * Resets cached instances. Must be invoked while holding the lock.
+     */
     private void resetCaches() {
         transactionManager = null;
         tableUtils = null;
+        daoCache.clear();
     }
 
     @Override
@@ -98,24 +208,27 @@ public class DefaultDatabaseContext implements DatabaseContext {
     
     /**
      * Gets the data access object for an entity class that has an integer
-     * primary key data type. Dao caching is performed by 
-     * the ORM library, so you don't need to take pains to hold on to this
-     * reference.
+     * primary key data type. The first call for a given class creates the
+     * dao with {@link DaoManager}, from the generated table configuration if
+     * there is one; subsequent calls return the instance cached by this
+     * context.
      * @param <T> the entity class type
      * @param clz the entity class
      * @return the dao
      * @throws java.sql.SQLException if 
-     * {@link #getDao(java.lang.Class, java.lang.Class) } throws one
+     * {@link DaoManager#createDao(com.j256.ormlite.support.ConnectionSource, java.lang.Class) } 
+     * throws one
      */
     @Override
     public <T> Dao<T, ?> getDao(Class<T> clz) throws SQLException {
-        return DaoManager.createDao(getConnectionSource(), clz);
+        return lookupDao(clz, () -> createDao(clz));
     }
 
     /**
      * Gets the data access object for an entity class with a given key type. 
-     * Dao caching is performed by the ORM library, so you don't need to take 
-     * pains to hold on to this reference.
+     * The first call for a given class creates the dao with {@link DaoManager},
+     * from the generated table configuration if there is one; subsequent
+     * calls return the instance cached by this context.
      * @param <T> the entity class type
      * @param <K> the key type
      * @param clazz the entity class 
@@ -125,11 +238,203 @@ public class DefaultDatabaseContext implements DatabaseContext {
      * {@link DaoManager#createDao(com.j256.ormlite.support.ConnectionSource, java.lang.Class) } 
      * throws one
      */
-     @Override
+    @Override
     public <T, K> Dao<T, K> getDao(Class<T> clazz, Class<K> keyType) throws SQLException {
-        return DaoManager.createDao(getConnectionSource(), clazz);
+        return lookupDao(clazz, () -> createDao(clazz));
     }
-    
+
+    /**
+     * Gets the data access object for a table configuration. The dao is 
+     * cached by this context, keyed by the table configuration instance.
+     * @param <T> the entity class type
+     * @param <K> the key type
+     * @param tableConfig the table configuration
+     * @return the dao
+     * @throws SQLException if 
+     * {@link DaoManager#createDao(com.j256.ormlite.support.ConnectionSource, DatabaseTableConfig) } 
+     * throws one
+     */
+    public <T, K> Dao<T, K> getDao(DatabaseTableConfig<T> tableConfig) throws SQLException {
+        checkNotNull(tableConfig, "tableConfig");
+        return lookupDao(tableConfig, () -> wrapDao(tableConfig.getDataClass(), DaoManager.createDao(getConnectionSource(), tableConfig)));
+    }
+
+    private <D extends Dao<T, ?>, T> D createDao(Class<T> clazz) throws SQLException {
+        DatabaseTableConfig<T> tableConfig = generatedTableConfigs.getTableConfig(clazz);
+        if (tableConfig == null) {
+            return wrapDao(clazz, DaoManager.createDao(getConnectionSource(), clazz));
+        }
+        return wrapDao(clazz, DaoManager.createDao(getConnectionSource(), tableConfig));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <D extends Dao<T, ?>, T> D wrapDao(Class<T> clazz, D dao) {
+        Dao<T, Object> result = (Dao<T, Object>) dao;
+        EntityCacheOptions<? super T> entityOptions = (EntityCacheOptions<? super T>) entityCacheOptions.get(clazz);
+        if (entityOptions != null) {
+            result = new CachingDao<>(result, entityOptions, completionActions);
+        }
+        QueryCacheOptions queryOptions = queryCacheOptions.get(clazz);
+        if (queryOptions != null) {
+            result = new QueryCachingDao<>(new TableWriteTrackingDao<>(result, tableVersions, completionActions), queryOptions);
+        } else if (!queryCacheOptions.isEmpty()) {
+            observeWrites(result);
+        }
+        return (D) result;
+    }
+
+    /**
+     * Registers an observer that records the writes made through a dao.
+     * Daos are shared by {@link DaoManager}, so the observer of a table is
+     * created once and registering it again has no effect.
+     */
+    private void observeWrites(Dao<?, ?> dao) {
+        String tableName = dao.getTableName();
+        tableVersions.register(tableName);
+        dao.registerObserver(writeObservers.computeIfAbsent(tableName, WriteObserver::new));
+    }
+
+    /**
+     * Sets the options of the entity cache for the daos of an entity class,
+     * or disables the cache. While a cache is set, daos for the class are
+     * {@link CachingDao caching daos}. The setting applies to daos obtained
+     * after this method returns; each dao has a cache of its own, which is
+     * discarded when connections are closed.
+     * @param <T> the entity type
+     * @param entityClass the entity class
+     * @param options the cache options, or null to disable the cache
+     */
+    public <T> void setEntityCache(Class<T> entityClass, @Nullable EntityCacheOptions<? super T> options) {
+        checkNotNull(entityClass, "entityClass");
+        synchronized (lock) {
+            if (options == null) {
+                entityCacheOptions.remove(entityClass);
+            } else {
+                entityCacheOptions.put(entityClass, options);
+            }
+            daoCache.keySet().removeIf(key -> key == entityClass
+                    || (key instanceof DatabaseTableConfig && ((DatabaseTableConfig<?>) key).getDataClass() == entityClass));
+            if (transactionManager != null) {
+                transactionManager = wrapTransactionManager(transactionManager);
+            }
+        }
+    }
+
+    /**
+     * Sets the options of the query result cache for the daos of an entity
+     * class, or disables the cache. While a cache is set, daos for the class
+     * are {@link QueryCachingDao query caching daos}, and the results they
+     * cache are discarded when a table they were read from is written through
+     * any dao, batch writer, or table utils instance of this context. 
+     * 
+     * <p>Daos of other classes are not wrapped; they record their writes
+     * through a {@link Dao.DaoObserver dao observer}, which ORMLite notifies
+     * of writes made by the dao's own methods and statement builders but
+     * not of raw statements. Raw statements that write to a cached table
+     * must therefore be executed through a query caching dao.</p>
+     *
+     * <p>The setting applies to daos obtained after this method returns, and
+     * the daos cached by this context are discarded. Daos and table utils
+     * instances obtained before the first query result cache was set do not
+     * record their writes, and transactions run by a transaction manager
+     * obtained then do not record them again when they end.
+     * Each dao has a cache of its own, which is discarded when connections
+     * are closed.</p>
+     * @param <T> the entity type
+     * @param entityClass the entity class
+     * @param options the cache options, or null to disable the cache
+     */
+    public <T> void setQueryCache(Class<T> entityClass, @Nullable QueryCacheOptions options) {
+        checkNotNull(entityClass, "entityClass");
+        synchronized (lock) {
+            if (options == null) {
+                queryCacheOptions.remove(entityClass);
+            } else {
+                queryCacheOptions.put(entityClass, options);
+            }
+            if (tableUtils != null) {
+                tableUtils = wrapTableUtils(tableUtils);
+            }
+            if (transactionManager != null) {
+                transactionManager = wrapTransactionManager(transactionManager);
+            }
+            daoCache.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <D extends Dao<?, ?>> D lookupDao(Object key, SqlSupplier<D> daoCreator) throws SQLException {
+        Dao<?, ?> dao = daoCache.get(key);
+        if (dao != null) {
+            daoCacheHits.increment();
+            return (D) dao;
+        }
+        daoCacheMisses.increment();
+        dao = daoCreator.get();
+        Dao<?, ?> existing = daoCache.putIfAbsent(key, dao);
+        return (D) (existing == null ? dao : existing);
+    }
+
+    /**
+     * Gets the number of dao requests that were satisfied from this 
+     * context's cache.
+     * @return the hit count
+     */
+    public long getDaoCacheHitCount() {
+        return daoCacheHits.sum();
+    }
+
+    /**
+     * Gets the number of dao requests that required creating a dao, either
+     * because none had been requested yet or because the cache had been
+     * cleared by closing connections.
+     * @return the miss count
+     */
+    public long getDaoCacheMissCount() {
+        return daoCacheMisses.sum();
+    }
+
+    @Override
+    public <T> BatchWriter<T> createBatchWriter(Class<T> entityClass, int batchSize, BatchWriter.CommitMode commitMode) throws SQLException {
+        Dao<T, ?> dao = getDao(entityClass);
+        BatchWriter<T> writer = new DefaultBatchWriter<>(getConnectionSource(), dao, batchSize, commitMode);
+        CachingDao<?, ?> cachingDao = findCachingDao(dao);
+        boolean trackingWrites = !queryCacheOptions.isEmpty();
+        if (cachingDao == null && !trackingWrites) {
+            return writer;
+        }
+        String tableName = dao.getTableName();
+        return entities -> {
+            try {
+                return writer.write(entities);
+            } finally {
+                if (cachingDao != null) {
+                    cachingDao.invalidateAllAfterWrite();
+                }
+                if (trackingWrites) {
+                    completionActions.runNowAndAfterTransaction(connectionSource, tableName,
+                            ImmutableList.of(tableVersions, tableName), () -> tableVersions.recordWrite(tableName));
+                }
+            }
+        };
+    }
+
+    /**
+     * Finds the caching dao a dao is or wraps. Batch writers insert rows
+     * without going through the dao, so its cache must be invalidated.
+     */
+    @Nullable
+    private static CachingDao<?, ?> findCachingDao(Dao<?, ?> dao) {
+        Dao<?, ?> current = dao;
+        while (current instanceof DaoDelegator) {
+            if (current instanceof CachingDao) {
+                return (CachingDao<?, ?>) current;
+            }
+            current = ((DaoDelegator<?, ?>) current).getDelegate();
+        }
+        return null;
+    }
+
     private static class DefaultTableUtilsFactory implements Function<ConnectionSource, ContextTableUtils> {
 
         @Override
@@ -148,4 +453,153 @@ public class DefaultDatabaseContext implements DatabaseContext {
         
     }
 
+    /**
+     * Transaction manager that runs the transaction completion actions
+     * queued by a transaction after it ends.
+     */
+    private static class CompletingTransactionManager implements ContextTransactionManager {
+
+        private final ContextTransactionManager delegate;
+        private final ConnectionSource connectionSource;
+        private final TransactionCompletionActions completionActions;
+
+        public CompletingTransactionManager(ContextTransactionManager delegate, ConnectionSource connectionSource, TransactionCompletionActions completionActions) {
+            this.delegate = delegate;
+            this.connectionSource = connectionSource;
+            this.completionActions = completionActions;
+        }
+
+        @Override
+        public <T> T callInTransaction(Callable<T> callable) throws SQLException {
+            try {
+                return delegate.callInTransaction(callable);
+            } finally {
+                completionActions.runIfTransactionEnded(connectionSource);
+            }
+        }
+
+        @Override
+        public <T> T callInReadOnlyTransaction(Callable<T> callable) throws SQLException {
+            try {
+                return delegate.callInReadOnlyTransaction(callable);
+            } finally {
+                completionActions.runIfTransactionEnded(connectionSource);
+            }
+        }
+    }
+
+    /**
+     * Dao observer that records the writes to a table while any query
+     * result cache is set.
+     */
+    private class WriteObserver implements Dao.DaoObserver {
+
+        private final String tableName;
+
+        public WriteObserver(String tableName) {
+            this.tableName = tableName;
+        }
+
+        @Override
+        public void onChange() {
+            if (!queryCacheOptions.isEmpty()) {
+                completionActions.runNowAndAfterTransaction(connectionSource, tableName,
+                        ImmutableList.of(tableVersions, tableName), () -> tableVersions.recordWrite(tableName));
+            }
+        }
+    }
+
+    /**
+     * Table utils that records every change to tables as a write to all
+     * tables.
+     */
+    private static class WriteTrackingTableUtils implements ContextTableUtils {
+
+        private final ContextTableUtils delegate;
+        private final ConnectionSource connectionSource;
+        private final TableVersions tableVersions;
+        private final TransactionCompletionActions completionActions;
+
+        public WriteTrackingTableUtils(ContextTableUtils delegate, ConnectionSource connectionSource, TableVersions tableVersions, TransactionCompletionActions completionActions) {
+            this.delegate = delegate;
+            this.connectionSource = connectionSource;
+            this.tableVersions = tableVersions;
+            this.completionActions = completionActions;
+        }
+
+        private <R> R recordWrite(SqlSupplier<R> action) throws SQLException {
+            try {
+                return action.get();
+            } finally {
+                completionActions.runNowAndAfterTransaction(connectionSource, null,
+                        ImmutableList.of(tableVersions), tableVersions::recordWriteToAll);
+            }
+        }
+
+        @Override
+        public <T> int clearTable(Class<T> dataClass) throws SQLException {
+            return recordWrite(() -> delegate.clearTable(dataClass));
+        }
+
+        @Override
+        public <T> int clearTable(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return recordWrite(() -> delegate.clearTable(tableConfig));
+        }
+
+        @Override
+        public int truncateTables(Iterable<Class<?>> dataClasses) throws SQLException {
+            return recordWrite(() -> delegate.truncateTables(dataClasses));
+        }
+
+        @Override
+        public <T> int createTable(Class<T> dataClass) throws SQLException {
+            return recordWrite(() -> delegate.createTable(dataClass));
+        }
+
+        @Override
+        public <T> int createTable(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return recordWrite(() -> delegate.createTable(tableConfig));
+        }
+
+        @Override
+        public <T> int createTableIfNotExists(Class<T> dataClass) throws SQLException {
+            return recordWrite(() -> delegate.createTableIfNotExists(dataClass));
+        }
+
+        @Override
+        public int createAllTablesIfNotExists(Iterable<Class<?>> dataClasses) throws SQLException {
+            return recordWrite(() -> delegate.createAllTablesIfNotExists(dataClasses));
+        }
+
+        @Override
+        public int createAllTables(Iterable<Class<?>> dataClasses) throws SQLException {
+            return recordWrite(() -> delegate.createAllTables(dataClasses));
+        }
+
+        @Override
+        public <T> int createTableIfNotExists(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return recordWrite(() -> delegate.createTableIfNotExists(tableConfig));
+        }
+
+        @Override
+        public <T, ID> int dropTable(Class<T> dataClass, boolean ignoreErrors) throws SQLException {
+            return recordWrite(() -> delegate.dropTable(dataClass, ignoreErrors));
+        }
+
+        @Override
+        public <T, ID> int dropTable(DatabaseTableConfig<T> tableConfig, boolean ignoreErrors) throws SQLException {
+            return recordWrite(() -> delegate.dropTable(tableConfig, ignoreErrors));
+        }
+
+        @Override
+        public <T, ID> List<String> getCreateTableStatements(Class<T> dataClass) throws SQLException {
+            return delegate.getCreateTableStatements(dataClass);
+        }
+
+        @Override
+        public <T, ID> List<String> getCreateTableStatements(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return delegate.getCreateTableStatements(tableConfig);
+        }
+    }
+
 }
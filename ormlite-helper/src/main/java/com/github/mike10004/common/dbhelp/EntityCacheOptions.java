@@ -0,0 +1,113 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that represents the bounds of an entity cache. A cache is bounded
+ * either by the number of entities or by their total weight, and entries
+ * may also expire a fixed time after they are loaded. Instances are
+ * immutable.
+ * @param <T> the entity type
+ * @see CachingDao
+ * @see DefaultDatabaseContext#setEntityCache(Class, EntityCacheOptions)
+ */
+public final class EntityCacheOptions<T> {
+
+    private final long maximumSize;
+    private final long maximumWeight;
+    @Nullable
+    private final ToIntFunction<? super T> weigher;
+    private final long expireAfterWriteNanos;
+
+    private EntityCacheOptions(long maximumSize, long maximumWeight, @Nullable ToIntFunction<? super T> weigher, long expireAfterWriteNanos) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+    }
+
+    /**
+     * Creates options for a cache that holds at most a given number of
+     * entities. Ids for which no entity exists count as entities.
+     * @param <T> the entity type
+     * @param maximumSize the maximum number of entries
+     * @return the options
+     */
+    public static <T> EntityCacheOptions<T> maximumSize(long maximumSize) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive: %s", maximumSize);
+        return new EntityCacheOptions<>(maximumSize, -1, null, 0);
+    }
+
+    /**
+     * Creates options for a cache whose entities weigh at most a given total.
+     * Ids for which no entity exists weigh 1.
+     * @param <T> the entity type
+     * @param maximumWeight the maximum total weight
+     * @param weigher function that returns the nonnegative weight of an
+     * entity, such as its approximate size in bytes
+     * @return the options
+     */
+    public static <T> EntityCacheOptions<T> maximumWeight(long maximumWeight, ToIntFunction<? super T> weigher) {
+        checkArgument(maximumWeight > 0, "maximumWeight must be positive: %s", maximumWeight);
+        return new EntityCacheOptions<>(-1, maximumWeight, checkNotNull(weigher, "weigher"), 0);
+    }
+
+    /**
+     * Returns a copy of these options with entries that expire a fixed time
+     * after they are loaded. Expiry bounds how long an entity can remain
+     * stale after it is changed without going through the caching dao.
+     * @param duration the duration
+     * @param unit the duration unit
+     * @return the options
+     */
+    public EntityCacheOptions<T> expireAfterWrite(long duration, TimeUnit unit) {
+        checkArgument(duration > 0, "duration must be positive: %s", duration);
+        return new EntityCacheOptions<>(maximumSize, maximumWeight, weigher, unit.toNanos(duration));
+    }
+
+    /**
+     * Gets the maximum number of entries.
+     * @return the maximum size, or -1 if the cache is bounded by weight
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the maximum total weight.
+     * @return the maximum weight, or -1 if the cache is bounded by size
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    @Nullable
+    public ToIntFunction<? super T> getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * Gets the time after which entries expire.
+     * @param unit the unit of the return value
+     * @return the duration, or zero if entries do not expire
+     */
+    public long getExpireAfterWrite(TimeUnit unit) {
+        return unit.convert(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maximumSize", maximumSize)
+                .add("maximumWeight", maximumWeight)
+                .add("expireAfterWriteNanos", expireAfterWriteNanos)
+                .toString();
+    }
+}
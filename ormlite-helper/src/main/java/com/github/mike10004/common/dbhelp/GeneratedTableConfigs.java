@@ -0,0 +1,147 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that provides table configurations created by generated
+ * {@link TableConfigFactory factories}. Using these configurations avoids
+ * reading each entity class's field annotations by reflection when a dao is
+ * first created. The factory for an entity class {@code com.example.Outer$Inner}
+ * is the class {@code com.example.Outer_Inner_TableConfig}, loaded by the
+ * entity class's class loader.
+ *
+ * <p>An instance holds the configurations for one connection source, with
+ * field types extracted, and creates each configuration once. No
+ * configuration is provided for entity classes without a generated factory,
+ * for database types that require upper-case entity names, or for
+ * database types that supply their own table configurations, such as the
+ * Android database type; callers should fall back to ORMLite's reflection
+ * for those.</p>
+ */
+public class GeneratedTableConfigs {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneratedTableConfigs.class);
+
+    /**
+     * Suffix appended to the entity class name to form the factory class name.
+     */
+    public static final String FACTORY_SUFFIX = "_TableConfig";
+
+    private static final ClassValue<TableConfigFactory<?>> factories = new ClassValue<TableConfigFactory<?>>() {
+        @Override
+        protected TableConfigFactory<?> computeValue(Class<?> dataClass) {
+            return loadFactory(dataClass);
+        }
+    };
+
+    private final ConnectionSource connectionSource;
+    private final ConcurrentMap<Class<?>, Optional<DatabaseTableConfig<?>>> tableConfigs;
+
+    /**
+     * Constructs an instance for a connection source.
+     * @param connectionSource the connection source
+     */
+    public GeneratedTableConfigs(ConnectionSource connectionSource) {
+        this.connectionSource = checkNotNull(connectionSource, "connectionSource");
+        tableConfigs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the table configuration for an entity class, created by its
+     * generated factory. The same instance is returned on each call.
+     * @param dataClass the entity class
+     * @param <T> the entity type
+     * @return the table configuration, or null if none is available
+     * @throws SQLException if the field types cannot be extracted
+     */
+    @Nullable
+    public <T> DatabaseTableConfig<T> getTableConfig(Class<T> dataClass) throws SQLException {
+        Optional<DatabaseTableConfig<?>> tableConfig = tableConfigs.get(dataClass);
+        if (tableConfig == null) {
+            tableConfig = Optional.ofNullable(createTableConfig(dataClass));
+            Optional<DatabaseTableConfig<?>> existing = tableConfigs.putIfAbsent(dataClass, tableConfig);
+            if (existing != null) {
+                tableConfig = existing;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        DatabaseTableConfig<T> result = (DatabaseTableConfig<T>) tableConfig.orElse(null);
+        return result;
+    }
+
+    @Nullable
+    private <T> DatabaseTableConfig<T> createTableConfig(Class<T> dataClass) throws SQLException {
+        TableConfigFactory<T> factory = findFactory(dataClass);
+        if (factory == null) {
+            return null;
+        }
+        DatabaseType databaseType = connectionSource.getDatabaseType();
+        if (databaseType.isEntityNamesMustBeUpCase() || databaseType.extractDatabaseTableConfig(connectionSource, dataClass) != null) {
+            return null;
+        }
+        DatabaseTableConfig<T> tableConfig = factory.createTableConfig();
+        tableConfig.extractFieldTypes(connectionSource);
+        return tableConfig;
+    }
+
+    /**
+     * Finds the generated factory for an entity class. Lookups are cached
+     * per class.
+     * @param dataClass the entity class
+     * @param <T> the entity type
+     * @return the factory, or null if none was generated
+     */
+    @Nullable
+    public static <T> TableConfigFactory<T> findFactory(Class<T> dataClass) {
+        @SuppressWarnings("unchecked")
+        TableConfigFactory<T> factory = (TableConfigFactory<T>) factories.get(dataClass);
+        return factory;
+    }
+
+    /**
+     * Gets the binary name of the factory class for an entity class.
+     * @param dataClass the entity class
+     * @return the factory class name
+     */
+    public static String getFactoryClassName(Class<?> dataClass) {
+        String className = dataClass.getName();
+        int packageEnd = className.lastIndexOf('.') + 1;
+        return className.substring(0, packageEnd) + className.substring(packageEnd).replace('$', '_') + FACTORY_SUFFIX;
+    }
+
+    @Nullable
+    private static TableConfigFactory<?> loadFactory(Class<?> dataClass) {
+        if (dataClass.isPrimitive() || dataClass.isArray()) {
+            return null;
+        }
+        String factoryClassName = getFactoryClassName(dataClass);
+        Class<?> factoryClass;
+        try {
+            factoryClass = Class.forName(factoryClassName, true, dataClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!TableConfigFactory.class.isAssignableFrom(factoryClass)) {
+            logger.warn("{} does not implement {}; ignoring", factoryClassName, TableConfigFactory.class.getName());
+            return null;
+        }
+        try {
+            return (TableConfigFactory<?>) factoryClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn(e, "could not instantiate " + factoryClassName + "; falling back to reflection");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.DatabaseTypeUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connection source backed by a HikariCP connection pool, which is created
+ * the first time a connection is needed. Compared to ORMLite's
+ * {@link com.j256.ormlite.jdbc.JdbcPooledConnectionSource}, the pool hands
+ * off connections without a global lock, bounds the time a caller waits for
+ * a connection, and can log connections that are held too long. HikariCP
+ * is an optional dependency of this library and must be on the classpath
+ * to use this class. Settings must be changed before the pool is created;
+ * subclasses may adjust other pool settings in {@link #configure(HikariConfig)}.
+ * @see PooledConnectionSourceFactory#hikari()
+ */
+public class HikariConnectionSource extends LazyDataSourceConnectionSource {
+
+    private static final int DEFAULT_MAXIMUM_POOL_SIZE = 10;
+    private static final long DEFAULT_CONNECTION_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final String url;
+    @Nullable
+    private final String username;
+    @Nullable
+    private final String password;
+    private final DatabaseType databaseType;
+    private volatile int maximumPoolSize = DEFAULT_MAXIMUM_POOL_SIZE;
+    private volatile int minimumIdle = -1;
+    private volatile long connectionTimeoutMillis = DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+    private volatile long leakDetectionThresholdMillis;
+
+    public HikariConnectionSource(String url) {
+        this(url, null, null);
+    }
+
+    public HikariConnectionSource(String url, @Nullable String username, @Nullable String password) {
+        this.url = checkNotNull(url, "url");
+        this.username = username;
+        this.password = password;
+        databaseType = DatabaseTypeUtils.createDatabaseType(url);
+    }
+
+    @Override
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Sets the maximum number of connections in the pool, both idle and in
+     * use. The default is 10.
+     * @param maximumPoolSize the maximum pool size
+     */
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        if (maximumPoolSize < 1) {
+            throw new IllegalArgumentException("maximum pool size must be positive: " + maximumPoolSize);
+        }
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    /**
+     * Sets the minimum number of idle connections the pool maintains. The
+     * default, -1, means the pool is kept at its maximum size.
+     * @param minimumIdle the minimum number of idle connections, or -1
+     */
+    public void setMinimumIdle(int minimumIdle) {
+        if (minimumIdle < -1) {
+            throw new IllegalArgumentException("minimum idle connections must be nonnegative or -1: " + minimumIdle);
+        }
+        this.minimumIdle = minimumIdle;
+    }
+
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    /**
+     * Sets the maximum time to wait for a connection from the pool before
+     * throwing an exception. The default is 30 seconds, and HikariCP
+     * requires at least 250 milliseconds.
+     * @param connectionTimeoutMillis the timeout in milliseconds
+     */
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        if (connectionTimeoutMillis < 250) {
+            throw new IllegalArgumentException("connection timeout must be at least 250 milliseconds: " + connectionTimeoutMillis);
+        }
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    /**
+     * Sets the time a connection may be out of the pool before a possible
+     * leak is logged, with the stack trace of the code that checked it out.
+     * The default is zero, which disables leak detection; otherwise HikariCP
+     * requires at least 2 seconds.
+     * @param leakDetectionThresholdMillis the threshold in milliseconds, or zero
+     */
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        if (leakDetectionThresholdMillis != 0 && leakDetectionThresholdMillis < 2000) {
+            throw new IllegalArgumentException("leak detection threshold must be zero or at least 2000 milliseconds: " + leakDetectionThresholdMillis);
+        }
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+        return leakDetectionThresholdMillis;
+    }
+
+    /**
+     * Adjusts the pool configuration before the pool is created. The default
+     * implementation does nothing.
+     * @param config the configuration, with this instance's settings applied
+     */
+    protected void configure(HikariConfig config) {
+    }
+
+    @Override
+    protected DataSource createDataSource() throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maximumPoolSize);
+        if (minimumIdle >= 0) {
+            config.setMinimumIdle(minimumIdle);
+        }
+        config.setConnectionTimeout(connectionTimeoutMillis);
+        config.setLeakDetectionThreshold(leakDetectionThresholdMillis);
+        configure(config);
+        try {
+            return new HikariDataSource(config);
+        } catch (RuntimeException e) {
+            throw new SQLException("could not create connection pool for " + url, e);
+        }
+    }
+}
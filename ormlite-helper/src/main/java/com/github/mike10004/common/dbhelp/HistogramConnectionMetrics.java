@@ -0,0 +1,108 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics sink that keeps measurements in memory. Acquire latency is kept in
+ * a separate histogram for each access mode.
+ */
+public class HistogramConnectionMetrics implements ConnectionMetricsSink {
+
+    private final LatencyHistogram readOnlyAcquireLatency;
+    private final LatencyHistogram readWriteAcquireLatency;
+    private final LatencyHistogram holdTime;
+    private final LongAdder acquireFailures;
+    private final AtomicInteger inUse;
+    private final AtomicInteger peakInUse;
+
+    public HistogramConnectionMetrics() {
+        readOnlyAcquireLatency = new LatencyHistogram();
+        readWriteAcquireLatency = new LatencyHistogram();
+        holdTime = new LatencyHistogram();
+        acquireFailures = new LongAdder();
+        inUse = new AtomicInteger();
+        peakInUse = new AtomicInteger();
+    }
+
+    @Override
+    public void connectionAcquired(AccessMode mode, long latencyNanos, int inUse) {
+        getAcquireLatency(mode).record(latencyNanos);
+        this.inUse.set(inUse);
+        peakInUse.accumulateAndGet(inUse, Math::max);
+    }
+
+    @Override
+    public void connectionAcquireFailed(AccessMode mode, long latencyNanos, Exception cause) {
+        acquireFailures.increment();
+    }
+
+    @Override
+    public void connectionReleased(long holdNanos, int inUse) {
+        holdTime.record(holdNanos);
+        this.inUse.set(inUse);
+    }
+
+    /**
+     * Gets the histogram of time spent acquiring connections.
+     * @param mode the access mode
+     * @return the histogram
+     */
+    public LatencyHistogram getAcquireLatency(AccessMode mode) {
+        switch (mode) {
+            case READ_ONLY:
+                return readOnlyAcquireLatency;
+            case READ_WRITE:
+                return readWriteAcquireLatency;
+            default:
+                throw new IllegalArgumentException("mode: " + mode);
+        }
+    }
+
+    /**
+     * Gets the histogram of time connections were held before release.
+     * @return the histogram
+     */
+    public LatencyHistogram getHoldTime() {
+        return holdTime;
+    }
+
+    /**
+     * Gets the number of failed attempts to acquire a connection.
+     * @return the number of failures
+     */
+    public long getAcquireFailureCount() {
+        return acquireFailures.sum();
+    }
+
+    /**
+     * Gets the number of connections in use as of the most recent
+     * acquisition or release.
+     * @return the number of connections in use
+     */
+    public int getInUseCount() {
+        return inUse.get();
+    }
+
+    /**
+     * Gets the largest number of connections that were in use at once.
+     * @return the peak number of connections in use
+     */
+    public int getPeakInUseCount() {
+        return peakInUse.get();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("readOnlyAcquireLatency", readOnlyAcquireLatency)
+                .add("readWriteAcquireLatency", readWriteAcquireLatency)
+                .add("holdTime", holdTime)
+                .add("acquireFailures", getAcquireFailureCount())
+                .add("inUse", getInUseCount())
+                .add("peakInUse", getPeakInUseCount())
+                .toString();
+    }
+}
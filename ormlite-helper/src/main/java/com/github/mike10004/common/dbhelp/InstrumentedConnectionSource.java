@@ -0,0 +1,172 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionMetricsSink.AccessMode;
+import com.github.mike10004.common.dbhelp.ConnectionSources.ConnectionSourceDelegator;
+import com.google.common.base.Ticker;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connection source that measures how long it takes to acquire connections
+ * from a delegate and how long connections are held before they are released.
+ * Measurements are sent to a metrics sink. Connections are passed through
+ * unwrapped, so the delegate's special connection handling is unaffected.
+ *
+ * <p>Some connection sources hand out the same connection object to several
+ * callers at once; hold times of such a connection are matched to
+ * acquisitions in last-in, first-out order.</p>
+ */
+public class InstrumentedConnectionSource extends ConnectionSourceDelegator {
+
+    private final ConnectionSource delegate;
+    private final ConnectionMetricsSink metricsSink;
+    private final Ticker ticker;
+    private final AtomicInteger inUse;
+    private final AtomicInteger peakInUse;
+    private final ConcurrentMap<ConnectionKey, Deque<Long>> acquisitionTimes;
+
+    /**
+     * Constructs an instance that sends measurements to a new
+     * {@link HistogramConnectionMetrics} sink.
+     * @param delegate the delegate connection source
+     */
+    public InstrumentedConnectionSource(ConnectionSource delegate) {
+        this(delegate, new HistogramConnectionMetrics());
+    }
+
+    public InstrumentedConnectionSource(ConnectionSource delegate, ConnectionMetricsSink metricsSink) {
+        this(delegate, metricsSink, Ticker.systemTicker());
+    }
+
+    InstrumentedConnectionSource(ConnectionSource delegate, ConnectionMetricsSink metricsSink, Ticker ticker) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.metricsSink = checkNotNull(metricsSink, "metricsSink");
+        this.ticker = checkNotNull(ticker, "ticker");
+        inUse = new AtomicInteger();
+        peakInUse = new AtomicInteger();
+        acquisitionTimes = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    protected ConnectionSource getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets the metrics sink.
+     * @return the metrics sink
+     */
+    public ConnectionMetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Gets the number of connections acquired through this source and not
+     * yet released.
+     * @return the number of connections in use
+     */
+    public int getInUseCount() {
+        return inUse.get();
+    }
+
+    /**
+     * Gets the largest number of connections that were in use at once.
+     * @return the peak number of connections in use
+     */
+    public int getPeakInUseCount() {
+        return peakInUse.get();
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        long start = ticker.read();
+        DatabaseConnection connection;
+        try {
+            connection = delegate.getReadOnlyConnection(tableName);
+        } catch (SQLException | RuntimeException e) {
+            metricsSink.connectionAcquireFailed(AccessMode.READ_ONLY, ticker.read() - start, e);
+            throw e;
+        }
+        acquired(connection, AccessMode.READ_ONLY, start);
+        return connection;
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        long start = ticker.read();
+        DatabaseConnection connection;
+        try {
+            connection = delegate.getReadWriteConnection(tableName);
+        } catch (SQLException | RuntimeException e) {
+            metricsSink.connectionAcquireFailed(AccessMode.READ_WRITE, ticker.read() - start, e);
+            throw e;
+        }
+        acquired(connection, AccessMode.READ_WRITE, start);
+        return connection;
+    }
+
+    private void acquired(DatabaseConnection connection, AccessMode mode, long start) {
+        long now = ticker.read();
+        acquisitionTimes.compute(new ConnectionKey(connection), (key, times) -> {
+            if (times == null) {
+                times = new ArrayDeque<>(1);
+            }
+            times.push(now);
+            return times;
+        });
+        int current = inUse.incrementAndGet();
+        peakInUse.accumulateAndGet(current, Math::max);
+        metricsSink.connectionAcquired(mode, now - start, current);
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        Long[] acquiredAt = {null};
+        acquisitionTimes.computeIfPresent(new ConnectionKey(connection), (key, times) -> {
+            acquiredAt[0] = times.pop();
+            return times.isEmpty() ? null : times;
+        });
+        try {
+            delegate.releaseConnection(connection);
+        } finally {
+            if (acquiredAt[0] != null) {
+                int current = inUse.decrementAndGet();
+                metricsSink.connectionReleased(ticker.read() - acquiredAt[0], current);
+            }
+        }
+    }
+
+    /**
+     * Map key that compares connections by identity. The acquisition times
+     * of a connection are updated only within the map's per-key compute
+     * operations, so acquiring and releasing different connections does not
+     * contend on a common lock.
+     */
+    private static final class ConnectionKey {
+
+        private final DatabaseConnection connection;
+
+        public ConnectionKey(DatabaseConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ConnectionKey && ((ConnectionKey) o).connection == connection;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(connection);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.DatabaseTypeUtils;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lazily initialized pooled connection source for a JDBC URL and optional
+ * credentials.
+ * @see PooledConnectionSourceFactory#ormlite()
+ */
+public class JdbcUrlPooledConnectionSource extends LazyJdbcPooledConnectionSource {
+
+    private final String jdbcUrl;
+    @Nullable
+    private final String jdbcUsername;
+    @Nullable
+    private final String jdbcPassword;
+
+    public JdbcUrlPooledConnectionSource(String url, @Nullable String username, @Nullable String password) {
+        this.jdbcUrl = checkNotNull(url, "url");
+        this.jdbcUsername = username;
+        this.jdbcPassword = password;
+    }
+
+    @Override
+    protected void prepare() throws SQLException {
+        setUrl(jdbcUrl);
+        setUsername(jdbcUsername);
+        setPassword(jdbcPassword);
+    }
+
+    @Override
+    protected DatabaseType forceGetDatabaseType() {
+        return DatabaseTypeUtils.createDatabaseType(jdbcUrl);
+    }
+}
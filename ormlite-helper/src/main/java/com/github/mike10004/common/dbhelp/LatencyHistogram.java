@@ -0,0 +1,143 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Class that represents a concurrent histogram of durations in nanoseconds.
+ * Values below 16 are counted exactly; larger values are counted in buckets
+ * whose width is one eighth of a power of two, so reported percentiles are
+ * within 12.5% of the true value. Recording a value does not lock.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int LINEAR_EXPONENT = SUB_BUCKET_BITS + 1;
+    private static final int NUM_BUCKETS = LINEAR_LIMIT + (Long.SIZE - 1 - LINEAR_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(NUM_BUCKETS);
+        count = new LongAdder();
+        total = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (SUB_BUCKETS + subBucket) * width;
+        return lower + (width - 1);
+    }
+
+    /**
+     * Records a duration. Negative values are recorded as zero.
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of all values recorded.
+     * @return the total, in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Gets the largest value recorded.
+     * @return the maximum, in nanoseconds, or zero if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     * @return the mean, in nanoseconds, or zero if nothing was recorded
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0d : (double) getTotal() / n;
+    }
+
+    /**
+     * Gets an upper bound on the value at a given percentile. Concurrent
+     * recording may make the result slightly stale.
+     * @param percentile the percentile, between 0 and 100
+     * @return the value, in nanoseconds, or zero if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100: %s", percentile);
+        long[] snapshot = new long[NUM_BUCKETS];
+        long n = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100d * n));
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", getCount())
+                .add("meanMicros", TimeUnit.NANOSECONDS.toMicros(Math.round(getMean())))
+                .add("p50Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(50)))
+                .add("p99Micros", TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99)))
+                .add("maxMicros", TimeUnit.NANOSECONDS.toMicros(getMax()))
+                .toString();
+    }
+}
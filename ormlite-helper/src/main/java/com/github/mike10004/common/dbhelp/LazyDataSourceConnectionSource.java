@@ -0,0 +1,161 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
+import com.j256.ormlite.misc.IOUtils;
+import com.j256.ormlite.support.BaseConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Abstract connection source implementation that obtains connections from a
+ * {@link DataSource}, such as a connection pool, that is created the first
+ * time a connection is needed. Subclasses create the data source in the
+ * implementation of the {@link #createDataSource() createDataSource} method.
+ * Connections are returned to the data source by closing them when they
+ * are released. If the data source is {@link AutoCloseable}, it is closed
+ * when this connection source is closed.
+ */
+public abstract class LazyDataSourceConnectionSource extends BaseConnectionSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyDataSourceConnectionSource.class);
+
+    private transient final Lock preparationLock = new ReentrantLock();
+    private transient volatile DataSource dataSource;
+    private volatile boolean closed;
+
+    /**
+     * Creates the data source. Invoked at most once.
+     * @return the data source
+     * @throws SQLException if the data source cannot be created
+     */
+    protected abstract DataSource createDataSource() throws SQLException;
+
+    /**
+     * Gets the database type. Must return the same non-null value whether
+     * or not the data source has been created.
+     * @return the database type
+     */
+    @Override
+    public abstract DatabaseType getDatabaseType();
+
+    /**
+     * Gets the data source, creating it if necessary. Once it has been
+     * created, this method does not lock.
+     * @return the data source
+     * @throws SQLException if the data source cannot be created or this
+     * connection source is closed
+     */
+    protected DataSource getDataSource() throws SQLException {
+        DataSource current = dataSource;
+        if (current == null) {
+            preparationLock.lock();
+            try {
+                current = dataSource;
+                if (current == null) {
+                    if (closed) {
+                        throw new SQLException(getClass().getSimpleName() + " is closed");
+                    }
+                    getDatabaseType().loadDriver();
+                    current = createDataSource();
+                    if (current == null) {
+                        throw new SQLException("faulty implementation of " + LazyDataSourceConnectionSource.class.getSimpleName()
+                                + "; createDataSource must return a non-null value");
+                    }
+                    dataSource = current;
+                }
+            } finally {
+                preparationLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Creates the data source if it has not been created yet.
+     * @throws SQLException if the data source cannot be created
+     */
+    public void forcePrepareAndInitialize() throws SQLException {
+        getDataSource();
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        return getReadWriteConnection(tableName);
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        DatabaseConnection saved = getSavedConnection();
+        if (saved != null) {
+            return saved;
+        }
+        return new JdbcDatabaseConnection(getDataSource().getConnection());
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        if (!isSavedConnection(connection)) {
+            IOUtils.closeThrowSqlException(connection, "SQL connection");
+        }
+    }
+
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        return saveSpecial(connection);
+    }
+
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        clearSpecial(connection, logger);
+    }
+
+    /**
+     * Closes the data source, if it was created and is closeable. Closing
+     * an instance whose data source was never created does not create it.
+     * @throws IOException if closing the data source fails
+     */
+    @Override
+    public void close() throws IOException {
+        DataSource current;
+        preparationLock.lock();
+        try {
+            closed = true;
+            current = dataSource;
+            dataSource = null;
+        } finally {
+            preparationLock.unlock();
+        }
+        if (current instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) current).close();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("could not close data source", e);
+            }
+        }
+    }
+
+    @Override
+    public void closeQuietly() {
+        IOUtils.closeQuietly(this);
+    }
+
+    @Override
+    public boolean isOpen(String tableName) {
+        return !closed;
+    }
+
+    @Override
+    public boolean isSingleConnection(String tableName) {
+        return false;
+    }
+}
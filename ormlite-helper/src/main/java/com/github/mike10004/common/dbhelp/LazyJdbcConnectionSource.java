@@ -8,6 +8,8 @@ import com.j256.ormlite.support.DatabaseConnection;
 import java.io.IOException;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Abstract connection source implementation that lazily prepares and initializes
@@ -17,14 +19,30 @@ import java.sql.SQLException;
  */
 public abstract class LazyJdbcConnectionSource extends JdbcConnectionSource {
 
-    private transient final Object preparationLock = new Object();
+    private transient final Lock preparationLock = new ReentrantLock();
+    private transient volatile boolean prepared;
     
+    /**
+     * Prepares and initializes this instance unless that has already been
+     * done. Once it has, this method returns without locking. The lock for
+     * the one-time initialization is a {@link ReentrantLock} rather than a
+     * monitor, so that virtual threads waiting on it are not pinned to their
+     * carrier threads.
+     * @throws SQLException if preparation or initialization fails
+     */
     protected void maybePrepareAndInitialize() throws SQLException {
-        synchronized (preparationLock) {
+        if (prepared) {
+            return;
+        }
+        preparationLock.lock();
+        try {
             if (!initialized) {
                 prepare();
                 initialize();
             }
+            prepared = true;
+        } finally {
+            preparationLock.unlock();
         }
     }
     
@@ -1,27 +1,90 @@
 package com.github.mike10004.common.dbhelp;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.db.DatabaseTypeUtils;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
 import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
 import com.j256.ormlite.support.DatabaseConnection;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that supports lazy initialization of a JDBC connection source.
+ * Pooled connections may optionally keep a cache of prepared statements;
+ * see {@link #setStatementCacheSize(int)}. The pool may also be kept
+ * warm with a minimum number of idle connections; see {@link #setMinIdle(int)},
+ * and idle connections may be validated and evicted in the background; see
+ * {@link #setMaintenanceIntervalMillis(long)}.
  */
 public abstract class LazyJdbcPooledConnectionSource extends JdbcPooledConnectionSource {
 
-    private transient final Object preparationLock = new Object();
+    private static final Logger logger = LoggerFactory.getLogger(LazyJdbcPooledConnectionSource.class);
+
+    private static final int DEFAULT_MAX_CONNECTIONS_FREE = 5;
+    private static final long DEFAULT_MAX_CONNECTION_AGE_MILLIS = 60 * 60 * 1000;
+    private static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private transient final Lock preparationLock = new ReentrantLock();
+    private transient volatile boolean prepared;
+    private transient final Object maintenanceLock = new Object();
+    private transient final StatementCacheStats statementCacheStats = new StatementCacheStats();
+    private transient final PoolMaintenanceStats maintenanceStats = new PoolMaintenanceStats();
+    private transient final AtomicBoolean replenishPending = new AtomicBoolean();
+    private transient final ConcurrentMap<DatabaseConnection, ConnectionTimes> connectionTimes = new ConcurrentHashMap<>();
+    private transient ScheduledExecutorService maintenanceExecutor;
+    private transient volatile Thread validatingThread;
+    private volatile int statementCacheSize;
+    private volatile int minIdle;
+    private volatile int maxConnectionsFree = DEFAULT_MAX_CONNECTIONS_FREE;
+    private volatile long maxConnectionAgeMillis = DEFAULT_MAX_CONNECTION_AGE_MILLIS;
+    private volatile long maintenanceIntervalMillis;
+    private volatile long maxIdleMillis;
+    private volatile String validationQuery;
+    private volatile int validationTimeoutSeconds = DEFAULT_VALIDATION_TIMEOUT_SECONDS;
+    private volatile boolean closed;
     
+    /**
+     * Prepares and initializes this instance and starts background
+     * maintenance, if that has not been done yet. As in
+     * {@link LazyJdbcConnectionSource}, calls after the first do not lock.
+     * @throws SQLException if preparation or initialization fails
+     */
     protected void maybePrepareAndInitialize() throws SQLException {
-        synchronized (preparationLock) {
+        if (prepared) {
+            return;
+        }
+        preparationLock.lock();
+        try {
             if (!initialized) {
                 prepare();
                 initialize();
+                startMaintenance();
             }
+            prepared = true;
+        } finally {
+            preparationLock.unlock();
         }
     }
     
@@ -77,12 +140,19 @@ public abstract class LazyJdbcPooledConnectionSource extends JdbcPooledConnectio
 
     @Override
     public void close() throws IOException {
+        closed = true;
+        synchronized (maintenanceLock) {
+            if (maintenanceExecutor != null) {
+                maintenanceExecutor.shutdownNow();
+            }
+        }
         try {
             maybePrepareAndInitialize();
         } catch (SQLException e) {
             throw new IOException(e);
         }
         super.close();
+        connectionTimes.clear();
     }
     
     @Override
@@ -100,16 +170,372 @@ public abstract class LazyJdbcPooledConnectionSource extends JdbcPooledConnectio
     @Override
     public void releaseConnection(DatabaseConnection connection) throws SQLException {
         maybePrepareAndInitialize();
+        if (connection.isClosed()) {
+            connectionTimes.remove(connection);
+        } else if (Thread.currentThread() != validatingThread) {
+            ConnectionTimes times = connectionTimes.get(connection);
+            if (times != null) {
+                times.idleSinceMillis = System.currentTimeMillis();
+            }
+        }
         super.releaseConnection(connection);
     }
     
     /**
-     * Invokes prepare and initialize methods.
+     * Sets the maximum number of prepared statements cached by each pooled
+     * connection. The default is zero, which disables caching. The setting
+     * applies to connections opened after it is changed.
+     * @param statementCacheSize the cache size per connection
+     * @see StatementCachingConnection
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statement cache size must be nonnegative: " + statementCacheSize);
+        }
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Gets the prepared statement cache counters, aggregated over all
+     * connections opened by this source.
+     * @return the counters
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        return statementCacheStats;
+    }
+
+    /**
+     * Sets the minimum number of idle connections to keep in the pool. The
+     * default is zero, which opens connections only on demand. If positive,
+     * {@link #forcePrepareAndInitialize()} opens that many connections in
+     * the background, and connections closed by the pool, for example
+     * because they expired or failed a test, are replaced in the background
+     * until this source is closed. The floor is capped by the maximum number
+     * of free connections.
+     * @param minIdle the minimum number of idle connections
+     */
+    public void setMinIdle(int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("minimum idle connections must be nonnegative: " + minIdle);
+        }
+        this.minIdle = minIdle;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    @Override
+    public void setMaxConnectionsFree(int maxConnectionsFree) {
+        super.setMaxConnectionsFree(maxConnectionsFree);
+        this.maxConnectionsFree = maxConnectionsFree;
+    }
+
+    @Override
+    public void setMaxConnectionAgeMillis(long maxConnectionAgeMillis) {
+        super.setMaxConnectionAgeMillis(maxConnectionAgeMillis);
+        this.maxConnectionAgeMillis = maxConnectionAgeMillis;
+    }
+
+    /**
+     * Sets the interval between runs of the background maintenance task.
+     * The default is zero, which disables the task. Each run validates the
+     * idle connections, closes those that fail validation, are older than
+     * the maximum connection age, or have been idle longer than the maximum
+     * idle time, and then opens connections up to the minimum number of idle
+     * connections. When enabled, the task replaces the connection tester of
+     * the superclass. Must be set before this source is initialized.
+     * @param maintenanceIntervalMillis the interval in milliseconds
+     * @see #getMaintenanceStats()
+     */
+    public void setMaintenanceIntervalMillis(long maintenanceIntervalMillis) {
+        if (maintenanceIntervalMillis < 0) {
+            throw new IllegalArgumentException("maintenance interval must be nonnegative: " + maintenanceIntervalMillis);
+        }
+        this.maintenanceIntervalMillis = maintenanceIntervalMillis;
+    }
+
+    public long getMaintenanceIntervalMillis() {
+        return maintenanceIntervalMillis;
+    }
+
+    /**
+     * Sets the time a connection may sit idle in the pool before the
+     * maintenance task closes it. Connections are not closed for being idle
+     * if that would leave fewer than the minimum number of idle connections.
+     * The default is zero, which means idle connections are kept.
+     * @param maxIdleMillis the maximum idle time in milliseconds
+     */
+    public void setMaxIdleMillis(long maxIdleMillis) {
+        if (maxIdleMillis < 0) {
+            throw new IllegalArgumentException("maximum idle time must be nonnegative: " + maxIdleMillis);
+        }
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    public long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    /**
+     * Sets the query the maintenance task executes to validate an idle
+     * connection. The default is null, which means the JDBC driver's
+     * {@link Connection#isValid(int)} check is used instead.
+     * @param validationQuery the validation query, or null
+     */
+    public void setValidationQuery(@Nullable String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    @Nullable
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    /**
+     * Sets the number of seconds to wait for a connection to be validated.
+     * @param validationTimeoutSeconds the timeout; zero means no timeout
+     */
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        if (validationTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("validation timeout must be nonnegative: " + validationTimeoutSeconds);
+        }
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    /**
+     * Gets the background maintenance counters.
+     * @return the counters
+     */
+    public PoolMaintenanceStats getMaintenanceStats() {
+        return maintenanceStats;
+    }
+
+    @Override
+    protected void closeConnection(DatabaseConnection connection) throws SQLException {
+        ConnectionTimes times = connectionTimes.remove(connection);
+        super.closeConnection(connection);
+        if (times != null && Thread.currentThread() == validatingThread
+                && System.currentTimeMillis() - times.createdMillis >= maxConnectionAgeMillis) {
+            maintenanceStats.recordLifetimeEviction();
+        }
+        requestReplenish();
+    }
+
+    private int getIdleFloor() {
+        return Math.min(minIdle, maxConnectionsFree);
+    }
+
+    /**
+     * Schedules a background task that tops up the idle connections, unless
+     * one is already pending. This is invoked while the pool's lock is held,
+     * so it must not wait on the pool.
+     */
+    private void requestReplenish() {
+        if (closed || getIdleFloor() <= 0 || !replenishPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (maintenanceLock) {
+                getMaintenanceExecutor().execute(this::replenish);
+            }
+        } catch (RejectedExecutionException e) {
+            replenishPending.set(false);
+        }
+    }
+
+    private ScheduledExecutorService getMaintenanceExecutor() {
+        if (maintenanceExecutor == null) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true).setNameFormat(getClass().getSimpleName() + "-maintenance-%d").build());
+        }
+        return maintenanceExecutor;
+    }
+
+    private void startMaintenance() {
+        long interval = maintenanceIntervalMillis;
+        if (interval <= 0 || closed) {
+            return;
+        }
+        setCheckConnectionsEveryMillis(0);
+        synchronized (maintenanceLock) {
+            getMaintenanceExecutor().scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Validates the idle connections and evicts those that are invalid,
+     * expired, or idle for too long. Idle connections are checked out one at
+     * a time, oldest first, and released again if they are kept, until a
+     * connection comes around a second time or none are idle. Checking out an
+     * expired connection makes the pool close it.
+     */
+    private void maintain() {
+        Set<DatabaseConnection> validated = Collections.newSetFromMap(new IdentityHashMap<>());
+        validatingThread = Thread.currentThread();
+        try {
+            while (!closed) {
+                DatabaseConnection connection;
+                try {
+                    connection = getReadWriteConnection(null);
+                } catch (NoIdleConnectionException e) {
+                    break;
+                }
+                if (!validated.add(connection)) {
+                    releaseConnection(connection);
+                    break;
+                }
+                ConnectionTimes times = connectionTimes.get(connection);
+                long maxIdle = maxIdleMillis;
+                if (maxIdle > 0 && times != null && System.currentTimeMillis() - times.idleSinceMillis >= maxIdle
+                        && getCurrentConnectionsFree() >= getIdleFloor()) {
+                    discard(connection);
+                    maintenanceStats.recordIdleEviction();
+                } else if (validate(connection)) {
+                    releaseConnection(connection);
+                } else {
+                    discard(connection);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (!closed) {
+                logger.warn(e, "pool maintenance failed");
+            }
+        } finally {
+            validatingThread = null;
+        }
+        maintenanceStats.recordRun();
+        replenish();
+    }
+
+    private boolean validate(DatabaseConnection connection) {
+        boolean valid;
+        try {
+            String query = validationQuery;
+            Connection jdbcConnection = DatabaseConnections.findJdbcConnection(connection);
+            if (jdbcConnection == null) {
+                connection.executeStatement(query == null ? getDatabaseType().getPingStatement() : query, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+                valid = true;
+            } else if (query == null) {
+                valid = jdbcConnection.isValid(validationTimeoutSeconds);
+            } else {
+                try (Statement statement = jdbcConnection.createStatement()) {
+                    statement.setQueryTimeout(validationTimeoutSeconds);
+                    statement.execute(query);
+                }
+                valid = true;
+            }
+        } catch (SQLException e) {
+            logger.debug(e, "connection failed validation");
+            valid = false;
+        }
+        maintenanceStats.recordValidation(valid);
+        return valid;
+    }
+
+    /**
+     * Closes a checked-out connection and releases it, so that the pool
+     * forgets it.
+     */
+    private void discard(DatabaseConnection connection) throws SQLException {
+        connectionTimes.remove(connection);
+        try {
+            connection.close();
+        } catch (IOException e) {
+            logger.debug(e, "failed to close discarded connection");
+        }
+        releaseConnection(connection);
+    }
+
+    /**
+     * Opens connections until the pool holds the minimum number of idle
+     * connections. Idle connections are checked out along with the new ones
+     * and all are released together, because the pool only adds connections
+     * to its free list on release.
+     */
+    private void replenish() {
+        replenishPending.set(false);
+        int floor = getIdleFloor();
+        if (closed || getCurrentConnectionsFree() >= floor) {
+            return;
+        }
+        List<DatabaseConnection> connections = new ArrayList<>(floor);
+        try {
+            while (connections.size() < floor && !closed) {
+                connections.add(getReadWriteConnection(null));
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (!closed) {
+                logger.warn(e, "failed to open idle connection");
+            }
+        } finally {
+            for (DatabaseConnection connection : connections) {
+                try {
+                    releaseConnection(connection);
+                } catch (SQLException | RuntimeException e) {
+                    logger.debug(e, "failed to release idle connection");
+                }
+            }
+        }
+        logger.debug("replenished idle connections to {}", floor);
+    }
+
+    @Override
+    protected DatabaseConnection makeConnection(Logger logger) throws SQLException {
+        if (Thread.currentThread() == validatingThread) {
+            throw new NoIdleConnectionException();
+        }
+        DatabaseConnection connection = super.makeConnection(logger);
+        int cacheSize = statementCacheSize;
+        if (cacheSize > 0 && connection.getClass() == JdbcDatabaseConnection.class) {
+            connection = new StatementCachingConnection(((JdbcDatabaseConnection) connection).getInternalConnection(), cacheSize, statementCacheStats);
+        }
+        connectionTimes.put(connection, new ConnectionTimes(System.currentTimeMillis()));
+        return connection;
+    }
+
+    /**
+     * Exception thrown to the maintenance task instead of opening a new
+     * connection when the pool has no idle connection to check out.
+     */
+    private static class NoIdleConnectionException extends SQLException {
+
+        private static final long serialVersionUID = 0;
+
+        public NoIdleConnectionException() {
+            super("no idle connection");
+        }
+    }
+
+    private static class ConnectionTimes {
+
+        public final long createdMillis;
+        public volatile long idleSinceMillis;
+
+        public ConnectionTimes(long createdMillis) {
+            this.createdMillis = createdMillis;
+            this.idleSinceMillis = createdMillis;
+        }
+    }
+
+    /**
+     * Invokes prepare and initialize methods. If a minimum number of idle
+     * connections is set, they are opened in the background.
      * @throws SQLException on database error
      * @see #prepare() 
      * @see #initialize() 
+     * @see #setMinIdle(int)
      */
     public void forcePrepareAndInitialize() throws SQLException {
         maybePrepareAndInitialize();
+        requestReplenish();
     }
 }
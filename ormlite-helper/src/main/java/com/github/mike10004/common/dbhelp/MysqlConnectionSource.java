@@ -4,6 +4,7 @@ import com.google.common.base.MoreObjects;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.db.DatabaseTypeUtils;
+import com.j256.ormlite.support.ConnectionSource;
 import java.sql.SQLException;
 
 /**
@@ -21,6 +22,19 @@ public class MysqlConnectionSource extends LazyJdbcPooledConnectionSource {
         this(new ConnectionParams());
     }
     
+    /**
+     * Creates a connection source for a MySQL database using a given pool
+     * implementation. The URL is constructed as by an instance of this class.
+     * @param connectionParams the connection parameters
+     * @param poolFactory the pool factory
+     * @return a new connection source that is initialized when first used
+     */
+    public static ConnectionSource create(ConnectionParams connectionParams, PooledConnectionSourceFactory poolFactory) {
+        checkNotNull(poolFactory, "poolFactory");
+        String url = new MysqlConnectionSource(connectionParams).constructJdbcUrl();
+        return poolFactory.createConnectionSource(url, connectionParams.username, connectionParams.password);
+    }
+
     @Override
     protected DatabaseType forceGetDatabaseType() {
         return DatabaseTypeUtils.createDatabaseType("jdbc:mysql://localhost:3306/");
@@ -46,11 +60,21 @@ public class MysqlConnectionSource extends LazyJdbcPooledConnectionSource {
         return url;
     }
     
+    /**
+     * Constructs the JDBC URL for a set of connection parameters. Properties
+     * of the tuning profile, if any, are appended as the query string.
+     * @param connectionParams_ the connection parameters
+     * @return the URL
+     */
     public String constructJdbcUrl(ConnectionParams connectionParams_) {
         String url = "jdbc:mysql://" 
                 + MoreObjects.firstNonNull(connectionParams_.host, "localhost") 
                 + "/" 
                 + MoreObjects.firstNonNull(connectionParams_.schema, "");
+        String query = MoreObjects.firstNonNull(connectionParams_.tuningProfile, MysqlTuningProfile.NONE).toQueryString();
+        if (!query.isEmpty()) {
+            url += "?" + query;
+        }
         return url;
     }
 }
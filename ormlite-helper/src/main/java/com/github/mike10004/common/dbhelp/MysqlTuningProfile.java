@@ -0,0 +1,197 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable set of MySQL Connector/J properties that affect performance,
+ * appended to the JDBC URL by {@link MysqlConnectionSource}. Start from one
+ * of the presets, or from {@link #NONE}, and adjust it with the
+ * {@code with} methods, each of which returns a new instance.
+ * @see ConnectionParams#setTuningProfile(MysqlTuningProfile)
+ */
+public final class MysqlTuningProfile {
+
+    /**
+     * Profile that sets no properties, leaving the driver defaults.
+     */
+    public static final MysqlTuningProfile NONE = new MysqlTuningProfile(ImmutableMap.of());
+
+    /**
+     * Profile for many short transactions that repeat the same statements:
+     * prepared statements are cached on the client and prepared on the
+     * server, and idle connections are kept alive.
+     */
+    public static final MysqlTuningProfile OLTP = NONE
+            .withCachePrepStmts(true)
+            .withPrepStmtCacheSize(250)
+            .withPrepStmtCacheSqlLimit(2048)
+            .withUseServerPrepStmts(true)
+            .withTcpKeepAlive(true);
+
+    /**
+     * Profile for inserting many rows in batches: batched inserts are
+     * rewritten into multi-row statements, which requires client-side
+     * prepared statements, and the socket send buffer is enlarged.
+     */
+    public static final MysqlTuningProfile BULK_LOAD = NONE
+            .withRewriteBatchedStatements(true)
+            .withUseServerPrepStmts(false)
+            .withCachePrepStmts(true)
+            .withTcpSndBuf(1024 * 1024)
+            .withTcpKeepAlive(true);
+
+    /**
+     * Profile for long-running queries with large results: rows are fetched
+     * with a server-side cursor in chunks, the protocol is compressed, and
+     * the socket receive buffer is enlarged.
+     */
+    public static final MysqlTuningProfile ANALYTICS = NONE
+            .withUseCursorFetch(true)
+            .withDefaultFetchSize(1000)
+            .withUseCompression(true)
+            .withTcpRcvBuf(1024 * 1024)
+            .withTcpKeepAlive(true);
+
+    private final ImmutableMap<String, String> properties;
+
+    private MysqlTuningProfile(ImmutableMap<String, String> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns a profile with a property set to a value, replacing any
+     * value the property had in this profile.
+     * @param name the Connector/J property name
+     * @param value the value
+     * @return the new profile
+     */
+    public MysqlTuningProfile withProperty(String name, String value) {
+        checkArgument(!checkNotNull(name, "name").isEmpty(), "name must be non-empty");
+        checkNotNull(value, "value");
+        Map<String, String> copy = new LinkedHashMap<>(properties);
+        copy.put(name, value);
+        return new MysqlTuningProfile(ImmutableMap.copyOf(copy));
+    }
+
+    public MysqlTuningProfile withRewriteBatchedStatements(boolean rewriteBatchedStatements) {
+        return withProperty("rewriteBatchedStatements", String.valueOf(rewriteBatchedStatements));
+    }
+
+    public MysqlTuningProfile withCachePrepStmts(boolean cachePrepStmts) {
+        return withProperty("cachePrepStmts", String.valueOf(cachePrepStmts));
+    }
+
+    public MysqlTuningProfile withPrepStmtCacheSize(int prepStmtCacheSize) {
+        checkArgument(prepStmtCacheSize >= 0, "prepStmtCacheSize must be nonnegative: %s", prepStmtCacheSize);
+        return withProperty("prepStmtCacheSize", String.valueOf(prepStmtCacheSize));
+    }
+
+    public MysqlTuningProfile withPrepStmtCacheSqlLimit(int prepStmtCacheSqlLimit) {
+        checkArgument(prepStmtCacheSqlLimit >= 0, "prepStmtCacheSqlLimit must be nonnegative: %s", prepStmtCacheSqlLimit);
+        return withProperty("prepStmtCacheSqlLimit", String.valueOf(prepStmtCacheSqlLimit));
+    }
+
+    public MysqlTuningProfile withUseServerPrepStmts(boolean useServerPrepStmts) {
+        return withProperty("useServerPrepStmts", String.valueOf(useServerPrepStmts));
+    }
+
+    public MysqlTuningProfile withUseCompression(boolean useCompression) {
+        return withProperty("useCompression", String.valueOf(useCompression));
+    }
+
+    public MysqlTuningProfile withTcpKeepAlive(boolean tcpKeepAlive) {
+        return withProperty("tcpKeepAlive", String.valueOf(tcpKeepAlive));
+    }
+
+    /**
+     * Returns a profile with a socket receive buffer size.
+     * @param tcpRcvBuf the buffer size in bytes; zero means the platform default
+     * @return the new profile
+     */
+    public MysqlTuningProfile withTcpRcvBuf(int tcpRcvBuf) {
+        checkArgument(tcpRcvBuf >= 0, "tcpRcvBuf must be nonnegative: %s", tcpRcvBuf);
+        return withProperty("tcpRcvBuf", String.valueOf(tcpRcvBuf));
+    }
+
+    /**
+     * Returns a profile with a socket send buffer size.
+     * @param tcpSndBuf the buffer size in bytes; zero means the platform default
+     * @return the new profile
+     */
+    public MysqlTuningProfile withTcpSndBuf(int tcpSndBuf) {
+        checkArgument(tcpSndBuf >= 0, "tcpSndBuf must be nonnegative: %s", tcpSndBuf);
+        return withProperty("tcpSndBuf", String.valueOf(tcpSndBuf));
+    }
+
+    public MysqlTuningProfile withUseCursorFetch(boolean useCursorFetch) {
+        return withProperty("useCursorFetch", String.valueOf(useCursorFetch));
+    }
+
+    public MysqlTuningProfile withDefaultFetchSize(int defaultFetchSize) {
+        checkArgument(defaultFetchSize >= 0, "defaultFetchSize must be nonnegative: %s", defaultFetchSize);
+        return withProperty("defaultFetchSize", String.valueOf(defaultFetchSize));
+    }
+
+    /**
+     * Gets the properties in the order they were first set.
+     * @return the properties
+     */
+    public ImmutableMap<String, String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Formats the properties as a URL query string, without the leading
+     * question mark. Names and values are URL-encoded.
+     * @return the query string, or an empty string if no properties are set
+     */
+    public String toQueryString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(encode(property.getKey())).append('=').append(encode(property.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MysqlTuningProfile that = (MysqlTuningProfile) o;
+        return Objects.equals(properties, that.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        return properties.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("properties", properties)
+                .toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class that represents counters for the background maintenance of a pooled
+ * connection source.
+ * @see LazyJdbcPooledConnectionSource#setMaintenanceIntervalMillis(long)
+ */
+public class PoolMaintenanceStats {
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder lifetimeEvictions = new LongAdder();
+
+    void recordRun() {
+        runs.increment();
+    }
+
+    void recordValidation(boolean valid) {
+        validations.increment();
+        if (!valid) {
+            validationFailures.increment();
+        }
+    }
+
+    void recordIdleEviction() {
+        idleEvictions.increment();
+    }
+
+    void recordLifetimeEviction() {
+        lifetimeEvictions.increment();
+    }
+
+    /**
+     * Gets the number of completed maintenance runs.
+     * @return the run count
+     */
+    public long getRunCount() {
+        return runs.sum();
+    }
+
+    /**
+     * Gets the number of idle connections validated.
+     * @return the validation count
+     */
+    public long getValidationCount() {
+        return validations.sum();
+    }
+
+    /**
+     * Gets the number of idle connections that failed validation and were
+     * closed.
+     * @return the failure count
+     */
+    public long getValidationFailureCount() {
+        return validationFailures.sum();
+    }
+
+    /**
+     * Gets the number of connections closed because they were idle longer
+     * than the maximum idle time.
+     * @return the eviction count
+     */
+    public long getIdleEvictionCount() {
+        return idleEvictions.sum();
+    }
+
+    /**
+     * Gets the number of connections closed because they were older than
+     * the maximum connection age.
+     * @return the eviction count
+     */
+    public long getLifetimeEvictionCount() {
+        return lifetimeEvictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("runs", getRunCount())
+                .add("validations", getValidationCount())
+                .add("validationFailures", getValidationFailureCount())
+                .add("idleEvictions", getIdleEvictionCount())
+                .add("lifetimeEvictions", getLifetimeEvictionCount())
+                .toString();
+    }
+}
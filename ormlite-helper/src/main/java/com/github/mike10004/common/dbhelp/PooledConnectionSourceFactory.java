@@ -0,0 +1,43 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import javax.annotation.Nullable;
+
+/**
+ * Interface of a factory that creates pooled connection sources. The
+ * connection sources created do not open connections until they are first
+ * used.
+ * @see MysqlConnectionSource#create(ConnectionParams, PooledConnectionSourceFactory)
+ */
+public interface PooledConnectionSourceFactory {
+
+    /**
+     * Creates a pooled connection source.
+     * @param url the JDBC URL
+     * @param username the username, or null
+     * @param password the password, or null
+     * @return a new connection source
+     */
+    ConnectionSource createConnectionSource(String url, @Nullable String username, @Nullable String password);
+
+    /**
+     * Gets a factory of connection sources that use ORMLite's own pool.
+     * @return the factory
+     * @see LazyJdbcPooledConnectionSource
+     */
+    static PooledConnectionSourceFactory ormlite() {
+        return JdbcUrlPooledConnectionSource::new;
+    }
+
+    /**
+     * Gets a factory of connection sources that use a HikariCP pool with
+     * default settings. HikariCP must be on the classpath.
+     * @return the factory
+     * @see HikariConnectionSource
+     */
+    static PooledConnectionSourceFactory hikari() {
+        return HikariConnectionSource::new;
+    }
+
+}
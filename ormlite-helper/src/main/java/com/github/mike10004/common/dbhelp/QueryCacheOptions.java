@@ -0,0 +1,100 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Class that represents the bounds of a query result cache. A cache is
+ * bounded either by the number of cached results or by the total number of
+ * rows in them, and results may also expire a fixed time after they are
+ * loaded. Instances are immutable.
+ * @see QueryCachingDao
+ * @see DefaultDatabaseContext#setQueryCache(Class, QueryCacheOptions)
+ */
+public final class QueryCacheOptions {
+
+    private final long maximumSize;
+    private final long maximumRows;
+    private final long expireAfterWriteNanos;
+
+    private QueryCacheOptions(long maximumSize, long maximumRows, long expireAfterWriteNanos) {
+        this.maximumSize = maximumSize;
+        this.maximumRows = maximumRows;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+    }
+
+    /**
+     * Creates options for a cache that holds at most a given number of
+     * results.
+     * @param maximumSize the maximum number of results
+     * @return the options
+     */
+    public static QueryCacheOptions maximumSize(long maximumSize) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive: %s", maximumSize);
+        return new QueryCacheOptions(maximumSize, -1, 0);
+    }
+
+    /**
+     * Creates options for a cache whose results hold at most a given total
+     * number of rows. Empty results, single entities, and counts count as
+     * one row each. This bounds memory use more closely than the number of
+     * results does when result sizes vary.
+     * @param maximumRows the maximum total number of rows
+     * @return the options
+     */
+    public static QueryCacheOptions maximumRows(long maximumRows) {
+        checkArgument(maximumRows > 0, "maximumRows must be positive: %s", maximumRows);
+        return new QueryCacheOptions(-1, maximumRows, 0);
+    }
+
+    /**
+     * Returns a copy of these options with results that expire a fixed time
+     * after they are loaded. Expiry bounds how long a result can remain
+     * stale after its tables are changed by writes the context does not see.
+     * @param duration the duration
+     * @param unit the duration unit
+     * @return the options
+     */
+    public QueryCacheOptions expireAfterWrite(long duration, TimeUnit unit) {
+        checkArgument(duration > 0, "duration must be positive: %s", duration);
+        return new QueryCacheOptions(maximumSize, maximumRows, unit.toNanos(duration));
+    }
+
+    /**
+     * Gets the maximum number of results.
+     * @return the maximum size, or -1 if the cache is bounded by rows
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the maximum total number of rows.
+     * @return the maximum number of rows, or -1 if the cache is bounded by
+     * the number of results
+     */
+    public long getMaximumRows() {
+        return maximumRows;
+    }
+
+    /**
+     * Gets the time after which results expire.
+     * @param unit the unit of the return value
+     * @return the duration, or zero if results do not expire
+     */
+    public long getExpireAfterWrite(TimeUnit unit) {
+        return unit.convert(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maximumSize", maximumSize)
+                .add("maximumRows", maximumRows)
+                .add("expireAfterWriteNanos", expireAfterWriteNanos)
+                .toString();
+    }
+}
@@ -0,0 +1,295 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.Daos.DaoDelegator;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Data access object that keeps the results of prepared queries in a
+ * bounded cache. The results of {@link #query(PreparedQuery)},
+ * {@link #queryForFirst(PreparedQuery)}, and {@link #countOf(PreparedQuery)}
+ * are cached, including those of queries run by this dao's query builders,
+ * keyed by the SQL of the prepared query and the values of its arguments.
+ * On a miss, one thread runs the query while other threads asking for the
+ * same result wait for it.
+ *
+ * <p>A cached result is discarded when a table it was read from is written.
+ * The tables a query reads from are taken to be the tables known to the
+ * context whose names occur in its SQL, which covers joins built with
+ * query builders. Writes are seen if they go through this dao or, when the
+ * dao is created by a {@link DefaultDatabaseContext#setQueryCache(Class, QueryCacheOptions)
+ * database context}, through any dao, batch writer, or table utils instance
+ * of the context. Raw statements are taken to write every table. Other
+ * writes, including those made through tables reached only by views or
+ * triggers, are not seen; bound the staleness they cause with
+ * {@link QueryCacheOptions#expireAfterWrite(long, TimeUnit) expiry}.</p>
+ *
+ * <p>Queries run while a transaction holds a connection for this dao's table
+ * bypass the cache, so that a transaction sees its own writes and its
+ * uncommitted results are not cached. Until the transaction commits, other
+ * threads still read and cache the rows from before its writes; when the
+ * dao is created by a context, writes made in a transaction run by the
+ * context's transaction manager are therefore recorded again when the
+ * transaction ends. Otherwise such a result may be cached until the next
+ * write.</p>
+ *
+ * <p>Cached entities are shared by all callers and must not be modified.
+ * The lists returned by {@link #query(PreparedQuery) query} are copies and
+ * may be.</p>
+ *
+ * @param <T> the entity type
+ * @param <ID> the id type
+ */
+public class QueryCachingDao<T, ID> extends DaoDelegator<T, ID> {
+
+    private final Cache<Key, Result> cache;
+    private final TableVersions tableVersions;
+    private final String tableName;
+
+    /**
+     * Constructs a dao that sees only the writes that go through itself.
+     * @param delegate the delegate
+     * @param options the cache options
+     */
+    public QueryCachingDao(Dao<T, ID> delegate, QueryCacheOptions options) {
+        this(new TableWriteTrackingDao<>(delegate, new TableVersions()), options);
+    }
+
+    QueryCachingDao(TableWriteTrackingDao<T, ID> delegate, QueryCacheOptions options) {
+        super(delegate);
+        tableVersions = delegate.getTableVersions();
+        tableName = delegate.getTableName();
+        cache = buildCache(checkNotNull(options, "options"));
+    }
+
+    private static Cache<Key, Result> buildCache(QueryCacheOptions options) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        long expireAfterWriteNanos = options.getExpireAfterWrite(TimeUnit.NANOSECONDS);
+        if (expireAfterWriteNanos > 0) {
+            builder.expireAfterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+        }
+        if (options.getMaximumRows() < 0) {
+            return builder.maximumSize(options.getMaximumSize()).build();
+        }
+        return builder.maximumWeight(options.getMaximumRows())
+                .weigher((Key key, Result result) -> result.rows)
+                .build();
+    }
+
+    /**
+     * Gets the statistics of the cache: hits, misses, loads, and evictions.
+     * A hit on a result that turns out to be stale is followed by a miss.
+     * @return the statistics
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Gets the approximate number of cached results.
+     * @return the number of entries
+     */
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public List<T> query(PreparedQuery<T> preparedQuery) throws SQLException {
+        List<T> rows = lookup("query", preparedQuery, () -> super.query(preparedQuery));
+        return new ArrayList<>(rows);
+    }
+
+    @Override
+    public T queryForFirst(PreparedQuery<T> preparedQuery) throws SQLException {
+        Optional<T> first = lookup("queryForFirst", preparedQuery, () -> Optional.ofNullable(super.queryForFirst(preparedQuery)));
+        return first.orElse(null);
+    }
+
+    @Override
+    public long countOf(PreparedQuery<T> preparedQuery) throws SQLException {
+        Long count = lookup("countOf", preparedQuery, () -> super.countOf(preparedQuery));
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R lookup(String method, PreparedQuery<T> preparedQuery, SqlSupplier<R> loader) throws SQLException {
+        if (ConnectionSources.isInTransaction(getConnectionSource(), tableName)) {
+            return loader.get();
+        }
+        Key key = Key.create(method, preparedQuery);
+        if (key == null) {
+            return loader.get();
+        }
+        boolean[] loaded = {false};
+        Callable<Result> valueLoader = () -> {
+            loaded[0] = true;
+            List<String> tables = tableVersions.findTables(key.statement);
+            long stamp = tableVersions.stamp(tables);
+            return new Result(loader.get(), tables, stamp);
+        };
+        Result result = get(key, valueLoader);
+        if (!loaded[0] && tableVersions.stamp(result.tables) != result.stamp) {
+            cache.asMap().remove(key, result);
+            result = get(key, valueLoader);
+        }
+        return (R) result.value;
+    }
+
+    private Result get(Key key, Callable<Result> valueLoader) throws SQLException {
+        try {
+            return cache.get(key, valueLoader);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    private static final class Result {
+
+        public final Object value;
+        public final List<String> tables;
+        public final long stamp;
+        public final int rows;
+
+        public Result(Object value, List<String> tables, long stamp) {
+            this.value = value;
+            this.tables = tables;
+            this.stamp = stamp;
+            rows = value instanceof List ? Math.max(1, ((List<?>) value).size()) : 1;
+        }
+    }
+
+    private static final class Key {
+
+        private final String method;
+        private final String statement;
+        private final List<Object> arguments;
+        private final int maxRows;
+
+        private Key(String method, String statement, List<Object> arguments, int maxRows) {
+            this.method = method;
+            this.statement = statement;
+            this.arguments = arguments;
+            this.maxRows = maxRows;
+        }
+
+        /**
+         * Creates the key of a prepared query. The argument values are
+         * captured by compiling the query against a connection that
+         * records them.
+         * @return the key, or null if the arguments could not be captured
+         */
+        @Nullable
+        public static Key create(String method, PreparedQuery<?> preparedQuery) {
+            ArgumentRecorder recorder = new ArgumentRecorder();
+            try {
+                preparedQuery.compile(recorder.newConnection(), preparedQuery.getType());
+                return new Key(method, preparedQuery.getStatement(), recorder.arguments, recorder.maxRows);
+            } catch (SQLException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return maxRows == key.maxRows
+                    && method.equals(key.method)
+                    && statement.equals(key.statement)
+                    && arguments.equals(key.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, statement, arguments, maxRows);
+        }
+    }
+
+    /**
+     * Invocation handler for a connection and the statements it compiles
+     * that records the arguments assigned to the statements and does
+     * nothing else.
+     */
+    private static final class ArgumentRecorder implements InvocationHandler {
+
+        private final List<Object> arguments = new ArrayList<>();
+        private int maxRows = -1;
+
+        public DatabaseConnection newConnection() {
+            return (DatabaseConnection) Proxy.newProxyInstance(DatabaseConnection.class.getClassLoader(), new Class<?>[]{DatabaseConnection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "compileStatement":
+                    return Proxy.newProxyInstance(CompiledStatement.class.getClassLoader(), new Class<?>[]{CompiledStatement.class}, this);
+                case "setObject":
+                    int index = (Integer) args[0];
+                    while (arguments.size() <= index) {
+                        arguments.add(null);
+                    }
+                    arguments.set(index, toKeyValue(args[1]));
+                    return null;
+                case "setMaxRows":
+                    maxRows = (Integer) args[0];
+                    return null;
+                case "close":
+                case "closeQuietly":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        @Nullable
+        private static Object toKeyValue(@Nullable Object value) {
+            if (value instanceof byte[]) {
+                return ByteBuffer.wrap(((byte[]) value).clone());
+            }
+            if (value != null && value.getClass().isArray()) {
+                throw new UnsupportedOperationException("array argument of type " + value.getClass());
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.DatabaseConnections.DatabaseConnectionDelegator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.H2DatabaseType;
+import com.j256.ormlite.db.MysqlDatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcCompiledStatement;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility methods relating to streaming query results.
+ * @see DatabaseContext#streamQuery(Class, PreparedQuery, StreamOptions)
+ */
+public class QueryStreams {
+
+    private static final String H2_ENABLE_LAZY = "SET LAZY_QUERY_EXECUTION 1";
+    private static final String H2_DISABLE_LAZY = "SET LAZY_QUERY_EXECUTION 0";
+
+    private QueryStreams() {}
+
+    /**
+     * Executes a query and returns a stream of its results. Rows are mapped
+     * to entities as the stream is consumed. A connection is held until the
+     * stream is closed or all rows have been consumed, so callers that may
+     * not consume every row should use a try-with-resources block. While the
+     * stream is open, the connection should not be used for other statements;
+     * with single-connection sources, that means the context should not be
+     * used for anything else.
+     * @param <T> the entity type
+     * @param dao the dao
+     * @param query the query
+     * @param options the stream options
+     * @return a stream of query results
+     * @throws SQLException if executing the query fails
+     */
+    public static <T> Stream<T> stream(Dao<T, ?> dao, PreparedQuery<T> query, StreamOptions options) throws SQLException {
+        checkNotNull(query, "query");
+        checkNotNull(options, "options");
+        ConnectionSource connectionSource = dao.getConnectionSource();
+        DatabaseType databaseType = connectionSource.getDatabaseType();
+        boolean lazyH2 = options.isBoundedMemory() && databaseType instanceof H2DatabaseType;
+        int fetchSize = options.getFetchSize();
+        if (options.isBoundedMemory() && databaseType instanceof MysqlDatabaseType) {
+            fetchSize = Integer.MIN_VALUE;
+        }
+        ObjectCache objectCache = options.isBoundedMemory() ? null : dao.getObjectCache();
+        DatabaseConnection connection = connectionSource.getReadOnlyConnection(dao.getTableName());
+        ResultsIterator<T> iterator = new ResultsIterator<>(connectionSource, connection, query, lazyH2);
+        try {
+            if (lazyH2) {
+                connection.executeStatement(H2_ENABLE_LAZY, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+            }
+            iterator.compiledStatement = query.compile(new FetchSizeConnection(connection, fetchSize), StatementType.SELECT);
+            iterator.results = iterator.compiledStatement.runQuery(objectCache);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                iterator.close();
+            } catch (SQLException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::closeUnchecked);
+    }
+
+    private static class FetchSizeConnection extends DatabaseConnectionDelegator {
+
+        private final int fetchSize;
+
+        public FetchSizeConnection(DatabaseConnection delegate, int fetchSize) {
+            super(delegate);
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public CompiledStatement compileStatement(String statement, StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+            PreparedStatement preparedStatement = DatabaseConnections.getJdbcConnection(getDelegate())
+                    .prepareStatement(statement, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(fetchSize);
+            return new JdbcCompiledStatement(preparedStatement, type, cacheStore);
+        }
+    }
+
+    private static class ResultsIterator<T> implements Iterator<T> {
+
+        private final ConnectionSource connectionSource;
+        private final DatabaseConnection connection;
+        private final PreparedQuery<T> rowMapper;
+        private final boolean lazyH2;
+        private CompiledStatement compiledStatement;
+        private DatabaseResults results;
+        private boolean advanced;
+        private boolean hasNext;
+        private boolean closed;
+
+        public ResultsIterator(ConnectionSource connectionSource, DatabaseConnection connection, PreparedQuery<T> rowMapper, boolean lazyH2) {
+            this.connectionSource = connectionSource;
+            this.connection = connection;
+            this.rowMapper = rowMapper;
+            this.lazyH2 = lazyH2;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            if (!advanced) {
+                try {
+                    hasNext = results.next();
+                    advanced = true;
+                    if (!hasNext) {
+                        close();
+                    }
+                } catch (SQLException e) {
+                    closeUnchecked();
+                    throw new IllegalStateException("failed to advance to next row", e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+            try {
+                return rowMapper.mapRow(results);
+            } catch (SQLException e) {
+                closeUnchecked();
+                throw new IllegalStateException("failed to map row", e);
+            }
+        }
+
+        public void closeUnchecked() {
+            try {
+                close();
+            } catch (SQLException e) {
+                throw new IllegalStateException("failed to close query results", e);
+            }
+        }
+
+        public void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (results != null) {
+                    results.closeQuietly();
+                }
+                if (compiledStatement != null) {
+                    compiledStatement.closeQuietly();
+                }
+                if (lazyH2) {
+                    connection.executeStatement(H2_DISABLE_LAZY, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+                }
+            } finally {
+                connectionSource.releaseConnection(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Class that represents a policy for retrying failed transactions. The wait
+ * before each retry is chosen at random between zero and a ceiling that
+ * starts at the initial backoff and doubles after each attempt, up to the
+ * maximum backoff. Instances are immutable.
+ * @see RetryingContextTransactionManager
+ */
+public final class RetryPolicy {
+
+    private static final RetryPolicy DEFAULTS = new RetryPolicy(5, 50, 2000);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        checkArgument(maxAttempts > 0, "max attempts must be positive: %s", maxAttempts);
+        checkArgument(initialBackoffMillis >= 0, "initial backoff must be nonnegative: %s", initialBackoffMillis);
+        checkArgument(maxBackoffMillis >= initialBackoffMillis, "max backoff %s must be at least initial backoff %s", maxBackoffMillis, initialBackoffMillis);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Gets the default policy: five attempts, with backoff starting at 50
+     * milliseconds and capped at two seconds.
+     * @return the default policy
+     */
+    public static RetryPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Creates a policy.
+     * @param maxAttempts the maximum number of attempts, including the first
+     * @param initialBackoff the backoff ceiling before the first retry
+     * @param maxBackoff the largest backoff ceiling
+     * @param unit the unit of the backoff arguments
+     * @return the policy
+     */
+    public static RetryPolicy of(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        return new RetryPolicy(maxAttempts, unit.toMillis(initialBackoff), unit.toMillis(maxBackoff));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Computes the wait before the next attempt.
+     * @param failedAttempts the number of attempts made so far
+     * @return the wait in milliseconds
+     */
+    long computeBackoffMillis(int failedAttempts) {
+        long ceiling = initialBackoffMillis;
+        for (int i = 1; i < failedAttempts && ceiling < maxBackoffMillis; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMillis);
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxAttempts", maxAttempts)
+                .add("initialBackoffMillis", initialBackoffMillis)
+                .add("maxBackoffMillis", maxBackoffMillis)
+                .toString();
+    }
+}
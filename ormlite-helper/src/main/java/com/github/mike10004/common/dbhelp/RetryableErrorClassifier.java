@@ -0,0 +1,92 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableSet;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.H2DatabaseType;
+import com.j256.ormlite.db.MysqlDatabaseType;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Set;
+
+/**
+ * Interface of a service that decides whether a failed transaction may
+ * succeed if it is run again.
+ * @see RetryingContextTransactionManager
+ */
+public interface RetryableErrorClassifier {
+
+    /**
+     * Decides whether an error is retryable. Implementations should examine
+     * the exception's causes and chained exceptions, because ORMLite wraps
+     * driver exceptions.
+     * @param exception the exception
+     * @return true if the transaction should be retried
+     */
+    boolean isRetryable(SQLException exception);
+
+    /**
+     * Gets a classifier suited to a database type. MySQL and MariaDB
+     * deadlocks (1213) and lock wait timeouts (1205), H2 deadlocks (40001),
+     * lock timeouts (50200) and concurrent updates (90131), and, for all
+     * databases, serialization failures (SQLState 40001) are retryable.
+     * Other transaction rollback states are not: 40002 is an integrity
+     * constraint violation, and after 40003 the transaction may have
+     * committed, so running it again could apply it twice.
+     * @param databaseType the database type
+     * @return a classifier
+     */
+    static RetryableErrorClassifier forDatabaseType(DatabaseType databaseType) {
+        if (databaseType instanceof MysqlDatabaseType) {
+            return new CodeClassifier(ImmutableSet.of(1213, 1205));
+        }
+        if (databaseType instanceof H2DatabaseType) {
+            return new CodeClassifier(ImmutableSet.of(40001, 50200, 90131));
+        }
+        return new CodeClassifier(ImmutableSet.of());
+    }
+
+    /**
+     * Classifier that matches vendor error codes, the serialization failure
+     * SQLState, and {@link SQLTransactionRollbackException}s that carry no
+     * SQLState.
+     */
+    class CodeClassifier implements RetryableErrorClassifier {
+
+        private static final String SERIALIZATION_FAILURE_STATE = "40001";
+
+        private final ImmutableSet<Integer> vendorCodes;
+
+        public CodeClassifier(Set<Integer> vendorCodes) {
+            this.vendorCodes = ImmutableSet.copyOf(vendorCodes);
+        }
+
+        @Override
+        public boolean isRetryable(SQLException exception) {
+            Throwable current = exception;
+            int depth = 0;
+            while (current != null && depth++ < 32) {
+                if (current instanceof SQLException && matches((SQLException) current)) {
+                    return true;
+                }
+                Throwable next = current.getCause();
+                if (next == null && current instanceof SQLException) {
+                    next = ((SQLException) current).getNextException();
+                }
+                current = next;
+            }
+            return false;
+        }
+
+        private boolean matches(SQLException exception) {
+            if (vendorCodes.contains(exception.getErrorCode())) {
+                return true;
+            }
+            String state = exception.getSQLState();
+            if (state == null) {
+                return exception instanceof SQLTransactionRollbackException;
+            }
+            return SERIALIZATION_FAILURE_STATE.equals(state);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+import com.j256.ormlite.support.ConnectionSource;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Transaction manager that re-runs a transaction when it fails with an error
+ * that a classifier deems retryable, such as a deadlock or lock timeout. The
+ * callable may be invoked more than once, so it must not have side effects
+ * outside the transaction. Waits between attempts follow a retry policy.
+ *
+ * <p>Only the outermost transaction on a thread is retried. A transaction
+ * started inside another one runs once, and its failure propagates to the
+ * outer transaction, which is the one the database rolled back. When the
+ * manager is given a connection source, a transaction on it that was
+ * started elsewhere, such as by another transaction manager, also counts as
+ * an outer transaction.</p>
+ */
+public class RetryingContextTransactionManager implements ContextTransactionManager {
+
+    private final ContextTransactionManager delegate;
+    private final RetryPolicy policy;
+    private final RetryableErrorClassifier classifier;
+    @Nullable
+    private final ConnectionSource connectionSource;
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder nonRetryableFailures = new LongAdder();
+    private final LongAdder exhaustedFailures = new LongAdder();
+
+    /**
+     * Constructs an instance.
+     * @param delegate the transaction manager that runs each attempt
+     * @param policy the retry policy
+     * @param classifier the retryable error classifier
+     */
+    public RetryingContextTransactionManager(ContextTransactionManager delegate, RetryPolicy policy, RetryableErrorClassifier classifier) {
+        this(delegate, policy, classifier, null);
+    }
+
+    /**
+     * Constructs an instance that does not retry transactions started
+     * inside a transaction already active on a connection source.
+     * @param delegate the transaction manager that runs each attempt
+     * @param policy the retry policy
+     * @param classifier the retryable error classifier
+     * @param connectionSource the connection source the delegate uses, or
+     * null to detect only transactions started by this manager
+     */
+    public RetryingContextTransactionManager(ContextTransactionManager delegate, RetryPolicy policy, RetryableErrorClassifier classifier, @Nullable ConnectionSource connectionSource) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.policy = checkNotNull(policy, "policy");
+        this.classifier = checkNotNull(classifier, "classifier");
+        this.connectionSource = connectionSource;
+    }
+
+    /**
+     * Creates a factory suitable for
+     * {@link DefaultDatabaseContext#DefaultDatabaseContext(ConnectionSource, Function, Function)}.
+     * Each transaction manager produced wraps a
+     * {@link DefaultContextTransactionManager} and classifies errors
+     * according to the connection source's database type.
+     * @param policy the retry policy
+     * @return a transaction manager factory
+     */
+    public static Function<ConnectionSource, ContextTransactionManager> factory(RetryPolicy policy) {
+        checkNotNull(policy, "policy");
+        return connectionSource -> new RetryingContextTransactionManager(
+                new DefaultContextTransactionManager(connectionSource), policy,
+                RetryableErrorClassifier.forDatabaseType(connectionSource.getDatabaseType()), connectionSource);
+    }
+
+    @Override
+    public <T> T callInTransaction(Callable<T> callable) throws SQLException {
+        return callWithRetries(callable, false);
+    }
+
+    @Override
+    public <T> T callInReadOnlyTransaction(Callable<T> callable) throws SQLException {
+        return callWithRetries(callable, true);
+    }
+
+    private <T> T callDelegate(Callable<T> callable, boolean readOnly) throws SQLException {
+        return readOnly ? delegate.callInReadOnlyTransaction(callable) : delegate.callInTransaction(callable);
+    }
+
+    private <T> T callWithRetries(Callable<T> callable, boolean readOnly) throws SQLException {
+        int[] currentDepth = depth.get();
+        if (currentDepth[0] > 0 || isInOuterTransaction()) {
+            return callDelegate(callable, readOnly);
+        }
+        currentDepth[0]++;
+        try {
+            return callOutermostWithRetries(callable, readOnly);
+        } finally {
+            currentDepth[0]--;
+        }
+    }
+
+    private boolean isInOuterTransaction() throws SQLException {
+        return connectionSource != null && ConnectionSources.isInTransaction(connectionSource, null);
+    }
+
+    private <T> T callOutermostWithRetries(Callable<T> callable, boolean readOnly) throws SQLException {
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            attempts.increment();
+            try {
+                T result = callDelegate(callable, readOnly);
+                successes.increment();
+                return result;
+            } catch (SQLException e) {
+                if (!classifier.isRetryable(e)) {
+                    nonRetryableFailures.increment();
+                    throw e;
+                }
+                if (attempt >= policy.getMaxAttempts()) {
+                    exhaustedFailures.increment();
+                    throw e;
+                }
+                retries.increment();
+                sleep(policy.computeBackoffMillis(attempt), e);
+            }
+        }
+    }
+
+    private static void sleep(long millis, SQLException pending) throws SQLException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.addSuppressed(e);
+            throw pending;
+        }
+    }
+
+    /**
+     * Gets the number of times a transaction was attempted.
+     * @return the attempt count
+     */
+    public long getAttemptCount() {
+        return attempts.sum();
+    }
+
+    /**
+     * Gets the number of attempts that followed a retryable failure.
+     * @return the retry count
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Gets the number of transactions that eventually committed.
+     * @return the success count
+     */
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    /**
+     * Gets the number of transactions that failed with an error that is not
+     * retryable.
+     * @return the non-retryable failure count
+     */
+    public long getNonRetryableFailureCount() {
+        return nonRetryableFailures.sum();
+    }
+
+    /**
+     * Gets the number of transactions that still failed with a retryable
+     * error after the maximum number of attempts.
+     * @return the exhausted failure count
+     */
+    public long getExhaustedFailureCount() {
+        return exhaustedFailures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("policy", policy)
+                .add("attempts", getAttemptCount())
+                .add("retries", getRetryCount())
+                .add("successes", getSuccessCount())
+                .add("nonRetryableFailures", getNonRetryableFailureCount())
+                .add("exhaustedFailures", getExhaustedFailureCount())
+                .toString();
+    }
+}
@@ -0,0 +1,446 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionSources.ConnectionSourceDelegator;
+import com.github.mike10004.common.dbhelp.DatabaseConnections.DatabaseConnectionDelegator;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connection source that sends read-write requests to a primary source and
+ * read-only requests to replica sources. Reads go to the primary if no
+ * replica is available, if the calling thread has a special connection saved
+ * (as it does inside a transaction), or if the calling thread has pinned
+ * reads to the primary with {@link #pinReadsToPrimary()}.
+ *
+ * <p>A replica that fails to supply a connection a certain number of times in
+ * a row is ejected for a period, during which it receives no requests. After
+ * the period elapses, the replica is tried again; one more failure ejects it
+ * for another period.</p>
+ *
+ * <p>Special connection methods, {@link #isOpen(String)}, and
+ * {@link #getDatabaseType()} are delegated to the primary source, except
+ * that a connection obtained from a replica may be saved as the special
+ * connection, as a read-only transaction does. While it is saved, this
+ * source returns it for all requests made by the calling thread, and
+ * releasing it has no effect. Closing
+ * this source closes the primary and all replicas.</p>
+ */
+public class RoutingConnectionSource extends ConnectionSourceDelegator {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_EJECTION_PERIOD_MS = 30000L;
+
+    /**
+     * Enumeration of strategies for choosing the replica that serves a
+     * read-only request.
+     */
+    public enum ReplicaSelection {
+
+        /**
+         * Use replicas in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Use the replica with the fewest connections currently outstanding.
+         */
+        LEAST_OUTSTANDING
+    }
+
+    private final ConnectionSource primary;
+    private final ImmutableList<Replica> replicas;
+    private final ReplicaSelection selection;
+    private final int failureThreshold;
+    private final long ejectionPeriodNanos;
+    private final Ticker ticker;
+    private final AtomicInteger nextIndex;
+    private final ThreadLocal<int[]> pinDepth;
+    private final ThreadLocal<Deque<Boolean>> primarySaves;
+    private final ThreadLocal<SavedReplicaConnection> savedReplicaConnection;
+
+    /**
+     * Constructs an instance with the default failure threshold and ejection
+     * period.
+     * @param primary the primary connection source
+     * @param replicas the replica connection sources
+     * @param selection the replica selection strategy
+     */
+    public RoutingConnectionSource(ConnectionSource primary, List<? extends ConnectionSource> replicas, ReplicaSelection selection) {
+        this(primary, replicas, selection, DEFAULT_FAILURE_THRESHOLD, DEFAULT_EJECTION_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param primary the primary connection source
+     * @param replicas the replica connection sources
+     * @param selection the replica selection strategy
+     * @param failureThreshold number of consecutive failures after which a
+     * replica is ejected
+     * @param ejectionPeriod duration of an ejection
+     * @param ejectionPeriodUnit unit of the ejection period
+     */
+    public RoutingConnectionSource(ConnectionSource primary, List<? extends ConnectionSource> replicas, ReplicaSelection selection, int failureThreshold, long ejectionPeriod, TimeUnit ejectionPeriodUnit) {
+        this(primary, replicas, selection, failureThreshold, ejectionPeriod, ejectionPeriodUnit, Ticker.systemTicker());
+    }
+
+    RoutingConnectionSource(ConnectionSource primary, List<? extends ConnectionSource> replicas, ReplicaSelection selection, int failureThreshold, long ejectionPeriod, TimeUnit ejectionPeriodUnit, Ticker ticker) {
+        this.primary = checkNotNull(primary, "primary");
+        ImmutableList.Builder<Replica> replicasBuilder = ImmutableList.builder();
+        for (ConnectionSource replica : replicas) {
+            replicasBuilder.add(new Replica(checkNotNull(replica, "replica")));
+        }
+        this.replicas = replicasBuilder.build();
+        this.selection = checkNotNull(selection, "selection");
+        checkArgument(failureThreshold > 0, "failure threshold must be positive: %s", failureThreshold);
+        this.failureThreshold = failureThreshold;
+        checkArgument(ejectionPeriod >= 0, "ejection period must be nonnegative: %s", ejectionPeriod);
+        this.ejectionPeriodNanos = ejectionPeriodUnit.toNanos(ejectionPeriod);
+        this.ticker = checkNotNull(ticker, "ticker");
+        nextIndex = new AtomicInteger();
+        pinDepth = ThreadLocal.withInitial(() -> new int[1]);
+        primarySaves = ThreadLocal.withInitial(ArrayDeque::new);
+        savedReplicaConnection = new ThreadLocal<>();
+    }
+
+    @Override
+    protected ConnectionSource getDelegate() {
+        return primary;
+    }
+
+    /**
+     * Interface of a service that pins the current thread's reads to the
+     * primary source until closed.
+     */
+    public interface Pin extends AutoCloseable {
+
+        /**
+         * Unpins reads. Pins may be nested; reads stay pinned until the
+         * outermost pin is closed. Must be invoked on the thread that
+         * created the pin.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Routes read-only requests made by the current thread to the primary
+     * source until the returned pin is closed. Use this to read your own
+     * writes outside of a transaction.
+     * @return the pin
+     */
+    public Pin pinReadsToPrimary() {
+        int[] depth = pinDepth.get();
+        depth[0]++;
+        return new Pin() {
+
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    if (--depth[0] == 0) {
+                        pinDepth.remove();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Saves a special connection. A connection obtained from a replica
+     * through this source is kept by this source. Any other connection is
+     * saved on the primary source, and while it is saved the calling thread's
+     * reads are pinned to the primary, even if the primary source does not
+     * keep special connections itself.
+     */
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        if (isOwnReplicaConnection(connection)) {
+            SavedReplicaConnection current = savedReplicaConnection.get();
+            if (current == null) {
+                savedReplicaConnection.set(new SavedReplicaConnection((ReplicaConnection) connection));
+                return true;
+            }
+            if (current.connection == connection) {
+                current.nestedCount++;
+                return false;
+            }
+            throw new SQLException("trying to save replica connection " + connection + " but already have saved connection " + current.connection);
+        }
+        boolean saved = primary.saveSpecialConnection(connection);
+        primarySaves.get().push(saved);
+        if (saved) {
+            pinDepth.get()[0]++;
+        }
+        return saved;
+    }
+
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        SavedReplicaConnection current = savedReplicaConnection.get();
+        if (current != null && current.connection == connection) {
+            if (--current.nestedCount == 0) {
+                savedReplicaConnection.remove();
+            }
+            return;
+        }
+        try {
+            primary.clearSpecialConnection(connection);
+        } finally {
+            // callers clear after every save, but only saves that returned true added a pin
+            Deque<Boolean> saves = primarySaves.get();
+            Boolean counted = saves.poll();
+            if (saves.isEmpty()) {
+                primarySaves.remove();
+            }
+            if (Boolean.TRUE.equals(counted)) {
+                int[] depth = pinDepth.get();
+                if (depth[0] > 0 && --depth[0] == 0) {
+                    pinDepth.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether read-only requests from the current thread for a given
+     * table would be sent to the primary source regardless of replica health.
+     * @param tableName the table name
+     * @return true if reads are pinned to the primary
+     */
+    public boolean isReadPinnedToPrimary(String tableName) {
+        return replicas.isEmpty() || pinDepth.get()[0] > 0 || primary.getSpecialConnection(tableName) != null;
+    }
+
+    @Override
+    public DatabaseConnection getSpecialConnection(String tableName) {
+        SavedReplicaConnection current = savedReplicaConnection.get();
+        if (current != null) {
+            return current.connection;
+        }
+        return primary.getSpecialConnection(tableName);
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        SavedReplicaConnection current = savedReplicaConnection.get();
+        if (current != null) {
+            return current.connection;
+        }
+        return primary.getReadWriteConnection(tableName);
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        SavedReplicaConnection current = savedReplicaConnection.get();
+        if (current != null) {
+            return current.connection;
+        }
+        if (isReadPinnedToPrimary(tableName)) {
+            return primary.getReadOnlyConnection(tableName);
+        }
+        int n = replicas.size();
+        boolean[] tried = new boolean[n];
+        int start = Math.floorMod(nextIndex.getAndIncrement(), n);
+        for (int attempt = 0; attempt < n; attempt++) {
+            int index = selectReplica(start, tried);
+            if (index < 0) {
+                break;
+            }
+            tried[index] = true;
+            Replica replica = replicas.get(index);
+            DatabaseConnection connection;
+            try {
+                connection = replica.source.getReadOnlyConnection(tableName);
+            } catch (SQLException | RuntimeException e) {
+                replica.recordFailure();
+                continue;
+            }
+            replica.recordSuccess();
+            replica.outstanding.incrementAndGet();
+            return new ReplicaConnection(this, replica, connection);
+        }
+        return primary.getReadOnlyConnection(tableName);
+    }
+
+    private int selectReplica(int start, boolean[] tried) {
+        int n = replicas.size();
+        long now = ticker.read();
+        int best = -1, bestOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            int index = (start + i) % n;
+            Replica replica = replicas.get(index);
+            if (tried[index] || replica.isEjected(now)) {
+                continue;
+            }
+            if (selection == ReplicaSelection.ROUND_ROBIN) {
+                return index;
+            }
+            int outstanding = replica.outstanding.get();
+            if (outstanding < bestOutstanding) {
+                best = index;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        SavedReplicaConnection current = savedReplicaConnection.get();
+        if (current != null && current.connection == connection) {
+            return;
+        }
+        if (isOwnReplicaConnection(connection)) {
+            ((ReplicaConnection) connection).release();
+        } else {
+            primary.releaseConnection(connection);
+        }
+    }
+
+    private boolean isOwnReplicaConnection(DatabaseConnection connection) {
+        return connection instanceof ReplicaConnection && ((ReplicaConnection) connection).owner == this;
+    }
+
+    /**
+     * Gets the number of replica sources.
+     * @return the number of replicas
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Checks whether a replica is currently ejected.
+     * @param replicaIndex the index of the replica in the list supplied at
+     * construction
+     * @return true if the replica is ejected
+     */
+    public boolean isEjected(int replicaIndex) {
+        checkElementIndex(replicaIndex, replicas.size());
+        return replicas.get(replicaIndex).isEjected(ticker.read());
+    }
+
+    /**
+     * Gets the number of connections obtained from a replica through this
+     * source that have not been released.
+     * @param replicaIndex the index of the replica in the list supplied at
+     * construction
+     * @return the number of outstanding connections
+     */
+    public int getOutstandingCount(int replicaIndex) {
+        checkElementIndex(replicaIndex, replicas.size());
+        return replicas.get(replicaIndex).outstanding.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (Replica replica : replicas) {
+            try {
+                replica.source.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        try {
+            primary.close();
+        } catch (IOException e) {
+            if (exception != null) {
+                e.addSuppressed(exception);
+            }
+            throw e;
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public void closeQuietly() {
+        for (Replica replica : replicas) {
+            replica.source.closeQuietly();
+        }
+        primary.closeQuietly();
+    }
+
+    private class Replica {
+
+        public final ConnectionSource source;
+        public final AtomicInteger outstanding = new AtomicInteger();
+        private int consecutiveFailures;
+        private long ejectedUntil;
+        private boolean ejected;
+
+        public Replica(ConnectionSource source) {
+            this.source = source;
+        }
+
+        public synchronized boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        public synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            ejected = false;
+        }
+
+        public synchronized void recordFailure() {
+            consecutiveFailures++;
+            if (consecutiveFailures >= failureThreshold || ejected) {
+                ejected = true;
+                ejectedUntil = ticker.read() + ejectionPeriodNanos;
+            }
+        }
+    }
+
+    private static class SavedReplicaConnection {
+
+        public final ReplicaConnection connection;
+        public int nestedCount = 1;
+
+        public SavedReplicaConnection(ReplicaConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static class ReplicaConnection extends DatabaseConnectionDelegator {
+
+        private final RoutingConnectionSource owner;
+        private final Replica replica;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public ReplicaConnection(RoutingConnectionSource owner, Replica replica, DatabaseConnection delegate) {
+            super(delegate);
+            this.owner = owner;
+            this.replica = replica;
+        }
+
+        public void release() throws SQLException {
+            if (released.compareAndSet(false, true)) {
+                replica.outstanding.decrementAndGet();
+            }
+            replica.source.releaseConnection(getDelegate());
+        }
+    }
+}
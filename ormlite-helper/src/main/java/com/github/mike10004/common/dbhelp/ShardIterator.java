@@ -0,0 +1,335 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.DatabaseResults;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Iterator over the results of a query on several shards. The results of
+ * each shard are read in turn, and a shard's iterator is opened only when
+ * the previous one is exhausted, so only one shard's query is open at a
+ * time. If the query is ordered, the iterators of all shards are opened at
+ * once instead and their results merged by the ordering. The offset and
+ * limit of the query apply to the merged results. Exhausted iterators are
+ * closed right away, and the others when this iterator is closed.
+ *
+ * <p>Like the iterators of a single dao, this iterator reads forward only;
+ * it cannot move to the first or previous result.</p>
+ * @param <T> the element type
+ */
+final class ShardIterator<T> implements CloseableIterator<T> {
+
+    private final List<? extends SqlSupplier<CloseableIterator<T>>> openers;
+    private final List<CloseableIterator<T>> iterators;
+    @Nullable
+    private final ShardedQuery<T> query;
+    @Nullable
+    private final Dao<T, ?> dao;
+    private int shard;
+    @Nullable
+    private List<T> heads;
+    @Nullable
+    private List<Object[]> headKeys;
+    private long skipped;
+    private long fetched;
+    private int nextShard = -1;
+    @Nullable
+    private T next;
+    private boolean nextFetched;
+    @Nullable
+    private T current;
+    private int currentShard = -1;
+    private boolean closed;
+
+    /**
+     * Constructs an instance.
+     * @param openers suppliers of the shard iterators, in shard order
+     * @param query the query whose ordering, offset, and limit apply to the
+     * merged results, or null to concatenate all results
+     * @param dao the dao through which {@link #remove()} deletes entities,
+     * or null if removal is not supported
+     */
+    public ShardIterator(List<? extends SqlSupplier<CloseableIterator<T>>> openers, @Nullable ShardedQuery<T> query, @Nullable Dao<T, ?> dao) {
+        this.openers = checkNotNull(openers, "openers");
+        this.query = query;
+        this.dao = dao;
+        iterators = new ArrayList<>(openers.size());
+    }
+
+    @Nullable
+    private T fetch() throws SQLException {
+        long offset = query == null ? 0 : query.getOffset();
+        long limit = query == null ? -1 : query.getLimit();
+        for (; skipped < offset; skipped++) {
+            if (fetchMerged() == null) {
+                return null;
+            }
+        }
+        if (limit >= 0 && fetched >= limit) {
+            return null;
+        }
+        T result = fetchMerged();
+        if (result != null) {
+            fetched++;
+        }
+        return result;
+    }
+
+    @Nullable
+    private T fetchMerged() throws SQLException {
+        if (closed) {
+            return null;
+        }
+        return query != null && query.isOrdered() ? fetchOrdered() : fetchConcatenated();
+    }
+
+    @Nullable
+    private T fetchConcatenated() throws SQLException {
+        while (shard < openers.size()) {
+            if (iterators.size() == shard) {
+                iterators.add(openers.get(shard).get());
+            }
+            T result = iterators.get(shard).nextThrow();
+            if (result != null) {
+                nextShard = shard;
+                return result;
+            }
+            close(shard);
+            shard++;
+        }
+        return null;
+    }
+
+    @Nullable
+    private T fetchOrdered() throws SQLException {
+        if (heads == null) {
+            heads = new ArrayList<>(openers.size());
+            headKeys = new ArrayList<>(openers.size());
+            for (int i = 0; i < openers.size(); i++) {
+                iterators.add(openers.get(i).get());
+                heads.add(null);
+                headKeys.add(null);
+                advance(i);
+            }
+        }
+        int best = -1;
+        for (int i = 0; i < heads.size(); i++) {
+            if (heads.get(i) != null && (best < 0 || query.compareSortKeys(headKeys.get(i), headKeys.get(best)) < 0)) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        T result = heads.get(best);
+        nextShard = best;
+        advance(best);
+        return result;
+    }
+
+    /**
+     * Reads the next result of a shard into the heads of the shards.
+     */
+    private void advance(int index) throws SQLException {
+        T head = iterators.get(index).nextThrow();
+        heads.set(index, head);
+        headKeys.set(index, head == null ? null : query.extractSortKey(head));
+        if (head == null) {
+            close(index);
+        }
+    }
+
+    private void close(int index) throws SQLException {
+        try {
+            iterators.get(index).close();
+        } catch (IOException e) {
+            throw new SQLException("failed to close iterator of shard " + index, e);
+        }
+    }
+
+    private boolean hasNextThrow() throws SQLException {
+        if (!nextFetched) {
+            next = fetch();
+            nextFetched = true;
+        }
+        return next != null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return hasNextThrow();
+        } catch (SQLException e) {
+            closeQuietly();
+            throw new IllegalStateException("failed to read next result", e);
+        }
+    }
+
+    @Override
+    public T next() {
+        T result;
+        try {
+            result = nextThrow();
+        } catch (SQLException e) {
+            closeQuietly();
+            throw new IllegalStateException("failed to read next result", e);
+        }
+        if (result == null) {
+            throw new NoSuchElementException();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next result.
+     * @return the next result, or null if there are no more
+     */
+    @Override
+    @Nullable
+    public T nextThrow() throws SQLException {
+        if (!hasNextThrow()) {
+            return null;
+        }
+        current = next;
+        currentShard = nextShard;
+        next = null;
+        nextFetched = false;
+        return current;
+    }
+
+    /**
+     * Deletes the entity last returned by {@link #next()}.
+     */
+    @Override
+    public void remove() {
+        if (dao == null) {
+            throw new UnsupportedOperationException("remove");
+        }
+        checkState(current != null, "no result to remove; next() must be called first");
+        try {
+            dao.delete(current);
+        } catch (SQLException e) {
+            throw new IllegalStateException("failed to delete " + current, e);
+        } finally {
+            current = null;
+        }
+    }
+
+    /**
+     * Gets the raw results of the shard being read, which are positioned at
+     * the result last looked ahead to by {@link #hasNext()}, if any, and
+     * otherwise at the result last returned.
+     * @return the raw results, or null if no result has been read or the
+     * results of the shards are merged by ordering, in which case the raw
+     * results of a shard are positioned ahead of the results returned
+     */
+    @Override
+    @Nullable
+    public DatabaseResults getRawResults() {
+        if (heads != null) {
+            return null;
+        }
+        int index = nextFetched && next != null ? nextShard : currentShard;
+        return index >= 0 && index < iterators.size() ? iterators.get(index).getRawResults() : null;
+    }
+
+    /**
+     * Moves past the next result without returning it.
+     */
+    @Override
+    public void moveToNext() {
+        try {
+            nextThrow();
+        } catch (SQLException e) {
+            closeQuietly();
+            throw new IllegalStateException("failed to read next result", e);
+        }
+    }
+
+    @Override
+    public T first() throws SQLException {
+        throw new SQLException("cannot move to the first result of a query on several shards");
+    }
+
+    @Override
+    public T previous() throws SQLException {
+        throw new SQLException("cannot move to the previous result of a query on several shards");
+    }
+
+    @Override
+    @Nullable
+    public T current() {
+        return current;
+    }
+
+    /**
+     * Moves forward a number of results.
+     * @param offset the number of results to move forward; zero returns
+     * the current result
+     * @return the result moved to, or null if there are not that many
+     * @throws SQLException if the offset is negative or the results cannot
+     * be read
+     */
+    @Override
+    @Nullable
+    public T moveRelative(int offset) throws SQLException {
+        if (offset < 0) {
+            throw new SQLException("cannot move backward in the results of a query on several shards");
+        }
+        if (offset == 0) {
+            return current;
+        }
+        T result = null;
+        for (int i = 0; i < offset; i++) {
+            result = nextThrow();
+            if (result == null) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public T moveAbsolute(int position) throws SQLException {
+        throw new SQLException("cannot move to an absolute position in the results of a query on several shards");
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (CloseableIterator<T> iterator : iterators) {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ignore) {
+            // like the iterators of a single dao
+        }
+    }
+}
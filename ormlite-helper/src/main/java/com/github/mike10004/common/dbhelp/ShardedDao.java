@@ -0,0 +1,1123 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.AsyncDatabaseContext.DaoFunction;
+import com.google.common.collect.ImmutableList;
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.CloseableIterable;
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.CloseableWrappedIterable;
+import com.j256.ormlite.dao.CloseableWrappedIterableImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DatabaseResultsMapper;
+import com.j256.ormlite.dao.ForeignCollection;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.dao.RawRowMapper;
+import com.j256.ormlite.dao.RawRowObjectMapper;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.PreparedDelete;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.PreparedUpdate;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import com.j256.ormlite.table.ObjectFactory;
+import com.j256.ormlite.table.TableInfo;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Data access object that routes operations to the shards of a
+ * {@link ShardedDatabaseContext}. Operations on an entity, and on an id if
+ * the id column is the shard key, go to the shard that owns the key. So do
+ * queries for a value of the shard key column, such as
+ * {@link #queryForEq(String, Object)} on that column. Other queries go to
+ * every shard, and their results are concatenated in shard order, or summed
+ * in the case of counts. Operations on collections are split by shard.
+ * Prepared updates, prepared deletes, and raw statements are executed on
+ * every shard. Shards are accessed in parallel whenever more than one is
+ * involved.
+ *
+ * <p>Builders returned by this dao execute their statements through it. A
+ * query built by {@link #queryBuilder()} whose where clause compares the
+ * shard key column for equality with a value, and uses neither {@code or}
+ * nor {@code not}, is sent to the shard that owns the value. Other queries
+ * are sent to every shard; if they are ordered by columns, the results of
+ * the shards are merged by those columns, and the query's offset and limit
+ * are applied to the merged results. Queries ordered by raw SQL, and
+ * ordered or limited queries prepared elsewhere, are rejected unless they
+ * can be routed, because their results cannot be merged. To run a query on
+ * a single shard, use the dao returned by {@link #getShardDao(Object)}.</p>
+ *
+ * <p>Iterators over unordered results read one shard after another, opening
+ * each shard's query only when the previous one is exhausted; iterators
+ * over ordered results read all shards at once. Raw queries are run on
+ * every shard and their results concatenated in the same way, so ordering,
+ * limits, and aggregates in the SQL apply to each shard separately.</p>
+ *
+ * <p>Batch tasks and thread connections hold a connection of every shard.
+ * While they are in use, the calling thread accesses the shards one after
+ * another through every dao of the context, as it does in a transaction of
+ * the context. Commits and rollbacks are applied to each shard in turn and
+ * are not atomic across shards.</p>
+ *
+ * @param <T> the entity type
+ * @param <ID> the id type
+ */
+public class ShardedDao<T, ID> implements Dao<T, ID> {
+
+    private final ShardedDatabaseContext context;
+    private final ImmutableList<Dao<T, ID>> shardDaos;
+    private final Dao<T, ID> primary;
+    private final TableInfo<T, ID> tableInfo;
+    private final DatabaseType databaseType;
+    private final FieldType shardKeyField;
+    @Nullable
+    private volatile CloseableIterator<T> lastIterator;
+
+    ShardedDao(ShardedDatabaseContext context, List<Dao<T, ID>> shardDaos, @Nullable String shardKeyColumn) {
+        this.context = checkNotNull(context, "context");
+        this.shardDaos = ImmutableList.copyOf(shardDaos);
+        checkArgument(!this.shardDaos.isEmpty(), "no shard daos");
+        primary = this.shardDaos.get(0);
+        tableInfo = Daos.findTableInfo(primary);
+        checkArgument(tableInfo != null, "shard daos must be backed by %s", BaseDaoImpl.class.getSimpleName());
+        databaseType = primary.getConnectionSource().getDatabaseType();
+        if (shardKeyColumn == null) {
+            shardKeyField = tableInfo.getIdField();
+            checkArgument(shardKeyField != null, "%s has no id column; a shard key column must be set", tableInfo.getDataClass());
+        } else {
+            shardKeyField = tableInfo.getFieldTypeByColumnName(shardKeyColumn);
+        }
+    }
+
+    /**
+     * Gets the name of the shard key column.
+     * @return the column name
+     */
+    public String getShardKeyColumn() {
+        return shardKeyField.getColumnName();
+    }
+
+    /**
+     * Gets the daos of the individual shards, in shard order.
+     * @return the shard daos
+     */
+    public ImmutableList<Dao<T, ID>> getShardDaos() {
+        return shardDaos;
+    }
+
+    /**
+     * Gets the dao of the shard that owns a shard key.
+     * @param shardKey the shard key
+     * @return the shard dao
+     */
+    public Dao<T, ID> getShardDao(Object shardKey) {
+        return shardDaos.get(context.getShardIndex(shardKey));
+    }
+
+    /**
+     * Gets the index of the shard that owns an entity.
+     * @param entity the entity
+     * @return the shard index
+     * @throws IllegalArgumentException if the entity has no shard key value
+     */
+    int getShardIndexOf(T entity) throws SQLException {
+        Object shardKey = extractShardKey(entity);
+        checkArgument(shardKey != null, "entity has no value for shard key column %s", getShardKeyColumn());
+        return context.getShardIndex(shardKey);
+    }
+
+    @Nullable
+    private Object extractShardKey(T entity) throws SQLException {
+        return shardKeyField.extractJavaFieldValue(checkNotNull(entity, "entity"));
+    }
+
+    FieldType getShardKeyField() {
+        return shardKeyField;
+    }
+
+    /**
+     * Converts a value of the shard key column in a query to a shard key.
+     * A foreign entity is converted to its id.
+     */
+    @Nullable
+    Object toShardKey(@Nullable Object value) throws SQLException {
+        if (value != null && shardKeyField.isForeign() && shardKeyField.getType().isInstance(value)) {
+            return shardKeyField.getForeignIdField().extractJavaFieldValue(value);
+        }
+        return value;
+    }
+
+    private Dao<T, ID> shardOf(T entity) throws SQLException {
+        return shardDaos.get(getShardIndexOf(entity));
+    }
+
+    private boolean isShardedById() {
+        return shardKeyField.isId();
+    }
+
+    private <R> List<R> onAllShards(DaoFunction<T, ID, R> operation) throws SQLException {
+        List<SqlSupplier<R>> tasks = new ArrayList<>(shardDaos.size());
+        for (Dao<T, ID> dao : shardDaos) {
+            tasks.add(() -> operation.apply(dao));
+        }
+        return context.runOnShards(tasks);
+    }
+
+    private List<T> concatenate(DaoFunction<T, ID, List<T>> query) throws SQLException {
+        List<T> all = new ArrayList<>();
+        for (List<T> results : onAllShards(query)) {
+            all.addAll(results);
+        }
+        return all;
+    }
+
+    private int sum(DaoFunction<T, ID, Integer> operation) throws SQLException {
+        int sum = 0;
+        for (int count : onAllShards(operation)) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    @Nullable
+    private T first(DaoFunction<T, ID, T> query) throws SQLException {
+        for (T result : onAllShards(query)) {
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits items by shard and applies an operation to each shard's items
+     * in parallel.
+     */
+    private <E> int sumByShard(Collection<E> items, ShardIndexer<E> indexer, ShardOperation<T, ID, E> operation) throws SQLException {
+        List<List<E>> itemsByShard = new ArrayList<>(shardDaos.size());
+        for (int i = 0; i < shardDaos.size(); i++) {
+            itemsByShard.add(new ArrayList<>());
+        }
+        for (E item : items) {
+            itemsByShard.get(indexer.getShardIndex(item)).add(item);
+        }
+        List<SqlSupplier<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < shardDaos.size(); i++) {
+            Dao<T, ID> dao = shardDaos.get(i);
+            List<E> shardItems = itemsByShard.get(i);
+            if (!shardItems.isEmpty()) {
+                tasks.add(() -> operation.apply(dao, shardItems));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+        int sum = 0;
+        for (int count : context.runOnShards(tasks)) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private interface ShardIndexer<E> {
+        int getShardIndex(E item) throws SQLException;
+    }
+
+    private interface ShardOperation<T, ID, E> {
+        int apply(Dao<T, ID> dao, List<E> items) throws SQLException;
+    }
+
+    private static UnsupportedOperationException unsupported(String operation) {
+        return new UnsupportedOperationException(operation + " is not supported across shards; use getShardDao(Object)");
+    }
+
+    @Override
+    public T queryForId(ID id) throws SQLException {
+        if (isShardedById()) {
+            return getShardDao(id).queryForId(id);
+        }
+        return first(dao -> dao.queryForId(id));
+    }
+
+    /**
+     * Returns the first result of a query. A query that is not routed to a
+     * single shard is run on every shard; if it is ordered, the first of the
+     * shards' first results by that ordering is returned, and otherwise the
+     * first result in shard order.
+     */
+    @Override
+    public T queryForFirst(PreparedQuery<T> preparedQuery) throws SQLException {
+        ShardedQuery<T> query = ShardedQuery.of(preparedQuery);
+        if (query.getShardKey() != null) {
+            return getShardDao(query.getShardKey()).queryForFirst(query.getQuery());
+        }
+        query.checkMergeable();
+        if (query.getOffset() > 0) {
+            List<T> results = query(query);
+            return results.isEmpty() ? null : results.get(0);
+        }
+        List<List<T>> firsts = onAllShards(dao -> {
+            T first = dao.queryForFirst(query.getShardQuery());
+            return first == null ? Collections.emptyList() : Collections.singletonList(first);
+        });
+        List<T> merged = query.merge(firsts);
+        return merged.isEmpty() ? null : merged.get(0);
+    }
+
+    @Override
+    public List<T> queryForAll() throws SQLException {
+        return concatenate(Dao::queryForAll);
+    }
+
+    @Override
+    public List<T> queryForEq(String fieldName, Object value) throws SQLException {
+        if (shardKeyField.getColumnName().equals(fieldName) && value != null) {
+            return getShardDao(toShardKey(value)).queryForEq(fieldName, value);
+        }
+        return concatenate(dao -> dao.queryForEq(fieldName, value));
+    }
+
+    @Override
+    public List<T> queryForMatching(T matchObj) throws SQLException {
+        Object shardKey = extractShardKey(matchObj);
+        if (shardKey != null) {
+            return getShardDao(shardKey).queryForMatching(matchObj);
+        }
+        return concatenate(dao -> dao.queryForMatching(matchObj));
+    }
+
+    @Override
+    public List<T> queryForMatchingArgs(T matchObj) throws SQLException {
+        Object shardKey = extractShardKey(matchObj);
+        if (shardKey != null) {
+            return getShardDao(shardKey).queryForMatchingArgs(matchObj);
+        }
+        return concatenate(dao -> dao.queryForMatchingArgs(matchObj));
+    }
+
+    @Override
+    public List<T> queryForFieldValues(Map<String, Object> fieldValues) throws SQLException {
+        Object shardKey = toShardKey(fieldValues.get(shardKeyField.getColumnName()));
+        if (shardKey != null) {
+            return getShardDao(shardKey).queryForFieldValues(fieldValues);
+        }
+        return concatenate(dao -> dao.queryForFieldValues(fieldValues));
+    }
+
+    @Override
+    public List<T> queryForFieldValuesArgs(Map<String, Object> fieldValues) throws SQLException {
+        Object shardKey = toShardKey(fieldValues.get(shardKeyField.getColumnName()));
+        if (shardKey != null) {
+            return getShardDao(shardKey).queryForFieldValuesArgs(fieldValues);
+        }
+        return concatenate(dao -> dao.queryForFieldValuesArgs(fieldValues));
+    }
+
+    @Override
+    public T queryForSameId(T data) throws SQLException {
+        if (data == null) {
+            return null;
+        }
+        return shardOf(data).queryForSameId(data);
+    }
+
+    /**
+     * Returns a query builder that records the shard key value, ordering,
+     * offset, and limit of the query, so that the query can be routed to a
+     * single shard or its results merged across shards.
+     */
+    @Override
+    public QueryBuilder<T, ID> queryBuilder() {
+        return new ShardedQueryBuilder<>(databaseType, tableInfo, this);
+    }
+
+    @Override
+    public UpdateBuilder<T, ID> updateBuilder() {
+        return new UpdateBuilder<>(databaseType, tableInfo, this);
+    }
+
+    @Override
+    public DeleteBuilder<T, ID> deleteBuilder() {
+        return new DeleteBuilder<>(databaseType, tableInfo, this);
+    }
+
+    @Override
+    public List<T> query(PreparedQuery<T> preparedQuery) throws SQLException {
+        ShardedQuery<T> query = ShardedQuery.of(preparedQuery);
+        if (query.getShardKey() != null) {
+            return getShardDao(query.getShardKey()).query(query.getQuery());
+        }
+        query.checkMergeable();
+        return query.merge(onAllShards(dao -> dao.query(query.getShardQuery())));
+    }
+
+    @Override
+    public int create(T data) throws SQLException {
+        return shardOf(data).create(data);
+    }
+
+    @Override
+    public int create(Collection<T> datas) throws SQLException {
+        return sumByShard(datas, this::getShardIndexOf, Dao::create);
+    }
+
+    @Override
+    public T createIfNotExists(T data) throws SQLException {
+        if (data == null) {
+            return null;
+        }
+        return shardOf(data).createIfNotExists(data);
+    }
+
+    @Override
+    public CreateOrUpdateStatus createOrUpdate(T data) throws SQLException {
+        if (data == null) {
+            return new CreateOrUpdateStatus(false, false, 0);
+        }
+        return shardOf(data).createOrUpdate(data);
+    }
+
+    @Override
+    public int update(T data) throws SQLException {
+        return shardOf(data).update(data);
+    }
+
+    /**
+     * Updates the id of an entity on its shard. If the id is the shard key,
+     * the new id must belong to the same shard, because entities cannot be
+     * moved between shards.
+     */
+    @Override
+    public int updateId(T data, ID newId) throws SQLException {
+        int shard = getShardIndexOf(data);
+        if (isShardedById() && context.getShardIndex(newId) != shard) {
+            throw new SQLException("new id " + newId + " belongs to a different shard");
+        }
+        return shardDaos.get(shard).updateId(data, newId);
+    }
+
+    @Override
+    public int update(PreparedUpdate<T> preparedUpdate) throws SQLException {
+        return sum(dao -> dao.update(preparedUpdate));
+    }
+
+    @Override
+    public int refresh(T data) throws SQLException {
+        return shardOf(data).refresh(data);
+    }
+
+    @Override
+    public int delete(T data) throws SQLException {
+        if (data == null) {
+            return 0;
+        }
+        return shardOf(data).delete(data);
+    }
+
+    @Override
+    public int deleteById(ID id) throws SQLException {
+        if (id == null) {
+            return 0;
+        }
+        if (isShardedById()) {
+            return getShardDao(id).deleteById(id);
+        }
+        return sum(dao -> dao.deleteById(id));
+    }
+
+    @Override
+    public int delete(Collection<T> datas) throws SQLException {
+        return sumByShard(datas, this::getShardIndexOf, Dao::delete);
+    }
+
+    @Override
+    public int deleteIds(Collection<ID> ids) throws SQLException {
+        if (isShardedById()) {
+            return sumByShard(ids, context::getShardIndex, Dao::deleteIds);
+        }
+        return sum(dao -> dao.deleteIds(ids));
+    }
+
+    @Override
+    public int delete(PreparedDelete<T> preparedDelete) throws SQLException {
+        return sum(dao -> dao.delete(preparedDelete));
+    }
+
+    private CloseableIterator<T> iterate(List<SqlSupplier<CloseableIterator<T>>> openers, @Nullable ShardedQuery<T> query) {
+        CloseableIterator<T> iterator = new ShardIterator<>(openers, query, this);
+        lastIterator = iterator;
+        return iterator;
+    }
+
+    /**
+     * Iterates over the entities of every shard, one shard after another.
+     */
+    @Override
+    public CloseableIterator<T> iterator() {
+        return iterator(DatabaseConnection.DEFAULT_RESULT_FLAGS);
+    }
+
+    /**
+     * Iterates over the entities of every shard, one shard after another.
+     */
+    @Override
+    public CloseableIterator<T> iterator(int resultFlags) {
+        List<SqlSupplier<CloseableIterator<T>>> openers = new ArrayList<>(shardDaos.size());
+        for (Dao<T, ID> dao : shardDaos) {
+            openers.add(() -> dao.iterator(resultFlags));
+        }
+        return iterate(openers, null);
+    }
+
+    @Override
+    public CloseableIterator<T> iterator(PreparedQuery<T> preparedQuery) throws SQLException {
+        return iterator(preparedQuery, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+    }
+
+    /**
+     * Iterates over the results of a query. A query that is not routed to a
+     * single shard is run on every shard, and the results are merged as
+     * those of {@link #query(PreparedQuery)} are.
+     */
+    @Override
+    public CloseableIterator<T> iterator(PreparedQuery<T> preparedQuery, int resultFlags) throws SQLException {
+        ShardedQuery<T> query = ShardedQuery.of(preparedQuery);
+        if (query.getShardKey() != null) {
+            Dao<T, ID> dao = getShardDao(query.getShardKey());
+            return iterate(Collections.singletonList(() -> dao.iterator(query.getQuery(), resultFlags)), null);
+        }
+        query.checkMergeable();
+        List<SqlSupplier<CloseableIterator<T>>> openers = new ArrayList<>(shardDaos.size());
+        for (Dao<T, ID> dao : shardDaos) {
+            openers.add(() -> dao.iterator(query.getShardQuery(), resultFlags));
+        }
+        return iterate(openers, query);
+    }
+
+    @Override
+    public CloseableIterator<T> closeableIterator() {
+        return iterator();
+    }
+
+    @Override
+    public CloseableWrappedIterable<T> getWrappedIterable() {
+        return new CloseableWrappedIterableImpl<>(this);
+    }
+
+    @Override
+    public CloseableWrappedIterable<T> getWrappedIterable(PreparedQuery<T> preparedQuery) {
+        checkNotNull(preparedQuery, "preparedQuery");
+        return new CloseableWrappedIterableImpl<>(new CloseableIterable<T>() {
+            @Override
+            public CloseableIterator<T> iterator() {
+                return closeableIterator();
+            }
+
+            @Override
+            public CloseableIterator<T> closeableIterator() {
+                try {
+                    return ShardedDao.this.iterator(preparedQuery);
+                } catch (SQLException e) {
+                    throw new IllegalStateException("failed to query shards", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void closeLastIterator() throws IOException {
+        CloseableIterator<T> iterator = lastIterator;
+        if (iterator != null) {
+            iterator.close();
+            lastIterator = null;
+        }
+    }
+
+    private <UO> GenericRawResults<UO> queryRawOnShards(DaoFunction<T, ID, GenericRawResults<UO>> query) throws SQLException {
+        List<SqlSupplier<GenericRawResults<UO>>> openers = new ArrayList<>(shardDaos.size());
+        for (Dao<T, ID> dao : shardDaos) {
+            openers.add(() -> query.apply(dao));
+        }
+        return new ShardRawResults<>(openers);
+    }
+
+    /**
+     * Runs a raw query on every shard. See {@link ShardRawResults}.
+     */
+    @Override
+    public GenericRawResults<String[]> queryRaw(String query, String... arguments) throws SQLException {
+        return queryRawOnShards(dao -> dao.queryRaw(query, arguments));
+    }
+
+    /**
+     * Runs a raw query on every shard. See {@link ShardRawResults}.
+     */
+    @Override
+    public <UO> GenericRawResults<UO> queryRaw(String query, RawRowMapper<UO> mapper, String... arguments) throws SQLException {
+        return queryRawOnShards(dao -> dao.queryRaw(query, mapper, arguments));
+    }
+
+    /**
+     * Runs a raw query on every shard. See {@link ShardRawResults}.
+     */
+    @Override
+    public <UO> GenericRawResults<UO> queryRaw(String query, DataType[] columnTypes, RawRowObjectMapper<UO> mapper, String... arguments) throws SQLException {
+        return queryRawOnShards(dao -> dao.queryRaw(query, columnTypes, mapper, arguments));
+    }
+
+    /**
+     * Runs a raw query on every shard. See {@link ShardRawResults}.
+     */
+    @Override
+    public GenericRawResults<Object[]> queryRaw(String query, DataType[] columnTypes, String... arguments) throws SQLException {
+        return queryRawOnShards(dao -> dao.queryRaw(query, columnTypes, arguments));
+    }
+
+    /**
+     * Runs a raw query on every shard. See {@link ShardRawResults}.
+     */
+    @Override
+    public <UO> GenericRawResults<UO> queryRaw(String query, DatabaseResultsMapper<UO> mapper, String... arguments) throws SQLException {
+        return queryRawOnShards(dao -> dao.queryRaw(query, mapper, arguments));
+    }
+
+    /**
+     * Runs a raw query for a single value on every shard.
+     * @return the sum of the shards' values, which is the total of a count
+     * or a sum; combine other aggregates, such as maximums, by querying
+     * the {@link #getShardDaos() shard daos}
+     */
+    @Override
+    public long queryRawValue(String query, String... arguments) throws SQLException {
+        long sum = 0;
+        for (long value : onAllShards(dao -> dao.queryRawValue(query, arguments))) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Executes a raw statement on every shard.
+     * @return the sum of the row counts of the shards
+     */
+    @Override
+    public int executeRaw(String statement, String... arguments) throws SQLException {
+        return sum(dao -> dao.executeRaw(statement, arguments));
+    }
+
+    /**
+     * Executes a raw statement on every shard.
+     * @return the sum of the row counts of the shards
+     */
+    @Override
+    public int executeRawNoArgs(String statement) throws SQLException {
+        return sum(dao -> dao.executeRawNoArgs(statement));
+    }
+
+    /**
+     * Executes a raw update on every shard.
+     * @return the sum of the row counts of the shards
+     */
+    @Override
+    public int updateRaw(String statement, String... arguments) throws SQLException {
+        return sum(dao -> dao.updateRaw(statement, arguments));
+    }
+
+    /**
+     * Calls a task with every shard in batch mode, by nesting the batch
+     * tasks of the shard daos. The shards leave batch mode, committing the
+     * task's writes, one after another, so the writes are not atomic across
+     * shards.
+     */
+    @Override
+    public <CT> CT callBatchTasks(Callable<CT> callable) throws Exception {
+        checkNotNull(callable, "callable");
+        context.holdThreadConnections();
+        try {
+            return callBatchTasks(0, callable);
+        } finally {
+            context.releaseThreadConnections();
+        }
+    }
+
+    private <CT> CT callBatchTasks(int shard, Callable<CT> callable) throws Exception {
+        if (shard == shardDaos.size()) {
+            return callable.call();
+        }
+        return shardDaos.get(shard).callBatchTasks(() -> callBatchTasks(shard + 1, callable));
+    }
+
+    @Override
+    public String objectToString(T data) {
+        return primary.objectToString(data);
+    }
+
+    @Override
+    public boolean objectsEqual(T data1, T data2) throws SQLException {
+        return primary.objectsEqual(data1, data2);
+    }
+
+    @Override
+    public ID extractId(T data) throws SQLException {
+        return primary.extractId(data);
+    }
+
+    @Override
+    public Class<T> getDataClass() {
+        return primary.getDataClass();
+    }
+
+    @Override
+    public FieldType findForeignFieldType(Class<?> clazz) {
+        return primary.findForeignFieldType(clazz);
+    }
+
+    @Override
+    public boolean isUpdatable() {
+        return primary.isUpdatable();
+    }
+
+    /**
+     * Checks whether the table exists on every shard.
+     */
+    @Override
+    public boolean isTableExists() throws SQLException {
+        for (boolean exists : onAllShards(Dao::isTableExists)) {
+            if (!exists) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long countOf() throws SQLException {
+        long sum = 0;
+        for (long count : onAllShards(Dao::countOf)) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    @Override
+    public long countOf(PreparedQuery<T> preparedQuery) throws SQLException {
+        ShardedQuery<T> query = ShardedQuery.of(preparedQuery);
+        if (query.getShardKey() != null) {
+            return getShardDao(query.getShardKey()).countOf(query.getQuery());
+        }
+        long sum = 0;
+        for (long count : onAllShards(dao -> dao.countOf(query.getQuery()))) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    @Override
+    public void assignEmptyForeignCollection(T parent, String fieldName) throws SQLException {
+        shardOf(parent).assignEmptyForeignCollection(parent, fieldName);
+    }
+
+    /**
+     * Not supported, because a foreign collection belongs to the shard of
+     * its parent; use {@link #assignEmptyForeignCollection(Object, String)}
+     * or the dao of a shard.
+     */
+    @Override
+    public <FT> ForeignCollection<FT> getEmptyForeignCollection(String fieldName) {
+        throw unsupported("foreign collection without a parent");
+    }
+
+    @Override
+    public void setObjectCache(boolean enabled) throws SQLException {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.setObjectCache(enabled);
+        }
+    }
+
+    @Override
+    public void setObjectCache(ObjectCache objectCache) throws SQLException {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.setObjectCache(objectCache);
+        }
+    }
+
+    /**
+     * Gets the object cache of the first shard.
+     */
+    @Override
+    public ObjectCache getObjectCache() {
+        return primary.getObjectCache();
+    }
+
+    @Override
+    public void clearObjectCache() {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.clearObjectCache();
+        }
+    }
+
+    @Override
+    public T mapSelectStarRow(DatabaseResults results) throws SQLException {
+        return primary.mapSelectStarRow(results);
+    }
+
+    @Override
+    public GenericRowMapper<T> getSelectStarRowMapper() throws SQLException {
+        return primary.getSelectStarRowMapper();
+    }
+
+    @Override
+    public RawRowMapper<T> getRawRowMapper() {
+        return primary.getRawRowMapper();
+    }
+
+    @Override
+    public boolean idExists(ID id) throws SQLException {
+        if (isShardedById()) {
+            return getShardDao(id).idExists(id);
+        }
+        for (boolean exists : onAllShards(dao -> dao.idExists(id))) {
+            if (exists) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts a thread connection on every shard. The connection returned
+     * applies changes of auto-commit, commits, rollbacks, and closing to
+     * the connection of each shard; other operations are not supported.
+     * Until the connection is ended, the calling thread accesses the shards
+     * one after another.
+     */
+    @Override
+    public DatabaseConnection startThreadConnection() throws SQLException {
+        List<DatabaseConnection> connections = new ArrayList<>(shardDaos.size());
+        try {
+            for (Dao<T, ID> dao : shardDaos) {
+                connections.add(dao.startThreadConnection());
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (int i = 0; i < connections.size(); i++) {
+                try {
+                    shardDaos.get(i).endThreadConnection(connections.get(i));
+                } catch (SQLException | RuntimeException endException) {
+                    e.addSuppressed(endException);
+                }
+            }
+            throw e;
+        }
+        context.holdThreadConnections();
+        return new ShardConnections(this, connections).newConnection();
+    }
+
+    @Override
+    public void endThreadConnection(DatabaseConnection connection) throws SQLException {
+        ShardConnections shardConnections = unwrap(connection);
+        try {
+            onThreadConnections(shardConnections, Dao::endThreadConnection);
+        } finally {
+            context.releaseThreadConnections();
+        }
+    }
+
+    @Override
+    public void setAutoCommit(DatabaseConnection connection, boolean autoCommit) throws SQLException {
+        onThreadConnections(unwrap(connection), (dao, shardConnection) -> dao.setAutoCommit(shardConnection, autoCommit));
+    }
+
+    /**
+     * Checks whether auto-commit is enabled on the connection of every
+     * shard.
+     */
+    @Override
+    public boolean isAutoCommit(DatabaseConnection connection) throws SQLException {
+        ShardConnections shardConnections = unwrap(connection);
+        for (int i = 0; i < shardDaos.size(); i++) {
+            if (!shardDaos.get(i).isAutoCommit(shardConnections.connections.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void commit(DatabaseConnection connection) throws SQLException {
+        onThreadConnections(unwrap(connection), Dao::commit);
+    }
+
+    @Override
+    public void rollBack(DatabaseConnection connection) throws SQLException {
+        onThreadConnections(unwrap(connection), Dao::rollBack);
+    }
+
+    private ShardConnections unwrap(DatabaseConnection connection) {
+        checkNotNull(connection, "connection");
+        checkArgument(Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ShardConnections
+                && ((ShardConnections) Proxy.getInvocationHandler(connection)).dao == this,
+                "connection was not started by this dao");
+        return (ShardConnections) Proxy.getInvocationHandler(connection);
+    }
+
+    /**
+     * Applies an operation to the thread connection of each shard. Every
+     * shard is attempted even if the operation fails on one.
+     * @throws SQLException the first exception thrown, with the others
+     * suppressed
+     */
+    private void onThreadConnections(ShardConnections shardConnections, ConnectionOperation<T, ID> operation) throws SQLException {
+        SQLException failure = null;
+        for (int i = 0; i < shardDaos.size(); i++) {
+            try {
+                operation.apply(shardDaos.get(i), shardConnections.connections.get(i));
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private interface ConnectionOperation<T, ID> {
+        void apply(Dao<T, ID> dao, DatabaseConnection connection) throws SQLException;
+    }
+
+    /**
+     * Gets the connection source of the first shard, as
+     * {@link ShardedDatabaseContext#getConnectionSource()} does. Statements
+     * executed through it reach the first shard only.
+     */
+    @Override
+    public ConnectionSource getConnectionSource() {
+        return primary.getConnectionSource();
+    }
+
+    @Override
+    public void setObjectFactory(ObjectFactory<T> objectFactory) {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.setObjectFactory(objectFactory);
+        }
+    }
+
+    @Override
+    public void registerObserver(DaoObserver observer) {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.registerObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterObserver(DaoObserver observer) {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.unregisterObserver(observer);
+        }
+    }
+
+    @Override
+    public String getTableName() {
+        return primary.getTableName();
+    }
+
+    @Override
+    public void notifyChanges() {
+        for (Dao<T, ID> dao : shardDaos) {
+            dao.notifyChanges();
+        }
+    }
+
+    /**
+     * Results of a raw query on every shard. The query of the first shard
+     * is run when the results are created, and the queries of the other
+     * shards when their results are first needed. Results are returned in
+     * shard order, and the column names are those of the first shard.
+     * @param <UO> the result type
+     */
+    private static final class ShardRawResults<UO> implements GenericRawResults<UO> {
+
+        private final List<SqlSupplier<GenericRawResults<UO>>> openers;
+        private final List<GenericRawResults<UO>> opened;
+
+        public ShardRawResults(List<SqlSupplier<GenericRawResults<UO>>> openers) throws SQLException {
+            this.openers = openers;
+            opened = new ArrayList<>(openers.size());
+            open(0);
+        }
+
+        private GenericRawResults<UO> open(int shard) throws SQLException {
+            while (opened.size() <= shard) {
+                opened.add(openers.get(opened.size()).get());
+            }
+            return opened.get(shard);
+        }
+
+        @Override
+        public int getNumberColumns() {
+            return opened.get(0).getNumberColumns();
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return opened.get(0).getColumnNames();
+        }
+
+        @Override
+        public List<UO> getResults() throws SQLException {
+            List<UO> results = new ArrayList<>();
+            for (int i = 0; i < openers.size(); i++) {
+                results.addAll(open(i).getResults());
+            }
+            return results;
+        }
+
+        @Override
+        @Nullable
+        public UO getFirstResult() throws SQLException {
+            for (int i = 0; i < openers.size(); i++) {
+                UO result = open(i).getFirstResult();
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public CloseableIterator<UO> iterator() {
+            return closeableIterator();
+        }
+
+        @Override
+        public CloseableIterator<UO> closeableIterator() {
+            List<SqlSupplier<CloseableIterator<UO>>> iteratorOpeners = new ArrayList<>(openers.size());
+            for (int i = 0; i < openers.size(); i++) {
+                int shard = i;
+                iteratorOpeners.add(() -> open(shard).closeableIterator());
+            }
+            return new ShardIterator<>(iteratorOpeners, null, null);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (GenericRawResults<UO> results : opened) {
+                try {
+                    results.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Invocation handler of a connection that stands for the thread
+     * connections of every shard.
+     */
+    private static final class ShardConnections implements InvocationHandler {
+
+        private final ShardedDao<?, ?> dao;
+        private final List<DatabaseConnection> connections;
+
+        public ShardConnections(ShardedDao<?, ?> dao, List<DatabaseConnection> connections) {
+            this.dao = dao;
+            this.connections = connections;
+        }
+
+        public DatabaseConnection newConnection() {
+            return (DatabaseConnection) Proxy.newProxyInstance(DatabaseConnection.class.getClassLoader(), new Class<?>[]{DatabaseConnection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ShardConnections" + connections;
+                case "commit":
+                case "rollback":
+                    if (args[0] != null) {
+                        throw new SQLException("savepoints are not supported across shards");
+                    }
+                    invokeOnAll(method, args);
+                    return null;
+                case "setAutoCommit":
+                case "close":
+                case "closeQuietly":
+                    invokeOnAll(method, args);
+                    return null;
+                case "isAutoCommitSupported":
+                case "isAutoCommit":
+                case "isTableExists":
+                    return !invokeOnAll(method, args).contains(Boolean.FALSE);
+                case "isClosed":
+                    return invokeOnAll(method, args).contains(Boolean.TRUE);
+                default:
+                    throw unsupported(method.getName());
+            }
+        }
+
+        /**
+         * Invokes a method on the connection of every shard, even if it fails
+         * on one.
+         */
+        private List<Object> invokeOnAll(Method method, Object[] args) throws Throwable {
+            List<Object> results = new ArrayList<>(connections.size());
+            Throwable failure = null;
+            for (DatabaseConnection connection : connections) {
+                try {
+                    results.add(method.invoke(connection, args));
+                } catch (InvocationTargetException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        }
+    }
+}
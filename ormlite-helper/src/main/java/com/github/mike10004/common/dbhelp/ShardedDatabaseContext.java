@@ -0,0 +1,516 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Database context that spreads the rows of each table over several shards,
+ * each a database context of its own. Daos obtained from this context route
+ * operations on an entity to the shard that owns the entity's shard key,
+ * which is the value of its id column unless another
+ * {@link #setShardKeyColumn(Class, String) column} is configured. Queries
+ * that do not specify a shard key are sent to every shard and their results
+ * combined, and operations on collections are split by shard; in both cases
+ * the shards are accessed in parallel.
+ *
+ * <p>Shard keys are assigned to shards with a consistent hash, so that
+ * adding a shard at the end of the list moves only the keys that the new
+ * shard takes over. The order of the shards must therefore stay the same
+ * from one run of the application to the next.</p>
+ *
+ * <p>Every shard must have the same tables. Because each shard assigns
+ * generated ids on its own, entities sharded by id need ids assigned by the
+ * application. The context has no connection source of its own, so
+ * {@link #getConnectionSource()} returns that of the first shard. Its
+ * {@link #getTransactionManager() transaction manager} nests a transaction
+ * on every shard, but the shards commit one after another, so a transaction
+ * is not atomic across shards.</p>
+ *
+ * <p>While the calling thread is in such a transaction, or holds the batch
+ * tasks or thread connections of a {@link ShardedDao}, every dao and
+ * utility of this context accesses the shards one after another on that
+ * thread instead of in parallel, because connection sources keep the
+ * connections of a transaction for the thread that started it.</p>
+ *
+ * @see ShardedDao
+ */
+public class ShardedDatabaseContext implements DatabaseContext {
+
+    private static final HashFunction shardKeyHash = Hashing.murmur3_128();
+
+    private final ImmutableList<DatabaseContext> shards;
+    private final Executor executor;
+    private final ConcurrentMap<Class<?>, String> shardKeyColumns;
+    private final ConcurrentMap<Class<?>, ShardedDao<?, ?>> daoCache;
+    private final ContextTableUtils tableUtils;
+    private final ContextTransactionManager transactionManager;
+    private final ThreadLocal<Integer> threadConnectionDepth = ThreadLocal.withInitial(() -> 0);
+
+    /**
+     * Constructs an instance that accesses shards in parallel on threads
+     * of its own, one per shard at most, which exit when idle.
+     * @param shards the shard contexts, in a stable order
+     */
+    public ShardedDatabaseContext(List<? extends DatabaseContext> shards) {
+        this(shards, createDefaultExecutor(shards.size()));
+    }
+
+    /**
+     * Constructs an instance.
+     * @param shards the shard contexts, in a stable order
+     * @param executor the executor on which shards are accessed in parallel
+     */
+    public ShardedDatabaseContext(List<? extends DatabaseContext> shards, Executor executor) {
+        this.shards = ImmutableList.copyOf(shards);
+        checkArgument(!this.shards.isEmpty(), "at least one shard is required");
+        this.executor = checkNotNull(executor, "executor");
+        shardKeyColumns = new ConcurrentHashMap<>();
+        daoCache = new ConcurrentHashMap<>();
+        tableUtils = new ShardedTableUtils();
+        transactionManager = new ShardedTransactionManager();
+    }
+
+    /**
+     * Creates an instance with a {@link DefaultDatabaseContext} for each of
+     * the given connection sources.
+     * @param connectionSources the connection sources, in a stable order
+     * @return the new context
+     */
+    public static ShardedDatabaseContext forConnectionSources(List<? extends ConnectionSource> connectionSources) {
+        List<DatabaseContext> shards = new ArrayList<>(connectionSources.size());
+        for (ConnectionSource connectionSource : connectionSources) {
+            shards.add(new DefaultDatabaseContext(connectionSource));
+        }
+        return new ShardedDatabaseContext(shards);
+    }
+
+    private static Executor createDefaultExecutor(int numShards) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, numShards), Math.max(1, numShards),
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sharded-db-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Gets the number of shards.
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Gets the context of a shard.
+     * @param index the shard index
+     * @return the shard context
+     */
+    public DatabaseContext getShard(int index) {
+        checkElementIndex(index, shards.size(), "shard index");
+        return shards.get(index);
+    }
+
+    /**
+     * Gets the index of the shard that owns a shard key. Integral numbers
+     * of any width are hashed by value; other keys are hashed by their
+     * string representation.
+     * @param shardKey the shard key
+     * @return the shard index
+     */
+    public int getShardIndex(Object shardKey) {
+        checkNotNull(shardKey, "shardKey");
+        HashCode hash;
+        if (shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short || shardKey instanceof Byte) {
+            hash = shardKeyHash.hashLong(((Number) shardKey).longValue());
+        } else {
+            hash = shardKeyHash.hashString(shardKey.toString(), StandardCharsets.UTF_8);
+        }
+        return Hashing.consistentHash(hash, shards.size());
+    }
+
+    /**
+     * Sets the column whose value is the shard key of an entity class. By
+     * default, the id column is the shard key. Must be invoked before the
+     * dao for the class is first requested.
+     * @param entityClass the entity class
+     * @param columnName the column name
+     */
+    public void setShardKeyColumn(Class<?> entityClass, String columnName) {
+        checkNotNull(entityClass, "entityClass");
+        checkArgument(!checkNotNull(columnName, "columnName").isEmpty(), "columnName must be non-empty");
+        checkState(!daoCache.containsKey(entityClass), "dao for %s was already created", entityClass);
+        shardKeyColumns.put(entityClass, columnName);
+    }
+
+    @Override
+    public <T> ShardedDao<T, ?> getDao(Class<T> clz) throws SQLException {
+        return getDao(clz, Object.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, K> ShardedDao<T, K> getDao(Class<T> clazz, Class<K> keyType) throws SQLException {
+        checkNotNull(clazz, "clazz");
+        ShardedDao<?, ?> dao = daoCache.get(clazz);
+        if (dao == null) {
+            List<Dao<T, K>> shardDaos = new ArrayList<>(shards.size());
+            for (DatabaseContext shard : shards) {
+                shardDaos.add((Dao<T, K>) shard.getDao(clazz));
+            }
+            dao = new ShardedDao<>(this, shardDaos, shardKeyColumns.get(clazz));
+            ShardedDao<?, ?> existing = daoCache.putIfAbsent(clazz, dao);
+            if (existing != null) {
+                dao = existing;
+            }
+        }
+        return (ShardedDao<T, K>) dao;
+    }
+
+    /**
+     * Closes the connections of all shards. Exceptions thrown by the shards
+     * are suppressed until all shards have been closed.
+     * @param swallowClosingException true if exceptions from closing the
+     * shards should be suppressed, false if the first should be re-thrown
+     * @throws SQLException if closing a shard fails and exceptions are not
+     * swallowed
+     */
+    @Override
+    public void closeConnections(boolean swallowClosingException) throws SQLException {
+        daoCache.clear();
+        SQLException failure = null;
+        for (DatabaseContext shard : shards) {
+            try {
+                shard.closeConnections(swallowClosingException);
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Gets the connection source of the first shard. Every shard has a
+     * connection source of its own, and they are expected to be alike, so
+     * this one serves to inspect the database type and connection model of
+     * the shards. Statements executed through it reach the first shard
+     * only; use {@code getShard(int).getConnectionSource()} to reach others.
+     * @return the connection source of the first shard
+     * @throws SQLException if the shard's connection source cannot be obtained
+     */
+    @Override
+    public ConnectionSource getConnectionSource() throws SQLException {
+        return shards.get(0).getConnectionSource();
+    }
+
+    /**
+     * Gets a transaction manager that runs a callable inside a transaction
+     * on every shard, nested in shard order. If the callable fails, every
+     * shard rolls back. The shards commit one after another, innermost
+     * first, so if one fails to commit, the shards that committed before
+     * it are not rolled back.
+     * @return the transaction manager
+     */
+    @Override
+    public ContextTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    /**
+     * Gets a table utils instance that applies each operation to every
+     * shard in parallel. Counts returned are summed over the shards.
+     * @return the table utils instance
+     */
+    @Override
+    public ContextTableUtils getTableUtils() {
+        return tableUtils;
+    }
+
+    /**
+     * Creates a batch writer that divides the entities it is given among
+     * the shards and writes to the shards in parallel, each with a batch
+     * writer of its own. Row failures are reported with their positions in
+     * the iterable that was written.
+     */
+    @Override
+    public <T> BatchWriter<T> createBatchWriter(Class<T> entityClass, int batchSize, BatchWriter.CommitMode commitMode) throws SQLException {
+        ShardedDao<T, ?> dao = getDao(entityClass);
+        List<BatchWriter<T>> writers = new ArrayList<>(shards.size());
+        for (DatabaseContext shard : shards) {
+            writers.add(shard.createBatchWriter(entityClass, batchSize, commitMode));
+        }
+        return entities -> {
+            List<List<T>> entitiesByShard = new ArrayList<>(shards.size());
+            List<List<Integer>> indexesByShard = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                entitiesByShard.add(new ArrayList<>());
+                indexesByShard.add(new ArrayList<>());
+            }
+            int index = 0;
+            for (T entity : entities) {
+                int shard = dao.getShardIndexOf(entity);
+                entitiesByShard.get(shard).add(entity);
+                indexesByShard.get(shard).add(index++);
+            }
+            List<SqlSupplier<BatchResult<T>>> tasks = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                BatchWriter<T> writer = writers.get(i);
+                List<T> shardEntities = entitiesByShard.get(i);
+                tasks.add(() -> writer.write(shardEntities));
+            }
+            List<BatchResult<T>> results = runOnShards(tasks);
+            int rowsWritten = 0, batchesExecuted = 0, keysAssigned = 0;
+            List<BatchResult.RowFailure<T>> failures = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                BatchResult<T> result = results.get(i);
+                rowsWritten += result.getRowsWritten();
+                batchesExecuted += result.getBatchesExecuted();
+                keysAssigned += result.getKeysAssigned();
+                for (BatchResult.RowFailure<T> failure : result.getFailures()) {
+                    int originalIndex = indexesByShard.get(i).get(failure.getIndex());
+                    failures.add(new BatchResult.RowFailure<>(originalIndex, failure.getEntity(), failure.getException()));
+                }
+            }
+            failures.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+            return new BatchResult<>(rowsWritten, batchesExecuted, keysAssigned, failures);
+        };
+    }
+
+    /**
+     * Streams the results of a query from each shard in turn. Only one
+     * shard's query is open at a time.
+     */
+    @Override
+    public <T> Stream<T> streamQuery(Class<T> entityClass, @Nullable PreparedQuery<T> query, StreamOptions options) throws SQLException {
+        checkNotNull(options, "options");
+        return shards.stream().flatMap(shard -> {
+            try {
+                return shard.streamQuery(entityClass, query, options);
+            } catch (SQLException e) {
+                throw new IllegalStateException("failed to query shard", e);
+            }
+        });
+    }
+
+    /**
+     * Records that the calling thread holds connections of the shards for a
+     * transaction, batch tasks, or thread connections, so that shards are
+     * accessed on this thread until {@link #releaseThreadConnections()}.
+     */
+    void holdThreadConnections() {
+        threadConnectionDepth.set(threadConnectionDepth.get() + 1);
+    }
+
+    void releaseThreadConnections() {
+        int depth = threadConnectionDepth.get();
+        checkState(depth > 0, "calling thread holds no thread connections");
+        if (depth == 1) {
+            threadConnectionDepth.remove();
+        } else {
+            threadConnectionDepth.set(depth - 1);
+        }
+    }
+
+    /**
+     * Runs one task per shard, in parallel, and returns their results in
+     * shard order. The last task runs on the calling thread. If the calling
+     * thread {@link #holdThreadConnections() holds connections} of the
+     * shards, all tasks run on it, one after another.
+     * @throws SQLException the first exception thrown by a task, with the
+     * others suppressed
+     */
+    <R> List<R> runOnShards(List<? extends SqlSupplier<R>> tasks) throws SQLException {
+        if (threadConnectionDepth.get() > 0) {
+            List<R> results = new ArrayList<>(tasks.size());
+            for (SqlSupplier<R> task : tasks) {
+                results.add(task.get());
+            }
+            return results;
+        }
+        if (tasks.size() == 1) {
+            return Collections.singletonList(tasks.get(0).get());
+        }
+        List<FutureTask<R>> futures = new ArrayList<>(tasks.size());
+        for (SqlSupplier<R> task : tasks) {
+            futures.add(new FutureTask<>(task::get));
+        }
+        for (int i = 0; i < futures.size() - 1; i++) {
+            executor.execute(futures.get(i));
+        }
+        futures.get(futures.size() - 1).run();
+        List<R> results = new ArrayList<>(futures.size());
+        SQLException failure = null;
+        for (FutureTask<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new SQLException("interrupted while waiting for shards", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                SQLException shardFailure = cause instanceof SQLException ? (SQLException) cause : new SQLException("shard operation failed", cause);
+                if (failure == null) {
+                    failure = shardFailure;
+                } else {
+                    failure.addSuppressed(shardFailure);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private interface TableOperation {
+        int apply(ContextTableUtils tableUtils) throws SQLException;
+    }
+
+    private class ShardedTransactionManager implements ContextTransactionManager {
+
+        @Override
+        public <T> T callInTransaction(Callable<T> callable) throws SQLException {
+            checkNotNull(callable, "callable");
+            return callNested(0, false, callable);
+        }
+
+        @Override
+        public <T> T callInReadOnlyTransaction(Callable<T> callable) throws SQLException {
+            checkNotNull(callable, "callable");
+            return callNested(0, true, callable);
+        }
+
+        private <T> T callNested(int shard, boolean readOnly, Callable<T> callable) throws SQLException {
+            if (shard == shards.size()) {
+                holdThreadConnections();
+                try {
+                    return callable.call();
+                } catch (SQLException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new SQLException("transaction callable threw non-SQL exception", e);
+                } finally {
+                    releaseThreadConnections();
+                }
+            }
+            ContextTransactionManager shardManager = shards.get(shard).getTransactionManager();
+            Callable<T> inner = () -> callNested(shard + 1, readOnly, callable);
+            return readOnly ? shardManager.callInReadOnlyTransaction(inner) : shardManager.callInTransaction(inner);
+        }
+    }
+
+    private class ShardedTableUtils implements ContextTableUtils {
+
+        private int applyToAll(TableOperation operation) throws SQLException {
+            List<SqlSupplier<Integer>> tasks = new ArrayList<>(shards.size());
+            for (DatabaseContext shard : shards) {
+                tasks.add(() -> operation.apply(shard.getTableUtils()));
+            }
+            int sum = 0;
+            for (int result : runOnShards(tasks)) {
+                sum += result;
+            }
+            return sum;
+        }
+
+        @Override
+        public <T> int clearTable(Class<T> dataClass) throws SQLException {
+            return applyToAll(u -> u.clearTable(dataClass));
+        }
+
+        @Override
+        public <T> int clearTable(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return applyToAll(u -> u.clearTable(tableConfig));
+        }
+
+        @Override
+        public int truncateTables(Iterable<Class<?>> dataClasses) throws SQLException {
+            return applyToAll(u -> u.truncateTables(dataClasses));
+        }
+
+        @Override
+        public <T> int createTable(Class<T> dataClass) throws SQLException {
+            return applyToAll(u -> u.createTable(dataClass));
+        }
+
+        @Override
+        public <T> int createTable(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return applyToAll(u -> u.createTable(tableConfig));
+        }
+
+        @Override
+        public <T> int createTableIfNotExists(Class<T> dataClass) throws SQLException {
+            return applyToAll(u -> u.createTableIfNotExists(dataClass));
+        }
+
+        @Override
+        public int createAllTablesIfNotExists(Iterable<Class<?>> dataClasses) throws SQLException {
+            return applyToAll(u -> u.createAllTablesIfNotExists(dataClasses));
+        }
+
+        @Override
+        public int createAllTables(Iterable<Class<?>> dataClasses) throws SQLException {
+            return applyToAll(u -> u.createAllTables(dataClasses));
+        }
+
+        @Override
+        public <T> int createTableIfNotExists(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return applyToAll(u -> u.createTableIfNotExists(tableConfig));
+        }
+
+        @Override
+        public <T, ID> int dropTable(Class<T> dataClass, boolean ignoreErrors) throws SQLException {
+            return applyToAll(u -> u.dropTable(dataClass, ignoreErrors));
+        }
+
+        @Override
+        public <T, ID> int dropTable(DatabaseTableConfig<T> tableConfig, boolean ignoreErrors) throws SQLException {
+            return applyToAll(u -> u.dropTable(tableConfig, ignoreErrors));
+        }
+
+        @Override
+        public <T, ID> List<String> getCreateTableStatements(Class<T> dataClass) throws SQLException {
+            return shards.get(0).getTableUtils().getCreateTableStatements(dataClass);
+        }
+
+        @Override
+        public <T, ID> List<String> getCreateTableStatements(DatabaseTableConfig<T> tableConfig) throws SQLException {
+            return shards.get(0).getTableUtils().getCreateTableStatements(tableConfig);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableList;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Prepared query of a {@link ShardedDao}, together with what the dao needs
+ * to run it across shards. A query whose where clause requires a value of
+ * the shard key column is run on the shard that owns the value. Other
+ * queries are run on every shard, and the results are merged by the query's
+ * ordering before its offset and limit are applied again.
+ *
+ * <p>Results are merged by comparing the values of the ordering columns in
+ * Java, with nulls ordered before other values, as H2, MySQL, and SQLite
+ * order them. Queries ordered by raw SQL cannot be merged.</p>
+ * @param <T> the entity type
+ */
+final class ShardedQuery<T> implements PreparedQuery<T> {
+
+    private static final Pattern QUOTED = Pattern.compile("'[^']*'|\"[^\"]*\"|`[^`]*`");
+    private static final Pattern ORDER_OR_LIMIT = Pattern.compile("\\b(ORDER\\s+BY|LIMIT|OFFSET|FETCH\\s+FIRST)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final PreparedQuery<T> query;
+    private final PreparedQuery<T> shardQuery;
+    @Nullable
+    private final Object shardKey;
+    private final ImmutableList<Ordering> orderings;
+    private final boolean mergeable;
+    private final long offset;
+    private final long limit;
+
+    /**
+     * Constructs an instance.
+     * @param query the query as built
+     * @param shardQuery the query to run on each shard when the query is
+     * not routed; it has no offset, and its limit covers the offset
+     * @param shardKey the shard key the where clause requires, or null
+     * @param orderings the orderings
+     * @param mergeable whether the results of the shards can be merged
+     * @param offset the offset, or zero
+     * @param limit the limit, or -1
+     */
+    ShardedQuery(PreparedQuery<T> query, PreparedQuery<T> shardQuery, @Nullable Object shardKey, List<Ordering> orderings, boolean mergeable, long offset, long limit) {
+        this.query = checkNotNull(query, "query");
+        this.shardQuery = checkNotNull(shardQuery, "shardQuery");
+        this.shardKey = shardKey;
+        this.orderings = ImmutableList.copyOf(orderings);
+        this.mergeable = mergeable;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the sharded form of a prepared query. A query that was not
+     * prepared by the query builder of a sharded dao is run on every shard,
+     * and is taken to be mergeable only if its SQL neither orders nor limits
+     * the results.
+     * @param <T> the entity type
+     * @param preparedQuery the prepared query
+     * @return the sharded query
+     * @throws SQLException if the statement cannot be read
+     */
+    public static <T> ShardedQuery<T> of(PreparedQuery<T> preparedQuery) throws SQLException {
+        checkNotNull(preparedQuery, "preparedQuery");
+        if (preparedQuery instanceof ShardedQuery) {
+            return (ShardedQuery<T>) preparedQuery;
+        }
+        String unquoted = QUOTED.matcher(preparedQuery.getStatement()).replaceAll("");
+        boolean mergeable = !ORDER_OR_LIMIT.matcher(unquoted).find();
+        return new ShardedQuery<>(preparedQuery, preparedQuery, null, ImmutableList.of(), mergeable, 0, -1);
+    }
+
+    /**
+     * Gets the query as built, which is run on a single shard.
+     * @return the query
+     */
+    public PreparedQuery<T> getQuery() {
+        return query;
+    }
+
+    /**
+     * Gets the query to run on each shard when the query is not routed.
+     * @return the shard query
+     */
+    public PreparedQuery<T> getShardQuery() {
+        return shardQuery;
+    }
+
+    /**
+     * Gets the shard key that the where clause requires.
+     * @return the shard key, or null if the query must run on every shard
+     */
+    @Nullable
+    public Object getShardKey() {
+        return shardKey;
+    }
+
+    /**
+     * Gets the offset.
+     * @return the offset, or zero
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the limit.
+     * @return the limit, or -1 if results are not limited
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checks that the results of the shards can be merged.
+     * @throws IllegalArgumentException if they cannot
+     */
+    public void checkMergeable() {
+        checkArgument(mergeable, "results of a query ordered by raw SQL, or ordered or limited "
+                + "without the query builder of a sharded dao, cannot be merged across shards; "
+                + "require a shard key value or use getShardDao(Object)");
+    }
+
+    /**
+     * Checks whether the results of the shards are merged by ordering.
+     * @return true if the query is ordered by columns
+     */
+    public boolean isOrdered() {
+        return !orderings.isEmpty();
+    }
+
+    /**
+     * Extracts the values of the ordering columns of an entity.
+     * @param entity the entity
+     * @return the values
+     * @throws SQLException if a value cannot be extracted or compared
+     */
+    public Object[] extractSortKey(T entity) throws SQLException {
+        Object[] key = new Object[orderings.size()];
+        for (int i = 0; i < key.length; i++) {
+            FieldType field = orderings.get(i).field;
+            Object value = field.extractJavaFieldToSqlArgValue(entity);
+            if (value != null && !(value instanceof Comparable)) {
+                throw new SQLException("cannot merge results ordered by column " + field.getColumnName() + " of type " + value.getClass());
+            }
+            key[i] = value;
+        }
+        return key;
+    }
+
+    /**
+     * Compares two sort keys by the orderings of the query.
+     * @param a a sort key
+     * @param b another sort key
+     * @return a negative number, zero, or a positive number as the first
+     * key orders before, with, or after the second
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public int compareSortKeys(Object[] a, Object[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int comparison;
+            if (a[i] == null || b[i] == null) {
+                comparison = a[i] == null ? (b[i] == null ? 0 : -1) : 1;
+            } else {
+                comparison = ((Comparable) a[i]).compareTo(b[i]);
+            }
+            if (comparison != 0) {
+                return orderings.get(i).ascending ? comparison : -comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Merges the results of the shards. Results are sorted by the query's
+     * ordering, if any, with ties kept in shard order, and the offset and
+     * limit are applied.
+     * @param shardResults the results of each shard, in shard order
+     * @return the merged results
+     * @throws SQLException if the values of the ordering columns cannot be
+     * extracted or compared
+     */
+    public List<T> merge(List<List<T>> shardResults) throws SQLException {
+        List<T> all = new ArrayList<>();
+        for (List<T> results : shardResults) {
+            all.addAll(results);
+        }
+        if (isOrdered()) {
+            List<Object[]> keys = new ArrayList<>(all.size());
+            for (T entity : all) {
+                keys.add(extractSortKey(entity));
+            }
+            List<Integer> indexes = new ArrayList<>(all.size());
+            for (int i = 0; i < all.size(); i++) {
+                indexes.add(i);
+            }
+            indexes.sort((i, j) -> compareSortKeys(keys.get(i), keys.get(j)));
+            List<T> sorted = new ArrayList<>(all.size());
+            for (int i : indexes) {
+                sorted.add(all.get(i));
+            }
+            all = sorted;
+        }
+        int from = (int) Math.min(offset, all.size());
+        int to = limit < 0 ? all.size() : (int) Math.min(all.size(), offset + limit);
+        return from == 0 && to == all.size() ? all : new ArrayList<>(all.subList(from, to));
+    }
+
+    @Override
+    public CompiledStatement compile(DatabaseConnection databaseConnection, StatementType type) throws SQLException {
+        return query.compile(databaseConnection, type);
+    }
+
+    @Override
+    public CompiledStatement compile(DatabaseConnection databaseConnection, StatementType type, int resultFlags) throws SQLException {
+        return query.compile(databaseConnection, type, resultFlags);
+    }
+
+    @Override
+    public String getStatement() throws SQLException {
+        return query.getStatement();
+    }
+
+    @Override
+    public StatementType getType() {
+        return query.getType();
+    }
+
+    /**
+     * Sets the value of an argument of the query, and of the shard query if
+     * it was prepared separately.
+     */
+    @Override
+    public void setArgumentHolderValue(int index, Object value) throws SQLException {
+        query.setArgumentHolderValue(index, value);
+        if (shardQuery != query) {
+            shardQuery.setArgumentHolderValue(index, value);
+        }
+    }
+
+    @Override
+    public T mapRow(DatabaseResults results) throws SQLException {
+        return query.mapRow(results);
+    }
+
+    /**
+     * Column by which results are ordered.
+     */
+    static final class Ordering {
+
+        public final FieldType field;
+        public final boolean ascending;
+
+        public Ordering(FieldType field, boolean ascending) {
+            this.field = checkNotNull(field, "field");
+            this.ascending = ascending;
+        }
+    }
+}
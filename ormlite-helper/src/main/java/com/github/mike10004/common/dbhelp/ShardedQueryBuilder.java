@@ -0,0 +1,213 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ShardedQuery.Ordering;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.ArgumentHolder;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.stmt.Where;
+import com.j256.ormlite.table.TableInfo;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query builder of a {@link ShardedDao}. Besides building the query, it
+ * records what the dao needs to run the query across shards: the value of
+ * the shard key column that the where clause requires, if any, and the
+ * ordering, offset, and limit by which the results of the shards are
+ * merged. Queries it prepares are {@link ShardedQuery sharded queries}.
+ *
+ * <p>A where clause requires a shard key value if it compares the shard key
+ * column for equality with a value, with {@link Where#eq(String, Object)}
+ * or, when the id is the shard key, {@link Where#idEq(Object)}, and uses
+ * neither {@code or} nor {@code not}. Comparisons with
+ * {@link com.j256.ormlite.stmt.SelectArg select arguments} are not routed,
+ * because their values may change after the query is prepared.</p>
+ * @param <T> the entity type
+ * @param <ID> the id type
+ */
+final class ShardedQueryBuilder<T, ID> extends QueryBuilder<T, ID> {
+
+    private final ShardedDao<T, ID> dao;
+    private final List<Ordering> orderings = new ArrayList<>();
+    @Nullable
+    private ShardKeyWhere shardKeyWhere;
+    private boolean orderedByRawSql;
+    @Nullable
+    private Long limit;
+    @Nullable
+    private Long offset;
+
+    public ShardedQueryBuilder(DatabaseType databaseType, TableInfo<T, ID> tableInfo, ShardedDao<T, ID> dao) {
+        super(databaseType, tableInfo, dao);
+        this.dao = dao;
+    }
+
+    @Override
+    public Where<T, ID> where() {
+        shardKeyWhere = new ShardKeyWhere(tableInfo, this, databaseType);
+        setWhere(shardKeyWhere);
+        return shardKeyWhere;
+    }
+
+    @Override
+    public QueryBuilder<T, ID> orderBy(String columnName, boolean ascending) {
+        super.orderBy(columnName, ascending);
+        orderings.add(new Ordering(tableInfo.getFieldTypeByColumnName(columnName), ascending));
+        return this;
+    }
+
+    @Override
+    public QueryBuilder<T, ID> orderByRaw(String rawSql) {
+        super.orderByRaw(rawSql);
+        orderedByRawSql = true;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder<T, ID> orderByRaw(String rawSql, ArgumentHolder... args) {
+        super.orderByRaw(rawSql, args);
+        orderedByRawSql = true;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder<T, ID> limit(Long maxRows) {
+        super.limit(maxRows);
+        limit = maxRows;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder<T, ID> offset(Long startRow) throws SQLException {
+        super.offset(startRow);
+        offset = startRow;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        orderings.clear();
+        orderedByRawSql = false;
+        limit = null;
+        offset = null;
+    }
+
+    /**
+     * Prepares the query. If the query has an offset and may run on every
+     * shard, a second query is prepared for the shards, without the offset
+     * and with a limit that covers it, because the offset applies to the
+     * merged results.
+     * @return a {@link ShardedQuery}
+     */
+    @Override
+    public PreparedQuery<T> prepare() throws SQLException {
+        PreparedQuery<T> query = super.prepare();
+        Object shardKey = shardKeyWhere != null && where == shardKeyWhere ? shardKeyWhere.shardKey : null;
+        long offsetRows = offset == null ? 0 : offset;
+        long limitRows = limit == null ? -1 : limit;
+        if (shardKey != null) {
+            return new ShardedQuery<>(query, query, shardKey, orderings, true, offsetRows, limitRows);
+        }
+        PreparedQuery<T> shardQuery = query;
+        if (offsetRows > 0) {
+            super.offset(null);
+            super.limit(limit == null ? null : limit + offsetRows);
+            try {
+                shardQuery = super.prepare();
+            } finally {
+                super.limit(limit);
+                super.offset(offset);
+            }
+        }
+        return new ShardedQuery<>(query, shardQuery, null, orderings, !orderedByRawSql, offsetRows, limitRows);
+    }
+
+    /**
+     * Where clause that records the shard key value it requires.
+     */
+    private class ShardKeyWhere extends Where<T, ID> {
+
+        @Nullable
+        private Object shardKey;
+        private boolean disjunctive;
+
+        public ShardKeyWhere(TableInfo<T, ID> tableInfo, StatementBuilder<T, ID> statementBuilder, DatabaseType databaseType) {
+            super(tableInfo, statementBuilder, databaseType);
+        }
+
+        private void recordShardKey(FieldType field, @Nullable Object value) throws SQLException {
+            if (shardKey == null && !disjunctive && field == dao.getShardKeyField()
+                    && value != null && !(value instanceof ArgumentHolder)) {
+                shardKey = dao.toShardKey(value);
+            }
+        }
+
+        private void recordDisjunction() {
+            disjunctive = true;
+            shardKey = null;
+        }
+
+        @Override
+        public Where<T, ID> eq(String columnName, Object value) throws SQLException {
+            super.eq(columnName, value);
+            recordShardKey(tableInfo.getFieldTypeByColumnName(columnName), value);
+            return this;
+        }
+
+        @Override
+        public Where<T, ID> idEq(ID id) throws SQLException {
+            super.idEq(id);
+            recordShardKey(tableInfo.getIdField(), id);
+            return this;
+        }
+
+        @Override
+        public Where<T, ID> or() {
+            recordDisjunction();
+            return super.or();
+        }
+
+        @Override
+        public Where<T, ID> or(int numClauses) {
+            recordDisjunction();
+            return super.or(numClauses);
+        }
+
+        /**
+         * Combines the clauses with OR. The arguments only stand for the
+         * clauses already added, as in {@link Where}, so this is the same
+         * as {@link #or(int)} with the number of arguments.
+         */
+        @SafeVarargs
+        @Override
+        public final Where<T, ID> or(Where<T, ID> left, Where<T, ID> right, Where<T, ID>... others) {
+            return or(2 + others.length);
+        }
+
+        @Override
+        public Where<T, ID> not() {
+            recordDisjunction();
+            return super.not();
+        }
+
+        @Override
+        public Where<T, ID> not(Where<T, ID> comparison) {
+            recordDisjunction();
+            return super.not(comparison);
+        }
+
+        @Override
+        public Where<T, ID> reset() {
+            shardKey = null;
+            disjunctive = false;
+            return super.reset();
+        }
+    }
+}
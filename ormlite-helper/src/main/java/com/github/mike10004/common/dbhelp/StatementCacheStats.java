@@ -0,0 +1,73 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class that represents counters for prepared statement caches. A single
+ * instance is shared by all connections of a pooled connection source.
+ * @see StatementCachingConnection
+ * @see LazyJdbcPooledConnectionSource#setStatementCacheSize(int)
+ */
+public class StatementCacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    /**
+     * Gets the number of times a statement was reused from a cache.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of times a statement had to be prepared.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of statements closed to make room in a full cache.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the ratio of hits to requests.
+     * @return the hit rate, or zero if there have been no requests
+     */
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requests = hitCount + getMissCount();
+        return requests == 0 ? 0d : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("hits", getHitCount())
+                .add("misses", getMissCount())
+                .add("evictions", getEvictionCount())
+                .toString();
+    }
+}
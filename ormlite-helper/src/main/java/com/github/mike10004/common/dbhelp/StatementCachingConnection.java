@@ -0,0 +1,304 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableSet;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * JDBC database connection that keeps a bounded cache of prepared statements.
+ * The cache sits between this connection and the JDBC connection, so every
+ * statement ORMLite prepares is eligible, whether it is compiled or executed
+ * directly by methods such as {@link #queryForOne queryForOne} and
+ * {@link #insert insert}.
+ *
+ * <p>Closing a prepared statement returns it to the cache instead of closing
+ * it. Statements are keyed by SQL text and result flags. When the cache is
+ * full, the least recently used statement is closed. A statement that is in
+ * use is not in the cache, so the same SQL may be prepared more than once on
+ * this connection at the same time; only one copy is kept when they are
+ * closed. Statements whose settings were changed, for example by
+ * {@link Statement#setMaxRows(int)}, are closed rather than cached. Closing
+ * the connection closes all cached statements.</p>
+ */
+public class StatementCachingConnection extends JdbcDatabaseConnection {
+
+    private final StatementCache cache;
+
+    /**
+     * Constructs an instance.
+     * @param connection the JDBC connection
+     * @param maxStatements the maximum number of cached statements
+     * @param stats the counters to update
+     */
+    public StatementCachingConnection(Connection connection, int maxStatements, StatementCacheStats stats) {
+        this(new StatementCache(connection, maxStatements, stats));
+    }
+
+    private StatementCachingConnection(StatementCache cache) {
+        super(cache.connectionProxy);
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the number of statements currently in the cache.
+     * @return the number of idle cached statements
+     */
+    public int getCachedStatementCount() {
+        return cache.getIdleCount();
+    }
+
+    private static final class Key {
+
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int autoGeneratedKeys;
+
+        public Key(String sql, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return resultSetType == key.resultSetType
+                    && resultSetConcurrency == key.resultSetConcurrency
+                    && autoGeneratedKeys == key.autoGeneratedKeys
+                    && sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, resultSetType, resultSetConcurrency, autoGeneratedKeys);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class StatementCache implements InvocationHandler {
+
+        private final Connection connection;
+        private final Connection connectionProxy;
+        private final int maxStatements;
+        private final StatementCacheStats stats;
+        private final LinkedHashMap<Key, PreparedStatement> idleStatements;
+        private boolean closed;
+
+        public StatementCache(Connection connection, int maxStatements, StatementCacheStats stats) {
+            this.connection = checkNotNull(connection, "connection");
+            checkArgument(maxStatements > 0, "max statements must be positive: %s", maxStatements);
+            this.maxStatements = maxStatements;
+            this.stats = checkNotNull(stats, "stats");
+            idleStatements = new LinkedHashMap<>(16, 0.75f, true);
+            connectionProxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        public int getIdleCount() {
+            synchronized (idleStatements) {
+                return idleStatements.size();
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name)) {
+                Key key = toKey(method.getParameterTypes(), args);
+                if (key != null) {
+                    return prepareStatement(key);
+                }
+            } else if ("close".equals(name) && args == null) {
+                close();
+            } else if ("equals".equals(name) && args != null && args.length == 1) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name) && args == null) {
+                return System.identityHashCode(proxy);
+            }
+            return StatementCachingConnection.invoke(connection, method, args);
+        }
+
+        private static Key toKey(Class<?>[] parameterTypes, Object[] args) {
+            if (parameterTypes.length == 1) {
+                return new Key((String) args[0], ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, Statement.NO_GENERATED_KEYS);
+            }
+            if (parameterTypes.length == 2 && parameterTypes[1] == int.class) {
+                return new Key((String) args[0], ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, (Integer) args[1]);
+            }
+            if (parameterTypes.length == 3 && parameterTypes[1] == int.class && parameterTypes[2] == int.class) {
+                return new Key((String) args[0], (Integer) args[1], (Integer) args[2], Statement.NO_GENERATED_KEYS);
+            }
+            return null;
+        }
+
+        private PreparedStatement prepareStatement(Key key) throws SQLException {
+            PreparedStatement statement;
+            synchronized (idleStatements) {
+                statement = idleStatements.remove(key);
+            }
+            if (statement != null) {
+                stats.recordHit();
+            } else {
+                stats.recordMiss();
+                if (key.autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+                    statement = connection.prepareStatement(key.sql, key.autoGeneratedKeys);
+                } else {
+                    statement = connection.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency);
+                }
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new CachedStatement(this, key, statement));
+        }
+
+        public void checkIn(Key key, PreparedStatement statement, boolean batched) throws SQLException {
+            try {
+                ResultSet resultSet = statement.getResultSet();
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+                statement.clearParameters();
+                if (batched) {
+                    statement.clearBatch();
+                }
+            } catch (SQLException e) {
+                statement.close();
+                throw e;
+            }
+            List<PreparedStatement> toClose = new ArrayList<>(1);
+            synchronized (idleStatements) {
+                if (closed || idleStatements.containsKey(key)) {
+                    toClose.add(statement);
+                } else {
+                    idleStatements.put(key, statement);
+                    Iterator<PreparedStatement> it = idleStatements.values().iterator();
+                    while (idleStatements.size() > maxStatements && it.hasNext()) {
+                        toClose.add(it.next());
+                        it.remove();
+                        stats.recordEviction();
+                    }
+                }
+            }
+            closeAll(toClose);
+        }
+
+        private void close() throws SQLException {
+            List<PreparedStatement> toClose;
+            synchronized (idleStatements) {
+                closed = true;
+                toClose = new ArrayList<>(idleStatements.values());
+                idleStatements.clear();
+            }
+            closeAll(toClose);
+        }
+
+        private static void closeAll(List<PreparedStatement> statements) throws SQLException {
+            SQLException exception = null;
+            for (PreparedStatement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * Statement methods that change settings that would leak into the next
+     * use of a cached statement.
+     */
+    private static final Set<String> SETTINGS_METHODS = ImmutableSet.of(
+            "setMaxRows", "setLargeMaxRows", "setQueryTimeout", "setFetchSize", "setFetchDirection",
+            "setMaxFieldSize", "setEscapeProcessing", "setCursorName", "setPoolable", "closeOnCompletion");
+
+    private static class CachedStatement implements InvocationHandler {
+
+        private final StatementCache cache;
+        private final Key key;
+        private final PreparedStatement statement;
+        private boolean settingsChanged;
+        private boolean batched;
+        private boolean closed;
+
+        public CachedStatement(StatementCache cache, Key key, PreparedStatement statement) {
+            this.cache = cache;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (args == null) {
+                switch (name) {
+                    case "close":
+                        close();
+                        return null;
+                    case "isClosed":
+                        return closed || statement.isClosed();
+                    case "getConnection":
+                        return cache.connectionProxy;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+            } else if ("equals".equals(name) && args.length == 1) {
+                return proxy == args[0];
+            }
+            if (SETTINGS_METHODS.contains(name)) {
+                settingsChanged = true;
+            } else if ("addBatch".equals(name)) {
+                batched = true;
+            }
+            return StatementCachingConnection.invoke(statement, method, args);
+        }
+
+        private void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (settingsChanged) {
+                statement.close();
+            } else {
+                cache.checkIn(key, statement, batched);
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that collects statement latencies reported by tracing connections.
+ * Latencies are kept in a histogram per statement fingerprint, which is the
+ * statement text with literals replaced by placeholders and whitespace
+ * collapsed. Statements that take at least as long as the slow threshold
+ * are also reported to a slow query listener.
+ * @see TracingDatabaseConnection
+ * @see TracingConnectionSource
+ */
+public class StatementTracer {
+
+    /**
+     * Maximum number of distinct statement strings whose fingerprints are
+     * cached. Applications that build statements with inline literals produce
+     * an unbounded number of distinct strings; those are fingerprinted on
+     * every execution once the cache is full.
+     */
+    static final int MAX_CACHED_FINGERPRINTS = 4096;
+
+    private static final Logger log = LoggerFactory.getLogger(StatementTracer.class);
+
+    private final long slowThresholdNanos;
+    private final SlowQueryListener slowQueryListener;
+    private final ConcurrentMap<String, String> fingerprints;
+    private final ConcurrentMap<String, LatencyHistogram> histograms;
+
+    /**
+     * Constructs an instance that logs slow queries at warning level.
+     * @param slowThreshold the slow query threshold
+     * @param unit the threshold unit
+     */
+    public StatementTracer(long slowThreshold, TimeUnit unit) {
+        this(slowThreshold, unit, StatementTracer::logSlowQuery);
+    }
+
+    public StatementTracer(long slowThreshold, TimeUnit unit, SlowQueryListener slowQueryListener) {
+        checkArgument(slowThreshold >= 0, "slow threshold must be nonnegative: %s", slowThreshold);
+        this.slowThresholdNanos = unit.toNanos(slowThreshold);
+        this.slowQueryListener = checkNotNull(slowQueryListener, "slowQueryListener");
+        fingerprints = new ConcurrentHashMap<>();
+        histograms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Interface of a service that is notified of slow statements.
+     * Implementations are invoked on the thread that executed the statement.
+     */
+    public interface SlowQueryListener {
+
+        /**
+         * Receives notification of a slow statement.
+         * @param query the slow statement
+         */
+        void slowQuery(SlowQuery query);
+    }
+
+    /**
+     * Class that represents a single execution of a slow statement.
+     */
+    public static class SlowQuery {
+
+        private final String sql;
+        private final String fingerprint;
+        private final long elapsedNanos;
+        private final int parameterCount;
+        private final int rowCount;
+
+        public SlowQuery(String sql, String fingerprint, long elapsedNanos, int parameterCount, int rowCount) {
+            this.sql = sql;
+            this.fingerprint = fingerprint;
+            this.elapsedNanos = elapsedNanos;
+            this.parameterCount = parameterCount;
+            this.rowCount = rowCount;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the number of bind parameters set on the statement.
+         * @return the parameter count
+         */
+        public int getParameterCount() {
+            return parameterCount;
+        }
+
+        /**
+         * Gets the number of rows affected or returned.
+         * @return the row count, or -1 if unknown, as it is for queries
+         * whose results are iterated after execution
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                    .add("parameterCount", parameterCount)
+                    .add("rowCount", rowCount)
+                    .add("sql", sql)
+                    .toString();
+        }
+    }
+
+    private static void logSlowQuery(SlowQuery query) {
+        log.warn("slow statement ({} ms, {} parameters, {} rows): {}", new Object[]{
+                TimeUnit.NANOSECONDS.toMillis(query.getElapsedNanos()),
+                query.getParameterCount(), query.getRowCount(), query.getSql()});
+    }
+
+    /**
+     * Records an execution of a statement.
+     * @param sql the statement text
+     * @param elapsedNanos the execution time
+     * @param parameterCount the number of bind parameters
+     * @param rowCount the number of rows affected or returned, or -1 if unknown
+     */
+    public void record(String sql, long elapsedNanos, int parameterCount, int rowCount) {
+        String fingerprint = getFingerprint(sql);
+        LatencyHistogram histogram = histograms.get(fingerprint);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(fingerprint, k -> new LatencyHistogram());
+        }
+        histogram.record(elapsedNanos);
+        if (elapsedNanos >= slowThresholdNanos) {
+            slowQueryListener.slowQuery(new SlowQuery(sql, fingerprint, elapsedNanos, parameterCount, rowCount));
+        }
+    }
+
+    private String getFingerprint(String sql) {
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = fingerprint(sql);
+            if (fingerprints.size() < MAX_CACHED_FINGERPRINTS) {
+                fingerprints.putIfAbsent(sql, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Gets the latency histograms collected so far, keyed by fingerprint.
+     * @return an unmodifiable live view of the histograms
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Normalizes statement text into a fingerprint. Quoted string literals
+     * and numeric literals are replaced with {@code ?}, runs of whitespace
+     * are collapsed to a single space, and lists of placeholders such as
+     * {@code (?, ?, ?)} are collapsed to {@code (?+)}. Quoted identifiers are
+     * preserved.
+     * @param sql the statement text
+     * @return the fingerprint
+     */
+    public static String fingerprint(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                appendPlaceholder(sb);
+            } else if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0 && i < n) {
+                    sb.append(' ');
+                }
+            } else if (isNumberStart(sql, i, sb)) {
+                i++;
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                appendPlaceholder(sb);
+            } else if (c == '?') {
+                appendPlaceholder(sb);
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNumberStart(String sql, int i, StringBuilder sb) {
+        if (!Character.isDigit(sql.charAt(i))) {
+            return false;
+        }
+        if (sb.length() == 0) {
+            return true;
+        }
+        char previous = sb.charAt(sb.length() - 1);
+        return !(Character.isLetterOrDigit(previous) || previous == '_' || previous == '$');
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        int n = sql.length();
+        while (i < n) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    /**
+     * Appends a placeholder, collapsing it into a preceding placeholder list
+     * if there is one.
+     */
+    private static void appendPlaceholder(StringBuilder sb) {
+        int len = sb.length();
+        int j = len - 1;
+        while (j >= 0 && sb.charAt(j) == ' ') {
+            j--;
+        }
+        if (j >= 0 && sb.charAt(j) == ',') {
+            int k = j - 1;
+            while (k >= 0 && sb.charAt(k) == ' ') {
+                k--;
+            }
+            if (k >= 0 && sb.charAt(k) == '+' && k >= 1 && sb.charAt(k - 1) == '?') {
+                sb.setLength(k + 1);
+                return;
+            }
+            if (k >= 0 && sb.charAt(k) == '?') {
+                sb.setLength(k + 1);
+                sb.append('+');
+                return;
+            }
+        }
+        sb.append('?');
+    }
+}
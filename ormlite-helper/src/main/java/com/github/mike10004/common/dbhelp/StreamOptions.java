@@ -0,0 +1,76 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Class that represents options for streaming query results.
+ * Instances are immutable.
+ * @see DatabaseContext#streamQuery(Class, com.j256.ormlite.stmt.PreparedQuery, StreamOptions) 
+ */
+public final class StreamOptions {
+
+    /**
+     * Default JDBC fetch size.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final StreamOptions DEFAULTS = new StreamOptions(DEFAULT_FETCH_SIZE, false);
+
+    private final int fetchSize;
+    private final boolean boundedMemory;
+
+    private StreamOptions(int fetchSize, boolean boundedMemory) {
+        checkArgument(fetchSize > 0, "fetch size must be positive: %s", fetchSize);
+        this.fetchSize = fetchSize;
+        this.boundedMemory = boundedMemory;
+    }
+
+    /**
+     * Gets the default options. Rows are fetched {@link #DEFAULT_FETCH_SIZE} at 
+     * a time and bounded-memory mode is off.
+     * @return the default options
+     */
+    public static StreamOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Creates options with the given fetch size and bounded-memory mode off.
+     * @param fetchSize the JDBC fetch size
+     * @return the options
+     */
+    public static StreamOptions withFetchSize(int fetchSize) {
+        return new StreamOptions(fetchSize, false);
+    }
+
+    /**
+     * Returns a copy of these options with bounded-memory mode on. In that
+     * mode, the object cache is bypassed and the database is asked not to 
+     * materialize the result set: on MySQL, rows are streamed one at a time 
+     * (the fetch size is ignored), and on H2, lazy query execution is enabled
+     * for the duration of the query. On other databases only the object cache
+     * is bypassed.
+     * @return the options
+     */
+    public StreamOptions boundedMemory() {
+        return new StreamOptions(fetchSize, true);
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public boolean isBoundedMemory() {
+        return boundedMemory;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("fetchSize", fetchSize)
+                .add("boundedMemory", boundedMemory)
+                .toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.table.DatabaseTableConfig;
+
+/**
+ * Interface of a factory that creates the table configuration for an entity
+ * class. Implementations are generated at compile time by the
+ * ormlite-helper-processor annotation processor and found at runtime by
+ * {@link GeneratedTableConfigs}.
+ * @param <T> the entity type
+ */
+public interface TableConfigFactory<T> {
+
+    /**
+     * Creates a new table configuration with the field configurations that
+     * ORMLite would read from the entity class's annotations. The table name
+     * is not adjusted for the database type.
+     * @return a new table configuration
+     */
+    DatabaseTableConfig<T> createTableConfig();
+
+}
@@ -0,0 +1,143 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTableConfig;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class that represents foreign-key dependencies among a set of entity
+ * classes. An entity depends on another if it has a foreign field of the
+ * other's type. Dependencies on classes outside the set, and on the class
+ * itself, are ignored.
+ */
+final class TableDependencyGraph {
+
+    private final ImmutableList<Class<?>> dataClasses;
+    private final ImmutableMap<Class<?>, ImmutableSet<Class<?>>> dependencies;
+
+    private TableDependencyGraph(ImmutableList<Class<?>> dataClasses, ImmutableMap<Class<?>, ImmutableSet<Class<?>>> dependencies) {
+        this.dataClasses = dataClasses;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Builds the graph for a collection of entity classes from their table
+     * configurations.
+     * @param connectionSource the connection source
+     * @param dataClasses the entity classes
+     * @return the graph
+     * @throws SQLException if a table configuration cannot be built
+     */
+    public static TableDependencyGraph build(ConnectionSource connectionSource, Collection<Class<?>> dataClasses) throws SQLException {
+        return build(connectionSource, dataClasses, new GeneratedTableConfigs(connectionSource));
+    }
+
+    /**
+     * Builds the graph for a collection of entity classes, using generated
+     * table configurations where available.
+     * @param connectionSource the connection source
+     * @param dataClasses the entity classes
+     * @param generatedTableConfigs the generated table configurations
+     * @return the graph
+     * @throws SQLException if a table configuration cannot be built
+     */
+    public static TableDependencyGraph build(ConnectionSource connectionSource, Collection<Class<?>> dataClasses,
+                                             GeneratedTableConfigs generatedTableConfigs) throws SQLException {
+        ImmutableList<Class<?>> classes = ImmutableList.copyOf(new LinkedHashSet<>(dataClasses));
+        Set<Class<?>> members = ImmutableSet.copyOf(classes);
+        ImmutableMap.Builder<Class<?>, ImmutableSet<Class<?>>> dependencies = ImmutableMap.builder();
+        for (Class<?> dataClass : classes) {
+            DatabaseTableConfig<?> tableConfig = generatedTableConfigs.getTableConfig(dataClass);
+            if (tableConfig == null) {
+                tableConfig = DatabaseTableConfig.fromClass(connectionSource, dataClass);
+            }
+            ImmutableSet.Builder<Class<?>> referenced = ImmutableSet.builder();
+            for (Class<?> foreignClass : getForeignClasses(connectionSource, tableConfig)) {
+                if (foreignClass != dataClass && members.contains(foreignClass)) {
+                    referenced.add(foreignClass);
+                }
+            }
+            dependencies.put(dataClass, referenced.build());
+        }
+        return new TableDependencyGraph(classes, dependencies.build());
+    }
+
+    private static List<Class<?>> getForeignClasses(ConnectionSource connectionSource, DatabaseTableConfig<?> tableConfig) throws SQLException {
+        List<Class<?>> foreignClasses = new ArrayList<>();
+        for (FieldType fieldType : tableConfig.getFieldTypes(connectionSource.getDatabaseType())) {
+            if (fieldType.isForeign()) {
+                foreignClasses.add(fieldType.getType());
+            }
+        }
+        return foreignClasses;
+    }
+
+    /**
+     * Gets the entity classes, without duplicates, in the order supplied.
+     * @return the entity classes
+     */
+    public ImmutableList<Class<?>> getDataClasses() {
+        return dataClasses;
+    }
+
+    /**
+     * Gets the entity classes that a given entity class depends on.
+     * @param dataClass the entity class
+     * @return the classes whose tables must exist before the given class's
+     */
+    public ImmutableSet<Class<?>> getDependencies(Class<?> dataClass) {
+        ImmutableSet<Class<?>> result = dependencies.get(dataClass);
+        return result == null ? ImmutableSet.of() : result;
+    }
+
+    /**
+     * Orders the entity classes so that each comes after all of its
+     * dependencies. Among classes whose relative order does not matter, the
+     * supplied order is preserved.
+     * @return the ordered classes, or null if the dependencies contain a cycle
+     */
+    @Nullable
+    public List<Class<?>> sort() {
+        Map<Class<?>, Integer> remaining = new HashMap<>();
+        Map<Class<?>, List<Class<?>>> dependents = new HashMap<>();
+        for (Class<?> dataClass : dataClasses) {
+            Set<Class<?>> deps = getDependencies(dataClass);
+            remaining.put(dataClass, deps.size());
+            for (Class<?> dep : deps) {
+                dependents.computeIfAbsent(dep, k -> new ArrayList<>()).add(dataClass);
+            }
+        }
+        Deque<Class<?>> ready = new ArrayDeque<>();
+        for (Class<?> dataClass : dataClasses) {
+            if (remaining.get(dataClass) == 0) {
+                ready.add(dataClass);
+            }
+        }
+        List<Class<?>> sorted = new ArrayList<>(dataClasses.size());
+        while (!ready.isEmpty()) {
+            Class<?> next = ready.remove();
+            sorted.add(next);
+            for (Class<?> dependent : dependents.getOrDefault(next, ImmutableList.of())) {
+                if (remaining.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return sorted.size() == dataClasses.size() ? sorted : null;
+    }
+}
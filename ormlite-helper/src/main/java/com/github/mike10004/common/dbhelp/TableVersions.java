@@ -0,0 +1,113 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that counts writes to tables so that cached query results can be
+ * checked for staleness. A result is stamped with the sum of the counters
+ * of the tables it was read from; because counters only increase, the sum
+ * changes if and only if one of those tables was written since. Writes
+ * whose tables are unknown advance a counter that every stamp includes.
+ *
+ * <p>Table names are compared without regard to case.</p>
+ */
+final class TableVersions {
+
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    private static String normalize(String tableName) {
+        return checkNotNull(tableName, "tableName").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Registers a table. Stamps taken before a table is registered do not
+     * include it, so registering a new table invalidates every stamp.
+     * @param tableName the table name
+     */
+    public void register(String tableName) {
+        if (versions.putIfAbsent(normalize(tableName), new AtomicLong()) == null) {
+            globalVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a write to a table.
+     * @param tableName the table name
+     */
+    public void recordWrite(String tableName) {
+        AtomicLong version = versions.get(normalize(tableName));
+        if (version == null) {
+            recordWriteToAll();
+        } else {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a write to tables that are not known, which invalidates every
+     * stamp.
+     */
+    public void recordWriteToAll() {
+        globalVersion.incrementAndGet();
+    }
+
+    /**
+     * Finds the registered tables that an SQL statement refers to. A table
+     * is taken to be referred to if its name occurs in the statement as a
+     * whole word, quoted or not; this may find tables that the statement
+     * does not actually touch, but does not miss any that it names.
+     * @param sql the statement
+     * @return the normalized names of the tables
+     */
+    public List<String> findTables(String sql) {
+        String normalizedSql = sql.toLowerCase(Locale.ROOT);
+        ImmutableList.Builder<String> tables = ImmutableList.builder();
+        for (String tableName : versions.keySet()) {
+            if (containsWord(normalizedSql, tableName)) {
+                tables.add(tableName);
+            }
+        }
+        return tables.build();
+    }
+
+    private static boolean containsWord(String text, String word) {
+        for (int i = text.indexOf(word); i >= 0; i = text.indexOf(word, i + 1)) {
+            int end = i + word.length();
+            if ((i == 0 || !isIdentifierPart(text.charAt(i - 1)))
+                    && (end == text.length() || !isIdentifierPart(text.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+    }
+
+    /**
+     * Computes the stamp of a set of tables.
+     * @param tables the normalized table names, as returned by
+     * {@link #findTables(String)}
+     * @return the stamp
+     */
+    public long stamp(List<String> tables) {
+        long stamp = globalVersion.get();
+        for (String tableName : tables) {
+            AtomicLong version = versions.get(tableName);
+            if (version != null) {
+                stamp += version.get();
+            }
+        }
+        return stamp;
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.Daos.DaoDelegator;
+import com.google.common.collect.ImmutableList;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedDelete;
+import com.j256.ormlite.stmt.PreparedUpdate;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.Collection;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Data access object that records each write it executes in a set of
+ * table versions. Writes through the dao's own methods and statement
+ * builders are recorded against its table; raw statements may touch any
+ * table and are recorded against all of them. Given a set of transaction
+ * completion actions, writes made in a transaction are recorded again when
+ * the transaction ends.
+ * @param <T> the entity type
+ * @param <ID> the id type
+ */
+class TableWriteTrackingDao<T, ID> extends DaoDelegator<T, ID> {
+
+    private final TableVersions tableVersions;
+    private final String tableName;
+    @Nullable
+    private final TransactionCompletionActions completionActions;
+
+    public TableWriteTrackingDao(Dao<T, ID> delegate, TableVersions tableVersions) {
+        this(delegate, tableVersions, null);
+    }
+
+    public TableWriteTrackingDao(Dao<T, ID> delegate, TableVersions tableVersions, @Nullable TransactionCompletionActions completionActions) {
+        super(delegate);
+        this.tableVersions = checkNotNull(tableVersions, "tableVersions");
+        this.completionActions = completionActions;
+        tableName = delegate.getTableName();
+        tableVersions.register(tableName);
+    }
+
+    public TableVersions getTableVersions() {
+        return tableVersions;
+    }
+
+    private void recordWrite() {
+        record(ImmutableList.of(tableVersions, tableName), () -> tableVersions.recordWrite(tableName));
+    }
+
+    private void recordWriteToAll() {
+        record(ImmutableList.of(tableVersions), tableVersions::recordWriteToAll);
+    }
+
+    private void record(Object key, Runnable action) {
+        if (completionActions == null) {
+            action.run();
+        } else {
+            completionActions.runNowAndAfterTransaction(getConnectionSource(), tableName, key, action);
+        }
+    }
+
+    @Override
+    public int create(T data) throws SQLException {
+        try {
+            return super.create(data);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int create(Collection<T> datas) throws SQLException {
+        try {
+            return super.create(datas);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public T createIfNotExists(T data) throws SQLException {
+        try {
+            return super.createIfNotExists(data);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public CreateOrUpdateStatus createOrUpdate(T data) throws SQLException {
+        try {
+            return super.createOrUpdate(data);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int update(T data) throws SQLException {
+        try {
+            return super.update(data);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int updateId(T data, ID newId) throws SQLException {
+        try {
+            return super.updateId(data, newId);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int update(PreparedUpdate<T> preparedUpdate) throws SQLException {
+        try {
+            return super.update(preparedUpdate);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int delete(T data) throws SQLException {
+        try {
+            return super.delete(data);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int deleteById(ID id) throws SQLException {
+        try {
+            return super.deleteById(id);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int delete(Collection<T> datas) throws SQLException {
+        try {
+            return super.delete(datas);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int deleteIds(Collection<ID> ids) throws SQLException {
+        try {
+            return super.deleteIds(ids);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int delete(PreparedDelete<T> preparedDelete) throws SQLException {
+        try {
+            return super.delete(preparedDelete);
+        } finally {
+            recordWrite();
+        }
+    }
+
+    @Override
+    public int executeRaw(String statement, String... arguments) throws SQLException {
+        try {
+            return super.executeRaw(statement, arguments);
+        } finally {
+            recordWriteToAll();
+        }
+    }
+
+    @Override
+    public int executeRawNoArgs(String statement) throws SQLException {
+        try {
+            return super.executeRawNoArgs(statement);
+        } finally {
+            recordWriteToAll();
+        }
+    }
+
+    @Override
+    public int updateRaw(String statement, String... arguments) throws SQLException {
+        try {
+            return super.updateRaw(statement, arguments);
+        } finally {
+            recordWriteToAll();
+        }
+    }
+}
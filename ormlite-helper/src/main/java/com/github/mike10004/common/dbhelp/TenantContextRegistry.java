@@ -0,0 +1,588 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionSources.ConnectionSourceDelegator;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.logger.LoggerFactory;
+import com.j256.ormlite.misc.IOUtils;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Registry of database contexts keyed by tenant, for applications that keep
+ * a separate database or schema per customer. A tenant's context and its
+ * connection source are created the first time the context is requested.
+ *
+ * <p>The registry enforces a global budget on the connections held open by
+ * all tenants. A tenant reserves a unit of the budget for each connection
+ * its pool must open to serve concurrent checkouts, up to one for a
+ * single-connection source, and keeps its reservations while its connections
+ * sit idle in the pool. When the budget is exhausted, the registry evicts
+ * the least recently used tenants that have no connections in use, by
+ * {@link DatabaseContext#closeConnections(boolean) closing the connections}
+ * of their contexts, until a unit is available or the
+ * {@link #setConnectionWaitMillis(long) wait time} elapses. Tenants can also
+ * be evicted when they have been idle for longer than a timeout, or when more
+ * than a maximum number of tenants have open connection sources.</p>
+ *
+ * <p>An evicted context remains usable: the next time it needs a connection,
+ * a new connection source is obtained from the factory for the tenant. The
+ * factory should therefore return a connection source that reaches the same
+ * database each time it is invoked for a tenant, and connection sources
+ * should not open connections until they are asked for one.</p>
+ *
+ * @param <K> the tenant key type
+ */
+public class TenantContextRegistry<K> implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantContextRegistry.class);
+
+    private static final long DEFAULT_CONNECTION_WAIT_MILLIS = 30 * 1000;
+    private static final long BUDGET_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Function<? super K, ? extends ConnectionSource> connectionSourceFactory;
+    private final Function<? super ConnectionSource, ? extends DatabaseContext> contextFactory;
+    private final int maxOpenConnections;
+    private final Semaphore budget;
+    private final Ticker ticker;
+    private final ConcurrentMap<K, Tenant> tenants;
+    private final AtomicInteger openTenants;
+    private final LongAdder evictions;
+    private final AtomicLong lastIdleSweepNanos;
+    private volatile int maxOpenTenants;
+    private volatile long idleTimeoutNanos;
+    private volatile long connectionWaitNanos;
+    private volatile boolean closed;
+
+    /**
+     * Constructs an instance that creates a {@link DefaultDatabaseContext}
+     * for each tenant.
+     * @param connectionSourceFactory function that creates a tenant's
+     * connection source
+     * @param maxOpenConnections the global connection budget
+     */
+    public TenantContextRegistry(Function<? super K, ? extends ConnectionSource> connectionSourceFactory, int maxOpenConnections) {
+        this(connectionSourceFactory, DefaultDatabaseContext::new, maxOpenConnections);
+    }
+
+    public TenantContextRegistry(Function<? super K, ? extends ConnectionSource> connectionSourceFactory,
+                                 Function<? super ConnectionSource, ? extends DatabaseContext> contextFactory,
+                                 int maxOpenConnections) {
+        this(connectionSourceFactory, contextFactory, maxOpenConnections, Ticker.systemTicker());
+    }
+
+    TenantContextRegistry(Function<? super K, ? extends ConnectionSource> connectionSourceFactory,
+                          Function<? super ConnectionSource, ? extends DatabaseContext> contextFactory,
+                          int maxOpenConnections, Ticker ticker) {
+        this.connectionSourceFactory = checkNotNull(connectionSourceFactory, "connectionSourceFactory");
+        this.contextFactory = checkNotNull(contextFactory, "contextFactory");
+        checkArgument(maxOpenConnections > 0, "maxOpenConnections must be positive: %s", maxOpenConnections);
+        this.maxOpenConnections = maxOpenConnections;
+        this.ticker = checkNotNull(ticker, "ticker");
+        budget = new Semaphore(maxOpenConnections);
+        tenants = new ConcurrentHashMap<>();
+        openTenants = new AtomicInteger();
+        evictions = new LongAdder();
+        lastIdleSweepNanos = new AtomicLong(ticker.read());
+        maxOpenTenants = Integer.MAX_VALUE;
+        connectionWaitNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CONNECTION_WAIT_MILLIS);
+    }
+
+    /**
+     * Gets the context of a tenant, creating it if necessary. The context
+     * should be requested for each unit of work rather than retained, so
+     * that the registry can tell which tenants are active. If an
+     * {@link #setIdleTimeoutMillis(long) idle timeout} is set, this method
+     * occasionally evicts tenants that have exceeded it.
+     * @param tenantKey the tenant key
+     * @return the context
+     */
+    public DatabaseContext getContext(K tenantKey) {
+        checkNotNull(tenantKey, "tenantKey");
+        checkState(!closed, "registry is closed");
+        Tenant tenant = tenants.computeIfAbsent(tenantKey, Tenant::new);
+        tenant.touch();
+        maybeEvictIdle();
+        return tenant.context;
+    }
+
+    /**
+     * Evicts a tenant if it has no connections in use.
+     * @param tenantKey the tenant key
+     * @return true if the tenant's connections were closed
+     */
+    public boolean evict(K tenantKey) {
+        Tenant tenant = tenants.get(checkNotNull(tenantKey, "tenantKey"));
+        return tenant != null && evict(tenant, t -> true);
+    }
+
+    /**
+     * Evicts tenants that have no connections in use and have been idle for
+     * longer than the {@link #setIdleTimeoutMillis(long) idle timeout}. Does
+     * nothing if no timeout is set.
+     * @return the number of tenants evicted
+     */
+    public int evictIdle() {
+        long timeout = idleTimeoutNanos;
+        if (timeout <= 0) {
+            return 0;
+        }
+        long now = ticker.read();
+        lastIdleSweepNanos.set(now);
+        int count = 0;
+        for (Tenant tenant : tenants.values()) {
+            if (evict(tenant, t -> now - t.lastUsedNanos >= timeout)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void maybeEvictIdle() {
+        long timeout = idleTimeoutNanos;
+        if (timeout <= 0) {
+            return;
+        }
+        long last = lastIdleSweepNanos.get();
+        if (ticker.read() - last >= timeout / 2 && lastIdleSweepNanos.compareAndSet(last, ticker.read())) {
+            evictIdle();
+        }
+    }
+
+    /**
+     * Evicts the least recently used tenant, other than the one given, that
+     * has no connections in use and satisfies a condition.
+     * @return true if a tenant was evicted
+     */
+    private boolean evictLeastRecentlyUsed(Tenant exclude, Predicate<Tenant> condition) {
+        while (true) {
+            Tenant lru = null;
+            for (Tenant tenant : tenants.values()) {
+                if (tenant != exclude && tenant.isEvictable() && condition.test(tenant)
+                        && (lru == null || tenant.lastUsedNanos - lru.lastUsedNanos < 0)) {
+                    lru = tenant;
+                }
+            }
+            if (lru == null) {
+                return false;
+            }
+            if (evict(lru, condition)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Closes the connections of a tenant's context if the tenant is open,
+     * has no connections in use, and satisfies a condition. Checkouts by the
+     * tenant wait until the connections are closed.
+     */
+    private boolean evict(Tenant tenant, Predicate<Tenant> condition) {
+        synchronized (tenant) {
+            if (!tenant.isEvictable() || !condition.test(tenant)) {
+                return false;
+            }
+            tenant.evicting = true;
+        }
+        try {
+            tenant.context.closeConnections(true);
+        } catch (SQLException e) {
+            logger.warn(e, "failed to close connections of tenant " + tenant.key);
+        } finally {
+            synchronized (tenant) {
+                tenant.evicting = false;
+                tenant.notifyAll();
+            }
+        }
+        tenant.evictionCount.increment();
+        evictions.increment();
+        logger.debug("evicted tenant {}", tenant.key);
+        return true;
+    }
+
+    private void enforceOpenTenantLimit(Tenant current) {
+        int limit = maxOpenTenants;
+        while (openTenants.get() > limit) {
+            if (!evictLeastRecentlyUsed(current, t -> true)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes a unit of the connection budget, evicting idle tenants that
+     * hold reservations if none is available.
+     */
+    private void acquirePermit(Tenant tenant) throws SQLException {
+        if (budget.tryAcquire()) {
+            return;
+        }
+        long deadline = System.nanoTime() + connectionWaitNanos;
+        try {
+            while (true) {
+                if (evictLeastRecentlyUsed(tenant, t -> t.reserved > 0)) {
+                    if (budget.tryAcquire()) {
+                        return;
+                    }
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                if (budget.tryAcquire(Math.min(remaining, BUDGET_POLL_NANOS), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for the connection budget", e);
+        }
+        throw new SQLException("connection budget of " + maxOpenConnections
+                + " exhausted; no idle tenant could be evicted for tenant " + tenant.key);
+    }
+
+    /**
+     * Gets a snapshot of the usage of a tenant.
+     * @param tenantKey the tenant key
+     * @return the usage, or null if the tenant's context was never requested
+     */
+    @Nullable
+    public TenantUsage getUsage(K tenantKey) {
+        Tenant tenant = tenants.get(checkNotNull(tenantKey, "tenantKey"));
+        return tenant == null ? null : tenant.getUsage(ticker.read());
+    }
+
+    /**
+     * Gets snapshots of the usage of all tenants whose contexts have been
+     * requested.
+     * @return a map of tenant key to usage
+     */
+    public ImmutableMap<K, TenantUsage> getUsage() {
+        long now = ticker.read();
+        ImmutableMap.Builder<K, TenantUsage> b = ImmutableMap.builder();
+        tenants.forEach((key, tenant) -> b.put(key, tenant.getUsage(now)));
+        return b.build();
+    }
+
+    /**
+     * Gets the number of tenants whose contexts have been requested.
+     * @return the tenant count
+     */
+    public int getTenantCount() {
+        return tenants.size();
+    }
+
+    /**
+     * Gets the number of tenants whose connection sources are open.
+     * @return the open tenant count
+     */
+    public int getOpenTenantCount() {
+        return openTenants.get();
+    }
+
+    /**
+     * Gets the global connection budget.
+     * @return the maximum number of connections held open by all tenants
+     */
+    public int getMaxOpenConnections() {
+        return maxOpenConnections;
+    }
+
+    /**
+     * Gets the number of connections reserved by all tenants.
+     * @return the number of reserved connections
+     */
+    public int getReservedConnectionCount() {
+        return maxOpenConnections - budget.availablePermits();
+    }
+
+    /**
+     * Gets the number of evictions of all tenants.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getMaxOpenTenants() {
+        return maxOpenTenants;
+    }
+
+    /**
+     * Sets the maximum number of tenants whose connection sources may be
+     * open at once. When a tenant opens its connection source beyond this
+     * number, least recently used tenants without connections in use are
+     * evicted. Unlimited by default.
+     * @param maxOpenTenants the maximum number of open tenants
+     */
+    public void setMaxOpenTenants(int maxOpenTenants) {
+        checkArgument(maxOpenTenants > 0, "maxOpenTenants must be positive: %s", maxOpenTenants);
+        this.maxOpenTenants = maxOpenTenants;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos);
+    }
+
+    /**
+     * Sets the time after which a tenant without connections in use is
+     * evicted. Zero, the default, disables eviction of idle tenants.
+     * @param idleTimeoutMillis the idle timeout in milliseconds
+     * @see #evictIdle()
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        checkArgument(idleTimeoutMillis >= 0, "idleTimeoutMillis must be nonnegative: %s", idleTimeoutMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    public long getConnectionWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(connectionWaitNanos);
+    }
+
+    /**
+     * Sets how long a checkout waits for the connection budget when no
+     * tenant can be evicted. The default is 30 seconds.
+     * @param connectionWaitMillis the wait time in milliseconds
+     */
+    public void setConnectionWaitMillis(long connectionWaitMillis) {
+        checkArgument(connectionWaitMillis >= 0, "connectionWaitMillis must be nonnegative: %s", connectionWaitMillis);
+        this.connectionWaitNanos = TimeUnit.MILLISECONDS.toNanos(connectionWaitMillis);
+    }
+
+    /**
+     * Closes the connections of all tenants. Contexts obtained from this
+     * registry cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Tenant tenant : tenants.values()) {
+            try {
+                tenant.context.closeConnections(true);
+            } catch (SQLException e) {
+                logger.warn(e, "failed to close connections of tenant " + tenant.key);
+            }
+        }
+    }
+
+    /**
+     * Connection source of a tenant, which opens the tenant's underlying
+     * connection source on demand and accounts for its connections in the
+     * registry's budget. Connections are passed through unwrapped; those
+     * acquired by several callers at once are matched to checkouts in
+     * last-in, first-out order.
+     */
+    private class Tenant extends ConnectionSourceDelegator {
+
+        private final K key;
+        private final DatabaseContext context;
+        private final LongAdder checkoutCount = new LongAdder();
+        private final LongAdder rejectionCount = new LongAdder();
+        private final LongAdder evictionCount = new LongAdder();
+        private volatile long lastUsedNanos;
+
+        // guarded by this
+        private ConnectionSource delegate;
+        private int inUse;
+        private int peakInUse;
+        private int reserved;
+        private boolean evicting;
+        private final Map<DatabaseConnection, Deque<Boolean>> checkouts = new IdentityHashMap<>();
+
+        Tenant(K key) {
+            this.key = key;
+            lastUsedNanos = ticker.read();
+            context = checkNotNull(contextFactory.apply(this), "context factory returned null");
+        }
+
+        void touch() {
+            lastUsedNanos = ticker.read();
+        }
+
+        synchronized boolean isEvictable() {
+            return delegate != null && inUse == 0 && !evicting;
+        }
+
+        synchronized TenantUsage getUsage(long now) {
+            return new TenantUsage(delegate != null, inUse, peakInUse, reserved,
+                    checkoutCount.sum(), rejectionCount.sum(), evictionCount.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(Math.max(0, now - lastUsedNanos)));
+        }
+
+        /**
+         * Gets the underlying connection source, creating it if necessary.
+         * @return the connection source, or null if the registry is closed
+         */
+        @Override
+        protected synchronized ConnectionSource getDelegate() {
+            if (delegate == null && !closed) {
+                delegate = checkNotNull(connectionSourceFactory.apply(key), "connection source factory returned null");
+                openTenants.incrementAndGet();
+            }
+            return delegate;
+        }
+
+        @Override
+        public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+            return checkout(tableName, true);
+        }
+
+        @Override
+        public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+            return checkout(tableName, false);
+        }
+
+        private DatabaseConnection checkout(String tableName, boolean readOnly) throws SQLException {
+            ConnectionSource source;
+            boolean tracked, needsPermit = false;
+            synchronized (this) {
+                while (evicting) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("interrupted while tenant " + key + " was being evicted", e);
+                    }
+                }
+                source = getDelegate();
+                if (source == null) {
+                    throw new SQLException("registry is closed");
+                }
+                tracked = source.getSpecialConnection(tableName) == null;
+                if (tracked) {
+                    inUse++;
+                    peakInUse = Math.max(peakInUse, inUse);
+                    int required = source.isSingleConnection(tableName) ? 1 : inUse;
+                    if (reserved < required) {
+                        reserved++;
+                        needsPermit = true;
+                    }
+                }
+                touch();
+            }
+            if (openTenants.get() > maxOpenTenants) {
+                enforceOpenTenantLimit(this);
+            }
+            if (needsPermit) {
+                try {
+                    acquirePermit(this);
+                } catch (SQLException e) {
+                    synchronized (this) {
+                        reserved--;
+                        inUse--;
+                    }
+                    rejectionCount.increment();
+                    throw e;
+                }
+            }
+            DatabaseConnection connection;
+            try {
+                connection = readOnly ? source.getReadOnlyConnection(tableName) : source.getReadWriteConnection(tableName);
+            } catch (SQLException | RuntimeException e) {
+                if (tracked) {
+                    synchronized (this) {
+                        inUse--;
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                checkouts.computeIfAbsent(connection, c -> new ArrayDeque<>(1)).push(tracked);
+            }
+            if (tracked) {
+                checkoutCount.increment();
+            }
+            return connection;
+        }
+
+        @Override
+        public void releaseConnection(DatabaseConnection connection) throws SQLException {
+            ConnectionSource source;
+            boolean tracked = false;
+            synchronized (this) {
+                Deque<Boolean> flags = checkouts.get(connection);
+                if (flags != null) {
+                    tracked = flags.pop();
+                    if (flags.isEmpty()) {
+                        checkouts.remove(connection);
+                    }
+                }
+                source = delegate;
+            }
+            try {
+                if (source != null) {
+                    source.releaseConnection(connection);
+                } else {
+                    connection.closeQuietly();
+                }
+            } finally {
+                if (tracked) {
+                    synchronized (this) {
+                        inUse--;
+                    }
+                }
+                touch();
+            }
+        }
+
+        /**
+         * Closes the underlying connection source, if open, and returns the
+         * tenant's reservations to the budget.
+         */
+        @Override
+        public void close() throws IOException {
+            ConnectionSource source;
+            int permits;
+            synchronized (this) {
+                source = delegate;
+                if (source != null) {
+                    delegate = null;
+                    openTenants.decrementAndGet();
+                }
+                permits = reserved;
+                reserved = 0;
+            }
+            try {
+                if (source != null) {
+                    source.close();
+                }
+            } finally {
+                budget.release(permits);
+            }
+        }
+
+        @Override
+        public void closeQuietly() {
+            IOUtils.closeQuietly(this);
+        }
+
+        @Override
+        public boolean isOpen(String tableName) {
+            return !closed;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Class that represents a snapshot of the connection usage of one tenant of
+ * a {@link TenantContextRegistry}.
+ */
+public class TenantUsage {
+
+    private final boolean open;
+    private final int connectionsInUse;
+    private final int peakConnectionsInUse;
+    private final int reservedConnections;
+    private final long checkoutCount;
+    private final long rejectionCount;
+    private final long evictionCount;
+    private final long idleMillis;
+
+    TenantUsage(boolean open, int connectionsInUse, int peakConnectionsInUse, int reservedConnections,
+                long checkoutCount, long rejectionCount, long evictionCount, long idleMillis) {
+        this.open = open;
+        this.connectionsInUse = connectionsInUse;
+        this.peakConnectionsInUse = peakConnectionsInUse;
+        this.reservedConnections = reservedConnections;
+        this.checkoutCount = checkoutCount;
+        this.rejectionCount = rejectionCount;
+        this.evictionCount = evictionCount;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Checks whether the tenant's connection source was open.
+     * @return true if the connection source was open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Gets the number of connections checked out and not yet released.
+     * @return the number of connections in use
+     */
+    public int getConnectionsInUse() {
+        return connectionsInUse;
+    }
+
+    /**
+     * Gets the largest number of connections that were in use at once.
+     * @return the peak number of connections in use
+     */
+    public int getPeakConnectionsInUse() {
+        return peakConnectionsInUse;
+    }
+
+    /**
+     * Gets the number of connections counted against the registry's global
+     * budget on behalf of the tenant.
+     * @return the number of reserved connections
+     */
+    public int getReservedConnections() {
+        return reservedConnections;
+    }
+
+    /**
+     * Gets the number of connections checked out, not counting reuse of a
+     * connection saved for a transaction.
+     * @return the checkout count
+     */
+    public long getCheckoutCount() {
+        return checkoutCount;
+    }
+
+    /**
+     * Gets the number of checkouts that failed because the global budget
+     * was exhausted.
+     * @return the rejection count
+     */
+    public long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    /**
+     * Gets the number of times the tenant's context was evicted.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the time since the tenant last checked out or released a
+     * connection, or since its context was requested.
+     * @return the idle time in milliseconds
+     */
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("open", open)
+                .add("connectionsInUse", connectionsInUse)
+                .add("peakConnectionsInUse", peakConnectionsInUse)
+                .add("reservedConnections", reservedConnections)
+                .add("checkouts", checkoutCount)
+                .add("rejections", rejectionCount)
+                .add("evictions", evictionCount)
+                .add("idleMillis", idleMillis)
+                .toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionSources.ConnectionSourceDelegator;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.sql.SQLException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connection source that wraps the connections it supplies in
+ * {@link TracingDatabaseConnection}s. Connections are unwrapped before they
+ * are passed back to the delegate, so the delegate only ever sees its own
+ * connections.
+ * @see DefaultDatabaseContext#DefaultDatabaseContext(ConnectionSource, StatementTracer)
+ */
+public class TracingConnectionSource extends ConnectionSourceDelegator {
+
+    private final ConnectionSource delegate;
+    private final StatementTracer tracer;
+
+    public TracingConnectionSource(ConnectionSource delegate, StatementTracer tracer) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.tracer = checkNotNull(tracer, "tracer");
+    }
+
+    @Override
+    protected ConnectionSource getDelegate() {
+        return delegate;
+    }
+
+    public StatementTracer getTracer() {
+        return tracer;
+    }
+
+    private DatabaseConnection wrap(DatabaseConnection connection) {
+        return connection == null ? null : new TracingDatabaseConnection(connection, tracer);
+    }
+
+    private static DatabaseConnection unwrap(DatabaseConnection connection) {
+        if (connection instanceof TracingDatabaseConnection) {
+            return ((TracingDatabaseConnection) connection).getWrappedConnection();
+        }
+        return connection;
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        return wrap(delegate.getReadOnlyConnection(tableName));
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        return wrap(delegate.getReadWriteConnection(tableName));
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        delegate.releaseConnection(unwrap(connection));
+    }
+
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        return delegate.saveSpecialConnection(unwrap(connection));
+    }
+
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        delegate.clearSpecialConnection(unwrap(connection));
+    }
+
+    @Override
+    public DatabaseConnection getSpecialConnection(String tableName) {
+        return wrap(delegate.getSpecialConnection(tableName));
+    }
+}
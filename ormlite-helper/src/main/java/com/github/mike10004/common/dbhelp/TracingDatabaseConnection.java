@@ -0,0 +1,187 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.DatabaseConnections.DatabaseConnectionDelegator;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.StatementBuilder.StatementType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import com.j256.ormlite.support.GeneratedKeyHolder;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Database connection that reports the execution time of each statement to a
+ * statement tracer. Compiled statements are timed when they are run, not
+ * when they are compiled. Statements that throw are not recorded.
+ * @see TracingConnectionSource
+ */
+public class TracingDatabaseConnection extends DatabaseConnectionDelegator {
+
+    private final StatementTracer tracer;
+
+    public TracingDatabaseConnection(DatabaseConnection delegate, StatementTracer tracer) {
+        super(delegate);
+        this.tracer = checkNotNull(tracer, "tracer");
+    }
+
+    /**
+     * Gets the connection that this connection wraps.
+     * @return the wrapped connection
+     */
+    public DatabaseConnection getWrappedConnection() {
+        return getDelegate();
+    }
+
+    private static int length(Object[] args) {
+        return args == null ? 0 : args.length;
+    }
+
+    @Override
+    public int executeStatement(String statementStr, int resultFlags) throws SQLException {
+        long start = System.nanoTime();
+        int result = super.executeStatement(statementStr, resultFlags);
+        tracer.record(statementStr, System.nanoTime() - start, 0, result);
+        return result;
+    }
+
+    @Override
+    public CompiledStatement compileStatement(String statement, StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+        CompiledStatement compiled = super.compileStatement(statement, type, argFieldTypes, resultFlags, cacheStore);
+        return new TracingCompiledStatement(compiled, statement, tracer);
+    }
+
+    @Override
+    public int insert(String statement, Object[] args, FieldType[] argfieldTypes, GeneratedKeyHolder keyHolder) throws SQLException {
+        long start = System.nanoTime();
+        int result = super.insert(statement, args, argfieldTypes, keyHolder);
+        tracer.record(statement, System.nanoTime() - start, length(args), result);
+        return result;
+    }
+
+    @Override
+    public int update(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+        long start = System.nanoTime();
+        int result = super.update(statement, args, argfieldTypes);
+        tracer.record(statement, System.nanoTime() - start, length(args), result);
+        return result;
+    }
+
+    @Override
+    public int delete(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+        long start = System.nanoTime();
+        int result = super.delete(statement, args, argfieldTypes);
+        tracer.record(statement, System.nanoTime() - start, length(args), result);
+        return result;
+    }
+
+    @Override
+    public <T> Object queryForOne(String statement, Object[] args, FieldType[] argfieldTypes, GenericRowMapper<T> rowMapper, ObjectCache objectCache) throws SQLException {
+        long start = System.nanoTime();
+        Object result = super.queryForOne(statement, args, argfieldTypes, rowMapper, objectCache);
+        int rowCount = result == null ? 0 : (result == MORE_THAN_ONE ? 2 : 1);
+        tracer.record(statement, System.nanoTime() - start, length(args), rowCount);
+        return result;
+    }
+
+    @Override
+    public long queryForLong(String statement) throws SQLException {
+        long start = System.nanoTime();
+        long result = super.queryForLong(statement);
+        tracer.record(statement, System.nanoTime() - start, 0, 1);
+        return result;
+    }
+
+    @Override
+    public long queryForLong(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        long start = System.nanoTime();
+        long result = super.queryForLong(statement, args, argFieldTypes);
+        tracer.record(statement, System.nanoTime() - start, length(args), 1);
+        return result;
+    }
+
+    private static class TracingCompiledStatement implements CompiledStatement {
+
+        private final CompiledStatement delegate;
+        private final String statement;
+        private final StatementTracer tracer;
+        private int parameterCount;
+
+        public TracingCompiledStatement(CompiledStatement delegate, String statement, StatementTracer tracer) {
+            this.delegate = delegate;
+            this.statement = statement;
+            this.tracer = tracer;
+        }
+
+        @Override
+        public int getColumnCount() throws SQLException {
+            return delegate.getColumnCount();
+        }
+
+        @Override
+        public String getColumnName(int columnIndex) throws SQLException {
+            return delegate.getColumnName(columnIndex);
+        }
+
+        @Override
+        public int runUpdate() throws SQLException {
+            long start = System.nanoTime();
+            int result = delegate.runUpdate();
+            tracer.record(statement, System.nanoTime() - start, parameterCount, result);
+            return result;
+        }
+
+        @Override
+        public DatabaseResults runQuery(ObjectCache objectCache) throws SQLException {
+            long start = System.nanoTime();
+            DatabaseResults results = delegate.runQuery(objectCache);
+            tracer.record(statement, System.nanoTime() - start, parameterCount, -1);
+            return results;
+        }
+
+        @Override
+        public int runExecute() throws SQLException {
+            long start = System.nanoTime();
+            int result = delegate.runExecute();
+            tracer.record(statement, System.nanoTime() - start, parameterCount, result);
+            return result;
+        }
+
+        @Override
+        public void closeQuietly() {
+            delegate.closeQuietly();
+        }
+
+        @Override
+        public void cancel() throws SQLException {
+            delegate.cancel();
+        }
+
+        @Override
+        public void setObject(int parameterIndex, Object obj, SqlType sqlType) throws SQLException {
+            delegate.setObject(parameterIndex, obj, sqlType);
+            parameterCount = Math.max(parameterCount, parameterIndex + 1);
+        }
+
+        @Override
+        public void setMaxRows(int max) throws SQLException {
+            delegate.setMaxRows(max);
+        }
+
+        @Override
+        public void setQueryTimeout(long millis) throws SQLException {
+            delegate.setQueryTimeout(millis);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
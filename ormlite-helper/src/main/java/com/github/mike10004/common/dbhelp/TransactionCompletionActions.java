@@ -0,0 +1,74 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Class that holds, for each thread, actions to run again once the
+ * transaction the thread is in has ended. Caches use it to repeat the
+ * invalidations caused by writes in a transaction after the transaction
+ * commits or rolls back, because until then other threads read the state
+ * from before the writes and may cache it. Actions are keyed, so that
+ * repeated writes to the same data queue one action.
+ */
+final class TransactionCompletionActions {
+
+    private final ThreadLocal<Map<Object, Runnable>> pending = new ThreadLocal<>();
+
+    /**
+     * Runs an action, and queues it to run again when the current
+     * transaction ends if a transaction holds a connection of a connection
+     * source. If the state of the connection cannot be read, the action is
+     * queued, because running it again is harmless.
+     * @param connectionSource the connection source
+     * @param tableName the table name, or null
+     * @param key the key of the action
+     * @param action the action
+     */
+    public void runNowAndAfterTransaction(ConnectionSource connectionSource, @Nullable String tableName, Object key, Runnable action) {
+        checkNotNull(key, "key");
+        action.run();
+        boolean inTransaction;
+        try {
+            inTransaction = ConnectionSources.isInTransaction(connectionSource, tableName);
+        } catch (SQLException e) {
+            inTransaction = true;
+        }
+        if (inTransaction) {
+            Map<Object, Runnable> actions = pending.get();
+            if (actions == null) {
+                actions = new LinkedHashMap<>();
+                pending.set(actions);
+            }
+            actions.putIfAbsent(key, action);
+        }
+    }
+
+    /**
+     * Runs the actions queued by the current thread unless a transaction
+     * still holds a connection of a connection source, as it does when the
+     * transaction that just ended was nested in another one.
+     * @param connectionSource the connection source
+     */
+    public void runIfTransactionEnded(ConnectionSource connectionSource) {
+        Map<Object, Runnable> actions = pending.get();
+        if (actions == null) {
+            return;
+        }
+        try {
+            if (ConnectionSources.isInTransaction(connectionSource, null)) {
+                return;
+            }
+        } catch (SQLException ignore) {
+            // run the actions anyway; running them too early is no worse than not at all
+        }
+        pending.remove();
+        actions.values().forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.mike10004.common.dbhelp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncDatabaseContextTest {
+
+    private DatabaseContext db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new DefaultDatabaseContext(new H2MemoryPooledConnectionSource());
+        db.getTableUtils().createTable(Customer.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.closeConnections(true);
+    }
+
+    @Test
+    public void testDaoOperations() throws Exception {
+        System.out.println("testDaoOperations");
+        try (AsyncDatabaseContext async = new AsyncDatabaseContext(db, 2, 16)) {
+            Customer customer = new Customer("1 Main St", "Alice");
+            assertEquals("rows created", 1, async.create(Customer.class, customer).get().intValue());
+            assertNotNull(customer.id);
+            Customer found = async.queryForId(Customer.class, Integer.class, customer.id).get();
+            assertEquals(customer, found);
+            Integer count = async.callInTransaction(() -> {
+                db.getDao(Customer.class).create(new Customer("2 Main St", "Bob"));
+                return (int) db.getDao(Customer.class).countOf();
+            }).get();
+            assertEquals("count in transaction", 2, count.intValue());
+            List<Customer> all = async.queryForAll(Customer.class).get();
+            assertEquals("all", 2, all.size());
+        }
+    }
+
+    @Test
+    public void testTransactionRollback() throws Exception {
+        System.out.println("testTransactionRollback");
+        try (AsyncDatabaseContext async = new AsyncDatabaseContext(db, 2, 16)) {
+            CompletableFuture<Object> future = async.callInTransaction(() -> {
+                db.getDao(Customer.class).create(new Customer("1 Main St", "Alice"));
+                throw new IllegalStateException("roll back");
+            });
+            try {
+                future.get();
+                fail("should have failed");
+            } catch (ExecutionException expected) {
+                System.out.println("as expected: " + expected.getCause());
+            }
+            assertEquals("count", 0L, db.getDao(Customer.class).countOf());
+        }
+    }
+
+    @Test
+    public void testBoundedQueueAndCancellation() throws Exception {
+        System.out.println("testBoundedQueueAndCancellation");
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        try (AsyncDatabaseContext async = new AsyncDatabaseContext(db, 2, 1)) {
+            CompletableFuture<Long> first = async.supply(() -> block(running, release));
+            CompletableFuture<Long> second = async.supply(() -> block(running, release));
+            assertTrue("both running", running.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> queued = async.supply(() -> {
+                queuedRan.set(true);
+                return true;
+            });
+            assertEquals("queued", 1, async.getQueuedCount());
+            CompletableFuture<Long> rejected = async.supply(() -> db.getDao(Customer.class).countOf());
+            try {
+                rejected.get();
+                fail("should have been rejected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertTrue("cancelled", queued.cancel(true));
+            assertEquals("queued after cancel", 0, async.getQueuedCount());
+            release.countDown();
+            assertEquals(0L, first.get().longValue());
+            assertEquals(0L, second.get().longValue());
+            try {
+                queued.get();
+                fail("should have been cancelled");
+            } catch (CancellationException expected) {
+            }
+        }
+        assertFalse("cancelled operation ran", queuedRan.get());
+    }
+
+    private long block(CountDownLatch running, CountDownLatch release) throws java.sql.SQLException {
+        running.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return db.getDao(Customer.class).countOf();
+    }
+
+    @Test
+    public void testSingleConnectionSourceLimitedToOneThread() throws Exception {
+        System.out.println("testSingleConnectionSourceLimitedToOneThread");
+        DatabaseContext single = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        try (AsyncDatabaseContext async = new AsyncDatabaseContext(single, 8, 8)) {
+            assertEquals("concurrency", 1, async.getConcurrency());
+        } finally {
+            single.closeConnections(true);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.Daos.DaoDelegator;
+import com.google.common.cache.CacheStats;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingDaoTest {
+
+    private static DefaultDatabaseContext createContext(int numCustomers) throws SQLException {
+        DefaultDatabaseContext db = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        db.getTableUtils().createTable(Customer.class);
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        for (int i = 1; i <= numCustomers; i++) {
+            dao.create(new Customer(i + " Main St", "Customer " + i));
+        }
+        return db;
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        System.out.println("testReadThrough");
+        DefaultDatabaseContext db = createContext(10);
+        try {
+            db.setEntityCache(Customer.class, EntityCacheOptions.maximumSize(100));
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            assertTrue("caching dao", dao instanceof CachingDao);
+            CachingDao<Customer, Integer> cachingDao = (CachingDao<Customer, Integer>) dao;
+            Customer first = dao.queryForId(3);
+            assertNotNull(first);
+            assertEquals("name", "Customer 3", first.name);
+            assertEquals("same instance", first, dao.queryForId(3));
+            assertNull("missing", dao.queryForId(999));
+            assertNull("missing again", dao.queryForId(999));
+            CacheStats stats = cachingDao.getCacheStats();
+            System.out.println(stats);
+            assertEquals("hits", 2L, stats.hitCount());
+            assertEquals("misses", 2L, stats.missCount());
+            assertEquals("size", 2L, cachingDao.getCacheSize());
+            db.setEntityCache(Customer.class, null);
+            assertTrue("plain dao", !(db.getDao(Customer.class, Integer.class) instanceof CachingDao));
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        System.out.println("testInvalidation");
+        DefaultDatabaseContext db = createContext(10);
+        try {
+            db.setEntityCache(Customer.class, EntityCacheOptions.maximumSize(100));
+            CachingDao<Customer, Integer> dao = (CachingDao<Customer, Integer>) db.getDao(Customer.class, Integer.class);
+            Customer customer = dao.queryForId(1);
+            customer.name = "Renamed";
+            dao.update(customer);
+            assertEquals("after update", "Renamed", dao.queryForId(1).name);
+            assertNull("not yet created", dao.queryForId(11));
+            dao.create(new Customer("11 Main St", "Customer 11"));
+            assertNotNull("after create", dao.queryForId(11));
+            dao.deleteById(11);
+            assertNull("after delete", dao.queryForId(11));
+            assertEquals("cached", "Customer 2", dao.queryForId(2).name);
+            UpdateBuilder<Customer, Integer> updateBuilder = dao.updateBuilder();
+            updateBuilder.updateColumnValue("name", "Everyone");
+            assertEquals("updated", 10, updateBuilder.update());
+            assertEquals("after prepared update", "Everyone", dao.queryForId(2).name);
+            assertEquals("loads", 7L, dao.getCacheStats().loadCount());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testBatchWriteInvalidatesMissingIds() throws Exception {
+        System.out.println("testBatchWriteInvalidatesMissingIds");
+        DefaultDatabaseContext db = createContext(2);
+        try {
+            db.setEntityCache(Customer.class, EntityCacheOptions.maximumSize(100));
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            assertNull("missing", dao.queryForId(3));
+            db.createBatchWriter(Customer.class, 10, BatchWriter.CommitMode.PER_STREAM)
+                    .write(Collections.singletonList(new Customer("3 Main St", "Customer 3")));
+            Customer created = dao.queryForId(3);
+            assertNotNull("after batch write", created);
+            assertEquals("name", "Customer 3", created.name);
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testWriteInTransactionInvalidatedAfterCommit() throws Exception {
+        System.out.println("testWriteInTransactionInvalidatedAfterCommit");
+        DefaultDatabaseContext db = new DefaultDatabaseContext(new H2MemoryPooledConnectionSource());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            db.setEntityCache(Customer.class, EntityCacheOptions.maximumSize(100));
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            dao.create(new Customer("1 Main St", "Customer 1"));
+            db.getTransactionManager().callInTransaction(() -> {
+                Customer renamed = new Customer("1 Main St", "Renamed");
+                renamed.id = 1;
+                dao.update(renamed);
+                Future<Customer> otherThreadCustomer = executor.submit(() -> dao.queryForId(1));
+                assertEquals("read by other thread before commit", "Customer 1", otherThreadCustomer.get().name);
+                return null;
+            });
+            assertEquals("after commit", "Renamed", dao.queryForId(1).name);
+        } finally {
+            executor.shutdownNow();
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testStampedeProtection() throws Exception {
+        System.out.println("testStampedeProtection");
+        DefaultDatabaseContext db = createContext(1);
+        try {
+            AtomicInteger loads = new AtomicInteger();
+            Dao<Customer, Integer> slow = new DaoDelegator<Customer, Integer>(db.getDao(Customer.class, Integer.class)) {
+                @Override
+                public Customer queryForId(Integer id) throws SQLException {
+                    loads.incrementAndGet();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                    return super.queryForId(id);
+                }
+            };
+            CachingDao<Customer, Integer> dao = new CachingDao<>(slow, EntityCacheOptions.maximumSize(10));
+            int numThreads = 16;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            try {
+                List<Future<Customer>> futures = new ArrayList<>();
+                for (int i = 0; i < numThreads; i++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return dao.queryForId(1);
+                    }));
+                }
+                start.countDown();
+                for (Future<Customer> future : futures) {
+                    assertNotNull(future.get(10, TimeUnit.SECONDS));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals("loads", 1, loads.get());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testMaximumWeight() throws Exception {
+        System.out.println("testMaximumWeight");
+        DefaultDatabaseContext db = createContext(10);
+        try {
+            db.setEntityCache(Customer.class, EntityCacheOptions.<Customer>maximumWeight(10, c -> c.name.length()));
+            CachingDao<Customer, Integer> dao = (CachingDao<Customer, Integer>) db.getDao(Customer.class, Integer.class);
+            for (int id = 1; id <= 10; id++) {
+                assertNotNull(dao.queryForId(id));
+            }
+            System.out.println(dao.getCacheStats());
+            assertEquals("size", 1L, dao.getCacheSize());
+            assertEquals("evictions", 9L, dao.getCacheStats().evictionCount());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testLoadOverlappingWrite() throws Exception {
+        System.out.println("testLoadOverlappingWrite");
+        DefaultDatabaseContext db = createContext(1);
+        try {
+            CountDownLatch loaded = new CountDownLatch(1), written = new CountDownLatch(1);
+            Dao<Customer, Integer> paused = new DaoDelegator<Customer, Integer>(db.getDao(Customer.class, Integer.class)) {
+                @Override
+                public Customer queryForId(Integer id) throws SQLException {
+                    Customer customer = super.queryForId(id);
+                    loaded.countDown();
+                    try {
+                        written.await();
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                    return customer;
+                }
+            };
+            CachingDao<Customer, Integer> dao = new CachingDao<>(paused, EntityCacheOptions.maximumSize(10));
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Customer> stale = executor.submit(() -> dao.queryForId(1));
+                assertTrue(loaded.await(5, TimeUnit.SECONDS));
+                Customer update = new Customer("1 Main St", "Updated");
+                update.id = 1;
+                dao.update(update);
+                written.countDown();
+                assertEquals("stale load", "Customer 1", stale.get(5, TimeUnit.SECONDS).name);
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals("size", 0L, dao.getCacheSize());
+            assertEquals("fresh load", "Updated", dao.queryForId(1).name);
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.BatchWriter.CommitMode;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.DatabaseTable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class DefaultBatchWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWrite_h2Memory() throws Exception {
+        System.out.println("testWrite_h2Memory");
+        testWrite(new H2MemoryConnectionSource(), CommitMode.PER_BATCH);
+    }
+
+    @Test
+    public void testWrite_h2File() throws Exception {
+        System.out.println("testWrite_h2File");
+        File dbFile = new File(temporaryFolder.getRoot(), "batch.h2.db");
+        testWrite(new H2FileConnectionSource(dbFile), CommitMode.PER_STREAM);
+    }
+
+    private void testWrite(ConnectionSource connectionSource, CommitMode commitMode) throws SQLException {
+        DatabaseContext db = new DefaultDatabaseContext(connectionSource);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            List<Customer> customers = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                customers.add(new Customer(i + " Main St", "Customer " + i));
+            }
+            BatchResult<Customer> result = db.createBatchWriter(Customer.class, 100, commitMode).write(customers);
+            System.out.println(result);
+            assertEquals("rows written", 250, result.getRowsWritten());
+            assertEquals("batches executed", 3, result.getBatchesExecuted());
+            assertEquals("failures", 0, result.getFailures().size());
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            assertEquals("count", 250L, dao.countOf());
+            assertEquals("keys assigned", 250, result.getKeysAssigned());
+            Customer last = customers.get(customers.size() - 1);
+            assertNotNull("id assigned", last.id);
+            assertEquals(last, dao.queryForId(last.id));
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testWrite_rowFailures() throws Exception {
+        System.out.println("testWrite_rowFailures");
+        DatabaseContext db = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        try {
+            db.getTableUtils().createTable(Gadget.class);
+            List<Gadget> gadgets = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                gadgets.add(new Gadget(i == 7 ? "g3" : ("g" + i)));
+            }
+            BatchResult<Gadget> result = db.createBatchWriter(Gadget.class, 4, CommitMode.PER_BATCH).write(gadgets);
+            System.out.println(result);
+            assertEquals("failures", 1, result.getFailures().size());
+            BatchResult.RowFailure<Gadget> failure = result.getFailures().get(0);
+            assertEquals("failure index", 7, failure.getIndex());
+            assertSame("failed entity", gadgets.get(7), failure.getEntity());
+            assertEquals("rows written", 9, result.getRowsWritten());
+            assertEquals("count", 9L, db.getDao(Gadget.class).countOf());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testWrite_enclosingTransaction() throws Exception {
+        System.out.println("testWrite_enclosingTransaction");
+        DatabaseContext db = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        try {
+            db.getTableUtils().createTable(Gadget.class);
+            try {
+                db.getTransactionManager().callInTransaction(() -> {
+                    List<Gadget> gadgets = new ArrayList<>();
+                    for (int i = 0; i < 5; i++) {
+                        gadgets.add(new Gadget("g" + i));
+                    }
+                    db.createBatchWriter(Gadget.class, 2, CommitMode.PER_BATCH).write(gadgets);
+                    throw new IllegalStateException("roll back");
+                });
+            } catch (SQLException expected) {
+                System.out.println("as expected: " + expected);
+            }
+            assertEquals("count after rollback", 0L, db.getDao(Gadget.class).countOf());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @DatabaseTable
+    public static class Gadget {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(unique = true)
+        public String name;
+
+        public Gadget() {
+        }
+
+        public Gadget(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "Gadget{id=" + id + ", name=" + name + '}';
+        }
+    }
+}
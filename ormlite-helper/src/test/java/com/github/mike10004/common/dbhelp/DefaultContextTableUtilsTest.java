@@ -0,0 +1,256 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultContextTableUtilsTest {
+
+    private DatabaseContext db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new DefaultDatabaseContext(new H2MemoryPooledConnectionSource(), cs -> new DefaultContextTableUtils(cs, 4),
+                DefaultContextTransactionManager::new);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.closeConnections(true);
+    }
+
+    private static final ImmutableList<Class<?>> CHILDREN_FIRST = ImmutableList.of(
+            GrandchildEntity.class, ChildEntity.class, Customer.class, Order.class, LeafEntity.class, ParentEntity.class);
+
+    @Test
+    public void testDependencyGraph() throws Exception {
+        System.out.println("testDependencyGraph");
+        TableDependencyGraph graph = TableDependencyGraph.build(db.getConnectionSource(), CHILDREN_FIRST);
+        assertEquals("child deps", ImmutableSet.of(ParentEntity.class), graph.getDependencies(ChildEntity.class));
+        assertEquals("grandchild deps", ImmutableSet.of(ChildEntity.class, ParentEntity.class), graph.getDependencies(GrandchildEntity.class));
+        assertEquals("order deps", ImmutableSet.of(Customer.class), graph.getDependencies(Order.class));
+        assertEquals("leaf deps", ImmutableSet.of(), graph.getDependencies(LeafEntity.class));
+        List<Class<?>> sorted = graph.sort();
+        assertEquals("sorted", ImmutableList.of(Customer.class, LeafEntity.class, ParentEntity.class, Order.class, ChildEntity.class, GrandchildEntity.class), sorted);
+        TableDependencyGraph cyclic = TableDependencyGraph.build(db.getConnectionSource(), ImmutableList.of(CycleA.class, CycleB.class));
+        assertNull("cycle", cyclic.sort());
+    }
+
+    @Test
+    public void testCreateAllTablesInDependencyOrder() throws Exception {
+        System.out.println("testCreateAllTablesInDependencyOrder");
+        DatabaseContext sequential = new DefaultDatabaseContext(new H2MemoryPooledConnectionSource());
+        try {
+            sequential.getTableUtils().createAllTables(CHILDREN_FIRST);
+            fail("sequential creation of children first should fail");
+        } catch (SQLException e) {
+            System.out.format("sequential: %s%n", e.getMessage());
+        } finally {
+            sequential.closeConnections(true);
+        }
+        int statements = db.getTableUtils().createAllTables(CHILDREN_FIRST);
+        assertTrue("statements: " + statements, statements >= CHILDREN_FIRST.size());
+        for (Class<?> dataClass : CHILDREN_FIRST) {
+            assertEquals(dataClass.getSimpleName(), 0, db.getDao(dataClass).countOf());
+        }
+        db.getTableUtils().createAllTablesIfNotExists(CHILDREN_FIRST);
+    }
+
+    @Test
+    public void testCycleFallsBackToSuppliedOrder() throws Exception {
+        System.out.println("testCycleFallsBackToSuppliedOrder");
+        db.getTableUtils().createAllTables(ImmutableList.of(CycleA.class, CycleB.class, LeafEntity.class));
+        assertEquals(0, db.getDao(CycleB.class).countOf());
+    }
+
+    @Test
+    public void testFailureReportsStatement() throws Exception {
+        System.out.println("testFailureReportsStatement");
+        try {
+            db.getTableUtils().createAllTables(ImmutableList.of(BrokenEntity.class, DependsOnBrokenEntity.class, LeafEntity.class));
+            fail("should have thrown");
+        } catch (SQLException e) {
+            System.out.format("failure: %s%n", e.getMessage());
+            assertTrue(e.getMessage(), e.getMessage().contains("CREATE TABLE `broken_entity`"));
+        }
+        try {
+            db.getDao(DependsOnBrokenEntity.class).countOf();
+            fail("dependent table should not exist");
+        } catch (SQLException expected) {
+        }
+    }
+
+    @Test
+    public void testCreateAllTablesIfNotExistsSkipsExisting() throws Exception {
+        System.out.println("testCreateAllTablesIfNotExistsSkipsExisting");
+        ContextTableUtils tableUtils = db.getTableUtils();
+        tableUtils.createTable(Customer.class);
+        tableUtils.createTable(ParentEntity.class);
+        int statements = tableUtils.createAllTablesIfNotExists(ImmutableList.of(Customer.class, Order.class, ParentEntity.class, ChildEntity.class));
+        int expected = tableUtils.getCreateTableStatements(Order.class).size() + tableUtils.getCreateTableStatements(ChildEntity.class).size();
+        assertEquals("statements for missing tables only", expected, statements);
+        assertEquals("nothing left to create", 0, tableUtils.createAllTablesIfNotExists(ImmutableList.of(Customer.class, Order.class, ParentEntity.class, ChildEntity.class)));
+        assertEquals(0, db.getDao(ChildEntity.class).countOf());
+    }
+
+    @Test
+    public void testCreateTableStatementsMemoized() throws Exception {
+        System.out.println("testCreateTableStatementsMemoized");
+        ContextTableUtils tableUtils = db.getTableUtils();
+        List<String> statements = tableUtils.getCreateTableStatements(Customer.class);
+        assertTrue(statements.toString(), statements.get(0).startsWith("CREATE TABLE `customer`"));
+        assertSame(statements, tableUtils.getCreateTableStatements(Customer.class));
+        DatabaseTableConfig<Order> tableConfig = DatabaseTableConfig.fromClass(db.getConnectionSource(), Order.class);
+        assertSame(tableUtils.getCreateTableStatements(tableConfig), tableUtils.getCreateTableStatements(tableConfig));
+        assertNotSame(statements, new DefaultContextTableUtils(db.getConnectionSource()).getCreateTableStatements(Customer.class));
+    }
+
+    @Test
+    public void testTruncateTables() throws Exception {
+        System.out.println("testTruncateTables");
+        ContextTableUtils tableUtils = db.getTableUtils();
+        tableUtils.createAllTables(ImmutableList.of(ParentEntity.class, ChildEntity.class, LeafEntity.class));
+        Dao<ParentEntity, Integer> parentDao = db.getDao(ParentEntity.class, Integer.class);
+        Dao<ChildEntity, Integer> childDao = db.getDao(ChildEntity.class, Integer.class);
+        for (int i = 0; i < 100; i++) {
+            ParentEntity parent = new ParentEntity();
+            parentDao.create(parent);
+            ChildEntity child = new ChildEntity();
+            child.parent = parent;
+            childDao.create(child);
+        }
+        db.getDao(LeafEntity.class).create(new LeafEntity());
+        try {
+            tableUtils.clearTable(ParentEntity.class);
+            fail("clearing referenced table should fail");
+        } catch (SQLException expected) {
+        }
+        assertEquals("tables", 3, tableUtils.truncateTables(ImmutableList.of(ParentEntity.class, ChildEntity.class, LeafEntity.class)));
+        assertEquals("parents", 0, parentDao.countOf());
+        assertEquals("children", 0, childDao.countOf());
+        assertEquals("leaves", 0, db.getDao(LeafEntity.class).countOf());
+        assertReferentialIntegrityEnforced(childDao);
+    }
+
+    @Test
+    public void testTruncateTablesRestoresIntegrityOnFailure() throws Exception {
+        System.out.println("testTruncateTablesRestoresIntegrityOnFailure");
+        ContextTableUtils tableUtils = db.getTableUtils();
+        tableUtils.createAllTables(ImmutableList.of(ParentEntity.class, ChildEntity.class));
+        try {
+            tableUtils.truncateTables(ImmutableList.of(ParentEntity.class, LeafEntity.class));
+            fail("truncating missing table should fail");
+        } catch (SQLException e) {
+            System.out.format("failure: %s%n", e.getMessage());
+        }
+        assertReferentialIntegrityEnforced(db.getDao(ChildEntity.class, Integer.class));
+    }
+
+    private static void assertReferentialIntegrityEnforced(Dao<ChildEntity, Integer> childDao) throws SQLException {
+        ParentEntity missing = new ParentEntity();
+        missing.id = 999999;
+        ChildEntity orphan = new ChildEntity();
+        orphan.parent = missing;
+        try {
+            childDao.create(orphan);
+            fail("referential integrity should be enforced");
+        } catch (SQLException expected) {
+        }
+    }
+
+    @DatabaseTable(tableName = "parent_entity")
+    public static class ParentEntity {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+    }
+
+    @DatabaseTable(tableName = "child_entity")
+    public static class ChildEntity {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(foreign = true, columnDefinition = "INTEGER REFERENCES `parent_entity`(`id`)")
+        public ParentEntity parent;
+    }
+
+    @DatabaseTable(tableName = "grandchild_entity")
+    public static class GrandchildEntity {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(foreign = true, columnDefinition = "INTEGER REFERENCES `child_entity`(`id`)")
+        public ChildEntity child;
+
+        @DatabaseField(foreign = true, columnDefinition = "INTEGER REFERENCES `parent_entity`(`id`)")
+        public ParentEntity grandparent;
+    }
+
+    @DatabaseTable(tableName = "leaf_entity")
+    public static class LeafEntity {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField
+        public String name;
+    }
+
+    @DatabaseTable(tableName = "cycle_a")
+    public static class CycleA {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(foreign = true)
+        public CycleB other;
+    }
+
+    @DatabaseTable(tableName = "cycle_b")
+    public static class CycleB {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(foreign = true)
+        public CycleA other;
+    }
+
+    @DatabaseTable(tableName = "broken_entity")
+    public static class BrokenEntity {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(columnDefinition = "NO_SUCH_TYPE(")
+        public String value;
+    }
+
+    @DatabaseTable(tableName = "depends_on_broken_entity")
+    public static class DependsOnBrokenEntity {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField(foreign = true)
+        public BrokenEntity broken;
+    }
+}
@@ -0,0 +1,258 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionMetricsSink.AccessMode;
+import com.github.mike10004.common.dbhelp.RoutingConnectionSource.ReplicaSelection;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.logger.Logger;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultContextTransactionManagerTest {
+
+    private HistogramConnectionMetrics metrics;
+    private InstrumentedConnectionSource connectionSource;
+    private DatabaseContext db;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new HistogramConnectionMetrics();
+        connectionSource = new InstrumentedConnectionSource(new ReadOnlyTrackingConnectionSource(), metrics);
+        db = new DefaultDatabaseContext(connectionSource);
+        db.getTableUtils().createTable(Customer.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.closeConnections(true);
+    }
+
+    /**
+     * Connection source whose JDBC connections keep track of the read-only
+     * flag, which H2 otherwise ignores.
+     */
+    private static class ReadOnlyTrackingConnectionSource extends H2MemoryPooledConnectionSource {
+
+        @Override
+        protected DatabaseConnection makeConnection(Logger logger) throws SQLException {
+            Connection connection = ((JdbcDatabaseConnection) super.makeConnection(logger)).getInternalConnection();
+            boolean[] readOnly = new boolean[1];
+            Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (p, method, args) -> {
+                switch (method.getName()) {
+                    case "setReadOnly":
+                        readOnly[0] = (Boolean) args[0];
+                        return null;
+                    case "isReadOnly":
+                        return readOnly[0];
+                    default:
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            });
+            return new JdbcDatabaseConnection(proxy);
+        }
+    }
+
+    private interface TransactionRunner {
+        <T> T call(Callable<T> callable) throws SQLException;
+    }
+
+    private long countAcquisitions(TransactionRunner runner) throws Exception {
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        long before = metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount();
+        runner.call(() -> {
+            dao.create(new Customer("1 Main St", "Alice"));
+            runner.call(() -> dao.create(new Customer("2 Main St", "Bob")));
+            runner.call(() -> runner.call(() -> dao.create(new Customer("3 Main St", "Carol"))));
+            return null;
+        });
+        return metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount() - before;
+    }
+
+    @Test
+    public void testNestedTransactionsReuseConnection() throws Exception {
+        System.out.println("testNestedTransactionsReuseConnection");
+        ContextTransactionManager txManager = db.getTransactionManager();
+        long baseline = countAcquisitions(new TransactionRunner() {
+            @Override
+            public <T> T call(Callable<T> callable) throws SQLException {
+                return TransactionManager.callInTransaction(connectionSource, callable);
+            }
+        });
+        long nested = countAcquisitions(new TransactionRunner() {
+            @Override
+            public <T> T call(Callable<T> callable) throws SQLException {
+                return txManager.callInTransaction(callable);
+            }
+        });
+        System.out.format("acquisitions: %d with ORMLite transaction manager, %d with context transaction manager%n", baseline, nested);
+        assertEquals("acquisitions saved", 3, baseline - nested);
+        assertEquals("acquisitions", 4, nested);
+        assertEquals("rows", 6, db.getDao(Customer.class).countOf());
+        assertEquals("in use", 0, connectionSource.getInUseCount());
+    }
+
+    @Test
+    public void testNestedRollbackToSavePoint() throws Exception {
+        System.out.println("testNestedRollbackToSavePoint");
+        ContextTransactionManager txManager = db.getTransactionManager();
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        txManager.callInTransaction(() -> {
+            dao.create(new Customer("1 Main St", "Alice"));
+            try {
+                txManager.callInTransaction(() -> {
+                    dao.create(new Customer("2 Main St", "Bob"));
+                    throw new IllegalStateException("inner failure");
+                });
+                fail("should have thrown");
+            } catch (SQLException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            dao.create(new Customer("3 Main St", "Carol"));
+            return null;
+        });
+        assertEquals("rows", 2, dao.countOf());
+        assertEquals("Bob rows", 0, dao.queryForEq("name", "Bob").size());
+    }
+
+    @Test
+    public void testOuterRollbackDiscardsNested() throws Exception {
+        System.out.println("testOuterRollbackDiscardsNested");
+        ContextTransactionManager txManager = db.getTransactionManager();
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        try {
+            txManager.callInTransaction(() -> {
+                txManager.callInTransaction(() -> dao.create(new Customer("1 Main St", "Alice")));
+                throw new SQLException("outer failure");
+            });
+            fail("should have thrown");
+        } catch (SQLException e) {
+            assertEquals("outer failure", e.getMessage());
+        }
+        assertEquals("rows", 0, dao.countOf());
+    }
+
+    @Test
+    public void testJoinsOrmliteTransaction() throws Exception {
+        System.out.println("testJoinsOrmliteTransaction");
+        ContextTransactionManager txManager = db.getTransactionManager();
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        ConnectionSource cs = db.getConnectionSource();
+        TransactionManager.callInTransaction(cs, () -> {
+            dao.create(new Customer("1 Main St", "Alice"));
+            long before = metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount();
+            try {
+                txManager.callInTransaction(() -> {
+                    dao.create(new Customer("2 Main St", "Bob"));
+                    throw new SQLException("inner failure");
+                });
+                fail("should have thrown");
+            } catch (SQLException ignore) {
+            }
+            assertEquals("acquisitions in nested transaction", before + 1, metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount());
+            return null;
+        });
+        assertEquals("rows", 1, dao.countOf());
+    }
+
+    @Test
+    public void testSingleConnectionSource() throws Exception {
+        System.out.println("testSingleConnectionSource");
+        DatabaseContext single = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        try {
+            single.getTableUtils().createTable(Customer.class);
+            ContextTransactionManager txManager = single.getTransactionManager();
+            Dao<Customer, Integer> dao = single.getDao(Customer.class, Integer.class);
+            txManager.callInTransaction(() -> {
+                dao.create(new Customer("1 Main St", "Alice"));
+                try {
+                    txManager.callInTransaction(() -> {
+                        dao.create(new Customer("2 Main St", "Bob"));
+                        throw new SQLException("inner failure");
+                    });
+                } catch (SQLException ignore) {
+                }
+                return null;
+            });
+            assertEquals("rows", 1, dao.countOf());
+        } finally {
+            single.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testReadOnlyTransaction() throws Exception {
+        System.out.println("testReadOnlyTransaction");
+        ContextTransactionManager txManager = db.getTransactionManager();
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        dao.create(new Customer("1 Main St", "Alice"));
+        long readOnlyBefore = metrics.getAcquireLatency(AccessMode.READ_ONLY).getCount();
+        long readWriteBefore = metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount();
+        Connection[] used = new Connection[1];
+        long count = txManager.callInReadOnlyTransaction(() -> {
+            used[0] = DatabaseConnections.getJdbcConnection(connectionSource.getSpecialConnection(null));
+            assertTrue("read-only in transaction", used[0].isReadOnly());
+            assertFalse("auto-commit in transaction", used[0].getAutoCommit());
+            return txManager.callInReadOnlyTransaction(dao::countOf);
+        });
+        assertEquals("count", 1, count);
+        assertEquals("read-only acquisitions", readOnlyBefore + 2, metrics.getAcquireLatency(AccessMode.READ_ONLY).getCount());
+        assertEquals("read-write acquisitions", readWriteBefore, metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount());
+        assertFalse("read-only restored", used[0].isReadOnly());
+        assertTrue("auto-commit restored", used[0].getAutoCommit());
+    }
+
+    @Test
+    public void testReadOnlyTransactionOnReplica() throws Exception {
+        System.out.println("testReadOnlyTransactionOnReplica");
+        DatabaseContext replicaDb = new DefaultDatabaseContext(new ReadOnlyTrackingConnectionSource());
+        try {
+            replicaDb.getTableUtils().createTable(Customer.class);
+            replicaDb.getDao(Customer.class).create(new Customer("9 Replica Rd", "Zed"));
+            db.getDao(Customer.class).create(new Customer("1 Main St", "Alice"));
+            RoutingConnectionSource routing = new RoutingConnectionSource(connectionSource,
+                    Collections.singletonList(replicaDb.getConnectionSource()), ReplicaSelection.ROUND_ROBIN);
+            DatabaseContext routed = new DefaultDatabaseContext(routing);
+            ContextTransactionManager txManager = routed.getTransactionManager();
+            Dao<Customer, Integer> dao = routed.getDao(Customer.class, Integer.class);
+            Connection[] used = new Connection[1];
+            List<Customer> customers = txManager.callInReadOnlyTransaction(() -> {
+                assertEquals("outstanding on replica", 1, routing.getOutstandingCount(0));
+                used[0] = DatabaseConnections.getJdbcConnection(routing.getSpecialConnection(null));
+                assertTrue("read-only in transaction", used[0].isReadOnly());
+                List<Customer> result = dao.queryForAll();
+                assertEquals("outstanding on replica after query", 1, routing.getOutstandingCount(0));
+                return result;
+            });
+            assertEquals("customers", 1, customers.size());
+            assertEquals("name", "Zed", customers.get(0).name);
+            assertEquals("outstanding on replica after transaction", 0, routing.getOutstandingCount(0));
+            assertFalse("read-only restored", used[0].isReadOnly());
+            assertEquals("primary connections in use", 0, connectionSource.getInUseCount());
+            txManager.callInTransaction(() -> dao.create(new Customer("2 Main St", "Bob")));
+            assertEquals("primary rows", 2, db.getDao(Customer.class).countOf());
+        } finally {
+            replicaDb.closeConnections(true);
+        }
+    }
+}
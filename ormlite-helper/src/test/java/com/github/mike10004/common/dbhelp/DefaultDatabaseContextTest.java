@@ -23,6 +23,7 @@
  */
 package com.github.mike10004.common.dbhelp;
 
+import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 import java.sql.SQLException;
@@ -69,6 +70,30 @@ public class DefaultDatabaseContextTest {
         assertEquals(t.thingId, UUID.fromString(thing1[0]));
     }
     
+    @Test
+    public void testGetDao_cached() throws Exception {
+        Dao<Thing, ?> first = db.getDao(Thing.class);
+        Dao<Thing, String> second = db.getDao(Thing.class, String.class);
+        assertSame("expect dao cached", first, second);
+        assertEquals("misses", 1L, db.getDaoCacheMissCount());
+        assertEquals("hits", 1L, db.getDaoCacheHitCount());
+        db.closeConnections(false);
+        db.getDao(Thing.class);
+        assertEquals("misses after close", 2L, db.getDaoCacheMissCount());
+        assertEquals("hits after close", 1L, db.getDaoCacheHitCount());
+    }
+
+    @Test
+    public void testGetTransactionManager_resetOnClose() throws Exception {
+        ContextTransactionManager first = db.getTransactionManager();
+        ContextTableUtils firstTableUtils = db.getTableUtils();
+        assertSame("expect same instance", first, db.getTransactionManager());
+        assertSame("expect same instance", firstTableUtils, db.getTableUtils());
+        db.closeConnections(false);
+        assertNotSame("expect new instance after close", first, db.getTransactionManager());
+        assertNotSame("expect new instance after close", firstTableUtils, db.getTableUtils());
+    }
+
     @DatabaseTable
     public static class Thing {
         @DatabaseField(generatedId = true)
@@ -0,0 +1,106 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableList;
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.table.DatabaseTable;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GeneratedTableConfigsTest {
+
+    private static final ImmutableList<Class<?>> ENTITIES = ImmutableList.of(Customer.class, Hidden.class);
+
+    private DatabaseContext db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new DefaultDatabaseContext(new H2MemoryPooledConnectionSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.closeConnections(true);
+    }
+
+    @Test
+    public void testFindFactory() throws Exception {
+        System.out.println("testFindFactory");
+        assertEquals("com.github.mike10004.common.dbhelp.Customer_TableConfig", GeneratedTableConfigs.getFactoryClassName(Customer.class));
+        assertEquals("com.github.mike10004.common.dbhelp.GeneratedTableConfigsTest_Hidden_TableConfig", GeneratedTableConfigs.getFactoryClassName(Hidden.class));
+        assertNotNull("customer factory", GeneratedTableConfigs.findFactory(Customer.class));
+        assertNull("private entity class factory", GeneratedTableConfigs.findFactory(Hidden.class));
+        assertNull("String factory", GeneratedTableConfigs.findFactory(String.class));
+    }
+
+    @Test
+    public void testGeneratedConfigMatchesReflection() throws Exception {
+        System.out.println("testGeneratedConfigMatchesReflection");
+        GeneratedTableConfigs generatedTableConfigs = new GeneratedTableConfigs(db.getConnectionSource());
+        for (Class<?> dataClass : new Class<?>[]{Customer.class, Order.class, DefaultContextTableUtilsTest.GrandchildEntity.class}) {
+            DatabaseTableConfig<?> generated = generatedTableConfigs.getTableConfig(dataClass);
+            assertNotNull(dataClass.getSimpleName(), generated);
+            assertSame("memoized", generated, generatedTableConfigs.getTableConfig(dataClass));
+            DatabaseTableConfig<?> reflected = DatabaseTableConfig.fromClass(db.getConnectionSource(), dataClass);
+            assertEquals("table name", reflected.getTableName(), generated.getTableName());
+            assertEquals("columns", describe(reflected), describe(generated));
+        }
+        assertNull(generatedTableConfigs.getTableConfig(Hidden.class));
+    }
+
+    private List<String> describe(DatabaseTableConfig<?> tableConfig) throws Exception {
+        List<String> columns = new ArrayList<>();
+        for (FieldType fieldType : tableConfig.getFieldTypes(db.getConnectionSource().getDatabaseType())) {
+            columns.add(String.format("%s %s id=%s generatedId=%s foreign=%s canBeNull=%s", fieldType.getColumnName(),
+                    fieldType.getDataPersister(), fieldType.isId(), fieldType.isGeneratedId(), fieldType.isForeign(), fieldType.isCanBeNull()));
+        }
+        return columns;
+    }
+
+    @Test
+    public void testContextUsesGeneratedConfig() throws Exception {
+        System.out.println("testContextUsesGeneratedConfig");
+        db.getTableUtils().createAllTables(ENTITIES);
+        Dao<Customer, Integer> customerDao = db.getDao(Customer.class, Integer.class);
+        assertNotNull("generated field configs", ((BaseDaoImpl<?, ?>) customerDao).getTableConfig().getFieldConfigs());
+        customerDao.create(new Customer("1 Main St", "Alice"));
+        assertEquals(1, customerDao.countOf());
+        Dao<Hidden, ?> hiddenDao = db.getDao(Hidden.class);
+        assertNull("created by reflection", ((BaseDaoImpl<?, ?>) hiddenDao).getTableConfig());
+        Hidden hidden = new Hidden();
+        hidden.value = "x";
+        hiddenDao.create(hidden);
+        assertEquals(1, hiddenDao.countOf());
+        assertEquals("tables", 2, db.getTableUtils().truncateTables(ENTITIES));
+        assertEquals(0, customerDao.countOf());
+    }
+
+    /**
+     * Entity class that the processor skips because the generated factory
+     * could not refer to it.
+     */
+    @DatabaseTable(tableName = "hidden")
+    private static class Hidden {
+
+        @DatabaseField(generatedId = true)
+        public Integer id;
+
+        @DatabaseField
+        public String value;
+
+        Hidden() {
+        }
+    }
+}
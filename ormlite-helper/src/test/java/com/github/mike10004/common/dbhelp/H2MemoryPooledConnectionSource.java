@@ -0,0 +1,39 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.db.DatabaseTypeUtils;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Pooled connection source for a uniquely-named H2 memory database, used
+ * for testing purposes only. The database stays alive until the virtual
+ * machine exits.
+ */
+class H2MemoryPooledConnectionSource extends LazyJdbcPooledConnectionSource {
+
+    private final String url;
+
+    public H2MemoryPooledConnectionSource() {
+        this("");
+    }
+
+    /**
+     * Constructs an instance whose url ends with extra settings.
+     * @param urlSuffix settings to append, each starting with a semicolon
+     */
+    public H2MemoryPooledConnectionSource(String urlSuffix) {
+        url = "jdbc:h2:mem:p" + UUID.randomUUID().toString().replace("-", "") + ";DB_CLOSE_DELAY=-1" + urlSuffix;
+    }
+
+    @Override
+    protected void prepare() throws SQLException {
+        setUrl(url);
+    }
+
+    @Override
+    protected DatabaseType forceGetDatabaseType() {
+        return DatabaseTypeUtils.createDatabaseType(url);
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HikariConnectionSourceTest {
+
+    private static String createUrl() {
+        return "jdbc:h2:mem:k" + UUID.randomUUID().toString().replace("-", "") + ";DB_CLOSE_DELAY=-1";
+    }
+
+    private static class CountingHikariConnectionSource extends HikariConnectionSource {
+
+        public final AtomicInteger creations = new AtomicInteger();
+
+        public CountingHikariConnectionSource() {
+            super(createUrl());
+        }
+
+        @Override
+        protected DataSource createDataSource() throws SQLException {
+            creations.incrementAndGet();
+            return super.createDataSource();
+        }
+    }
+
+    @Test
+    public void testDatabaseContext() throws Exception {
+        System.out.println("testDatabaseContext");
+        CountingHikariConnectionSource cs = new CountingHikariConnectionSource();
+        cs.setMaximumPoolSize(4);
+        assertEquals("pool created before use", 0, cs.creations.get());
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            db.getTransactionManager().callInTransaction(() -> {
+                dao.create(new Customer("1 Main St", "Alice"));
+                dao.create(new Customer("2 Main St", "Bob"));
+                return null;
+            });
+            assertEquals(2L, dao.countOf());
+            assertEquals("pool creations", 1, cs.creations.get());
+        } finally {
+            db.closeConnections(true);
+        }
+        assertFalse("open after close", cs.isOpen(null));
+        try {
+            cs.getReadWriteConnection(null);
+            fail("connection from closed source");
+        } catch (SQLException expected) {
+        }
+    }
+
+    @Test
+    public void testCloseWithoutUse() throws Exception {
+        System.out.println("testCloseWithoutUse");
+        CountingHikariConnectionSource cs = new CountingHikariConnectionSource();
+        cs.close();
+        assertEquals("pool creations", 0, cs.creations.get());
+    }
+
+    @Test
+    public void testBoundedWait() throws Exception {
+        System.out.println("testBoundedWait");
+        HikariConnectionSource cs = new HikariConnectionSource(createUrl());
+        cs.setMaximumPoolSize(1);
+        cs.setConnectionTimeoutMillis(250);
+        try {
+            DatabaseConnection held = cs.getReadWriteConnection(null);
+            long start = System.currentTimeMillis();
+            try {
+                cs.getReadWriteConnection(null);
+                fail("second connection from pool of size 1");
+            } catch (SQLException expected) {
+                long waited = System.currentTimeMillis() - start;
+                System.out.format("waited %d ms: %s%n", waited, expected);
+                assertTrue("waited " + waited, waited < 5000);
+            } finally {
+                cs.releaseConnection(held);
+            }
+            DatabaseConnection next = cs.getReadWriteConnection(null);
+            assertNotSame("a new wrapper for the pooled connection", held, next);
+            cs.releaseConnection(next);
+        } finally {
+            cs.close();
+        }
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        System.out.println("testFactory");
+        ConnectionParams params = new ConnectionParams("db.example.com", "alice", "secret", "shop");
+        ConnectionSource hikari = MysqlConnectionSource.create(params, PooledConnectionSourceFactory.hikari());
+        assertTrue(hikari instanceof HikariConnectionSource);
+        assertEquals("jdbc:mysql://db.example.com/shop", ((HikariConnectionSource) hikari).getUrl());
+        ConnectionSource ormlite = MysqlConnectionSource.create(params, PooledConnectionSourceFactory.ormlite());
+        assertTrue(ormlite instanceof LazyJdbcPooledConnectionSource);
+        assertEquals("database type", hikari.getDatabaseType().getClass(), ormlite.getDatabaseType().getClass());
+        hikari.close();
+    }
+}
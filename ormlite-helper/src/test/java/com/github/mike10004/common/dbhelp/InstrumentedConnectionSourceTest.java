@@ -0,0 +1,64 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionMetricsSink.AccessMode;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstrumentedConnectionSourceTest {
+
+    @Test
+    public void testMetrics() throws Exception {
+        System.out.println("testMetrics");
+        HistogramConnectionMetrics metrics = new HistogramConnectionMetrics();
+        InstrumentedConnectionSource cs = new InstrumentedConnectionSource(new H2MemoryConnectionSource(), metrics);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            for (int i = 0; i < 10; i++) {
+                dao.create(new Customer(i + " Main St", "Customer " + i));
+            }
+            assertEquals("count", 10, dao.queryForAll().size());
+            DatabaseConnection first = cs.getReadOnlyConnection("customer");
+            DatabaseConnection second = cs.getReadOnlyConnection("customer");
+            assertEquals("in use", 2, cs.getInUseCount());
+            cs.releaseConnection(second);
+            cs.releaseConnection(first);
+            System.out.println(metrics);
+            long acquisitions = metrics.getAcquireLatency(AccessMode.READ_ONLY).getCount()
+                    + metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount();
+            assertTrue("read-write acquisitions", metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount() >= 10);
+            assertTrue("read-only acquisitions", metrics.getAcquireLatency(AccessMode.READ_ONLY).getCount() >= 3);
+            assertEquals("hold count", acquisitions, metrics.getHoldTime().getCount());
+            assertEquals("in use", 0, cs.getInUseCount());
+            assertEquals("sink in use", 0, metrics.getInUseCount());
+            assertEquals("peak", 2, cs.getPeakInUseCount());
+            assertEquals("sink peak", 2, metrics.getPeakInUseCount());
+            assertEquals("failures", 0L, metrics.getAcquireFailureCount());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testAcquireFailure() throws Exception {
+        System.out.println("testAcquireFailure");
+        HistogramConnectionMetrics metrics = new HistogramConnectionMetrics();
+        InstrumentedConnectionSource cs = new InstrumentedConnectionSource(ConnectionSources.broken(), metrics);
+        try {
+            cs.getReadWriteConnection("customer");
+            fail("should have thrown");
+        } catch (SQLException expected) {
+        }
+        assertEquals("failures", 1L, metrics.getAcquireFailureCount());
+        assertEquals("acquisitions", 0L, metrics.getAcquireLatency(AccessMode.READ_WRITE).getCount());
+        assertEquals("in use", 0, cs.getInUseCount());
+    }
+}
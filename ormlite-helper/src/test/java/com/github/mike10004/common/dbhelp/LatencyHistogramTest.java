@@ -0,0 +1,43 @@
+package com.github.mike10004.common.dbhelp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        System.out.println("testBucketBounds");
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue("upper bound " + upper + " of " + value, upper >= value);
+            assertTrue("precision for " + value, upper - value <= value / 8);
+            if (index > 0) {
+                assertTrue("previous bucket of " + value, LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        System.out.println("testPercentiles");
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("empty", 0L, histogram.getValueAtPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        System.out.println(histogram);
+        assertEquals("count", 1000L, histogram.getCount());
+        assertEquals("max", 1000000L, histogram.getMax());
+        assertEquals("mean", 500500d, histogram.getMean(), 0.001);
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue("p50 " + p50, p50 >= 500000L && p50 <= 500000L * 9 / 8);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue("p99 " + p99, p99 >= 990000L && p99 <= 1000000L);
+        assertEquals("p100", 1000000L, histogram.getValueAtPercentile(100));
+    }
+}
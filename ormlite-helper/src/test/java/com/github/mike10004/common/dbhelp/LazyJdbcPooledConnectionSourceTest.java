@@ -0,0 +1,216 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LazyJdbcPooledConnectionSourceTest {
+
+    @Test
+    public void testStatementCache() throws Exception {
+        System.out.println("testStatementCache");
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource();
+        cs.setStatementCacheSize(2);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        DatabaseConnection connection;
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            for (int i = 0; i < 10; i++) {
+                dao.create(new Customer(i + " Main St", "Customer " + i));
+            }
+            StatementCacheStats stats = cs.getStatementCacheStats();
+            long hitsBefore = stats.getHitCount(), missesBefore = stats.getMissCount();
+            for (int i = 1; i <= 10; i++) {
+                Customer customer = dao.queryForId(i);
+                assertNotNull("customer " + i, customer);
+                assertEquals("name", "Customer " + (i - 1), customer.name);
+            }
+            System.out.println(stats);
+            assertEquals("misses", 1L, stats.getMissCount() - missesBefore);
+            assertEquals("hits", 9L, stats.getHitCount() - hitsBefore);
+            dao.queryForAll();
+            dao.countOf();
+            dao.queryBuilder().where().eq("name", "Customer 3").query();
+            assertTrue("evictions", stats.getEvictionCount() > 0);
+            connection = cs.getReadWriteConnection("customer");
+            try {
+                assertTrue(connection instanceof StatementCachingConnection);
+                assertEquals("cached", 2, ((StatementCachingConnection) connection).getCachedStatementCount());
+            } finally {
+                cs.releaseConnection(connection);
+            }
+        } finally {
+            db.closeConnections(true);
+        }
+        assertEquals("cached after close", 0, ((StatementCachingConnection) connection).getCachedStatementCount());
+        assertTrue("connection closed", connection.isClosed());
+    }
+
+    @Test
+    public void testStatementCache_disabledByDefault() throws Exception {
+        System.out.println("testStatementCache_disabledByDefault");
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource();
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            dao.create(new Customer("1 Main St", "Customer 1"));
+            dao.queryForId(1);
+            dao.queryForId(1);
+            assertEquals("requests", 0L, cs.getStatementCacheStats().getMissCount());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testMinIdle() throws Exception {
+        System.out.println("testMinIdle");
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource();
+        cs.setMinIdle(3);
+        cs.setCheckConnectionsEveryMillis(0);
+        cs.setMaxConnectionAgeMillis(250);
+        try {
+            assertEquals("before initialization", 0, cs.getOpenCount());
+            cs.forcePrepareAndInitialize();
+            awaitConnectionsFree(cs, 3);
+            assertEquals("opened", 3, cs.getOpenCount());
+            assertEquals("free", 3, cs.getCurrentConnectionsFree());
+            Thread.sleep(300);
+            cs.releaseConnection(cs.getReadWriteConnection(null)); // evicts the expired connections
+            assertTrue("evicted", cs.getCloseCount() >= 3);
+            awaitConnectionsFree(cs, 3);
+        } finally {
+            cs.close();
+        }
+    }
+
+    private static void awaitConnectionsFree(LazyJdbcPooledConnectionSource cs, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cs.getCurrentConnectionsFree() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("connections free " + cs.getCurrentConnectionsFree() + " < " + expected, cs.getCurrentConnectionsFree() >= expected);
+    }
+
+    @Test
+    public void testMaintenance_validation() throws Exception {
+        System.out.println("testMaintenance_validation");
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource();
+        cs.setMaintenanceIntervalMillis(50);
+        cs.setValidationQuery("SELECT 1");
+        try {
+            DatabaseConnection good = cs.getReadWriteConnection(null);
+            DatabaseConnection bad = cs.getReadWriteConnection(null);
+            cs.releaseConnection(good);
+            cs.releaseConnection(bad);
+            DatabaseConnections.getJdbcConnection(bad).close(); // as if the server dropped it
+            PoolMaintenanceStats stats = cs.getMaintenanceStats();
+            awaitCondition(() -> stats.getValidationFailureCount() > 0 && stats.getRunCount() > 1);
+            System.out.println(stats);
+            assertEquals("failures", 1L, stats.getValidationFailureCount());
+            assertTrue("validations", stats.getValidationCount() >= 2);
+            assertEquals("free", 1, cs.getCurrentConnectionsFree());
+            assertEquals("managed", 1, cs.getCurrentConnectionsManaged());
+            DatabaseConnection connection = cs.getReadWriteConnection(null);
+            assertSame(good, connection);
+            cs.releaseConnection(connection);
+        } finally {
+            cs.close();
+        }
+    }
+
+    @Test
+    public void testMaintenance_eviction() throws Exception {
+        System.out.println("testMaintenance_eviction");
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource();
+        cs.setMaintenanceIntervalMillis(50);
+        cs.setMaxIdleMillis(100);
+        cs.setMinIdle(1);
+        try {
+            cs.forcePrepareAndInitialize();
+            List<DatabaseConnection> connections = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                connections.add(cs.getReadWriteConnection(null));
+            }
+            for (DatabaseConnection connection : connections) {
+                cs.releaseConnection(connection);
+            }
+            PoolMaintenanceStats stats = cs.getMaintenanceStats();
+            awaitCondition(() -> stats.getIdleEvictionCount() >= 2 && cs.getCurrentConnectionsFree() == 1);
+            Thread.sleep(200);
+            assertEquals("free at floor", 1, cs.getCurrentConnectionsFree());
+            cs.setMaxIdleMillis(0);
+            cs.setMaxConnectionAgeMillis(100); // applies to connections opened from now on
+            DatabaseConnection old = cs.getReadWriteConnection(null);
+            cs.releaseConnection(cs.getReadWriteConnection(null));
+            cs.releaseConnection(old);
+            awaitCondition(() -> stats.getLifetimeEvictionCount() >= 1);
+            awaitConnectionsFree(cs, 1);
+            System.out.println(stats);
+            assertEquals("validation failures", 0L, stats.getValidationFailureCount());
+        } finally {
+            cs.close();
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("condition not met before timeout", condition.getAsBoolean());
+    }
+
+    @Test
+    public void testPreparedOnceUnderContention() throws Exception {
+        System.out.println("testPreparedOnceUnderContention");
+        AtomicInteger preparations = new AtomicInteger();
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource() {
+            @Override
+            protected void prepare() throws SQLException {
+                preparations.incrementAndGet();
+                super.prepare();
+            }
+        };
+        int numThreads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 100; j++) {
+                        cs.releaseConnection(cs.getReadWriteConnection(null));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals("preparations", 1, preparations.get());
+        } finally {
+            executor.shutdownNow();
+            cs.close();
+        }
+    }
+}
@@ -17,5 +17,18 @@ public class MysqlConnectionSourceTest {
         System.out.format("expect %s actual %s%n", expected, actual);
         assertEquals(expected.getClass(), actual.getClass());
     }
-    
+
+    @Test
+    public void testConstructJdbcUrl_tuningProfile() {
+        System.out.println("testConstructJdbcUrl_tuningProfile");
+        ConnectionParams params = new ConnectionParams("db.example.com:3307", "alice", "secret", "shop");
+        MysqlConnectionSource cs = new MysqlConnectionSource(params);
+        assertEquals("jdbc:mysql://db.example.com:3307/shop", cs.constructJdbcUrl());
+        params.setTuningProfile(MysqlTuningProfile.NONE);
+        assertEquals("jdbc:mysql://db.example.com:3307/shop", cs.constructJdbcUrl());
+        params.setTuningProfile(MysqlTuningProfile.BULK_LOAD);
+        assertEquals("jdbc:mysql://db.example.com:3307/shop?rewriteBatchedStatements=true&useServerPrepStmts=false"
+                + "&cachePrepStmts=true&tcpSndBuf=1048576&tcpKeepAlive=true", cs.constructJdbcUrl());
+        assertEquals("copy", params, params.copy());
+    }
 }
@@ -0,0 +1,38 @@
+package com.github.mike10004.common.dbhelp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MysqlTuningProfileTest {
+
+    @Test
+    public void testToQueryString_encoded() {
+        System.out.println("testToQueryString_encoded");
+        MysqlTuningProfile profile = MysqlTuningProfile.NONE
+                .withProperty("sessionVariables", "sql_mode='ANSI',time_zone='+00:00'")
+                .withProperty("connectionAttributes", "app:a&b=c");
+        assertEquals("sessionVariables=sql_mode%3D%27ANSI%27%2Ctime_zone%3D%27%2B00%3A00%27"
+                + "&connectionAttributes=app%3Aa%26b%3Dc", profile.toQueryString());
+        assertEquals("", MysqlTuningProfile.NONE.toQueryString());
+    }
+
+    @Test
+    public void testWith_immutable() {
+        System.out.println("testWith_immutable");
+        MysqlTuningProfile custom = MysqlTuningProfile.OLTP.withPrepStmtCacheSize(500).withRewriteBatchedStatements(true);
+        assertEquals("250", MysqlTuningProfile.OLTP.getProperties().get("prepStmtCacheSize"));
+        assertEquals("500", custom.getProperties().get("prepStmtCacheSize"));
+        assertTrue("replaced in place", custom.toQueryString().startsWith("cachePrepStmts=true&prepStmtCacheSize=500&"));
+        assertNotEquals(MysqlTuningProfile.OLTP, custom);
+        assertEquals(custom, MysqlTuningProfile.OLTP.withPrepStmtCacheSize(500).withRewriteBatchedStatements(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWith_negative() {
+        System.out.println("testWith_negative");
+        MysqlTuningProfile.NONE.withTcpRcvBuf(-1);
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCachingDaoTest {
+
+    private static DefaultDatabaseContext createContext(int numCustomers) throws SQLException {
+        DefaultDatabaseContext db = new DefaultDatabaseContext(new H2MemoryConnectionSource());
+        db.getTableUtils().createTable(Customer.class);
+        db.getTableUtils().createTable(Order.class);
+        Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+        for (int i = 1; i <= numCustomers; i++) {
+            dao.create(new Customer(i + " Main St", "Customer " + i));
+        }
+        return db;
+    }
+
+    private static List<Customer> queryNameLike(Dao<Customer, Integer> dao, String pattern) throws SQLException {
+        QueryBuilder<Customer, Integer> qb = dao.queryBuilder();
+        qb.where().like("name", pattern);
+        return qb.query();
+    }
+
+    private static Order newOrder(Customer customer, String productName) {
+        Order order = new Order();
+        order.customer = customer;
+        order.productName = productName;
+        order.quantity = 1;
+        return order;
+    }
+
+    @Test
+    public void testQueryCache() throws Exception {
+        System.out.println("testQueryCache");
+        DefaultDatabaseContext db = createContext(10);
+        try {
+            assertFalse("off by default", db.getDao(Customer.class) instanceof QueryCachingDao);
+            ContextTableUtils tableUtils = db.getTableUtils();
+            db.setQueryCache(Customer.class, QueryCacheOptions.maximumSize(100));
+            Dao<Customer, Integer> customerDao = db.getDao(Customer.class, Integer.class);
+            assertTrue("query caching dao", customerDao instanceof QueryCachingDao);
+            QueryCachingDao<Customer, Integer> dao = (QueryCachingDao<Customer, Integer>) customerDao;
+            List<Customer> customers = queryNameLike(dao, "Customer 1%");
+            assertEquals("results", 2, customers.size());
+            customers.clear();
+            assertEquals("results again", 2, queryNameLike(dao, "Customer 1%").size());
+            assertEquals("other argument", 1, queryNameLike(dao, "Customer 2%").size());
+            QueryBuilder<Customer, Integer> countQuery = dao.queryBuilder().setCountOf(true);
+            countQuery.where().like("name", "Customer 1%");
+            assertEquals("count", 2L, dao.countOf(countQuery.prepare()));
+            assertEquals("count again", 2L, dao.countOf(countQuery.prepare()));
+            System.out.println(dao.getCacheStats());
+            assertEquals("hits", 2L, dao.getCacheStats().hitCount());
+            assertEquals("misses", 3L, dao.getCacheStats().missCount());
+            db.getDao(Order.class).create(newOrder(dao.queryForId(1), "Widget"));
+            assertEquals("after unrelated write", 2, queryNameLike(dao, "Customer 1%").size());
+            assertEquals("hits after unrelated write", 3L, dao.getCacheStats().hitCount());
+            dao.create(new Customer("11 Main St", "Customer 11"));
+            assertEquals("after create", 3, queryNameLike(dao, "Customer 1%").size());
+            assertEquals("count after create", 3L, dao.countOf(countQuery.prepare()));
+            db.setQueryCache(Customer.class, null);
+            assertFalse("disabled", db.getDao(Customer.class) instanceof QueryCachingDao);
+            assertSame("table utils kept", tableUtils, db.getTableUtils());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testInvalidationByContextWrites() throws Exception {
+        System.out.println("testInvalidationByContextWrites");
+        DefaultDatabaseContext db = createContext(2);
+        try {
+            db.setQueryCache(Order.class, QueryCacheOptions.maximumSize(100).expireAfterWrite(1, TimeUnit.HOURS));
+            Dao<Customer, Integer> customerDao = db.getDao(Customer.class, Integer.class);
+            assertTrue("uncached dao type kept", customerDao instanceof BaseDaoImpl);
+            QueryCachingDao<Order, Integer> orderDao = (QueryCachingDao<Order, Integer>) db.getDao(Order.class, Integer.class);
+            Customer first = customerDao.queryForId(1), second = customerDao.queryForId(2);
+            orderDao.create(newOrder(first, "Widget"));
+            orderDao.create(newOrder(second, "Gadget"));
+            QueryBuilder<Customer, Integer> customerQuery = customerDao.queryBuilder();
+            customerQuery.where().eq("name", "Customer 1");
+            QueryBuilder<Order, Integer> orderQuery = orderDao.queryBuilder().join(customerQuery);
+            assertEquals("orders", 1, orderQuery.query().size());
+            assertEquals("orders again", 1, orderQuery.query().size());
+            assertEquals("hits", 1L, orderDao.getCacheStats().hitCount());
+            second.name = "Customer 1";
+            customerDao.update(second);
+            assertEquals("after joined table write", 2, orderQuery.query().size());
+            db.createBatchWriter(Order.class, 10, BatchWriter.CommitMode.PER_STREAM)
+                    .write(Arrays.asList(newOrder(first, "Sprocket"), newOrder(first, "Doohickey")));
+            assertEquals("after batch write", 4, orderQuery.query().size());
+            db.getTableUtils().clearTable(Order.class);
+            assertEquals("after clear", 0, orderQuery.query().size());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testTransactionBypassesCache() throws Exception {
+        System.out.println("testTransactionBypassesCache");
+        DefaultDatabaseContext db = createContext(3);
+        try {
+            db.setQueryCache(Customer.class, QueryCacheOptions.maximumSize(100));
+            QueryCachingDao<Customer, Integer> dao = (QueryCachingDao<Customer, Integer>) db.getDao(Customer.class, Integer.class);
+            int numCustomers = db.getTransactionManager().callInTransaction(() -> {
+                dao.create(new Customer("4 Main St", "Customer 4"));
+                return queryNameLike(dao, "Customer%").size();
+            });
+            assertEquals("in transaction", 4, numCustomers);
+            assertEquals("requests", 0L, dao.getCacheStats().requestCount());
+            assertEquals("after transaction", 4, queryNameLike(dao, "Customer%").size());
+            assertEquals("requests after transaction", 1L, dao.getCacheStats().requestCount());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testWriteInTransactionRecordedAfterCommit() throws Exception {
+        System.out.println("testWriteInTransactionRecordedAfterCommit");
+        DefaultDatabaseContext db = new DefaultDatabaseContext(new H2MemoryPooledConnectionSource());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            db.setQueryCache(Customer.class, QueryCacheOptions.maximumSize(100));
+            QueryCachingDao<Customer, Integer> dao = (QueryCachingDao<Customer, Integer>) db.getDao(Customer.class, Integer.class);
+            dao.create(new Customer("1 Main St", "Customer 1"));
+            db.getTransactionManager().callInTransaction(() -> {
+                dao.create(new Customer("2 Main St", "Customer 2"));
+                Future<Integer> otherThreadCount = executor.submit(() -> queryNameLike(dao, "Customer%").size());
+                assertEquals("read by other thread before commit", 1, otherThreadCount.get().intValue());
+                return null;
+            });
+            assertEquals("after commit", 2, queryNameLike(dao, "Customer%").size());
+        } finally {
+            executor.shutdownNow();
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testMaximumRows() throws Exception {
+        System.out.println("testMaximumRows");
+        DefaultDatabaseContext db = createContext(10);
+        try {
+            QueryCachingDao<Customer, Integer> dao = new QueryCachingDao<>(db.getDao(Customer.class, Integer.class), QueryCacheOptions.maximumRows(3));
+            assertEquals(2, queryNameLike(dao, "Customer 1%").size());
+            assertEquals(1, queryNameLike(dao, "Customer 2%").size());
+            assertEquals("size", 2L, dao.getCacheSize());
+            assertEquals(1, queryNameLike(dao, "Customer 3%").size());
+            System.out.println(dao.getCacheStats());
+            assertEquals("size after eviction", 2L, dao.getCacheSize());
+            assertEquals("evictions", 1L, dao.getCacheStats().evictionCount());
+            dao.delete(dao.queryForId(3));
+            assertEquals("after delete", 0, queryNameLike(dao, "Customer 3%").size());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.ConnectionSources.SimpleConnectionSourceDelegator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryStreamsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStreamQuery() throws Exception {
+        System.out.println("testStreamQuery");
+        CountingConnectionSource cs = new CountingConnectionSource(new H2MemoryConnectionSource());
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            for (int i = 0; i < 100; i++) {
+                dao.create(new Customer(i + " Main St", (i % 2 == 0 ? "even" : "odd") + i));
+            }
+            PreparedQuery<Customer> query = dao.queryBuilder().where().like("name", "even%").prepare();
+            List<Customer> evens;
+            try (Stream<Customer> stream = db.streamQuery(Customer.class, query, StreamOptions.withFetchSize(7))) {
+                evens = stream.collect(Collectors.toList());
+            }
+            assertEquals("num evens", 50, evens.size());
+            assertEquals("connections outstanding", 0, cs.outstanding.get());
+            try (Stream<Customer> stream = db.streamQuery(Customer.class, null, StreamOptions.defaults())) {
+                assertEquals("first", "even0", stream.findFirst().get().name);
+            }
+            assertEquals("connections outstanding after early close", 0, cs.outstanding.get());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testStreamQuery_largeTableBoundedMemory() throws Exception {
+        System.out.println("testStreamQuery_largeTableBoundedMemory");
+        int numRows = 2 * 1000 * 1000;
+        File dbFile = new File(temporaryFolder.getRoot(), "stream.h2.db");
+        DatabaseContext db = new DefaultDatabaseContext(new H2FileConnectionSource(dbFile));
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            dao.executeRaw("INSERT INTO `customer` (`name`, `address`) SELECT CONCAT('Customer ', X), CONCAT(X, ' Main Street') FROM SYSTEM_RANGE(1, " + numRows + ")");
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long baseline = usedHeapAfterGc(memory);
+            AtomicLong maxUsed = new AtomicLong(baseline);
+            AtomicInteger count = new AtomicInteger();
+            try (Stream<Customer> stream = db.streamQuery(Customer.class, null, StreamOptions.withFetchSize(500).boundedMemory())) {
+                stream.forEach(customer -> {
+                    if (count.incrementAndGet() % 250000 == 0) {
+                        maxUsed.accumulateAndGet(usedHeapAfterGc(memory), Math::max);
+                    }
+                });
+            }
+            long growth = maxUsed.get() - baseline;
+            System.out.format("streamed %d rows; heap baseline %d bytes, max growth %d bytes%n", count.get(), baseline, growth);
+            assertEquals("count", numRows, count.get());
+            // materializing two million customers would take hundreds of megabytes
+            assertTrue("heap growth too large: " + growth, growth < 64 * 1024 * 1024);
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static class CountingConnectionSource extends SimpleConnectionSourceDelegator {
+
+        public final AtomicInteger outstanding = new AtomicInteger();
+
+        public CountingConnectionSource(ConnectionSource delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+            DatabaseConnection connection = super.getReadOnlyConnection(tableName);
+            outstanding.incrementAndGet();
+            return connection;
+        }
+
+        @Override
+        public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+            DatabaseConnection connection = super.getReadWriteConnection(tableName);
+            outstanding.incrementAndGet();
+            return connection;
+        }
+
+        @Override
+        public void releaseConnection(DatabaseConnection connection) throws SQLException {
+            super.releaseConnection(connection);
+            outstanding.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.collect.ImmutableSet;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.db.H2DatabaseType;
+import com.j256.ormlite.db.MysqlDatabaseType;
+import com.j256.ormlite.db.SqliteDatabaseType;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryingContextTransactionManagerTest {
+
+    @Test
+    public void testClassifier() throws Exception {
+        System.out.println("testClassifier");
+        RetryableErrorClassifier mysql = RetryableErrorClassifier.forDatabaseType(new MysqlDatabaseType());
+        assertTrue("deadlock", mysql.isRetryable(new SQLException("deadlock", "40001", 1213)));
+        assertTrue("lock wait timeout", mysql.isRetryable(new SQLException("lock wait", "HY000", 1205)));
+        assertTrue("wrapped", mysql.isRetryable(new SQLException("wrapper", new SQLException("lock wait", "HY000", 1205))));
+        assertFalse("duplicate key", mysql.isRetryable(new SQLException("duplicate", "23000", 1062)));
+        RetryableErrorClassifier h2 = RetryableErrorClassifier.forDatabaseType(new H2DatabaseType());
+        assertTrue("lock timeout", h2.isRetryable(new SQLException("timeout", "HYT00", 50200)));
+        assertTrue("concurrent update", h2.isRetryable(new SQLException("concurrent", "90131", 90131)));
+        SQLException chained = new SQLException("batch failed", "HY000", 0);
+        chained.setNextException(new SQLException("deadlock", "40001", 40001));
+        assertTrue("chained", h2.isRetryable(chained));
+        RetryableErrorClassifier other = RetryableErrorClassifier.forDatabaseType(new SqliteDatabaseType());
+        assertTrue("rollback exception", other.isRetryable(new SQLTransactionRollbackException("rollback")));
+        assertTrue("serialization failure", other.isRetryable(new SQLTransactionRollbackException("serialization", "40001")));
+        assertFalse("integrity constraint violation", other.isRetryable(new SQLTransactionRollbackException("integrity", "40002")));
+        assertFalse("statement completion unknown", other.isRetryable(new SQLTransactionRollbackException("unknown", "40003")));
+        assertFalse("vendor code without dialect", other.isRetryable(new SQLException("timeout", "HYT00", 50200)));
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() throws Exception {
+        System.out.println("testRetriesUntilSuccess");
+        AtomicInteger calls = new AtomicInteger();
+        RetryingContextTransactionManager txManager = new RetryingContextTransactionManager(new DirectTransactionManager(),
+                RetryPolicy.of(5, 1, 4, TimeUnit.MILLISECONDS), new RetryableErrorClassifier.CodeClassifier(ImmutableSet.of(1213)));
+        String result = txManager.callInTransaction(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new SQLException("deadlock", "40001", 1213);
+            }
+            return "done";
+        });
+        assertEquals("done", result);
+        assertEquals("calls", 3, calls.get());
+        assertEquals("attempts", 3, txManager.getAttemptCount());
+        assertEquals("retries", 2, txManager.getRetryCount());
+        assertEquals("successes", 1, txManager.getSuccessCount());
+    }
+
+    @Test
+    public void testGivesUp() throws Exception {
+        System.out.println("testGivesUp");
+        AtomicInteger calls = new AtomicInteger();
+        RetryingContextTransactionManager txManager = new RetryingContextTransactionManager(new DirectTransactionManager(),
+                RetryPolicy.of(3, 0, 0, TimeUnit.MILLISECONDS), new RetryableErrorClassifier.CodeClassifier(ImmutableSet.of(1213)));
+        SQLException deadlock = new SQLException("deadlock", "40001", 1213);
+        try {
+            txManager.callInTransaction(() -> {
+                calls.incrementAndGet();
+                throw deadlock;
+            });
+            fail("should have thrown");
+        } catch (SQLException e) {
+            assertSame(deadlock, e);
+        }
+        assertEquals("calls", 3, calls.get());
+        assertEquals("exhausted", 1, txManager.getExhaustedFailureCount());
+        SQLException constraint = new SQLException("duplicate", "23000", 1062);
+        try {
+            txManager.callInTransaction(() -> {
+                calls.incrementAndGet();
+                throw constraint;
+            });
+            fail("should have thrown");
+        } catch (SQLException e) {
+            assertSame(constraint, e);
+        }
+        assertEquals("calls after non-retryable", 4, calls.get());
+        assertEquals("non-retryable", 1, txManager.getNonRetryableFailureCount());
+    }
+
+    @Test
+    public void testNestedTransactionNotRetried() throws Exception {
+        System.out.println("testNestedTransactionNotRetried");
+        AtomicInteger innerCalls = new AtomicInteger();
+        AtomicInteger outerCalls = new AtomicInteger();
+        RetryingContextTransactionManager txManager = new RetryingContextTransactionManager(new DirectTransactionManager(),
+                RetryPolicy.of(4, 0, 0, TimeUnit.MILLISECONDS), new RetryableErrorClassifier.CodeClassifier(ImmutableSet.of(1213)));
+        Integer result = txManager.callInTransaction(() -> {
+            outerCalls.incrementAndGet();
+            return txManager.callInTransaction(() -> {
+                if (innerCalls.incrementAndGet() == 1) {
+                    throw new SQLException("deadlock", "40001", 1213);
+                }
+                return innerCalls.get();
+            });
+        });
+        assertEquals("result", 2, result.intValue());
+        assertEquals("outer calls", 2, outerCalls.get());
+        assertEquals("attempts", 2, txManager.getAttemptCount());
+    }
+
+    @Test
+    public void testTransactionStartedElsewhereNotRetried() throws Exception {
+        System.out.println("testTransactionStartedElsewhereNotRetried");
+        H2MemoryConnectionSource cs = new H2MemoryConnectionSource();
+        try {
+            RetryingContextTransactionManager txManager = (RetryingContextTransactionManager)
+                    RetryingContextTransactionManager.factory(RetryPolicy.of(4, 0, 0, TimeUnit.MILLISECONDS)).apply(cs);
+            AtomicInteger innerCalls = new AtomicInteger();
+            try {
+                new DefaultContextTransactionManager(cs).callInTransaction(() -> txManager.callInTransaction(() -> {
+                    innerCalls.incrementAndGet();
+                    throw new SQLException("deadlock", "40001", 40001);
+                }));
+                fail("expected exception");
+            } catch (SQLException e) {
+                assertEquals("state", "40001", e.getSQLState());
+            }
+            assertEquals("inner calls", 1, innerCalls.get());
+            assertEquals("retries", 0L, txManager.getRetryCount());
+        } finally {
+            cs.close();
+        }
+    }
+
+    @Test
+    public void testLockTimeoutOnH2() throws Exception {
+        System.out.println("testLockTimeoutOnH2");
+        H2MemoryPooledConnectionSource cs = new H2MemoryPooledConnectionSource(";LOCK_TIMEOUT=100");
+        DatabaseContext db = new DefaultDatabaseContext(cs, DefaultContextTableUtils::new,
+                RetryingContextTransactionManager.factory(RetryPolicy.of(20, 50, 200, TimeUnit.MILLISECONDS)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            Customer customer = new Customer("1 Main St", "Alice");
+            dao.create(customer);
+            RetryingContextTransactionManager txManager = (RetryingContextTransactionManager) db.getTransactionManager();
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> holder = executor.submit(() -> {
+                new DefaultContextTransactionManager(cs).callInTransaction(() -> {
+                    dao.updateRaw("UPDATE customer SET name = 'Bob' WHERE id = ?", customer.id.toString());
+                    locked.countDown();
+                    release.await();
+                    return null;
+                });
+                return null;
+            });
+            assertTrue("locked", locked.await(5, TimeUnit.SECONDS));
+            AtomicInteger calls = new AtomicInteger();
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException ignore) {
+                }
+                release.countDown();
+            });
+            releaser.start();
+            txManager.callInTransaction(() -> {
+                calls.incrementAndGet();
+                return dao.updateRaw("UPDATE customer SET name = 'Carol' WHERE id = ?", customer.id.toString());
+            });
+            holder.get(5, TimeUnit.SECONDS);
+            releaser.join();
+            System.out.format("%s%n", txManager);
+            assertTrue("calls > 1: " + calls.get(), calls.get() > 1);
+            assertEquals("retries", calls.get() - 1, txManager.getRetryCount());
+            assertEquals("name", "Carol", dao.queryForId(customer.id).name);
+        } finally {
+            executor.shutdownNow();
+            db.closeConnections(true);
+        }
+    }
+
+    private static class DirectTransactionManager implements ContextTransactionManager {
+
+        @Override
+        public <T> T callInTransaction(Callable<T> callable) throws SQLException {
+            try {
+                return callable.call();
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException(e);
+            }
+        }
+
+        @Override
+        public <T> T callInReadOnlyTransaction(Callable<T> callable) throws SQLException {
+            return callInTransaction(callable);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.RoutingConnectionSource.Pin;
+import com.github.mike10004.common.dbhelp.RoutingConnectionSource.ReplicaSelection;
+import com.google.common.base.Ticker;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoutingConnectionSourceTest {
+
+    private ConnectionSource primary;
+    private ConnectionSource replica0, replica1;
+
+    @Before
+    public void setUp() throws SQLException {
+        primary = new H2MemoryConnectionSource();
+        replica0 = new H2MemoryConnectionSource();
+        replica1 = new H2MemoryConnectionSource();
+        populate(primary, "primary");
+        populate(replica0, "replica0");
+        populate(replica1, "replica1");
+    }
+
+    private static void populate(ConnectionSource connectionSource, String name) throws SQLException {
+        DatabaseContext db = new DefaultDatabaseContext(connectionSource);
+        db.getTableUtils().createTable(Customer.class);
+        db.getDao(Customer.class).create(new Customer("1 Main St", name));
+    }
+
+    @After
+    public void tearDown() {
+        primary.closeQuietly();
+        replica0.closeQuietly();
+        replica1.closeQuietly();
+    }
+
+    private static String readName(DatabaseContext db) throws SQLException {
+        List<Customer> customers = db.getDao(Customer.class).queryForAll();
+        return customers.get(customers.size() - 1).name;
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        System.out.println("testRoundRobin");
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(replica0, replica1), ReplicaSelection.ROUND_ROBIN);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        assertEquals("replica0", readName(db));
+        assertEquals("replica1", readName(db));
+        assertEquals("replica0", readName(db));
+        assertEquals("outstanding", 0, cs.getOutstandingCount(0));
+        assertEquals("outstanding", 0, cs.getOutstandingCount(1));
+    }
+
+    @Test
+    public void testWritesGoToPrimary() throws Exception {
+        System.out.println("testWritesGoToPrimary");
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(replica0, replica1), ReplicaSelection.ROUND_ROBIN);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        db.getDao(Customer.class).create(new Customer("2 Main St", "written"));
+        assertEquals("primary count", 2L, new DefaultDatabaseContext(primary).getDao(Customer.class).countOf());
+        assertEquals("replica0 count", 1L, new DefaultDatabaseContext(replica0).getDao(Customer.class).countOf());
+        assertEquals("replica1 count", 1L, new DefaultDatabaseContext(replica1).getDao(Customer.class).countOf());
+    }
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        System.out.println("testLeastOutstanding");
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(replica0, replica1), ReplicaSelection.LEAST_OUTSTANDING);
+        DatabaseConnection held = cs.getReadOnlyConnection("customer");
+        int heldIndex = cs.getOutstandingCount(0) == 1 ? 0 : 1;
+        String otherName = "replica" + (1 - heldIndex);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("read " + i, otherName, readName(db));
+        }
+        cs.releaseConnection(held);
+        cs.releaseConnection(held);
+        assertEquals("outstanding after release", 0, cs.getOutstandingCount(heldIndex));
+    }
+
+    @Test
+    public void testReadsPinnedToPrimaryInTransaction() throws Exception {
+        System.out.println("testReadsPinnedToPrimaryInTransaction");
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(replica0, replica1), ReplicaSelection.ROUND_ROBIN);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        String name = db.getTransactionManager().callInTransaction(() -> {
+            db.getDao(Customer.class).create(new Customer("2 Main St", "uncommitted"));
+            return readName(db);
+        });
+        assertEquals("uncommitted", name);
+        assertFalse("pinned after transaction", cs.isReadPinnedToPrimary("customer"));
+    }
+
+    @Test
+    public void testPinReadsToPrimary() throws Exception {
+        System.out.println("testPinReadsToPrimary");
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(replica0, replica1), ReplicaSelection.ROUND_ROBIN);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        try (Pin outer = cs.pinReadsToPrimary()) {
+            try (Pin inner = cs.pinReadsToPrimary()) {
+                assertEquals("primary", readName(db));
+            }
+            assertEquals("primary", readName(db));
+        }
+        assertTrue(readName(db).startsWith("replica"));
+    }
+
+    @Test
+    public void testNestedSaveKeepsPin() throws Exception {
+        System.out.println("testNestedSaveKeepsPin");
+        ConnectionSource nestingPrimary = new ConnectionSources.ConnectionSourceDelegator() {
+            @Override
+            protected ConnectionSource getDelegate() {
+                return primary;
+            }
+
+            @Override
+            public boolean saveSpecialConnection(DatabaseConnection connection) {
+                return false; // as when the connection is already saved by an enclosing transaction
+            }
+        };
+        RoutingConnectionSource cs = new RoutingConnectionSource(nestingPrimary, Arrays.asList(replica0, replica1), ReplicaSelection.ROUND_ROBIN);
+        try (Pin pin = cs.pinReadsToPrimary()) {
+            DatabaseConnection connection = cs.getReadWriteConnection(null);
+            try {
+                assertFalse(cs.saveSpecialConnection(connection));
+                cs.clearSpecialConnection(connection);
+            } finally {
+                cs.releaseConnection(connection);
+            }
+            assertTrue("still pinned", cs.isReadPinnedToPrimary(null));
+        }
+        assertFalse("unpinned", cs.isReadPinnedToPrimary(null));
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        System.out.println("testEjection");
+        AtomicLong nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        ConnectionSource broken = ConnectionSources.broken();
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(broken, replica1), ReplicaSelection.ROUND_ROBIN, 2, 10, TimeUnit.SECONDS, ticker);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        assertEquals("failover to healthy replica", "replica1", readName(db));
+        assertFalse("ejected after one failure", cs.isEjected(0));
+        assertEquals("replica1", readName(db));
+        assertEquals("replica1", readName(db));
+        assertTrue("ejected after two failures", cs.isEjected(0));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        assertFalse("ejected after period", cs.isEjected(0));
+        assertEquals("replica1", readName(db));
+        assertEquals("replica1", readName(db));
+        assertTrue("ejected again after one failure", cs.isEjected(0));
+    }
+
+    @Test
+    public void testAllReplicasUnavailable() throws Exception {
+        System.out.println("testAllReplicasUnavailable");
+        RoutingConnectionSource cs = new RoutingConnectionSource(primary, Arrays.asList(ConnectionSources.broken()), ReplicaSelection.LEAST_OUTSTANDING);
+        DatabaseContext db = new DefaultDatabaseContext(cs);
+        assertEquals("primary", readName(db));
+    }
+}
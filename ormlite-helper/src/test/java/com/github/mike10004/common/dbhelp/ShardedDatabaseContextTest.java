@@ -0,0 +1,432 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.CloseableWrappedIterable;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.stmt.Where;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedDatabaseContextTest {
+
+    private static ShardedDatabaseContext createContext(int numShards) {
+        List<ConnectionSource> sources = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            sources.add(new H2MemoryConnectionSource());
+        }
+        return ShardedDatabaseContext.forConnectionSources(sources);
+    }
+
+    private static ShardedDatabaseContext createPooledContext(int numShards) {
+        List<ConnectionSource> sources = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            sources.add(new H2MemoryPooledConnectionSource());
+        }
+        return ShardedDatabaseContext.forConnectionSources(sources);
+    }
+
+    private static List<Account> createAccounts(int count) {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accounts.add(new Account("user" + i, i % 2 == 0 ? "east" : "west", i));
+        }
+        return accounts;
+    }
+
+    @Test
+    public void testRouteById() throws Exception {
+        System.out.println("testRouteById");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            List<Account> accounts = createAccounts(60);
+            for (Account account : accounts) {
+                assertEquals("created", 1, dao.create(account));
+            }
+            for (int shard = 0; shard < db.getShardCount(); shard++) {
+                List<Account> stored = db.getShard(shard).getDao(Account.class, String.class).queryForAll();
+                assertTrue("shard " + shard + " is empty", !stored.isEmpty());
+                for (Account account : stored) {
+                    assertEquals("shard of " + account.username, shard, db.getShardIndex(account.username));
+                }
+            }
+            assertEquals("count", 60L, dao.countOf());
+            assertEquals("all", 60, dao.queryForAll().size());
+            Account account = dao.queryForId("user7");
+            assertNotNull(account);
+            assertEquals("balance", 7, account.balance);
+            assertTrue("exists", dao.idExists("user7"));
+            account.balance = 700;
+            assertEquals("updated", 1, dao.update(account));
+            assertEquals("balance after update", 700, dao.queryForId("user7").balance);
+            assertEquals("by shard key", 1, dao.queryForEq("username", "user7").size());
+            assertEquals("deleted", 1, dao.deleteById("user7"));
+            assertNull("after delete", dao.queryForId("user7"));
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testScatterGather() throws Exception {
+        System.out.println("testScatterGather");
+        ShardedDatabaseContext db = createContext(4);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            assertEquals("created", 40, dao.create(createAccounts(40)));
+            List<Account> east = dao.queryBuilder().where().eq("region", "east").query();
+            assertEquals("east", 20, east.size());
+            assertEquals("east count", 20L, dao.queryBuilder().where().eq("region", "east").countOf());
+            assertEquals("eq", 20, dao.queryForEq("region", "west").size());
+            Account first = dao.queryBuilder().where().eq("balance", 13).queryForFirst();
+            assertNotNull(first);
+            assertEquals("first", "user13", first.username);
+            UpdateBuilder<Account, String> updateBuilder = dao.updateBuilder();
+            updateBuilder.updateColumnValue("balance", -1).where().eq("region", "west").and().lt("balance", 10);
+            int updated = updateBuilder.update();
+            assertEquals("updated", 5, updated);
+            assertEquals("negative", 5L, dao.queryBuilder().where().lt("balance", 0).countOf());
+            DeleteBuilder<Account, String> deleteBuilder = dao.deleteBuilder();
+            deleteBuilder.where().lt("balance", 0);
+            assertEquals("deleted", 5, deleteBuilder.delete());
+            assertEquals("remaining", 35L, dao.countOf());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testIteration() throws Exception {
+        System.out.println("testIteration");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            dao.create(createAccounts(30));
+            Set<String> usernames = new HashSet<>();
+            for (Account account : dao) {
+                usernames.add(account.username);
+            }
+            assertEquals("iterated", 30, usernames.size());
+            int east = 0;
+            try (CloseableIterator<Account> iterator = dao.queryBuilder().where().eq("region", "east").iterator()) {
+                while (iterator.hasNext()) {
+                    assertEquals("region", "east", iterator.next().region);
+                    east++;
+                }
+            }
+            assertEquals("east", 15, east);
+            try (CloseableWrappedIterable<Account> iterable = dao.getWrappedIterable()) {
+                Iterator<Account> iterator = iterable.iterator();
+                iterator.next();
+                iterator.remove();
+            }
+            assertEquals("after remove", 29L, dao.countOf());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testOrderedQueries() throws Exception {
+        System.out.println("testOrderedQueries");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            dao.create(createAccounts(30));
+            List<Account> top = dao.queryBuilder().orderBy("balance", false).limit(5L).query();
+            assertEquals("top", Arrays.asList(29, 28, 27, 26, 25), top.stream().map(a -> a.balance).collect(Collectors.toList()));
+            List<Account> page = dao.queryBuilder().orderBy("balance", true).offset(10L).limit(3L).query();
+            assertEquals("page", Arrays.asList(10, 11, 12), page.stream().map(a -> a.balance).collect(Collectors.toList()));
+            List<Integer> iterated = new ArrayList<>();
+            try (CloseableIterator<Account> iterator = dao.queryBuilder().orderBy("region", true).orderBy("balance", false).offset(13L).limit(4L).iterator()) {
+                iterator.forEachRemaining(a -> iterated.add(a.balance));
+            }
+            assertEquals("iterated", Arrays.asList(2, 0, 29, 27), iterated);
+            Account first = dao.queryBuilder().orderBy("balance", false).where().eq("region", "east").queryForFirst();
+            assertNotNull(first);
+            assertEquals("first", 28, first.balance);
+            Account second = dao.queryBuilder().orderBy("balance", true).offset(1L).limit(1L).queryForFirst();
+            assertNotNull(second);
+            assertEquals("second", 1, second.balance);
+            try {
+                dao.queryBuilder().orderByRaw("balance DESC").query();
+                fail("raw ordering merged");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                dao.query(db.getShard(0).getDao(Account.class, String.class).queryBuilder().limit(1L).prepare());
+                fail("foreign limited query merged");
+            } catch (IllegalArgumentException expected) {
+            }
+            assertEquals("routed raw ordering", 1, dao.queryBuilder().orderByRaw("balance DESC").where().eq("username", "user7").query().size());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testQueryBuilderRoutesShardKey() throws Exception {
+        System.out.println("testQueryBuilderRoutesShardKey");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            dao.create(createAccounts(10));
+            int owner = db.getShardIndex("stray");
+            db.getShard((owner + 1) % db.getShardCount()).getDao(Account.class, String.class).create(new Account("stray", "east", 0));
+            assertEquals("routed", 0, dao.queryBuilder().where().eq("username", "stray").query().size());
+            assertEquals("routed count", 0L, dao.queryBuilder().where().eq("username", "stray").and().eq("region", "east").countOf());
+            assertEquals("routed by id", 0, dao.queryBuilder().where().idEq("stray").query().size());
+            assertEquals("disjunction scattered", 2, dao.queryBuilder().where().eq("username", "stray").or().eq("username", "user3").query().size());
+            assertEquals("other column scattered", 1, dao.queryBuilder().where().eq("balance", 0).and().eq("region", "east").and().eq("username", "stray").or().eq("balance", -1).query().size());
+            Where<Account, String> where = dao.queryBuilder().where();
+            where.or(where.eq("username", "stray"), where.eq("username", "user3"), where.eq("username", "user4"));
+            assertEquals("varargs disjunction scattered", 3, where.query().size());
+            assertEquals("found", "user3", dao.queryBuilder().where().eq("username", "user3").queryForFirst().username);
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testRawQueries() throws Exception {
+        System.out.println("testRawQueries");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            dao.create(createAccounts(30));
+            try (GenericRawResults<String[]> results = dao.queryRaw("SELECT username, balance FROM account WHERE region = ?", "east")) {
+                assertEquals("columns", 2, results.getNumberColumns());
+                assertEquals("east", 15, results.getResults().size());
+            }
+            Set<Integer> balances = new HashSet<>();
+            try (GenericRawResults<Integer> results = dao.queryRaw("SELECT balance FROM account", (columnNames, row) -> Integer.valueOf(row[0]))) {
+                for (Integer balance : results) {
+                    balances.add(balance);
+                }
+            }
+            assertEquals("iterated", 30, balances.size());
+            try (GenericRawResults<Object[]> results = dao.queryRaw("SELECT balance FROM account WHERE balance > 26", new DataType[]{DataType.INTEGER})) {
+                assertNotNull("first", results.getFirstResult());
+            }
+            assertEquals("builder", 30, dao.queryBuilder().selectColumns("username").queryRaw().getResults().size());
+            assertEquals("value", 30L, dao.queryRawValue("SELECT COUNT(*) FROM account"));
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testBatchTasksAndThreadConnections() throws Exception {
+        System.out.println("testBatchTasksAndThreadConnections");
+        ShardedDatabaseContext db = createPooledContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            List<Account> accounts = createAccounts(30);
+            int created = dao.callBatchTasks(() -> dao.create(accounts.subList(0, 10)));
+            assertEquals("created in batch", 10, created);
+            assertEquals("after batch", 10L, dao.countOf());
+            DatabaseConnection connection = dao.startThreadConnection();
+            try {
+                dao.setAutoCommit(connection, false);
+                assertFalse("auto-commit", dao.isAutoCommit(connection));
+                dao.create(accounts.subList(10, 20));
+                assertEquals("before rollback", 20L, dao.countOf());
+                dao.rollBack(connection);
+                assertEquals("after rollback", 10L, dao.countOf());
+                dao.create(accounts.subList(20, 30));
+                dao.commit(connection);
+                dao.setAutoCommit(connection, true);
+                assertTrue("auto-commit restored", dao.isAutoCommit(connection));
+            } finally {
+                dao.endThreadConnection(connection);
+            }
+            assertEquals("after commit", 20L, dao.countOf());
+            assertEquals("on every shard", 20L, dao.getShardDaos().stream().mapToLong(shardDao -> {
+                try {
+                    return shardDao.countOf();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).sum());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        System.out.println("testTransactions");
+        ShardedDatabaseContext db = createPooledContext(3);
+        try {
+            db.setShardKeyColumn(Customer.class, "name");
+            db.getTableUtils().createAllTables(Arrays.asList(Account.class, Customer.class));
+            ShardedDao<Account, String> accounts = db.getDao(Account.class, String.class);
+            ShardedDao<Customer, Integer> customers = db.getDao(Customer.class, Integer.class);
+            int created = db.getTransactionManager().callInTransaction(() -> accounts.create(createAccounts(10)));
+            assertEquals("committed", 10, created);
+            try {
+                db.getTransactionManager().callInTransaction(() -> {
+                    accounts.create(new Account("user10", "east", 10));
+                    customers.create(Arrays.asList(new Customer("1 Main St", "a"), new Customer("2 Main St", "b"), new Customer("3 Main St", "c")));
+                    assertEquals("inside", 3L, customers.countOf());
+                    throw new IllegalStateException("rolling back");
+                });
+                fail("no exception");
+            } catch (SQLException expected) {
+                assertTrue("cause", expected.getCause() instanceof IllegalStateException);
+            }
+            assertEquals("accounts rolled back", 10L, accounts.countOf());
+            assertEquals("customers rolled back", 0L, customers.countOf());
+            DatabaseConnection connection = accounts.startThreadConnection();
+            try {
+                accounts.setAutoCommit(connection, false);
+                customers.create(Arrays.asList(new Customer("1 Main St", "a"), new Customer("2 Main St", "b"), new Customer("3 Main St", "c")));
+                accounts.rollBack(connection);
+                accounts.setAutoCommit(connection, true);
+            } finally {
+                accounts.endThreadConnection(connection);
+            }
+            assertEquals("other dao rolled back", 0L, customers.countOf());
+            assertEquals("read-only", 10L, (long) db.getTransactionManager().callInReadOnlyTransaction(accounts::countOf));
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testAsyncContext() throws Exception {
+        System.out.println("testAsyncContext");
+        ShardedDatabaseContext db = createContext(3);
+        try (AsyncDatabaseContext async = new AsyncDatabaseContext(db, 2, 10)) {
+            db.getTableUtils().createTable(Account.class);
+            assertEquals("created", 10, async.withDao(Account.class, String.class, dao -> dao.create(createAccounts(10))).get().intValue());
+            assertEquals("queried", 10, async.queryForAll(Account.class).get().size());
+            assertEquals("in transaction", 10L, async.callInTransaction(() -> db.getDao(Account.class).countOf()).get().longValue());
+            assertEquals("first shard's source", db.getShard(0).getConnectionSource(), db.getConnectionSource());
+            assertEquals("dao's source", db.getShard(0).getConnectionSource(), db.getDao(Account.class).getConnectionSource());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testBulkOperations() throws Exception {
+        System.out.println("testBulkOperations");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.getTableUtils().createTable(Account.class);
+            ShardedDao<Account, String> dao = db.getDao(Account.class, String.class);
+            List<Account> accounts = createAccounts(30);
+            BatchResult<Account> result = db.createBatchWriter(Account.class, 4, BatchWriter.CommitMode.PER_BATCH).write(accounts);
+            assertEquals("rows written", 30, result.getRowsWritten());
+            assertTrue("failures", result.getFailures().isEmpty());
+            try (Stream<Account> stream = db.streamQuery(Account.class, null, StreamOptions.defaults())) {
+                Set<String> usernames = stream.map(a -> a.username).collect(Collectors.toSet());
+                assertEquals("streamed", 30, usernames.size());
+            }
+            assertEquals("deleted", 10, dao.delete(accounts.subList(0, 10)));
+            assertEquals("deleted ids", 2, dao.deleteIds(Arrays.asList("user10", "user11", "nobody")));
+            assertEquals("remaining", 18L, dao.countOf());
+            BatchResult<Account> duplicates = db.createBatchWriter(Account.class, 4, BatchWriter.CommitMode.PER_BATCH)
+                    .write(Arrays.asList(new Account("new1", "east", 1), accounts.get(20)));
+            assertEquals("duplicate failures", 1, duplicates.getFailures().size());
+            assertEquals("failure index", 1, duplicates.getFailures().get(0).getIndex());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testShardKeyColumn() throws Exception {
+        System.out.println("testShardKeyColumn");
+        ShardedDatabaseContext db = createContext(3);
+        try {
+            db.setShardKeyColumn(Customer.class, "name");
+            db.getTableUtils().createTable(Customer.class);
+            ShardedDao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            assertEquals("shard key column", "name", dao.getShardKeyColumn());
+            for (int i = 0; i < 30; i++) {
+                dao.create(new Customer(i + " Main St", "Customer " + (i % 10)));
+            }
+            Dao<Customer, Integer> owner = dao.getShardDao("Customer 3");
+            assertEquals("on owning shard", 3, owner.queryForEq("name", "Customer 3").size());
+            assertEquals("routed", 3, dao.queryForEq("name", "Customer 3").size());
+            assertEquals("scattered", 1, dao.queryForEq("address", "3 Main St").size());
+            assertEquals("matching", 3, dao.queryForMatching(new Customer(null, "Customer 3")).size());
+            assertEquals("total", 30L, dao.countOf());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testConsistentHash() throws Exception {
+        System.out.println("testConsistentHash");
+        ShardedDatabaseContext four = new ShardedDatabaseContext(Collections.nCopies(4, new DefaultDatabaseContext(ConnectionSources.broken())));
+        ShardedDatabaseContext five = new ShardedDatabaseContext(Collections.nCopies(5, new DefaultDatabaseContext(ConnectionSources.broken())));
+        int numKeys = 10000, moved = 0;
+        for (int i = 0; i < numKeys; i++) {
+            Object key = i % 2 == 0 ? Integer.valueOf(i) : "key" + i;
+            int before = four.getShardIndex(key), after = five.getShardIndex(key);
+            if (before != after) {
+                assertEquals("keys move only to the new shard", 4, after);
+                moved++;
+            }
+        }
+        System.out.format("%d of %d keys moved%n", moved, numKeys);
+        assertTrue("moved " + moved, moved > numKeys / 10 && moved < numKeys * 3 / 10);
+        assertEquals("int and long keys", four.getShardIndex(12345), four.getShardIndex(12345L));
+    }
+
+    public static class Account {
+
+        @DatabaseField(id = true)
+        public String username;
+
+        @DatabaseField
+        public String region;
+
+        @DatabaseField
+        public int balance;
+
+        public Account() {
+        }
+
+        public Account(String username, String region, int balance) {
+            this.username = username;
+            this.region = region;
+            this.balance = balance;
+        }
+    }
+}
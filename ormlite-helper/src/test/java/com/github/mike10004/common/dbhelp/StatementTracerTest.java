@@ -0,0 +1,91 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.github.mike10004.common.dbhelp.StatementTracer.SlowQuery;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.SelectArg;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatementTracerTest {
+
+    @Test
+    public void testFingerprint() {
+        System.out.println("testFingerprint");
+        assertEquals("SELECT * FROM `customer` WHERE `id` = ?",
+                StatementTracer.fingerprint("SELECT *  FROM `customer`\n WHERE `id` = 42"));
+        assertEquals("SELECT * FROM t WHERE name = ? AND x1 > ?",
+                StatementTracer.fingerprint("SELECT * FROM t WHERE name = 'O''Brien' AND x1 > 3.5"));
+        assertEquals("DELETE FROM t WHERE id IN (?+)",
+                StatementTracer.fingerprint("DELETE FROM t WHERE id IN (1, 2, 3)"));
+        assertEquals("DELETE FROM t WHERE id IN (?+)",
+                StatementTracer.fingerprint("DELETE FROM t WHERE id IN (?,?)"));
+        assertEquals("SELECT \"col 1\" FROM t2 WHERE a = ? + ?",
+                StatementTracer.fingerprint("  SELECT \"col 1\" FROM t2 WHERE a = ? + 1  "));
+    }
+
+    @Test
+    public void testTracing() throws Exception {
+        System.out.println("testTracing");
+        List<SlowQuery> slowQueries = Collections.synchronizedList(new ArrayList<>());
+        StatementTracer tracer = new StatementTracer(0, TimeUnit.MILLISECONDS, slowQueries::add);
+        DatabaseContext db = new DefaultDatabaseContext(new H2MemoryConnectionSource(), tracer);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+            db.getTransactionManager().callInTransaction(() -> {
+                for (int i = 0; i < 5; i++) {
+                    dao.create(new Customer(i + " Main St", "Customer " + i));
+                }
+                return null;
+            });
+            assertEquals("rows", 5, dao.queryBuilder().where().like("name", new SelectArg("Customer%")).query().size());
+            assertNotNull(dao.queryForId(3));
+            assertEquals("deleted", 1, dao.deleteById(1));
+            Map<String, LatencyHistogram> histograms = tracer.getHistograms();
+            histograms.forEach((fingerprint, histogram) -> System.out.format("%s: %s%n", fingerprint, histogram));
+            LatencyHistogram inserts = histograms.entrySet().stream()
+                    .filter(e -> e.getKey().startsWith("INSERT INTO `customer`"))
+                    .map(Map.Entry::getValue)
+                    .findFirst().orElseThrow(AssertionError::new);
+            assertEquals("inserts", 5L, inserts.getCount());
+            assertTrue("create table traced", histograms.keySet().stream().anyMatch(k -> k.startsWith("CREATE TABLE")));
+            SlowQuery delete = slowQueries.stream()
+                    .filter(q -> q.getSql().startsWith("DELETE"))
+                    .findFirst().orElseThrow(AssertionError::new);
+            assertEquals("delete parameter count", 1, delete.getParameterCount());
+            assertEquals("delete row count", 1, delete.getRowCount());
+            SlowQuery select = slowQueries.stream()
+                    .filter(q -> q.getSql().contains("LIKE"))
+                    .findFirst().orElseThrow(AssertionError::new);
+            assertEquals("select parameter count", 1, select.getParameterCount());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+
+    @Test
+    public void testTracing_belowThreshold() throws Exception {
+        System.out.println("testTracing_belowThreshold");
+        List<SlowQuery> slowQueries = Collections.synchronizedList(new ArrayList<>());
+        StatementTracer tracer = new StatementTracer(1, TimeUnit.HOURS, slowQueries::add);
+        DatabaseContext db = new DefaultDatabaseContext(new H2MemoryConnectionSource(), tracer);
+        try {
+            db.getTableUtils().createTable(Customer.class);
+            db.getDao(Customer.class).create(new Customer("1 Main St", "Customer 1"));
+            assertFalse("histograms", tracer.getHistograms().isEmpty());
+            assertEquals("slow queries", 0, slowQueries.size());
+        } finally {
+            db.closeConnections(true);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.mike10004.common.dbhelp;
+
+import com.google.common.base.Ticker;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TenantContextRegistryTest {
+
+    private static Function<Integer, ConnectionSource> tenantDatabases(String prefix) {
+        return tenant -> new H2MemoryConnectionSource(prefix + tenant, true);
+    }
+
+    private static long countCustomers(DatabaseContext db) throws SQLException {
+        return db.getDao(Customer.class, Integer.class).countOf();
+    }
+
+    @Test
+    public void testManyTenants() throws Exception {
+        System.out.println("testManyTenants");
+        int numTenants = 300, budget = 10;
+        try (TenantContextRegistry<Integer> registry = new TenantContextRegistry<>(tenantDatabases("many"), budget)) {
+            for (int tenant = 0; tenant < numTenants; tenant++) {
+                DatabaseContext db = registry.getContext(tenant);
+                assertSame("same context", db, registry.getContext(tenant));
+                db.getTableUtils().createTable(Customer.class);
+                Dao<Customer, Integer> dao = db.getDao(Customer.class, Integer.class);
+                for (int i = 0; i <= tenant % 3; i++) {
+                    dao.create(new Customer(i + " Main St", "Customer " + tenant));
+                }
+                assertTrue("reserved within budget", registry.getReservedConnectionCount() <= budget);
+                assertTrue("open tenants within budget", registry.getOpenTenantCount() <= budget);
+            }
+            assertEquals("tenant count", numTenants, registry.getTenantCount());
+            assertTrue("evictions", registry.getEvictionCount() >= numTenants - budget);
+            for (int tenant = 0; tenant < numTenants; tenant++) {
+                assertEquals("customers of tenant " + tenant, tenant % 3 + 1, countCustomers(registry.getContext(tenant)));
+            }
+            TenantUsage usage = registry.getUsage(0);
+            assertNotNull(usage);
+            System.out.println(usage);
+            assertEquals("in use", 0, usage.getConnectionsInUse());
+            assertEquals("peak", 1, usage.getPeakConnectionsInUse());
+            assertTrue("checkouts", usage.getCheckoutCount() >= 3);
+            assertTrue("evicted", usage.getEvictionCount() >= 1);
+            assertEquals("rejections", 0L, usage.getRejectionCount());
+            assertEquals("usage map size", numTenants, registry.getUsage().size());
+            assertNull("unknown tenant", registry.getUsage(-1));
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        System.out.println("testIdleEviction");
+        AtomicLong nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        try (TenantContextRegistry<Integer> registry = new TenantContextRegistry<>(tenantDatabases("idle"), DefaultDatabaseContext::new, 10, ticker)) {
+            registry.setIdleTimeoutMillis(1000);
+            registry.getContext(1).getTableUtils().createTable(Customer.class);
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+            registry.getContext(2).getTableUtils().createTable(Customer.class);
+            assertEquals("open tenants", 2, registry.getOpenTenantCount());
+            assertEquals("reserved", 2, registry.getReservedConnectionCount());
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+            assertEquals("evicted", 1, registry.evictIdle());
+            TenantUsage usage = registry.getUsage(1);
+            assertNotNull(usage);
+            assertFalse("tenant 1 open", usage.isOpen());
+            assertEquals("tenant 1 evictions", 1L, usage.getEvictionCount());
+            assertEquals("tenant 1 reserved", 0, usage.getReservedConnections());
+            assertEquals("reserved", 1, registry.getReservedConnectionCount());
+            assertEquals("count after reopening", 0L, countCustomers(registry.getContext(1)));
+            assertEquals("open tenants", 2, registry.getOpenTenantCount());
+        }
+    }
+
+    @Test
+    public void testMaxOpenTenants() throws Exception {
+        System.out.println("testMaxOpenTenants");
+        try (TenantContextRegistry<Integer> registry = new TenantContextRegistry<>(tenantDatabases("maxopen"), 100)) {
+            registry.setMaxOpenTenants(3);
+            for (int tenant = 0; tenant < 10; tenant++) {
+                registry.getContext(tenant).getTableUtils().createTable(Customer.class);
+                assertTrue("open tenants", registry.getOpenTenantCount() <= 3);
+            }
+            assertEquals("evictions", 7L, registry.getEvictionCount());
+            TenantUsage oldest = registry.getUsage(0), newest = registry.getUsage(9);
+            assertNotNull(oldest);
+            assertNotNull(newest);
+            assertFalse("oldest open", oldest.isOpen());
+            assertTrue("newest open", newest.isOpen());
+        }
+    }
+
+    @Test
+    public void testBudgetExhausted() throws Exception {
+        System.out.println("testBudgetExhausted");
+        try (TenantContextRegistry<Integer> registry = new TenantContextRegistry<>(tenantDatabases("exhausted"), 1)) {
+            registry.setConnectionWaitMillis(50);
+            ConnectionSource first = registry.getContext(1).getConnectionSource();
+            ConnectionSource second = registry.getContext(2).getConnectionSource();
+            DatabaseConnection held = first.getReadWriteConnection(null);
+            try {
+                second.getReadWriteConnection(null);
+                fail("should have thrown");
+            } catch (SQLException expected) {
+                System.out.println(expected.getMessage());
+            }
+            TenantUsage usage = registry.getUsage(2);
+            assertNotNull(usage);
+            assertEquals("rejections", 1L, usage.getRejectionCount());
+            assertEquals("in use", 0, usage.getConnectionsInUse());
+            first.releaseConnection(held);
+            DatabaseConnection acquired = second.getReadWriteConnection(null);
+            second.releaseConnection(acquired);
+            assertEquals("evictions", 1L, registry.getEvictionCount());
+            assertEquals("reserved", 1, registry.getReservedConnectionCount());
+        }
+    }
+
+    @Test
+    public void testConcurrentTenants() throws Exception {
+        System.out.println("testConcurrentTenants");
+        int numTenants = 200, budget = 4, numThreads = 8, opsPerThread = 100;
+        try (TenantContextRegistry<Integer> registry = new TenantContextRegistry<>(tenantDatabases("concurrent"), budget)) {
+            for (int tenant = 0; tenant < numTenants; tenant++) {
+                registry.getContext(tenant).getTableUtils().createTable(Customer.class);
+            }
+            AtomicInteger maxReserved = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < numThreads; t++) {
+                    int offset = t;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < opsPerThread; i++) {
+                            int tenant = (offset * 31 + i * 7) % numTenants;
+                            Dao<Customer, Integer> dao = registry.getContext(tenant).getDao(Customer.class, Integer.class);
+                            dao.create(new Customer("1 Main St", "Customer " + tenant));
+                            maxReserved.accumulateAndGet(registry.getReservedConnectionCount(), Math::max);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertTrue("max reserved " + maxReserved.get(), maxReserved.get() <= budget);
+            long total = 0;
+            for (int tenant = 0; tenant < numTenants; tenant++) {
+                total += countCustomers(registry.getContext(tenant));
+            }
+            assertEquals("total customers", numThreads * opsPerThread, total);
+        }
+    }
+}